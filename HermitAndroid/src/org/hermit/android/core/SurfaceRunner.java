@@ -21,12 +21,14 @@ package org.hermit.android.core;
 
 
 import org.hermit.utils.CharFormatter;
+import org.hermit.utils.TimingHistogram;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Handler;
 import android.os.Looper;
@@ -79,6 +81,64 @@ public abstract class SurfaceRunner
      * This allows asynchronous updates to be posted by the app.
      */
     public static final int LOOPED_TICKER = 0x0002;
+
+    /**
+     * Surface runner option: use a fixed-timestep frame scheduler to drive
+     * animations.  Frames are drawn on a fixed budget set by
+     * {@link #setFrameTime(long)}, sleeping to each frame's deadline;
+     * doUpdate() is called in fixed steps of simulated time set by
+     * {@link #setStepTime(long)}, catching up after a slow frame; and
+     * when {@link #animationPending()} returns false the animation thread
+     * sleeps until woken by {@link #postUpdate()}.  This overrides
+     * LOOPED_TICKER.
+     */
+    public static final int FIXED_STEP = 0x0004;
+
+    /**
+     * Surface runner option: render offscreen on a separate thread.
+     * doDraw() is called on a dedicated render thread, into one of two
+     * offscreen bitmaps, without the surface being locked; the animation
+     * thread just copies the latest finished frame to the screen.  So
+     * drawing doesn't hold up input or doUpdate(), but the app must
+     * lock any state which doUpdate() or input handlers change and
+     * doDraw() reads.  doDraw() must draw the whole frame each time;
+     * {@link #getDirtyRegion(Rect)} is not used.
+     */
+    public static final int OFFSCREEN_RENDER = 0x0008;
+
+    /**
+     * Index in {@link #statsSnapshot()} of the time taken by each whole
+     * frame, including all its updates.
+     */
+    public static final int STAT_FRAME = 0;
+
+    /**
+     * Index in {@link #statsSnapshot()} of the time taken by doUpdate().
+     */
+    public static final int STAT_UPDATE = 1;
+
+    /**
+     * Index in {@link #statsSnapshot()} of the time taken by doDraw().
+     */
+    public static final int STAT_DRAW = 2;
+
+    /**
+     * Index in {@link #statsSnapshot()} of the time taken to lock the
+     * surface's canvas.
+     */
+    public static final int STAT_LOCK = 3;
+
+    /**
+     * Index in {@link #statsSnapshot()} of the time taken to unlock the
+     * surface's canvas and post it to the screen.
+     */
+    public static final int STAT_UNLOCK = 4;
+
+    /**
+     * Index in {@link #statsSnapshot()} of the first of the app's stats,
+     * as set up by {@link #statsCreate(String[])}.
+     */
+    public static final int STAT_APP = 5;
     
     
     // ******************************************************************** //
@@ -121,6 +181,20 @@ public abstract class SurfaceRunner
     }
     
 
+    /**
+     * Create a SurfaceRunner instance.
+     * 
+     * @param   app         The application context we're running in.
+     * @param   attrs       Layout attributes for this SurfaceRunner.
+     * @param   options     Options for this SurfaceRunner.  A bitwise OR of
+     *                      SURFACE_XXX constants.
+     */
+    public SurfaceRunner(Context app, AttributeSet attrs, int options) {
+        super(app, attrs);
+        init(app, options);
+    }
+    
+
     /**
      * Initialize this SurfaceRunner instance.
      * 
@@ -185,6 +259,39 @@ public abstract class SurfaceRunner
     }
 
 
+    /**
+     * Set the frame budget for the FIXED_STEP frame scheduler.
+     * 
+     * @param   time        The time in ms from the start of one frame to
+     *                      the start of the next.  If a frame takes
+     *                      longer than this, the frames which should have
+     *                      started in the meantime are dropped.
+     */
+    public void setFrameTime(long time) {
+        if (time <= 0)
+            throw new IllegalArgumentException("Bad frame time " + time);
+        Log.i(TAG, "setFrameTime " + time);
+        frameTime = time;
+        statsSetJank();
+    }
+
+
+    /**
+     * Set the simulation step for the FIXED_STEP frame scheduler.
+     * 
+     * @param   time        The amount of simulated time in ms which each
+     *                      call to doUpdate() advances by.  Zero to use
+     *                      the frame time, which gives one update per
+     *                      frame when the app keeps up.
+     */
+    public void setStepTime(long time) {
+        if (time < 0)
+            throw new IllegalArgumentException("Bad step time " + time);
+        Log.i(TAG, "setStepTime " + time);
+        stepTime = time;
+    }
+
+
     /**
      * This is called immediately after the surface is first created.
      * Implementations of this should start up whatever rendering code
@@ -426,8 +533,17 @@ public abstract class SurfaceRunner
             if (animTicker != null && animTicker.isAlive())
                 animTicker.kill();
             Log.i(TAG, "set running: start ticker");
-            animTicker = !optionSet(LOOPED_TICKER) ?
-            				new ThreadTicker() : new LoopTicker();
+            if (optionSet(OFFSCREEN_RENDER))
+                renderThread = new RenderThread();
+            if (optionSet(FIXED_STEP)) {
+                frameTicker = new FrameTicker();
+                animTicker = frameTicker;
+            } else
+                animTicker = !optionSet(LOOPED_TICKER) ?
+                				new ThreadTicker() : new LoopTicker();
+
+            // The surface may be new; draw all of it first time round.
+            fullRedraw = true;
         }
     }
 
@@ -454,6 +570,18 @@ public abstract class SurfaceRunner
         }
         synchronized (surfaceHolder) {
             animTicker = null;
+            frameTicker = null;
+        }
+        
+        // Now the ticker has stopped, nothing will ask for any more
+        // renders; stop the render thread too.
+        RenderThread render = renderThread;
+        if (render != null) {
+            if (Thread.currentThread() == render)
+                render.kill();
+            else
+                render.killAndWait();
+            renderThread = null;
         }
         
         // Tell the subclass we've stopped.
@@ -476,6 +604,7 @@ public abstract class SurfaceRunner
         synchronized (surfaceHolder) {
             canvasWidth = width;
             canvasHeight = height;
+            fullRedraw = true;
 
             // Create the pixmap for the background image.
             switch (format) {
@@ -515,9 +644,22 @@ public abstract class SurfaceRunner
     /**
      * Asynchronously schedule an update; i.e. a frame of animation.
      * This can only be called if the SurfaceRunner was created with
-     * the option LOOPED_TICKER.
+     * the option LOOPED_TICKER or FIXED_STEP.
+     * 
+     * <p>With FIXED_STEP, this wakes the animation thread if it's idle,
+     * and otherwise makes sure that it doesn't go idle after the current
+     * frame.  It doesn't take any locks, so it's cheap enough to call
+     * whenever the app's state changes; if the animation isn't running,
+     * it does nothing.
      */
     public void postUpdate() {
+        if (optionSet(FIXED_STEP)) {
+            FrameTicker frames = frameTicker;
+            if (frames != null)
+                frames.wake();
+            return;
+        }
+        
         synchronized (surfaceHolder) {
         	if (!(animTicker instanceof LoopTicker))
         		throw new IllegalArgumentException("Can't post updates" +
@@ -529,15 +671,57 @@ public abstract class SurfaceRunner
     
     
     private void tick() {
+        // Do the application's physics, and update the screen.
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        events();
+        update(now);
+        draw(now);
+        statsTimeInt(STAT_FRAME, System.nanoTime() - start);
+    }
+    
+
+    /**
+     * Handle the app's queued input.
+     */
+    private void events() {
         try {
-            // Do the application's physics.
-            long now = System.currentTimeMillis();
+            doEvents();
+        } catch (Exception e) {
+            errorReporter.reportException(e);
+        }
+    }
+    
+
+    /**
+     * Do one step of the application's physics.
+     * 
+     * @param   now         Current time in ms.
+     */
+    private void update(long now) {
+        try {
+            long start = System.nanoTime();
             doUpdate(now);
-            if (showPerf)
-                statsTimeInt(1, (System.currentTimeMillis() - now) * 1000);
+            statsTimeInt(STAT_UPDATE, System.nanoTime() - start);
+        } catch (Exception e) {
+            errorReporter.reportException(e);
+        }
+    }
+    
 
-            // And update the screen.
-            refreshScreen(now);
+    /**
+     * Update the screen.
+     * 
+     * @param   now         Current time in ms.
+     */
+    private void draw(long now) {
+        try {
+            RenderThread render = renderThread;
+            if (render != null) {
+                render.request(now);
+                presentScreen(now);
+            } else
+                refreshScreen(now);
         } catch (Exception e) {
             errorReporter.reportException(e);
         }
@@ -549,42 +733,106 @@ public abstract class SurfaceRunner
      * This can be used to refresh the screen.
      */
     private void refreshScreen(long now) {
+        // Find out how much of the screen needs drawing.  If the app
+        // tracks its dirty region and nothing has changed, we're done.
+        Rect dirty = null;
+        if (!fullRedraw && getDirtyRegion(dirtyRect)) {
+            if (showPerf)
+                dirtyRect.union(perfPosX, perfPosY,
+                                perfPosX + perfBitmap.getWidth(),
+                                perfPosY + perfBitmap.getHeight());
+            if (dirtyRect.isEmpty())
+                return;
+            dirty = dirtyRect;
+        }
+        fullRedraw = false;
+
         Canvas canvas = null;
         try {
-            canvas = surfaceHolder.lockCanvas(null);
+            long lockStart = System.nanoTime();
+            canvas = surfaceHolder.lockCanvas(dirty);
+            if (canvas == null)
+                return;
+            long drawStart = System.nanoTime();
+            statsTimeInt(STAT_LOCK, drawStart - lockStart);
             synchronized (surfaceHolder) {
-                long drawStart = System.currentTimeMillis();
                 doDraw(canvas, now);
-                if (showPerf) {
-                    long drawEnd = System.currentTimeMillis();
-                    statsTimeInt(2, (drawEnd - drawStart) * 1000);
-                }
+                statsTimeInt(STAT_DRAW, System.nanoTime() - drawStart);
 
                 // Show performance data, if required.
-                if (showPerf) {
-                    // Count frames per second.
-                    statsCountInt(0, 1);
-                    
-                    // If it's time to make a new displayed total, tot up
-                    // the figures and reset the running counts.
-                    if (now - perfLastTime > STATS_UPDATE) {
-                        statsDraw();
-                        perfLastTime = now;
-                    }
-
-                    // Draw the stats on screen.
-                    canvas.drawBitmap(perfBitmap, perfPosX, perfPosY, null);
-                }
+                if (showPerf)
+                    drawPerf(canvas, now);
             }
         } finally {
             // do this in a finally so that if an exception is thrown
             // during the above, we don't leave the Surface in an
             // inconsistent state
-            if (canvas != null)
+            if (canvas != null) {
+                long unlockStart = System.nanoTime();
+                surfaceHolder.unlockCanvasAndPost(canvas);
+                statsTimeInt(STAT_UNLOCK, System.nanoTime() - unlockStart);
+            }
+        }
+    }
+
+
+    /**
+     * Copy the latest frame finished by the render thread to the screen,
+     * if we haven't already.  Used with OFFSCREEN_RENDER.  Nothing is
+     * locked except the surface, and only for the copy.
+     * 
+     * @param   now         Current time in ms.
+     */
+    private void presentScreen(long now) {
+        RenderThread render = renderThread;
+        if (render == null)
+            return;
+        Bitmap frame = render.acquire();
+        if (frame == null)
+            return;
+
+        Canvas canvas = null;
+        try {
+            long lockStart = System.nanoTime();
+            canvas = surfaceHolder.lockCanvas(null);
+            if (canvas == null)
+                return;
+            statsTimeInt(STAT_LOCK, System.nanoTime() - lockStart);
+            canvas.drawBitmap(frame, 0, 0, null);
+            if (showPerf)
+                drawPerf(canvas, now);
+        } finally {
+            if (canvas != null) {
+                long unlockStart = System.nanoTime();
                 surfaceHolder.unlockCanvasAndPost(canvas);
+                statsTimeInt(STAT_UNLOCK, System.nanoTime() - unlockStart);
+            }
+            render.release();
         }
     }
 
+
+    /**
+     * Count a frame, and draw the performance data on the screen.
+     * 
+     * @param   canvas      The Canvas to draw into.
+     * @param   now         Current time in ms.
+     */
+    private void drawPerf(Canvas canvas, long now) {
+        // Count frames per second.
+        ++perfFrames;
+
+        // If it's time to make a new displayed total, tot up
+        // the figures and reset the running counts.
+        if (now - perfLastTime > STATS_UPDATE) {
+            statsDraw(now - perfLastTime);
+            perfLastTime = now;
+        }
+
+        // Draw the stats on screen.
+        canvas.drawBitmap(perfBitmap, perfPosX, perfPosY, null);
+    }
+
     
     // ******************************************************************** //
     // Client Methods.
@@ -632,6 +880,17 @@ public abstract class SurfaceRunner
     protected abstract void appStop();
     
   
+    /**
+     * Handle the input which the app has queued for the animation thread.
+     * This is called at the start of every frame, before any calls to
+     * doUpdate(), in the animation thread; so an app which passes its
+     * input here, rather than acting on it in the UI thread, can keep
+     * all its state changes in the one thread.  The default does nothing.
+     */
+    protected void doEvents() {
+    }
+    
+  
     /**
      * Update the state of the application for the current frame.
      * 
@@ -655,7 +914,9 @@ public abstract class SurfaceRunner
      * entire screen into the provided canvas.
      * 
      * <p>This method will always be called after a call to doUpdate(),
-     * and also when the screen needs to be re-drawn.
+     * and also when the screen needs to be re-drawn.  With the option
+     * OFFSCREEN_RENDER, it's called on the render thread, and may run
+     * at the same time as the next doUpdate().
      * 
      * @param   canvas      The Canvas to draw into.
      * @param   now         Current time in ms.  Will be the same as that
@@ -665,6 +926,48 @@ public abstract class SurfaceRunner
     protected abstract void doDraw(Canvas canvas, long now);
 
 
+    /**
+     * Get the region of the screen which needs to be redrawn in the
+     * next frame.  Apps which track which parts of the screen have
+     * changed can override this so that only that region of the
+     * surface is locked and posted; the default redraws everything.
+     * 
+     * <p>The canvas passed to doDraw() is clipped to the locked region,
+     * which the system may have enlarged; use Canvas.getClipBounds()
+     * to find it.  Everything within it must be redrawn.  From time to
+     * time, for example when the surface is re-created, the whole
+     * screen is redrawn without calling this method.
+     * 
+     * <p>This is called just before doDraw(), in the same thread.
+     * 
+     * @param   dirty       Rect to set to the dirty region.  If it is
+     *                      set empty, no frame is drawn.
+     * @return              true if dirty has been set; false to redraw
+     *                      the whole screen.
+     */
+    protected boolean getDirtyRegion(Rect dirty) {
+        return false;
+    }
+
+
+    /**
+     * Determine whether the app has any animation in progress.  This is
+     * only used with the FIXED_STEP option; if it returns false, the
+     * animation thread goes idle after the current frame, and neither
+     * doUpdate() nor doDraw() is called until the app calls
+     * {@link #postUpdate()}.  So apps which use this must call
+     * postUpdate() whenever something changes which needs drawing.
+     * 
+     * <p>This is called after each frame, in the animation thread.  The
+     * default always returns true, so the app is updated every frame.
+     * 
+     * @return              true if the app needs more frames.
+     */
+    protected boolean animationPending() {
+        return true;
+    }
+
+
     // ******************************************************************** //
     // Client Utilities.
     // ******************************************************************** //
@@ -723,7 +1026,8 @@ public abstract class SurfaceRunner
     // ******************************************************************** //
 
     /**
-     * Turn display of performance info on or off.
+     * Turn display of performance info on or off.  While it's on, the
+     * stats are also collected for {@link #statsSnapshot()}.
      * 
      * @param   enable      True to enable performance display.
      */
@@ -732,6 +1036,18 @@ public abstract class SurfaceRunner
     }
     
 
+    /**
+     * Turn collection of performance stats on or off, without showing
+     * them on screen.  This is for automated performance tests, which can
+     * read the stats with {@link #statsSnapshot()}.
+     * 
+     * @param   enable      True to collect performance stats.
+     */
+    public void setDebugStats(boolean enable) {
+        collectPerf = enable;
+    }
+    
+
     /**
      * Set the screen position at which we display performance info.
      * 
@@ -761,7 +1077,7 @@ public abstract class SurfaceRunner
      * However this method is, of course, optional.
      * 
      * @param   labels          Labels for the app's stats, one label
-     *                          per stat.  Labels need to be 7 chars or less.
+     *                          per stat.  Labels need to be 6 chars or less.
      */
     protected void statsCreate(String[] labels) {
         perfAppLabels = labels;
@@ -778,46 +1094,68 @@ public abstract class SurfaceRunner
         perfPaint.setColor(0xffff0000);
         perfPaint.setTypeface(Typeface.MONOSPACE);
         
-        // Set up buffers for the performance data OSD.  Make space for the
-        // app's stats as well as our own.
-        int nstats = 3;
+        // Make the histograms and counters for our own stats and the app's.
+        int nstats = STAT_APP;
         if (perfAppLabels != null)
             nstats += perfAppLabels.length;
+        TimingHistogram[] times = new TimingHistogram[nstats];
+        TimingHistogram[] totals = new TimingHistogram[nstats];
+        for (int i = 0; i < nstats; ++i) {
+            String label = i < STAT_APP ? STAT_LABELS[i] :
+                                          perfAppLabels[i - STAT_APP];
+            times[i] = new TimingHistogram(label);
+            totals[i] = new TimingHistogram(label);
+        }
         
-        perfBuffers = new char[nstats][];
-        int i;
-        for (i = 0; i < nstats; ++i)
-            perfBuffers[i] = new char[14];
-        i = 0;
-        CharFormatter.formatString(perfBuffers[i++], 6, " fps", 8);
-        CharFormatter.formatString(perfBuffers[i++], 6, " µs phys", 8);
-        CharFormatter.formatString(perfBuffers[i++], 6, " µs draw", 8);
-        if (perfAppLabels != null)
-            for (String alab : perfAppLabels)
-                CharFormatter.formatString(perfBuffers[i++], 6, " " + alab, 8);
+        // Set up buffers for the performance data OSD: a heading, the
+        // frame rate, and a line per stat.
+        int nrows = nstats + 2;
+        perfBuffers = new char[nrows][];
+        for (int i = 0; i < nrows; ++i)
+            perfBuffers[i] = new char[STATS_CHARS];
+        char[] head = perfBuffers[0];
+        CharFormatter.formatString(head, 0, "ms", 7);
+        for (int c = 0; c < 4; ++c)
+            CharFormatter.formatString(head, 7 + c * 6, STATS_COLUMNS[c],
+                                       6, true);
+        CharFormatter.formatString(head, 31, "jank", 5, true);
+        CharFormatter.formatString(perfBuffers[1], 0, "fps", STATS_CHARS);
+        for (int i = 0; i < nstats; ++i)
+            CharFormatter.formatString(perfBuffers[i + 2], 0,
+                                       times[i].getLabel(), STATS_CHARS);
         
         // Now make a bitmap for the stats.
-        perfBitmap = Bitmap.createBitmap(100, nstats * 12 + 4, canvasConfig);
+        perfBitmap = Bitmap.createBitmap(STATS_CHARS * 7, nrows * 12 + 4,
+                                         canvasConfig);
         perfCanvas = new Canvas(perfBitmap);
+        perfFrames = 0;
+        perfLastTime = System.currentTimeMillis();
         
-        // Make the values and counts arrays.
-        perfStats = new int[nstats];
-        perfCounts = new int[nstats];
+        // Switch to the new stats; other threads may be recording.
+        synchronized (perfLock) {
+            perfTimes = times;
+            perfTotals = totals;
+            perfCounts = new int[nstats];
+        }
+        statsSetJank();
     }
     
     
     /**
-     * Increment a performance counter.  This method is used for counts
-     * of specific quantities, which will be displayed as counts per second;
-     * for example frames per second.
-     * 
-     * @param   index       Index of the stat to bump (its index in the
-     *                      "labels" argument to
-     *                      {@link #statsCreate(String[] labels)}).
-     * @param   val         Amount to add to the counter.
+     * Set the jank threshold of all the stats to the frame budget: the
+     * frame time for FIXED_STEP, else 1/60 sec.
      */
-    public void statsCount(int index, int val) {
-        statsCountInt(index + 3, val);
+    private void statsSetJank() {
+        long jank = optionSet(FIXED_STEP) ? frameTime * 1000000 :
+                                            DEFAULT_FRAME_NS;
+        synchronized (perfLock) {
+            if (perfTimes == null)
+                return;
+            for (int i = 0; i < perfTimes.length; ++i) {
+                perfTimes[i].setJankThreshold(jank);
+                perfTotals[i].setJankThreshold(jank);
+            }
+        }
     }
     
     
@@ -826,65 +1164,149 @@ public abstract class SurfaceRunner
      * of specific quantities, which will be displayed as counts per second;
      * for example frames per second.
      * 
-     * @param   index       Index of the stat to bump (its absolute index,
-     *                      which includes internal stats).
+     * @param   index       Index of the stat to bump (its index in the
+     *                      "labels" argument to
+     *                      {@link #statsCreate(String[] labels)}).
      * @param   val         Amount to add to the counter.
      */
-    private void statsCountInt(int index, int val) {
-        if (val < 0)
+    public void statsCount(int index, int val) {
+        if (val < 0 || !(showPerf || collectPerf))
             return;
-        if (showPerf && index >= 0 && index < perfStats.length)
-            perfStats[index] += val;
+        synchronized (perfLock) {
+            index += STAT_APP;
+            if (perfCounts != null && index >= 0 && index < perfCounts.length)
+                perfCounts[index] += val;
+        }
     }
     
 
     /**
      * Record a performance timer.  This method is used for timings
-     * of specific activities; the average of the recorded values will 
+     * of specific activities; the percentiles of the recorded values will 
      * be displayed.
      * 
      * @param   index       Index of the stat to record (its index in the
      *                      "labels" argument to
      *                      {@link #statsCreate(String[] labels)}).
-     * @param   val         The time value for this iteration.
+     * @param   val         The time value for this iteration in µs.
      */
     public void statsTime(int index, long val) {
-        statsTimeInt(index + 3, val);
+        if (val >= 0)
+            statsTimeInt(index + STAT_APP, val * 1000);
+    }
+    
+
+    /**
+     * Record a performance timer in ns.  This method is used for timings
+     * of specific activities, as measured with System.nanoTime(); the
+     * percentiles of the recorded values will be displayed.
+     * 
+     * @param   index       Index of the stat to record (its index in the
+     *                      "labels" argument to
+     *                      {@link #statsCreate(String[] labels)}).
+     * @param   ns          The time value for this iteration in ns.
+     */
+    public void statsTimeNs(int index, long ns) {
+        statsTimeInt(index + STAT_APP, ns);
     }
     
     
     /**
-     * Record a performance timer.  This method is used for timings
-     * of specific activities; the average of the recorded values will 
-     * be displayed.
+     * Record a performance timer.  This doesn't allocate, so it's safe
+     * to call every frame.
      * 
      * @param   index       Index of the stat to record (its absolute index,
      *                      which includes internal stats).
-     * @param   val         The time value for this iteration.
+     * @param   ns          The time value for this iteration in ns.
      */
-    private void statsTimeInt(int index, long val) {
-        if (val < 0)
+    private void statsTimeInt(int index, long ns) {
+        if (ns < 0 || !(showPerf || collectPerf))
             return;
-        if (showPerf && index >= 0 && index < perfStats.length) {
-            perfStats[index] += (int) val;
-            ++perfCounts[index];
+        synchronized (perfLock) {
+            if (perfTimes != null && index >= 0 && index < perfTimes.length) {
+                perfTimes[index].record(ns);
+                perfTotals[index].record(ns);
+            }
+        }
+    }
+    
+
+    /**
+     * Get a copy of the timing stats collected since the run started, or
+     * since {@link #statsReset()}.  Stats are only collected while
+     * {@link #setDebugPerf(boolean)} or {@link #setDebugStats(boolean)}
+     * is on.
+     * 
+     * <p>The result has a histogram for each stage of the frame, indexed
+     * by STAT_FRAME, STAT_UPDATE, STAT_DRAW, STAT_LOCK and STAT_UNLOCK,
+     * followed by the app's stats from STAT_APP on.  Each one's jank
+     * count is the number of times over the frame budget.
+     * 
+     * @return              Copies of the stats; null if the surface
+     *                      hasn't been set up yet.
+     */
+    public TimingHistogram[] statsSnapshot() {
+        synchronized (perfLock) {
+            if (perfTotals == null)
+                return null;
+            TimingHistogram[] copy = new TimingHistogram[perfTotals.length];
+            for (int i = 0; i < copy.length; ++i)
+                copy[i] = new TimingHistogram(perfTotals[i]);
+            return copy;
+        }
+    }
+    
+
+    /**
+     * Clear the stats returned by {@link #statsSnapshot()}, to start
+     * a new measurement.
+     */
+    public void statsReset() {
+        synchronized (perfLock) {
+            if (perfTotals == null)
+                return;
+            for (TimingHistogram h : perfTotals)
+                h.reset();
         }
     }
     
    
     /**
-     * Draw the stats into perfBitmap.
+     * Draw the stats into perfBitmap, and reset the stats shown.
+     * 
+     * @param   elapsed     Time in ms the stats were collected over.
      */
-    private void statsDraw() {
-        // Format all the values we have.
-        for (int i = 0; i < perfStats.length && i < perfBuffers.length; ++i) {
-            int v = perfStats[i];
-            int c = perfCounts[i];
-            if (c != 0)
-                v /= c;
-            else
-                v = v * 1000 / STATS_UPDATE;
-            CharFormatter.formatInt(perfBuffers[i], 0, v, 6, false);
+    private void statsDraw(long elapsed) {
+        if (elapsed <= 0)
+            elapsed = 1;
+        CharFormatter.formatInt(perfBuffers[1], 7,
+                                (int) (perfFrames * 1000 / elapsed), 6, false);
+        perfFrames = 0;
+        
+        // Format all the values we have.  Stats with timings show their
+        // percentiles; others show their count per second.
+        synchronized (perfLock) {
+            for (int i = 0; i < perfTimes.length; ++i) {
+                TimingHistogram h = perfTimes[i];
+                char[] buf = perfBuffers[i + 2];
+                if (h.getCount() != 0) {
+                    for (int c = 0; c < 4; ++c) {
+                        long v = c < 3 ? h.getPercentile(STATS_PERCENTILES[c]) :
+                                         h.getMax();
+                        CharFormatter.formatFloat(buf, 7 + c * 6,
+                                                  v / 1000000.0, 6, 2, false);
+                    }
+                    CharFormatter.formatInt(buf, 31,
+                                            (int) Math.min(h.getJankCount(), 9999),
+                                            5, false);
+                } else {
+                    CharFormatter.formatInt(buf, 7,
+                                (int) (perfCounts[i] * 1000L / elapsed), 6, false);
+                    CharFormatter.formatString(buf, 13, "/s", STATS_CHARS - 13);
+                }
+                h.reset();
+                perfCounts[i] = 0;
+            }
         }
         
         // Draw the stats into the canvas.
@@ -892,12 +1314,6 @@ public abstract class SurfaceRunner
         for (int i = 0; i < perfBuffers.length; ++i)
             perfCanvas.drawText(perfBuffers[i], 0, perfBuffers[i].length,
                                 0, i * 12 + 12, perfPaint);
-        
-        // Reset all stored stats.
-        for (int i = 0; i < perfStats.length && i < perfBuffers.length; ++i) {
-            perfStats[i] = 0;
-            perfCounts[i] = 0;
-        }
     }
     
 
@@ -1123,6 +1539,334 @@ public abstract class SurfaceRunner
 	}
 
 
+	/**
+	 * Fixed-timestep frame scheduler, used with the FIXED_STEP option.
+	 * Frames start on a fixed schedule measured with System.nanoTime(),
+	 * so the frame rate doesn't depend on how long each frame takes.
+	 * Before each frame, doUpdate() is called once for each step of
+	 * simulated time which has passed, up to MAX_CATCH_UP steps; if we're
+	 * further behind than that, the lost time is skipped.  When the app
+	 * has no animation pending, the thread waits until it's woken.
+	 */
+	private class FrameTicker
+	    extends Thread
+	    implements Ticker
+	{
+
+	    // Constructor -- start at once.
+	    private FrameTicker() {
+	        super("Surface Runner");
+	        Log.v(TAG, "FrameTicker: start");
+	        enable = true;
+	        start();
+	    }
+
+	    // Wake this thread if it's idle; else make sure it does another
+	    // frame before going idle.
+	    public void wake() {
+	        // The flags are volatile, and set and read in opposite orders
+	        // here and in run(), so either we see that the ticker is idle,
+	        // or it sees the wake-up before it waits.
+	        wakePending = true;
+	        if (idle) {
+	            synchronized (this) {
+	                notify();
+	            }
+	        }
+	    }
+
+	    // Stop this thread.  There will be no new calls to tick() after this.
+	    @Override
+		public void kill() {
+	        Log.v(TAG, "FrameTicker: kill");
+	        
+	        enable = false;
+	        synchronized (this) {
+	            notify();
+	        }
+	    }
+
+	    // Stop this thread and wait for it to die.  When we return, it is
+	    // guaranteed that tick() will never be called again.
+	    // 
+	    // Caution: if this is called from within tick(), deadlock is
+	    // guaranteed.
+	    @Override
+		public void killAndWait() {
+	        Log.v(TAG, "FrameTicker: killAndWait");
+	        
+	        if (Thread.currentThread() == this)
+	        	throw new IllegalStateException("FrameTicker.killAndWait()" +
+	        								    " called from ticker thread");
+
+	        kill();
+
+	        // Wait for the thread to finish.  Ignore interrupts.
+	        if (isAlive()) {
+	            boolean retry = true;
+	            while (retry) {
+	                try {
+	                    join();
+	                    retry = false;
+	                } catch (InterruptedException e) { }
+	            }
+	            Log.v(TAG, "FrameTicker: killed");
+	        } else {
+	            Log.v(TAG, "FrameTicker: was dead");
+	        }
+	    }
+
+	    // Run method for this thread -- run frames on schedule until
+	    // enable is false.
+	    @Override
+	    public void run() {
+	        // The app's times are in wall-clock ms; work out the offset
+	        // from the monotonic clock we schedule with.
+	        final long base = System.currentTimeMillis() -
+	                                        System.nanoTime() / 1000000;
+	        long simTime = System.nanoTime();
+	        long deadline = simTime;
+	        
+	        while (enable) {
+	            wakePending = false;
+	            final long frameNs = frameTime * 1000000;
+	            final long stepNs = (stepTime > 0 ? stepTime : frameTime) *
+	                                                                1000000;
+	            
+	            // Handle the app's input, then catch the simulation up to
+	            // the start of this frame.
+	            final long frameStart = System.nanoTime();
+	            events();
+	            int steps = 0;
+	            while (simTime + stepNs <= frameStart && steps < MAX_CATCH_UP) {
+	                simTime += stepNs;
+	                update(base + simTime / 1000000);
+	                ++steps;
+	            }
+	            if (simTime + stepNs <= frameStart)
+	                simTime = frameStart;
+	            
+	            draw(base + simTime / 1000000);
+	            statsTimeInt(STAT_FRAME, System.nanoTime() - frameStart);
+	            
+	            // If there's nothing more to animate, wait to be woken.
+	            // The idle time isn't simulated.
+	            if (!wakePending && !animationPending()) {
+	                // Make sure the last frame being rendered offscreen
+	                // gets to the screen first.
+	                RenderThread render = renderThread;
+	                if (render != null) {
+	                    render.waitDone();
+	                    presentScreen(base + simTime / 1000000);
+	                }
+	                
+	                idle = true;
+	                synchronized (this) {
+	                    while (enable && !wakePending) {
+	                        try {
+	                            wait();
+	                        } catch (InterruptedException e) { }
+	                    }
+	                }
+	                idle = false;
+	                simTime = deadline = System.nanoTime();
+	                continue;
+	            }
+	            
+	            // Sleep until the next frame is due.  If we've overrun,
+	            // drop the frames we missed, keeping to the schedule.
+	            deadline += frameNs;
+	            long now = System.nanoTime();
+	            if (deadline < now)
+	                deadline += (now - deadline + frameNs - 1) / frameNs *
+	                                                                frameNs;
+	            long wait = deadline - now;
+	            if (wait > 0) try {
+	                sleep(wait / 1000000, (int) (wait % 1000000));
+	            } catch (InterruptedException e) { }
+	        }
+	    }
+	    
+	    // Flag used to terminate this thread -- when false, we die.
+	    private volatile boolean enable = false;
+	    
+	    // Flag set when the app has posted an update since the current
+	    // frame started.
+	    private volatile boolean wakePending = false;
+	    
+	    // Flag set while this thread is waiting to be woken.
+	    private volatile boolean idle = false;
+	}
+
+
+	/**
+	 * Render thread used with the OFFSCREEN_RENDER option.  Each frame
+	 * requested is drawn by doDraw() into one of two offscreen bitmaps;
+	 * when it's finished, it becomes the latest frame, which the
+	 * animation thread copies to the screen.  If frames are requested
+	 * faster than we can draw them, only the latest request is drawn.
+	 * We never draw into the bitmap which is being copied to the screen.
+	 */
+	private class RenderThread
+	    extends Thread
+	{
+
+	    // Constructor -- start at once.
+	    private RenderThread() {
+	        super("Surface Render");
+	        Log.v(TAG, "RenderThread: start");
+	        enable = true;
+	        start();
+	    }
+
+	    // Ask for a frame to be drawn, for the given time in ms.  Replaces
+	    // any request which hasn't been started yet.
+	    public synchronized void request(long now) {
+	        requestTime = now;
+	        requested = true;
+	        notifyAll();
+	    }
+
+	    // Get the latest finished frame, if it hasn't been returned
+	    // before; else null.  If we return a frame, it won't be drawn
+	    // into until the caller calls release().
+	    public synchronized Bitmap acquire() {
+	        if (!frontNew)
+	            return null;
+	        frontNew = false;
+	        presenting = front;
+	        return buffers[front];
+	    }
+
+	    // Finish with the frame returned by acquire().
+	    public synchronized void release() {
+	        presenting = -1;
+	        notifyAll();
+	    }
+
+	    // Wait until all requested frames have been drawn.
+	    public synchronized void waitDone() {
+	        while (enable && (requested || rendering >= 0)) {
+	            try {
+	                wait();
+	            } catch (InterruptedException e) { }
+	        }
+	    }
+
+	    // Stop this thread.  There will be no new calls to doDraw() after
+	    // the current one.
+	    public synchronized void kill() {
+	        Log.v(TAG, "RenderThread: kill");
+	        
+	        enable = false;
+	        notifyAll();
+	    }
+
+	    // Stop this thread and wait for it to die.  When we return, it is
+	    // guaranteed that doDraw() will never be called again.
+	    public void killAndWait() {
+	        Log.v(TAG, "RenderThread: killAndWait");
+	        
+	        if (Thread.currentThread() == this)
+	        	throw new IllegalStateException("RenderThread.killAndWait()" +
+	        								    " called from render thread");
+
+	        kill();
+
+	        // Wait for the thread to finish.  Ignore interrupts.
+	        if (isAlive()) {
+	            boolean retry = true;
+	            while (retry) {
+	                try {
+	                    join();
+	                    retry = false;
+	                } catch (InterruptedException e) { }
+	            }
+	            Log.v(TAG, "RenderThread: killed");
+	        } else {
+	            Log.v(TAG, "RenderThread: was dead");
+	        }
+	    }
+
+	    // Run method for this thread -- draw frames as they're requested
+	    // until enable is false.
+	    @Override
+	    public void run() {
+	        while (true) {
+	            // Wait for a request, and for the bitmap which isn't the
+	            // latest frame to be free.
+	            int target;
+	            long now;
+	            synchronized (this) {
+	                target = front == 0 ? 1 : 0;
+	                while (enable && (!requested || target == presenting)) {
+	                    try {
+	                        wait();
+	                    } catch (InterruptedException e) { }
+	                }
+	                if (!enable)
+	                    break;
+	                now = requestTime;
+	                requested = false;
+	                rendering = target;
+	            }
+	            
+	            // Make sure the bitmap matches the surface; the size can
+	            // change with SURFACE_DYNAMIC.
+	            Bitmap buf = buffers[target];
+	            if (buf == null || buf.getWidth() != canvasWidth ||
+	                               buf.getHeight() != canvasHeight) {
+	                buffers[target] = buf = getBitmap();
+	                canvases[target] = new Canvas(buf);
+	            }
+	            
+	            try {
+	                long start = System.nanoTime();
+	                doDraw(canvases[target], now);
+	                statsTimeInt(STAT_DRAW, System.nanoTime() - start);
+	            } catch (Exception e) {
+	                errorReporter.reportException(e);
+	            }
+	            
+	            // This is now the latest frame.
+	            synchronized (this) {
+	                front = target;
+	                frontNew = true;
+	                rendering = -1;
+	                notifyAll();
+	            }
+	        }
+	        
+	        synchronized (this) {
+	            rendering = -1;
+	            notifyAll();
+	        }
+	    }
+	    
+	    // The two offscreen bitmaps, and Canvases for drawing into them.
+	    private final Bitmap[] buffers = new Bitmap[2];
+	    private final Canvas[] canvases = new Canvas[2];
+	    
+	    // Index of the latest finished frame; -1 if none.  Index of the
+	    // frame being copied to the screen; -1 if none.  Index of the
+	    // frame being drawn; -1 if none.
+	    private int front = -1;
+	    private int presenting = -1;
+	    private int rendering = -1;
+	    
+	    // Flag set when the latest frame hasn't been acquired yet.
+	    private boolean frontNew = false;
+	    
+	    // Flag set when a frame has been requested; the time to draw it
+	    // for, in ms.
+	    private boolean requested = false;
+	    private long requestTime = 0;
+	    
+	    // Flag used to terminate this thread -- when false, we die.
+	    private volatile boolean enable = false;
+	}
+
+
     // ******************************************************************** //
     // Class Data.
     // ******************************************************************** //
@@ -1145,9 +1889,31 @@ public abstract class SurfaceRunner
                ENABLE_SURFACE | ENABLE_SIZE | ENABLE_RESUMED |
                ENABLE_STARTED | ENABLE_FOCUSED;
 
-    // Time in ms between stats updates.  Figures will be averaged over
+    // Time in ms between stats updates.  Figures will be collected over
     // this time.
     private static final int STATS_UPDATE = 5000;
+
+    // Labels for our own stats, indexed by STAT_XXX.
+    private static final String[] STAT_LABELS = {
+        "frame", "update", "draw", "lock", "unlock",
+    };
+
+    // Column headings, and the percentiles shown in the first three
+    // columns; the fourth is the maximum.
+    private static final String[] STATS_COLUMNS = {
+        "p50", "p95", "p99", "max",
+    };
+    private static final double[] STATS_PERCENTILES = { 50, 95, 99 };
+
+    // Width in characters of a line of the stats display.
+    private static final int STATS_CHARS = 36;
+
+    // Frame budget in ns for counting jank, if we're not using FIXED_STEP.
+    private static final long DEFAULT_FRAME_NS = 1000000000L / 60;
+
+    // The maximum number of simulation steps the frame scheduler will run
+    // in one frame to catch up.  Time lost beyond this is skipped.
+    private static final int MAX_CATCH_UP = 5;
     
 	
 	// ******************************************************************** //
@@ -1167,6 +1933,11 @@ public abstract class SurfaceRunner
     // If zero, we will not sleep, but will run continuously.
     private long animationDelay = 0;
 
+    // The frame budget and simulation step in ms for the FIXED_STEP frame
+    // scheduler.  A step of zero means the same as the frame time.
+    private long frameTime = 30;
+    private long stepTime = 0;
+
     // Option flags for this instance.  A bitwise OR of SURFACE_XXX constants.
     private int surfaceOptions = 0;
 
@@ -1178,19 +1949,45 @@ public abstract class SurfaceRunner
     private int canvasHeight = 0;
     private Bitmap.Config canvasConfig = null;
 
+    // If true, the next frame must redraw the whole screen.
+    private boolean fullRedraw = true;
+
+    // The region of the screen to redraw in the current frame.
+    private final Rect dirtyRect = new Rect();
+
     // The ticker thread which runs the animation.  null if not active.
     private Ticker animTicker = null;
 
+    // The ticker if it's a FrameTicker, for postUpdate() to wake without
+    // locking.  null if not active.
+    private volatile FrameTicker frameTicker = null;
+
+    // The render thread, if we're using OFFSCREEN_RENDER.  null if not
+    // active.
+    private volatile RenderThread renderThread = null;
+
     // Display performance data on-screen.
     private boolean showPerf = false;
 
+    // Collect performance data without displaying it.
+    private boolean collectPerf = false;
+
     // Labels for app-supplied performance stats.
     private String[] perfAppLabels = null;
     
-    // Stored perf stats values for all stats.  Counters for each stat.
-    private int[] perfStats = null;
+    // Lock for the stats below, which may be recorded from any thread.
+    private final Object perfLock = new Object();
+    
+    // Timing histograms for all stats: those shown in the current stats
+    // display period, and totals since the run started.  Counters for
+    // each stat in the current period.
+    private TimingHistogram[] perfTimes = null;
+    private TimingHistogram[] perfTotals = null;
     private int[] perfCounts = null;
 
+    // Frames drawn in the current stats display period.
+    private int perfFrames = 0;
+
     // Character buffers for performance / stats annotations.
     private char[][] perfBuffers;
 
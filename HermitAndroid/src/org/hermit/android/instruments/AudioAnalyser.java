@@ -382,10 +382,10 @@ public class AudioAnalyser
         if (spectrumGauge != null || sonagramGauge != null) {
             // Do the (expensive) transformation.
             // The transformer has its own state, no need to lock here.
-            long specStart = System.currentTimeMillis();
+            long specStart = System.nanoTime();
             spectrumAnalyser.transform();
-            long specEnd = System.currentTimeMillis();
-            parentSurface.statsTime(0, (specEnd - specStart) * 1000);
+            long specEnd = System.nanoTime();
+            parentSurface.statsTimeNs(0, specEnd - specStart);
 
             // Get the FFT output.
             if (historyLen <= 1)
@@ -0,0 +1,307 @@
+
+/**
+ * utils: general utility functions.
+ * <br>Copyright 2014 Michael Mueller
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.utils;
+
+
+/**
+ * A histogram of timings in nanoseconds, in the style of HdrHistogram.
+ * Values are counted in log-linear buckets: each power of two is split
+ * into 32 equal buckets, so any recorded value is known to within about
+ * 3%, from 1 ns up to about 18 minutes.  Larger values are counted in
+ * the top bucket; the maximum is always kept exactly.
+ *
+ * <p>Recording a value doesn't allocate, so this can be used on an
+ * animation thread without causing GC.  This class is not thread-safe;
+ * callers must do their own locking.
+ *
+ * @author	Michael Mueller
+ */
+public class TimingHistogram
+{
+
+	// ******************************************************************** //
+	// Constructors.
+	// ******************************************************************** //
+
+	/**
+	 * Create an empty histogram.
+	 *
+	 * @param	label		Label for this histogram, for display.
+	 */
+	public TimingHistogram(String label) {
+		this.label = label;
+		counts = new int[NUM_BUCKETS];
+	}
+
+
+	/**
+	 * Create a histogram which is a copy of another one.
+	 *
+	 * @param	src			The histogram to copy.
+	 */
+	public TimingHistogram(TimingHistogram src) {
+		this(src.label);
+		copyFrom(src);
+	}
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set the threshold over which a value counts as jank; that is, a
+     * missed frame.
+     *
+     * @param   ns          The jank threshold in ns.  Long.MAX_VALUE
+     *                      means nothing is jank, which is the default.
+     */
+    public void setJankThreshold(long ns) {
+        jankThreshold = ns;
+    }
+
+
+    /**
+     * Get the label of this histogram.
+     *
+     * @return              The label this histogram was created with.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+
+    // ******************************************************************** //
+    // Recording.
+    // ******************************************************************** //
+
+    /**
+     * Record a value.
+     *
+     * @param   ns          The value to record, in ns.  Negative values
+     *                      are ignored.
+     */
+    public void record(long ns) {
+        if (ns < 0)
+            return;
+        ++counts[bucketIndex(ns)];
+        ++count;
+        total += ns;
+        if (ns > max)
+            max = ns;
+    }
+
+
+    /**
+     * Clear all recorded values.  The jank threshold is kept.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; ++i)
+            counts[i] = 0;
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+
+    /**
+     * Make this histogram a copy of another, without allocating.  The
+     * label is not copied.
+     *
+     * @param   src         The histogram to copy.
+     */
+    public void copyFrom(TimingHistogram src) {
+        System.arraycopy(src.counts, 0, counts, 0, NUM_BUCKETS);
+        count = src.count;
+        total = src.total;
+        max = src.max;
+        jankThreshold = src.jankThreshold;
+    }
+
+
+    // ******************************************************************** //
+    // Queries.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of values recorded.
+     *
+     * @return              The number of values recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+
+    /**
+     * Get the mean of the values recorded.
+     *
+     * @return              The mean value in ns; 0 if there are none.
+     */
+    public long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+
+    /**
+     * Get the largest value recorded.
+     *
+     * @return              The exact maximum value in ns; 0 if there
+     *                      are none.
+     */
+    public long getMax() {
+        return max;
+    }
+
+
+    /**
+     * Get a percentile of the values recorded.
+     *
+     * @param   pct         The percentile to get, from 0 to 100.
+     * @return              The smallest value, to the precision of the
+     *                      histogram, such that pct percent of the
+     *                      recorded values are no bigger; 0 if there
+     *                      are none.
+     */
+    public long getPercentile(double pct) {
+        if (count == 0)
+            return 0;
+
+        long target = (long) Math.ceil(pct / 100.0 * count);
+        if (target < 1)
+            target = 1;
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(bucketTop(i), max);
+        }
+        return max;
+    }
+
+
+    /**
+     * Get the number of values recorded which were over a given
+     * threshold.  Values in the same bucket as the threshold are
+     * not counted.
+     *
+     * @param   ns          The threshold in ns.
+     * @return              The number of values over ns.
+     */
+    public long getCountAbove(long ns) {
+        if (ns < 0)
+            return count;
+        long over = 0;
+        for (int i = bucketIndex(ns) + 1; i < NUM_BUCKETS; ++i)
+            over += counts[i];
+        return over;
+    }
+
+
+    /**
+     * Get the number of values recorded which were over the jank
+     * threshold.
+     *
+     * @return              The number of values over the threshold set
+     *                      by {@link #setJankThreshold(long)}.
+     */
+    public long getJankCount() {
+        if (jankThreshold == Long.MAX_VALUE)
+            return 0;
+        return getCountAbove(jankThreshold);
+    }
+
+
+    // ******************************************************************** //
+    // Bucket Mapping.
+    // ******************************************************************** //
+
+    /**
+     * Find the bucket a value is counted in.
+     *
+     * @param   ns          The value; must not be negative.
+     * @return              The index of its bucket.
+     */
+    static int bucketIndex(long ns) {
+        if (ns < SUB_COUNT)
+            return (int) ns;
+        int top = 63 - Long.numberOfLeadingZeros(ns);
+        if (top >= MAX_BITS)
+            return NUM_BUCKETS - 1;
+        int shift = top - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) (ns >>> shift) - SUB_COUNT;
+    }
+
+
+    /**
+     * Find the largest value counted in a bucket.
+     *
+     * @param   index       The index of the bucket.
+     * @return              The largest value which maps to it.
+     */
+    static long bucketTop(int index) {
+        if (index >= NUM_BUCKETS - 1)
+            return Long.MAX_VALUE;
+        int octave = index >>> SUB_BITS;
+        if (octave == 0)
+            return index;
+        int shift = octave - 1;
+        long low = (long) (SUB_COUNT + (index & (SUB_COUNT - 1))) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Number of bits of precision kept in each value, and hence the
+    // number of buckets each power of two is split into.
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    // Values of 2^MAX_BITS ns and up are all counted in the top bucket.
+    private static final int MAX_BITS = 40;
+
+    // Total number of buckets.
+    private static final int NUM_BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_COUNT;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // Label for this histogram.
+    private final String label;
+
+    // Count of values in each bucket.
+    private final int[] counts;
+
+    // Number of values, their total, and the largest, all in ns.
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    // Values over this in ns count as jank.
+    private long jankThreshold = Long.MAX_VALUE;
+
+}
+
@@ -0,0 +1,125 @@
+
+/**
+ * utils: general utility functions.
+ * <br>Copyright 2014 Michael Mueller
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.test.utils;
+
+
+import junit.framework.TestCase;
+
+import org.hermit.utils.TimingHistogram;
+
+
+/**
+ * Test the timing histogram.
+ *
+ * @author	Michael Mueller
+ */
+public class TimingHistogramTests
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Test Framework.
+    // ******************************************************************** //
+
+    // Check that a value is within the histogram's precision of expect.
+    private void assertNear(String msg, long expect, long val) {
+        long err = Math.abs(val - expect);
+        assertTrue(msg + ": expected " + expect + " got " + val,
+                   err <= expect / 32);
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testEmpty() {
+        TimingHistogram h = new TimingHistogram("draw");
+        assertEquals("label", "draw", h.getLabel());
+        assertEquals("count", 0, h.getCount());
+        assertEquals("p50", 0, h.getPercentile(50));
+        assertEquals("max", 0, h.getMax());
+        assertEquals("mean", 0, h.getMean());
+    }
+
+
+    public void testSmallValuesExact() {
+        TimingHistogram h = new TimingHistogram("t");
+        for (int i = 0; i < 64; ++i)
+            h.record(i);
+        assertEquals("p50", 31, h.getPercentile(50));
+        assertEquals("p100", 63, h.getPercentile(100));
+        assertEquals("above", 10, h.getCountAbove(53));
+    }
+
+
+    public void testPercentiles() {
+        TimingHistogram h = new TimingHistogram("t");
+        for (int i = 1; i <= 1000; ++i)
+            h.record(i * 10000L);
+        h.record(-5);
+        assertEquals("count", 1000, h.getCount());
+        assertEquals("max", 10000000L, h.getMax());
+        assertEquals("mean", 5005000L, h.getMean());
+        assertNear("p50", 5000000L, h.getPercentile(50));
+        assertNear("p95", 9500000L, h.getPercentile(95));
+        assertNear("p99", 9900000L, h.getPercentile(99));
+        assertEquals("p100", 10000000L, h.getPercentile(100));
+    }
+
+
+    public void testHugeValues() {
+        TimingHistogram h = new TimingHistogram("t");
+        h.record(Long.MAX_VALUE);
+        h.record(1);
+        assertEquals("max", Long.MAX_VALUE, h.getMax());
+        assertEquals("p100", Long.MAX_VALUE, h.getPercentile(100));
+        assertEquals("above", 1, h.getCountAbove(1000000000L));
+    }
+
+
+    public void testJank() {
+        TimingHistogram h = new TimingHistogram("frame");
+        for (int i = 0; i < 100; ++i)
+            h.record(i % 10 == 0 ? 50000000L : 10000000L);
+        assertEquals("no threshold", 0, h.getJankCount());
+        h.setJankThreshold(30000000L);
+        assertEquals("jank", 10, h.getJankCount());
+    }
+
+
+    public void testCopyAndReset() {
+        TimingHistogram h = new TimingHistogram("t");
+        h.setJankThreshold(100);
+        h.record(50);
+        h.record(5000);
+        TimingHistogram c = new TimingHistogram(h);
+        h.reset();
+        assertEquals("reset count", 0, h.getCount());
+        assertEquals("reset max", 0, h.getMax());
+        assertEquals("copy label", "t", c.getLabel());
+        assertEquals("copy count", 2, c.getCount());
+        assertEquals("copy max", 5000, c.getMax());
+        assertEquals("copy jank", 1, c.getJankCount());
+    }
+
+}
+
@@ -24,15 +24,16 @@
 package com.silentservices.netscramble;
 
 import java.security.SecureRandom;
-import java.util.EnumMap;
 import java.util.LinkedList;
-import java.util.Vector;
 
 import org.hermit.android.core.SurfaceRunner;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.util.AttributeSet;
@@ -40,10 +41,24 @@ import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.WindowManager;
 
 import com.silentservices.netscramble.NetScramble.Sound;
 import com.silentservices.netscramble.NetScramble.State;
+import com.silentservices.netscramble.engine.BlipField;
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.BoardCodec;
+import com.silentservices.netscramble.engine.EventRing;
+import com.silentservices.netscramble.engine.FastRandom;
+import com.silentservices.netscramble.engine.Game;
+import com.silentservices.netscramble.engine.GameClock;
+import com.silentservices.netscramble.engine.Generator;
+import com.silentservices.netscramble.engine.MoveLog;
+import com.silentservices.netscramble.engine.PuzzleCache;
+import com.silentservices.netscramble.engine.PuzzleCode;
+import com.silentservices.netscramble.engine.ScreenLayout;
+import com.silentservices.netscramble.engine.SkillLevel;
 
 /**
  * This implements the game board by laying out a grid of Cell objects.
@@ -53,6 +68,12 @@ import com.silentservices.netscramble.NetScramble.State;
  * hand, it may be too small for a "full-sized" game, particularly bearing in
  * mind the minimum size a cell can be and still allow a finger to select it. We
  * therefore put a lot of work into figuring out how big the board should be.
+ * 
+ * The player can also choose a board bigger than the screen. Then the view
+ * shows part of the board, and can be scrolled by dragging and zoomed out by
+ * pinching; the cells are drawn into a cache of tiles, and only the tiles on
+ * screen are drawn. Zoomed far out, the board is drawn from a low-detail
+ * bitmap instead.
  */
 public class BoardView extends SurfaceRunner {
 
@@ -70,6 +91,34 @@ public class BoardView extends SurfaceRunner {
 	 */
 	private static final int CELL_MAX = 500;
 
+	/**
+	 * The preferred size of the tiles the board is drawn in, in pixels.
+	 * Tiles are a whole number of cells.
+	 */
+	private static final int TILE_SIZE = 256;
+
+	/**
+	 * The most cells we allow on a board, so that a puzzle code for a huge
+	 * board can't exhaust our memory.
+	 */
+	private static final int MAX_CELLS = 32768;
+
+	/**
+	 * The memory we're prepared to use for the tile cache, in bytes.
+	 */
+	private static final int TILE_MEMORY = 12 * 1024 * 1024;
+
+	/**
+	 * The zoom below which we draw the low-detail view of the board. We
+	 * also use it if the tile cache can't cover the screen at the zoom.
+	 */
+	private static final float LOD_ZOOM = 0.5f;
+
+	/**
+	 * The most pixels we use for the low-detail bitmap of the board.
+	 */
+	private static final int LOD_PIXELS = 1024 * 1024;
+
 	// ******************************************************************** //
 	// Public Types.
 	// ******************************************************************** //
@@ -80,23 +129,25 @@ public class BoardView extends SurfaceRunner {
 	 * wrinkle of blind tiles, to make an insane level:
 	 */
 	enum Skill {
-		// Name id brch wrap blind
-		NOVICE(R.string.skill_novice, R.id.skill_novice, 2, false, 9), NORMAL(
-				R.string.skill_normal, R.id.skill_normal, 2, false, 9), EXPERT(
-				R.string.skill_expert, R.id.skill_expert, 2, false, 9), MASTER(
-				R.string.skill_master, R.id.skill_master, 3, true, 9), INSANE(
-				R.string.skill_insane, R.id.skill_insane, 3, true, 3);
-
-		private Skill(int lab, int i, int br, boolean w, int bd) {
+		// Name id level
+		NOVICE(R.string.skill_novice, R.id.skill_novice, SkillLevel.NOVICE), NORMAL(
+				R.string.skill_normal, R.id.skill_normal, SkillLevel.NORMAL), EXPERT(
+				R.string.skill_expert, R.id.skill_expert, SkillLevel.EXPERT), MASTER(
+				R.string.skill_master, R.id.skill_master, SkillLevel.MASTER), INSANE(
+				R.string.skill_insane, R.id.skill_insane, SkillLevel.INSANE);
+
+		private Skill(int lab, int i, SkillLevel lev) {
 			label = lab;
 			id = i;
-			branches = br;
-			wrapped = w;
-			blind = bd;
+			level = lev;
+			branches = lev.branches;
+			wrapped = lev.wrapped;
+			blind = lev.blind;
 		}
 
 		public final int label; // Res. ID of the label for this skill.
 		public final int id; // Numeric ID for this skill level.
+		public final SkillLevel level; // The engine's skill parameters.
 		public final int branches; // Max branches off each square; at least 2.
 		public final boolean wrapped; // If true, network wraps around the
 										// edges.
@@ -105,56 +156,23 @@ public class BoardView extends SurfaceRunner {
 	}
 
 	/**
-	 * This enum defines the board sizes for the supported screen layouts.
-	 * Traditional knetwalk has these board sizes: Novice: 5x5 = 25 tiles = 31%
-	 * Normal: 7x7 = 49 tiles = 60% Expert: 9x9 = 81 tiles = 100% Master: 9x9 =
-	 * 81 tiles = 100% wrapped
-	 * 
-	 * We have to deal with various screen sizes, and we want the cells to be
-	 * big enough to touch. So, to set the board sizes, we choose either SMALL,
-	 * MEDIUM, or LARGE based on the physical screen size. Then, sizes[skill][0]
-	 * is the major grid size for that skill, and sizes[skill][1] is the minor
-	 * grid size for that skill.
-	 */
-	enum Screen {
-		SMALL(8, 6, 8, 6, 6, 6, 6, 4), // Like HVGA.
-		WSMALL(9, 6, 9, 6, 5, 6, 5, 4), // Like HVGA.
-		MEDIUM(11, 7, 11, 7, 9, 7, 5, 5), // VGA plus.
-		WMEDIUM(12, 7, 10, 7, 8, 7, 6, 5), // Wide VGA plus.
-		HUGE(17, 10, 15, 8, 11, 8, 7, 6); // WSVGA etc.
-
-		Screen(int ml, int ms, int el, int es, int nl, int ns, int vl, int vs) {
-			major = ml;
-			minor = ms;
-			sizes[Skill.INSANE.ordinal()][0] = ml;
-			sizes[Skill.INSANE.ordinal()][1] = ms;
-			sizes[Skill.MASTER.ordinal()][0] = ml;
-			sizes[Skill.MASTER.ordinal()][1] = ms;
-			sizes[Skill.EXPERT.ordinal()][0] = el;
-			sizes[Skill.EXPERT.ordinal()][1] = es;
-			sizes[Skill.NORMAL.ordinal()][0] = nl;
-			sizes[Skill.NORMAL.ordinal()][1] = ns;
-			sizes[Skill.NOVICE.ordinal()][0] = vl;
-			sizes[Skill.NOVICE.ordinal()][1] = vs;
-		}
-
-		int getBoardWidth(Skill sk, int gw, int gh) {
-			if (gw > gh)
-				return sizes[sk.ordinal()][0];
-			else
-				return sizes[sk.ordinal()][1];
-		}
+	 * Enumeration defining the board size. SCREEN is the board which fits
+	 * on the screen for the skill level; the others are bigger boards, with
+	 * the same shape as the screen, which need to be scrolled.
+	 */
+	enum BoardSize {
+		// Menu id cells
+		SCREEN(R.id.size_screen, 0), LARGE(R.id.size_large, 32), HUGE(
+				R.id.size_huge, 64), GIANT(R.id.size_giant, 128);
 
-		int getBoardHeight(Skill sk, int gw, int gh) {
-			if (gw > gh)
-				return sizes[sk.ordinal()][1];
-			else
-				return sizes[sk.ordinal()][0];
+		private BoardSize(int i, int c) {
+			id = i;
+			cells = c;
 		}
 
-		private final int major;
-		private final int minor;
-		private final int[][] sizes = new int[Skill.values().length][2];
+		public final int id; // Menu ID for this size.
+		public final int cells; // Cells along the long side of the board;
+								// 0 to fit the screen.
 	}
 
 	// ******************************************************************** //
@@ -170,7 +188,7 @@ public class BoardView extends SurfaceRunner {
 	 *            Our layout attributes.
 	 */
 	public BoardView(Context context, AttributeSet attrs) {
-		super(context, attrs);
+		super(context, attrs, FIXED_STEP);
 
 		try {
 			NetScramble parent = (NetScramble) context;
@@ -188,7 +206,7 @@ public class BoardView extends SurfaceRunner {
 	 *            The application context we're running in.
 	 */
 	public BoardView(NetScramble parent) {
-		super(parent);
+		super(parent, FIXED_STEP);
 		init(parent);
 	}
 
@@ -201,8 +219,9 @@ public class BoardView extends SurfaceRunner {
 	private void init(NetScramble parent) {
 		parentApp = parent;
 
-		// Animation delay.
-		setDelay(30);
+		// Frame time. The animation thread sleeps when nothing is moving,
+		// so every change to the board or view must call postUpdate().
+		setFrameTime(30);
 
 		// Find out the device's screen dimensions and calculate the
 		// size and shape of the cell matrix.
@@ -210,8 +229,11 @@ public class BoardView extends SurfaceRunner {
 
 		// Create all the cells in the calculated board. In appSize()
 		// we will take care of positioning them. Set the cell grid and root
-		// so we have a valid state to save.
+		// so we have a valid state to save. The matrix grows in resetBoard()
+		// if the board is bigger than the screen.
 		Log.i(TAG, "Create board " + gridWidth + "x" + gridHeight);
+		matrixWidth = gridWidth;
+		matrixHeight = gridHeight;
 		cellMatrix = new Cell[gridWidth][gridHeight];
 		for (int y = 0; y < gridHeight; ++y) {
 			for (int x = 0; x < gridWidth; ++x) {
@@ -221,14 +243,20 @@ public class BoardView extends SurfaceRunner {
 		}
 		rootCell = cellMatrix[0][0];
 
-		// Create the connected flags and connecting cell connectingCells
-		// (used in updateConnections()).
-		isConnected = new boolean[gridWidth][gridHeight];
-		connectingCells = new LinkedList<Cell>();
+		// Create the headless game, whose board model holds the game
+		// state. The board is re-sized for each game in resetBoard().
+		game = new Game();
+		board = game.board();
+
+		// Hear about puzzles generated in the background.
+		puzzleCache.setListener(puzzleListener);
 
 		// Set the initial focus on the root cell.
 		focusedCell = null;
 		setFocus(rootCell);
+
+		// Pinching the screen zooms the view.
+		scaleDetector = new ScaleGestureDetector(parent, scaleListener);
 	}
 
 	/**
@@ -248,26 +276,9 @@ public class BoardView extends SurfaceRunner {
 		int max = width > height ? width : height;
 		float aspect = (float) max / (float) min;
 
-		if (min <= 400) {
-			if (aspect > 1.4f)
-				screenConfig = Screen.WSMALL;
-			else
-				screenConfig = Screen.SMALL;
-		} else if (min <= 500) {
-			if (aspect > 1.5f)
-				screenConfig = Screen.WMEDIUM;
-			else
-				screenConfig = Screen.MEDIUM;
-		} else
-			screenConfig = Screen.HUGE;
-
-		if (width > height) {
-			gridWidth = screenConfig.major;
-			gridHeight = screenConfig.minor;
-		} else {
-			gridWidth = screenConfig.minor;
-			gridHeight = screenConfig.major;
-		}
+		screenConfig = ScreenLayout.forScreen(min, aspect);
+		gridWidth = screenConfig.gridWidth(width > height);
+		gridHeight = screenConfig.gridHeight(width > height);
 		Log.v(TAG, "findMatrix: screen=" + width + "x" + height + " -> "
 				+ screenConfig);
 	}
@@ -283,7 +294,7 @@ public class BoardView extends SurfaceRunner {
 	 */
 	@Override
 	protected void appStart() {
-
+		puzzleCache.start();
 	}
 
 	/**
@@ -304,9 +315,9 @@ public class BoardView extends SurfaceRunner {
 		if (width < 1 || height < 1)
 			return;
 
-		// Create our backing bitmap.
-		backingBitmap = getBitmap();
-		backingCanvas = new Canvas(backingBitmap);
+		screenWidth = width;
+		screenHeight = height;
+		surfaceConfig = config;
 
 		// Calculate the cell size which makes the board fit. Make the cells
 		// square.
@@ -329,24 +340,50 @@ public class BoardView extends SurfaceRunner {
 		Log.i(TAG, "Layout board " + gridWidth + "x" + gridHeight + ", "
 				+ "cells " + cellWidth + "x" + cellHeight);
 
-		// Center the board in the window.
-		paddingX = (width - gridWidth * cellWidth) / 2;
-		paddingY = (height - gridHeight * cellHeight) / 2;
-
 		// Set the cell geometries and positions.
-		for (int x = 0; x < gridWidth; ++x) {
-			for (int y = 0; y < gridHeight; ++y) {
-				int xPos = x * cellWidth + paddingX;
-				int yPos = y * cellHeight + paddingY;
-				cellMatrix[x][y].setGeometry(xPos, yPos, cellWidth, cellHeight);
-			}
-		}
+		layoutCells();
+
+		// Create the tile cache. It needs enough tiles to cover the screen
+		// wherever it's scrolled to, at any zoom down to LOD_ZOOM; but if
+		// that's over our memory budget, we go to the low-detail view at a
+		// closer zoom.
+		tileCells = Math.max(1, TILE_SIZE / cellWidth);
+		int tw = tileCells * cellWidth;
+		int th = tileCells * cellHeight;
+		int tileBytes = tw * th * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+		int ntiles = Math.max(tilesNeeded(tw, th, 1f),
+				Math.min(tilesNeeded(tw, th, LOD_ZOOM), TILE_MEMORY / tileBytes));
+		if (tileCache != null)
+			tileCache.recycle();
+		tileCache = new TileCache(tw, th, ntiles, config);
+
+		// The low-detail bitmap depends on the cell size, so it will be
+		// re-made when needed.
+		if (lodBitmap != null)
+			lodBitmap.recycle();
+		lodBitmap = null;
+
+		// Centre the view on the focused cell, or the board if it fits.
+		showCell(focusedCell, true);
+		viewMoved = true;
+		postUpdate();
 
 		// Load all the pixmaps for the game tiles etc.
 		Cell.initPixmaps(parentApp.getResources(), cellWidth, cellHeight,
 				config);
 	}
 
+	/**
+	 * Set the geometry of all the cells in the matrix, at their positions
+	 * on the whole board.
+	 */
+	private void layoutCells() {
+		for (int x = 0; x < matrixWidth; ++x)
+			for (int y = 0; y < matrixHeight; ++y)
+				cellMatrix[x][y].setGeometry(x * cellWidth, y * cellHeight,
+						cellWidth, cellHeight);
+	}
+
 	/**
 	 * We are starting the animation loop. The screen size is known.
 	 * 
@@ -374,7 +411,7 @@ public class BoardView extends SurfaceRunner {
 	 */
 	@Override
 	protected void appStop() {
-
+		puzzleCache.stop();
 	}
 
 	// ******************************************************************** //
@@ -389,54 +426,190 @@ public class BoardView extends SurfaceRunner {
 	 */
 	void setAnimEnable(boolean enable) {
 		drawBlips = enable;
+		postUpdate();
+	}
+
+	/**
+	 * Enable or disable the assist mode, in which cells are locked as soon
+	 * as they are turned to where the puzzle forces them to be.
+	 * 
+	 * @param enable
+	 *            New assist mode enablement state.
+	 */
+	void setAssistEnable(boolean enable) {
+		assistEnable = enable;
+		assistPending = enable;
+		postUpdate();
+	}
+
+	/**
+	 * Set the board size. This takes effect from the next new game.
+	 * 
+	 * @param size
+	 *            The new board size.
+	 */
+	void setBoardSize(BoardSize size) {
+		boardSize = size;
 	}
 
 	/**
-	 * Set up the board for a new game.
+	 * Enable or disable multi-server games, in which the network has
+	 * several servers, and every terminal must be connected to one of them.
+	 * This takes effect from the next new game.
+	 * 
+	 * @param enable
+	 *            True to play with several servers.
+	 */
+	void setMultiServer(boolean enable) {
+		multiServer = enable;
+	}
+
+	/**
+	 * Set up the board for a new game. If the background generator has a
+	 * puzzle ready, the game is set up at once. Otherwise, the puzzle is
+	 * generated in the background, as a big board can take seconds; when
+	 * it's ready the game is set up, and the app is told by
+	 * {@link NetScramble#boardReady()}. This must be called in the UI
+	 * thread.
 	 * 
 	 * @param sk
 	 *            Skill level for the game; set the board up accordingly.
+	 * @return true if the game has been set up; false if we're waiting for
+	 *         its puzzle.
+	 */
+	public boolean setupBoard(Skill sk) {
+		pendingSkill = null;
+		if (takePuzzle(sk))
+			return true;
+		Log.i(TAG, "Waiting for net for " + sk);
+		pendingSkill = sk;
+		return false;
+	}
+
+	/**
+	 * Start a new game with the puzzle the background generator has ready
+	 * for the given skill level, if it has one.
+	 * 
+	 * @param sk
+	 *            Skill level for the game.
+	 * @return true if the game has been set up; false if there was no
+	 *         puzzle ready.
 	 */
-	public void setupBoard(Skill sk) {
+	private boolean takePuzzle(Skill sk) {
+		int bw = boardWidth(sk);
+		int bh = boardHeight(sk);
+		int servers = multiServer ? Generator.multiServers(bw, bh) : 1;
+
+		Board puzzle = new Board(bw, bh, sk.wrapped);
+		PuzzleCode code = puzzleCache.take(sk.ordinal(), bw, bh, sk.wrapped,
+				sk.branches, servers, puzzle);
+		if (code == null)
+			return false;
+		Log.i(TAG, "Using pre-generated net " + code);
+		startGame(sk, code, puzzle);
+		return true;
+	}
+
+	/**
+	 * A puzzle has been generated in the background. If we're waiting for
+	 * one, and it's the one we want, start the game. This is called in the
+	 * UI thread.
+	 */
+	private void puzzleArrived() {
+		if (pendingSkill == null || !takePuzzle(pendingSkill))
+			return;
+		pendingSkill = null;
+		parentApp.boardReady();
+	}
+
+	// Listener which passes puzzles generated in the background to the
+	// UI thread.
+	private final PuzzleCache.Listener puzzleListener = new PuzzleCache.Listener() {
+		@Override
+		public void puzzleReady() {
+			puzzleHandler.post(puzzleRunner);
+		}
+	};
+
+	private final Handler puzzleHandler = new Handler();
+
+	private final Runnable puzzleRunner = new Runnable() {
+		@Override
+		public void run() {
+			puzzleArrived();
+		}
+	};
+
+	/**
+	 * Start a new game with the given puzzle.
+	 * 
+	 * @param sk
+	 *            Skill level for the game.
+	 * @param code
+	 *            The code of the puzzle.
+	 * @param puzzle
+	 *            The puzzle's network, in its solved position.
+	 */
+	private void startGame(Skill sk, PuzzleCode code, Board puzzle) {
+		// The game state belongs to the animation thread while it runs, so
+		// stop it while we set up the new game; the app starts it again
+		// when it shows the board. Input meant for the old game is dropped.
+		surfaceStop();
+		discardEvents();
 		autosolveStop();
 		gameSkill = sk;
 
-		// Reset the board for this game.
-		resetBoard(sk);
-
-		// Require at least 85% of the cells active.
-		int minCells = (int) (boardWidth * boardHeight * 0.85);
-
-		// Loop doing board setup until we get a valid board.
-		int tries = 0, cells = 0;
-		for (tries = 0; cells < minCells && tries < 10; ++tries)
-			cells = createNet(sk);
-		Log.i(TAG, "Created net in " + tries + " tries with " + cells
-				+ " cells (min " + minCells + ")");
-
-		// Now, save the "solved" state of the board.
-		solvedState = new Bundle();
-		saveBoard(solvedState);
-
-		// Jumble the board. Also, if we're in blind mode, tell the
-		// appropriate cells to go blind.
-		for (int x = boardStartX; x < boardEndX; x++) {
-			for (int y = boardStartY; y < boardEndY; y++) {
-				cellMatrix[x][y].rotate((rng.nextInt(4) - 2) * 90);
-				if (cellMatrix[x][y].numDirs() >= sk.blind)
-					cellMatrix[x][y].setBlind(true);
-			}
+		// Reset the board for this game, and lay out the puzzle.
+		resetBoard(puzzle.width(), puzzle.height(), puzzle.isWrapped());
+		game.start(code, puzzle);
+		Log.i(TAG, "Net has " + board.usedCells() + " cells (min "
+				+ Generator.minCells(boardWidth, boardHeight) + ")");
+
+		// Focus on the server, and centre the view on it.
+		rootCell = cellAt(board.root());
+		setFocus(rootCell);
+		showCell(rootCell, true);
+
+		// Jumble the board, as given by the puzzle code. Also, if we're in
+		// blind mode, tell the appropriate cells to go blind.
+		int[] turns = new int[board.size()];
+		code.scrambleTurns(turns);
+		game.setScramble(turns);
+		for (int i = 0; i < turns.length; ++i) {
+			Cell cell = cellAt(i);
+			cell.rotate(turns[i] * 90);
+			if (cell.numDirs() >= sk.blind)
+				cell.setBlind(true);
 		}
 
 		// Figure out the active connections.
 		updateConnections();
+		assistPending = assistEnable;
 
 		// Invalidate all the cells.
-		for (int x = 0; x < gridWidth; x++)
-			for (int y = 0; y < gridHeight; y++)
+		for (int x = 0; x < matrixWidth; x++)
+			for (int y = 0; y < matrixHeight; y++)
 				cellMatrix[x][y].invalidate();
 	}
 
+	/**
+	 * Get the code of the puzzle being played.
+	 * 
+	 * @return The current puzzle's code; null if there's no game.
+	 */
+	PuzzleCode getPuzzleCode() {
+		return game.code();
+	}
+
+	/**
+	 * Get the clock which times the game, and stamps its moves.
+	 * 
+	 * @return The game clock. This is re-used from game to game.
+	 */
+	GameClock getGameClock() {
+		return game.clock();
+	}
+
 	/**
 	 * Reset the board for a given skill level.
 	 * 
@@ -444,172 +617,174 @@ public class BoardView extends SurfaceRunner {
 	 *            Skill level for the game; set the board up accordingly.
 	 */
 	private void resetBoard(Skill sk) {
-		// Save the width and height of the playing board for this skill
-		// level, and the board placement within the overall cell grid.
-		boardWidth = screenConfig.getBoardWidth(sk, gridWidth, gridHeight);
-		boardHeight = screenConfig.getBoardHeight(sk, gridWidth, gridHeight);
-		boardStartX = (gridWidth - boardWidth) / 2;
-		boardEndX = boardStartX + boardWidth;
-		boardStartY = (gridHeight - boardHeight) / 2;
-		boardEndY = boardStartY + boardHeight;
-
-		// Reset the cells. If we're wrapped, set the surrounding cells
-		// to None; else Free, to show that there's no wraparound.
-		Log.i(TAG, "Reset board " + gridWidth + "x" + gridHeight);
-		boolean wrap = gameSkill.wrapped;
-		Cell u, d, l, r;
-		for (int x = 0; x < gridWidth; x++) {
-			for (int y = 0; y < gridHeight; y++) {
-				cellMatrix[x][y].reset(wrap ? Cell.Dir.NONE : Cell.Dir.FREE);
-
-				// Re-calculate who this cell's neighbours are.
-				u = d = l = r = null;
-				if (wrap || y > boardStartY)
-					u = cellMatrix[x][decr(y, boardStartY, boardEndY)];
-				if (wrap || y < boardEndY - 1)
-					d = cellMatrix[x][incr(y, boardStartY, boardEndY)];
-				if (wrap || x > boardStartX)
-					l = cellMatrix[decr(x, boardStartX, boardEndX)][y];
-				if (wrap || x < boardEndX - 1)
-					r = cellMatrix[incr(x, boardStartX, boardEndX)][y];
-				cellMatrix[x][y].setNeighbours(u, d, l, r);
-			}
-		}
+		resetBoard(boardWidth(sk), boardHeight(sk), sk.wrapped);
 	}
 
 	/**
-	 * Get the current playing area width. This varies with the skill level.
+	 * Get the width of the board for a new game at the given skill level,
+	 * at the current board size.
 	 * 
+	 * @param sk
+	 *            Skill level for the game.
 	 * @return Playing area width in tiles.
 	 */
-	int getBoardWidth() {
-		return boardWidth;
+	private int boardWidth(Skill sk) {
+		boolean landscape = gridWidth > gridHeight;
+		if (boardSize.cells == 0)
+			return screenConfig.boardWidth(sk.level, landscape);
+		return landscape ? boardSize.cells : boardSize.cells * gridWidth
+				/ gridHeight;
 	}
 
 	/**
-	 * Get the current playing area height. This varies with the skill level.
+	 * Get the height of the board for a new game at the given skill level,
+	 * at the current board size.
 	 * 
+	 * @param sk
+	 *            Skill level for the game.
 	 * @return Playing area height in tiles.
 	 */
-	int getBoardHeight() {
-		return boardHeight;
+	private int boardHeight(Skill sk) {
+		boolean landscape = gridWidth > gridHeight;
+		if (boardSize.cells == 0)
+			return screenConfig.boardHeight(sk.level, landscape);
+		return landscape ? boardSize.cells * gridHeight / gridWidth
+				: boardSize.cells;
 	}
 
 	/**
-	 * Create a network layout. This function may be called multiple times after
-	 * resetBoard(), to get a network with enough cells.
+	 * Reset the board for a game of the given size.
 	 * 
-	 * @param sk
-	 *            Skill level for the game; create the network accordingly.
-	 * @return The number of cells used in the layout.
-	 */
-	private int createNet(Skill sk) {
-		Log.i(TAG, "Create net " + boardStartX + "-" + boardEndX + ", "
-				+ boardStartY + "-" + boardEndY);
-
-		// Reset the cells' directions, and reset the root cell.
-		for (int x = boardStartX; x < boardEndX; x++) {
-			for (int y = boardStartY; y < boardEndY; y++) {
-				cellMatrix[x][y].setDirs(Cell.Dir.FREE);
-				cellMatrix[x][y].setRoot(false);
+	 * @param bw
+	 *            Width of the playing board.
+	 * @param bh
+	 *            Height of the playing board.
+	 * @param wrap
+	 *            If true, the network wraps around the edges.
+	 */
+	private void resetBoard(int bw, int bh, boolean wrap) {
+		// Make the cell matrix big enough for the board, but no bigger
+		// than it needs to be to fill the screen. Any animations are
+		// abandoned.
+		clearActive();
+		resizeMatrix(Math.max(gridWidth, bw), Math.max(gridHeight, bh));
+
+		// Save the width and height of the playing board, and the board
+		// placement within the overall cell grid.
+		boardWidth = bw;
+		boardHeight = bh;
+		boardStartX = (matrixWidth - boardWidth) / 2;
+		boardEndX = boardStartX + boardWidth;
+		boardStartY = (matrixHeight - boardHeight) / 2;
+		boardEndY = boardStartY + boardHeight;
+
+		// Reset the board model to the playing area.
+		Log.i(TAG, "Reset board " + matrixWidth + "x" + matrixHeight);
+		board.reset(boardWidth, boardHeight, wrap);
+		blipField.reset(board.size());
+
+		// Reset the cells, attaching those in the playing area to the
+		// board. If we're wrapped, set the surrounding cells to None;
+		// else Free, to show that there's no wraparound. Neighbours
+		// come from the board's shared neighbour table, so there's no
+		// per-cell wiring to redo.
+		for (int x = 0; x < matrixWidth; x++) {
+			for (int y = 0; y < matrixHeight; y++) {
+				cellMatrix[x][y].setModel(board,
+						boardIndex(x, y, boardStartX, boardStartY, board));
+				cellMatrix[x][y].reset(wrap ? Cell.Dir.NONE : Cell.Dir.FREE);
 			}
 		}
+	}
 
-		// Set the rootCell cell (the server) to a random cell.
-		int rootX = rng.nextInt(boardWidth) + boardStartX;
-		int rootY = rng.nextInt(boardHeight) + boardStartY;
-		rootCell = cellMatrix[rootX][rootY];
-		rootCell.setConnected(true);
-		rootCell.setRoot(true);
-		// Log.i(TAG, "Root cell " + rootCell.x() + "," + rootCell.y() + " (" +
-		// rootX + "," + rootY + ")");
-		setFocus(rootCell);
+	/**
+	 * Re-size the cell matrix. The cells which are in both the old and new
+	 * matrix are kept. The focus is moved to the first cell, as the
+	 * focused cell may be gone.
+	 * 
+	 * @param width
+	 *            New width of the matrix.
+	 * @param height
+	 *            New height of the matrix.
+	 */
+	private void resizeMatrix(int width, int height) {
+		if (width == matrixWidth && height == matrixHeight)
+			return;
 
-		// Set up the connectingCells of cells awaiting connection. Start
-		// by adding the root cell.
-		Vector<Cell> list = new Vector<Cell>();
-		list.add(rootCell);
-		if (rng.nextBoolean())
-			addRandomDir(list);
-
-		// Loop while there are still cells to be connected, connecting
-		// them in random directions.
-		while (!list.isEmpty()) {
-			// Randomly do the first cell, or defer it and do the next one.
-			// This prevents unduly long, straight branches.
-			if (rng.nextBoolean()) {
-				// Add a random direction from this cell.
-				addRandomDir(list);
-
-				// 50% of the time, add a second direction, if we can
-				// find one.
-				if (rng.nextBoolean())
-					addRandomDir(list);
-
-				// A third pass makes networks more complex, but also
-				// introduces 4-way crosses.
-				if (sk.branches >= 3 && rng.nextInt(3) == 0)
-					addRandomDir(list);
-			} else
-				list.add(list.firstElement());
-
-			// Pop the first element off the connectingCells.
-			list.remove(0);
+		Log.i(TAG, "Resize matrix " + width + "x" + height);
+		Cell[][] matrix = new Cell[width][height];
+		for (int x = 0; x < width; ++x) {
+			for (int y = 0; y < height; ++y) {
+				if (x < matrixWidth && y < matrixHeight)
+					matrix[x][y] = cellMatrix[x][y];
+				else
+					matrix[x][y] = new Cell(parentApp, this, x, y);
+			}
 		}
+		cellMatrix = matrix;
+		matrixWidth = width;
+		matrixHeight = height;
+		rootCell = cellMatrix[0][0];
+		setFocus(rootCell);
 
-		// Count the number of connected cells in this board.
-		int cells = 0;
-		for (int x = boardStartX; x < boardEndX; x++)
-			for (int y = boardStartY; y < boardEndY; y++)
-				if (cellMatrix[x][y].dirs() != Cell.Dir.FREE)
-					++cells;
-
-		Log.i(TAG, "Created net with " + cells + " cells");
-		return cells;
+		// Lay out the new cells, and redraw the lot.
+		if (cellWidth > 0)
+			layoutCells();
+		if (tileCache != null)
+			tileCache.clear();
+		viewMoved = true;
+		postUpdate();
 	}
 
 	/**
-	 * Add a connection in a random direction from the first cell in the given
-	 * cell connectingCells. We enumerate the free adjacent cells around the
-	 * starting cell, then pick one to connect to at random. If there is no free
-	 * adjacent cell, we do nothing.
+	 * Add the given cell to the list of cells which are animating, and so
+	 * need updating each frame, if it's animating and isn't already listed.
+	 * This is called by the cells when they start animating.
 	 * 
-	 * If we connect to a cell, it is added to the passed-in connectingCells.
-	 * 
-	 * @param list
-	 *            Current list of cells awaiting connection.
+	 * @param cell
+	 *            The cell.
 	 */
-	private void addRandomDir(Vector<Cell> list) {
-		// Start with the first cell in the cell connectingCells.
-		Cell cell = list.firstElement();
-
-		// List the adjacent cells which are free.
-		EnumMap<Cell.Dir, Cell> freecells = new EnumMap<Cell.Dir, Cell>(
-				Cell.Dir.class);
-		for (Cell.Dir d : Cell.Dir.cardinals) {
-			Cell ucell = cell.next(d);
-			if (ucell != null && ucell.dirs() == Cell.Dir.FREE)
-				freecells.put(d, ucell);
-		}
-
-		if (freecells.isEmpty()) {
-			// Log.d(TAG, "addRandomDir: no free adjacents");
+	void cellActive(Cell cell) {
+		if (cell.isActive() || !cell.isAnimating())
 			return;
+		if (activeCount == activeCells.length) {
+			Cell[] cells = new Cell[activeCount * 2];
+			System.arraycopy(activeCells, 0, cells, 0, activeCount);
+			activeCells = cells;
 		}
+		activeCells[activeCount++] = cell;
+		cell.setActive(true);
+		postUpdate();
+	}
 
-		// Pick one of the free adjacents at random.
-		Object[] keys = freecells.keySet().toArray();
-		Cell.Dir key = (Cell.Dir) keys[rng.nextInt(keys.length)];
-		Cell dest = freecells.get(key);
+	/**
+	 * Empty the list of animating cells, for example because the board is
+	 * being reset.
+	 */
+	private void clearActive() {
+		for (int k = 0; k < activeCount; ++k) {
+			activeCells[k].setActive(false);
+			activeCells[k] = null;
+		}
+		activeCount = 0;
+	}
 
-		// Make a link to that cell, and a corresponding link back.
-		cell.addDir(key);
-		dest.addDir(key.reverse);
+	/**
+	 * Get the current playing area width. This varies with the skill level.
+	 * 
+	 * @return Playing area width in tiles.
+	 */
+	int getBoardWidth() {
+		return boardWidth;
+	}
 
-		// Add the new cell to the outstanding connectingCells.
-		list.add(dest);
-		// Log.d(TAG, "addRandomDir: connected to " + dest.x() + "," +
-		// dest.y());
+	/**
+	 * Get the current playing area height. This varies with the skill level.
+	 * 
+	 * @return Playing area height in tiles.
+	 */
+	int getBoardHeight() {
+		return boardHeight;
 	}
 
 	// ******************************************************************** //
@@ -618,94 +793,65 @@ public class BoardView extends SurfaceRunner {
 
 	/**
 	 * Scan the board to see which cells are connected to the server. Update the
-	 * state of every cell accordingly. This function is called each time a cell
-	 * is rotated, to re-compute the connectedness of every cell.
+	 * state of every cell accordingly. This does a complete re-computation of
+	 * the connectedness of every cell, and is used when the whole board has
+	 * changed -- i.e. after setting up or restoring a game. When a single cell
+	 * has changed, use {@link #updateConnections(Cell)}, which is much cheaper.
 	 * 
-	 * @return true iff one or more cells have been connected that previously
+	 * @return The number of cells which have been connected that previously
 	 *         weren't.
 	 */
-	private synchronized boolean updateConnections() {
-		// Reset the array of connected flags per cell.
-		for (int x = 0; x < gridWidth; x++)
-			for (int y = 0; y < gridHeight; y++)
-				isConnected[x][y] = false;
-
-		// Clear the list of cells which are connected but
-		// haven't had their onward connections checked yet.
-		connectingCells.clear();
-
-		// If the root cell is rotated, then it's not connected to
-		// anything -- no-one is connected. Otherwise, flag the root
-		// cell as connected and add it to the connectingCells.
-		if (!rootCell.isRotated()) {
-			isConnected[rootCell.x()][rootCell.y()] = true;
-			connectingCells.add(rootCell);
-		}
-
-		// While there are still cells to investigate, check them for
-		// connections that we haven't flagged yet, and add those cells
-		// to the connectingCells.
-		while (!connectingCells.isEmpty()) {
-			Cell cell = connectingCells.remove();
-
-			for (Cell.Dir d : Cell.Dir.cardinals)
-				if (hasNewConnection(cell, d, isConnected))
-					connectingCells.add(cell.next(d));
-		}
-
-		// Finally, scan the connection flags. Set every cell's connected
-		// status accordingly. Count connected cells, and cells that are
-		// connected but weren't previously.
-		int newConnections = 0;
-		for (int x = 0; x < gridWidth; x++) {
-			for (int y = 0; y < gridHeight; y++) {
-				if (isConnected[x][y]) {
-					if (!cellMatrix[x][y].isConnected())
-						++newConnections;
-				}
-				cellMatrix[x][y].setConnected(isConnected[x][y]);
-			}
-		}
-
-		// Log.d(TAG, "updateConnections: " + connections +
-		// " connected (" + newConnections + " new)");
-
-		// Tell the caller whether we got a new one.
-		return newConnections != 0;
+	private int updateConnections() {
+		int newConnections = board.updateConnections();
+		invalidateChanged();
+		publishStatus();
+		return newConnections;
 	}
 
 	/**
-	 * Determine whether we have a connection from the given cell in the given
-	 * direction which hasn't already been logged in got[][].
+	 * Update the connected state of the board after a change to the given
+	 * cell -- i.e. the cell has started rotating, or has turned to a new
+	 * position. Only the part of the network which depends on that cell is
+	 * re-computed; see {@link Board#updateConnections(int)}.
 	 * 
 	 * @param cell
-	 *            Starting cell.
-	 * @param dir
-	 *            Direction to look in.
-	 * @param got
-	 *            Array of flags showing which cells we have already found
-	 *            connections for. If we find a new connection, we will set the
-	 *            flag for it in here.
-	 * @return true iff we found a new connection in the given direction.
-	 */
-	private boolean hasNewConnection(Cell cell, Cell.Dir dir, boolean got[][]) {
-		// Find the cell we're going to, if any.
-		Cell other = cell.next(dir);
-		Cell.Dir otherdir = dir.reverse;
-
-		// If there's no cell there, then there's no connection. If we
-		// have already marked it connected, we're done.
-		if (other == null || got[other.x()][other.y()])
-			return false;
+	 *            The cell which has changed.
+	 * @return The number of cells which have been connected that previously
+	 *         weren't.
+	 */
+	private int updateConnections(Cell cell) {
+		// Cells outside the playing area are never connected.
+		int index = cell.boardIndex();
+		if (index < 0)
+			return 0;
+
+		int newConnections = board.updateConnections(index);
+		invalidateChanged();
+		publishStatus();
+		return newConnections;
+	}
 
-		// See if there's an actual connection. If either cell is rotated,
-		// there's no connection.
-		if (!cell.hasConnection(dir) || !other.hasConnection(otherdir))
-			return false;
+	/**
+	 * Invalidate the cells whose connected state was changed by the last
+	 * connection update, so they get redrawn.
+	 */
+	private void invalidateChanged() {
+		int n = board.changedCount();
+		for (int k = 0; k < n; ++k)
+			cellAt(board.changedCell(k)).invalidate();
+	}
 
-		// OK, there's a connection, and it's new. Mark it.
-		got[other.x()][other.y()] = true;
-		return true;
+	/**
+	 * Copy the number of cells connected to each server where the UI thread
+	 * can read it, with {@link #serverSizes(int[])}. The board keeps these
+	 * counts up to date, so this is cheap enough to do after every update.
+	 */
+	private void publishStatus() {
+		synchronized (statusLock) {
+			statusServers = board.rootCount();
+			for (int k = 0; k < statusServers; ++k)
+				statusSizes[k] = board.rootSize(k);
+		}
 	}
 
 	/**
@@ -723,46 +869,43 @@ public class BoardView extends SurfaceRunner {
 	 * @return true iff the board is currently in a solved state -- ie. every
 	 *         terminal cell is connected to the server.
 	 */
-	synchronized boolean isSolved() {
-		// Scan the board; any non-connected non-empty cell means
-		// we're not done yet.
-		for (int x = boardStartX; x < boardEndX; x++) {
-			for (int y = boardStartY; y < boardEndY; y++) {
-				Cell cell = cellMatrix[x][y];
-
-				// If there's an unconnected terminal, we're not solved.
-				if (cell.numDirs() == 1 && !cell.isConnected())
-					return false;
-			}
-		}
-
-		return true;
+	private boolean isSolved() {
+		return game.isSolved();
 	}
 
 	/**
-	 * Count the number of unconnected cells in the board.
+	 * Get the number of unconnected cells in the board when it was solved.
+	 * This is counted in the animation thread when the win is detected, so
+	 * the UI thread can read it when it handles the win.
 	 * 
 	 * Note that in some layouts (particularly in Expert mode), it is possible
 	 * to connect all the terminals without using all the cable sections, so the
 	 * answer may be non-0 on a solved board.
 	 * 
-	 * NOTE: We assume that updateConnections() has been called to set the
-	 * connected states of all cells correctly for the current board state.
-	 * 
-	 * @return The number of unconnected cells in the board.
+	 * @return The number of unconnected cells in the board when it was last
+	 *         solved.
 	 */
 	int unconnectedCells() {
-		int unused = 0;
-
-		for (int x = boardStartX; x < boardEndX; x++) {
-			for (int y = boardStartY; y < boardEndY; y++) {
-				Cell cell = cellMatrix[x][y];
-				if (cell.dirs() != Cell.Dir.FREE && !cell.isConnected())
-					++unused;
-			}
+		synchronized (statusLock) {
+			return statusUnused;
 		}
+	}
 
-		return unused;
+	/**
+	 * Get the number of cells connected to each server, as of the last
+	 * connection update. This is a copy made by the animation thread, so
+	 * it's safe to call from the UI thread after every move.
+	 * 
+	 * @param sizes
+	 *            Array in which to return the number of cells connected to
+	 *            each server; at least Board.MAX_ROOTS long.
+	 * @return The number of servers.
+	 */
+	int serverSizes(int[] sizes) {
+		synchronized (statusLock) {
+			System.arraycopy(statusSizes, 0, sizes, 0, statusServers);
+			return statusServers;
+		}
 	}
 
 	// ******************************************************************** //
@@ -812,48 +955,77 @@ public class BoardView extends SurfaceRunner {
 					// Make the cell's content visible. Do the move.
 					mc.setBlind(false);
 					mc.rotate(dirn, SOLVE_ROTATE_TIME);
-					updateConnections();
+					game.recordMove(mc.boardIndex(), dirn / 90);
+					updateConnections(mc);
 				}
 
 				lastProgMove = now;
 			}
 		}
 
-		// Update all the cells. Flag if any cell changed its
-		// connection state.
+		// Update the cells which are animating; the rest have nothing to
+		// do. If any cell changed its connection state, update the part of
+		// the network that depends on it. Cells which start animating
+		// while we work are added to the end of the list, and are left
+		// until the next update.
 		Cell changedCell = null;
-		for (int x = 0; x < gridWidth; ++x)
-			for (int y = 0; y < gridHeight; ++y)
-				if (cellMatrix[x][y].doUpdate(now))
-					changedCell = cellMatrix[x][y];
+		int newConnections = 0;
+		final int nactive = activeCount;
+		for (int k = 0; k < nactive; ++k) {
+			Cell cell = activeCells[k];
+			if (cell.doUpdate(now)) {
+				changedCell = cell;
+				newConnections += updateConnections(changedCell);
+			}
+		}
 
-		// Update all the data blips.
+		// Drop the cells which have finished animating from the list.
+		int n = 0;
+		for (int k = 0; k < activeCount; ++k) {
+			Cell cell = activeCells[k];
+			if (cell.isAnimating())
+				activeCells[n++] = cell;
+			else
+				cell.setActive(false);
+		}
+		for (int k = n; k < activeCount; ++k)
+			activeCells[k] = null;
+		activeCount = n;
+
+		// In assist mode, lock the cells which are now forced into place.
+		// Only a few are locked per update, which bounds the work done
+		// here; if there are more, we carry on next time.
+		if (assistEnable && (assistPending || changedCell != null))
+			assistPending = assistLock();
+
+		// Update all the data blips, and list the cells that have blips
+		// to draw. The server sends out new blips every few steps.
 		if (drawBlips) {
 			if (now - blipsLastAdvance >= BLIPS_TIME) {
-				for (int x = 0; x < gridWidth; ++x)
-					for (int y = 0; y < gridHeight; ++y)
-						cellMatrix[x][y].advanceBlips(blipCount);
+				blipField.step(board, blipCount % BLIPS_SPAWN == 0);
 				++blipCount;
-				for (int x = 0; x < gridWidth; ++x)
-					for (int y = 0; y < gridHeight; ++y)
-						cellMatrix[x][y].transferBlips();
 				blipsLastAdvance += BLIPS_TIME;
 				if (blipsLastAdvance < now)
 					blipsLastAdvance = now;
 			}
+			blipField.collect(board);
 		}
 
-		// If the connection state changed, update the network.
+		// If the connection state changed, see what happened.
 		if (changedCell != null) {
-			if (updateConnections())
+			if (newConnections != 0)
 				parentApp.postSound(Sound.CONNECT);
 
 			// If we're done, report it.
 			if (isSolved()) {
-				// Un-blind all cells.
+				// Un-blind all cells, and show the servers as solved.
 				for (int x = boardStartX; x < boardEndX; x++)
 					for (int y = boardStartY; y < boardEndY; y++)
 						cellMatrix[x][y].setBlind(false);
+				setSolved();
+				synchronized (statusLock) {
+					statusUnused = game.unconnectedCells();
+				}
 
 				blink(changedCell);
 				parentApp.postState(State.SOLVED);
@@ -881,24 +1053,319 @@ public class BoardView extends SurfaceRunner {
 	 */
 	@Override
 	protected void doDraw(Canvas canvas, long now) {
-		// Draw all the cells into the backing bitmap. Only the
-		// dirty cells will redraw themselves.
-		for (int x = 0; x < gridWidth; ++x)
-			for (int y = 0; y < gridHeight; ++y)
-				cellMatrix[x][y].doDraw(backingCanvas, now);
-
-		// Now push the backing bitmap to the screen.
-		canvas.drawBitmap(backingBitmap, 0, 0, null);
-
-		// Draw the data blips in a separate pass so they can overlap
-		// adjacent cells without getting overdrawn. We draw directly
-		// to the screen.
-		if (drawBlips) {
-			float frac = (float) (now - blipsLastAdvance) / (float) BLIPS_TIME;
-			for (int x = 0; x < gridWidth; ++x)
-				for (int y = 0; y < gridHeight; ++y)
-					cellMatrix[x][y].doDrawBlips(canvas, now, frac);
+		// Get the view to draw. If the view has moved since the dirty
+		// region was worked out, we can only draw part of the screen at the
+		// new position; so stay where we were for this frame, and redraw
+		// the whole screen next time.
+		canvas.getClipBounds(drawRect);
+		int vx = viewX;
+		int vy = viewY;
+		float z = zoom;
+		if (vx != drawnViewX || vy != drawnViewY || z != drawnZoom) {
+			if (drawRect.left <= 0 && drawRect.top <= 0
+					&& drawRect.right >= screenWidth
+					&& drawRect.bottom >= screenHeight) {
+				drawnViewX = vx;
+				drawnViewY = vy;
+				drawnZoom = z;
+			} else {
+				vx = drawnViewX;
+				vy = drawnViewY;
+				z = drawnZoom;
+				viewMoved = true;
+			}
 		}
+
+		// Work out the region being redrawn on the board. If it goes past
+		// the edge of the cell matrix, clear the screen around it.
+		final Cell[][] matrix = cellMatrix;
+		drawRect.set(vx + (int) Math.floor(drawRect.left / z), vy
+				+ (int) Math.floor(drawRect.top / z), vx
+				+ (int) Math.ceil(drawRect.right / z), vy
+				+ (int) Math.ceil(drawRect.bottom / z));
+		if (drawRect.left < 0 || drawRect.top < 0
+				|| drawRect.right > matrix.length * cellWidth
+				|| drawRect.bottom > matrix[0].length * cellHeight)
+			canvas.drawColor(Color.BLACK);
+
+		// Draw the board, in board co-ordinates.
+		canvas.save();
+		canvas.scale(z, z);
+		canvas.translate(-vx, -vy);
+		blipRect.setEmpty();
+		if (useLod(z))
+			drawLod(canvas, matrix);
+		else {
+			drawTiles(canvas, matrix, now, z == 1f ? null : scalePaint);
+			if (drawBlips)
+				drawBlips(canvas, now);
+		}
+		canvas.restore();
+		toScreen(blipRect, vx, vy, z);
+	}
+
+	/**
+	 * Draw the tiles which cover the region being redrawn. Only the dirty
+	 * cells will redraw themselves into their tiles -- unless the tile has
+	 * just been put in the cache, in which case all its cells are drawn.
+	 * 
+	 * @param canvas
+	 *            The Canvas to draw into, set up for board co-ordinates.
+	 * @param matrix
+	 *            The cell matrix.
+	 * @param now
+	 *            Current time in ms.
+	 * @param paint
+	 *            Paint to draw the tiles with; null if they're not scaled.
+	 */
+	private void drawTiles(Canvas canvas, Cell[][] matrix, long now,
+			Paint paint) {
+		final int mw = matrix.length;
+		final int mh = matrix[0].length;
+		final int tw = tileCache.tileWidth();
+		final int th = tileCache.tileHeight();
+		final int tx0 = Math.max(drawRect.left, 0) / tw;
+		final int ty0 = Math.max(drawRect.top, 0) / th;
+		final int tx1 = (Math.min(drawRect.right, mw * cellWidth) - 1) / tw;
+		final int ty1 = (Math.min(drawRect.bottom, mh * cellHeight) - 1) / th;
+		for (int ty = ty0; ty <= ty1; ++ty) {
+			for (int tx = tx0; tx <= tx1; ++tx) {
+				int slot = tileCache.find(tx, ty);
+				boolean fresh = slot < 0;
+				if (fresh)
+					slot = tileCache.create(tx, ty);
+				Canvas tileCanvas = tileCache.canvas(slot);
+				if (fresh)
+					tileCanvas.drawColor(Color.BLACK);
+
+				tileCanvas.save();
+				tileCanvas.translate(-tx * tw, -ty * th);
+				final int cx1 = Math.min((tx + 1) * tileCells, mw);
+				final int cy1 = Math.min((ty + 1) * tileCells, mh);
+				for (int cx = tx * tileCells; cx < cx1; ++cx) {
+					for (int cy = ty * tileCells; cy < cy1; ++cy) {
+						if (fresh)
+							matrix[cx][cy].invalidate();
+						matrix[cx][cy].doDraw(tileCanvas, now);
+					}
+				}
+				tileCanvas.restore();
+
+				// Push the tile to the screen. This also erases the blips
+				// from the last frame.
+				canvas.drawBitmap(tileCache.bitmap(slot), tx * tw, ty * th,
+						paint);
+			}
+		}
+	}
+
+	/**
+	 * Draw the data blips in a separate pass so they can overlap adjacent
+	 * cells without getting overdrawn. We draw directly to the screen, so
+	 * note where they went, to be erased next frame.
+	 * 
+	 * @param canvas
+	 *            The Canvas to draw into, set up for board co-ordinates.
+	 * @param now
+	 *            Current time in ms.
+	 */
+	private void drawBlips(Canvas canvas, long now) {
+		float frac = (float) (now - blipsLastAdvance) / (float) BLIPS_TIME;
+		final int nblips = blipField.listedCount();
+		for (int k = 0; k < nblips; ++k) {
+			int i = blipField.listedCell(k);
+			Cell cell = cellAt(i);
+			if (cell.blipsIntersect(drawRect)) {
+				cell.doDrawBlips(canvas, now, frac, blipField.incoming(i),
+						blipField.outgoing(i));
+				cell.addBlipRegion(blipRect);
+			}
+		}
+	}
+
+	/**
+	 * Draw the low-detail view of the board: update the visible cells
+	 * which have changed in the low-detail bitmap, and draw the bitmap
+	 * scaled to the board.
+	 * 
+	 * @param canvas
+	 *            The Canvas to draw into, set up for board co-ordinates.
+	 * @param matrix
+	 *            The cell matrix.
+	 */
+	private void drawLod(Canvas canvas, Cell[][] matrix) {
+		final int mw = matrix.length;
+		final int mh = matrix[0].length;
+		if (lodBitmap == null || lodColumns != mw || lodRows != mh)
+			createLod(matrix);
+
+		final int cx0 = Math.max(drawRect.left, 0) / cellWidth;
+		final int cy0 = Math.max(drawRect.top, 0) / cellHeight;
+		final int cx1 = Math.min((drawRect.right - 1) / cellWidth + 1, mw);
+		final int cy1 = Math.min((drawRect.bottom - 1) / cellHeight + 1, mh);
+		for (int cx = cx0; cx < cx1; ++cx)
+			for (int cy = cy0; cy < cy1; ++cy)
+				matrix[cx][cy].doDrawLod(lodCanvas, lodCell);
+
+		lodRect.set(0, 0, mw * cellWidth, mh * cellHeight);
+		canvas.drawBitmap(lodBitmap, null, lodRect, scalePaint);
+	}
+
+	/**
+	 * Create the low-detail bitmap for the given cell matrix. Each cell
+	 * gets a few pixels, as many as we can afford; every cell has to be
+	 * drawn into it afresh.
+	 * 
+	 * @param matrix
+	 *            The cell matrix.
+	 */
+	private void createLod(Cell[][] matrix) {
+		final int mw = matrix.length;
+		final int mh = matrix[0].length;
+		int size = (int) Math.sqrt(LOD_PIXELS / (mw * mh));
+		lodCell = Math.max(2, Math.min(size, cellWidth / 2));
+		Log.i(TAG, "Low-detail board " + mw + "x" + mh + ", cells " + lodCell);
+
+		if (lodBitmap != null)
+			lodBitmap.recycle();
+		lodBitmap = Bitmap.createBitmap(mw * lodCell, mh * lodCell,
+				surfaceConfig);
+		lodCanvas = new Canvas(lodBitmap);
+		lodColumns = mw;
+		lodRows = mh;
+
+		for (int x = 0; x < mw; ++x)
+			for (int y = 0; y < mh; ++y)
+				matrix[x][y].invalidate();
+	}
+
+	/**
+	 * Determine whether to draw the low-detail view of the board at the
+	 * given zoom.
+	 * 
+	 * @param z
+	 *            The zoom.
+	 * @return true if the board is zoomed out past LOD_ZOOM, or so far that
+	 *         the tile cache can't cover the screen.
+	 */
+	private boolean useLod(float z) {
+		return z < LOD_ZOOM
+				|| tilesNeeded(tileCache.tileWidth(), tileCache.tileHeight(),
+						z) > tileCache.size();
+	}
+
+	/**
+	 * Get the number of tiles needed to cover the screen, wherever it's
+	 * scrolled to, at the given zoom.
+	 * 
+	 * @param tw
+	 *            Tile width, in pixels on the board.
+	 * @param th
+	 *            Tile height, in pixels on the board.
+	 * @param z
+	 *            The zoom.
+	 * @return The number of tiles needed.
+	 */
+	private int tilesNeeded(int tw, int th, float z) {
+		return ((int) (screenWidth / (tw * z)) + 2)
+				* ((int) (screenHeight / (th * z)) + 2);
+	}
+
+	/**
+	 * Convert a rectangle on the board to the smallest rectangle on the
+	 * screen which covers it.
+	 * 
+	 * @param r
+	 *            The rectangle to convert; empty rectangles are left alone.
+	 * @param vx
+	 *            X position on the board of the top left of the screen.
+	 * @param vy
+	 *            Y position on the board of the top left of the screen.
+	 * @param z
+	 *            The zoom.
+	 */
+	private static void toScreen(Rect r, int vx, int vy, float z) {
+		if (r.isEmpty())
+			return;
+		r.set((int) Math.floor((r.left - vx) * z),
+				(int) Math.floor((r.top - vy) * z),
+				(int) Math.ceil((r.right - vx) * z),
+				(int) Math.ceil((r.bottom - vy) * z));
+	}
+
+	/**
+	 * Determine whether there's any animation in progress. When there
+	 * isn't, the animation thread sleeps until postUpdate() is called.
+	 * 
+	 * @return true if the board needs more frames.
+	 */
+	@Override
+	protected boolean animationPending() {
+		return drawBlips || programmedMoves != null || assistPending
+				|| viewMoved || activeCount > 0;
+	}
+
+	/**
+	 * Get the region of the screen which needs to be redrawn in the next
+	 * frame: the visible cells which have been invalidated, and the areas
+	 * where data blips were drawn last frame, or will be drawn this frame.
+	 * An idle board with no blips draws nothing. If the view has moved, the
+	 * whole screen is redrawn.
+	 * 
+	 * @param dirty
+	 *            Rect to set to the dirty region.
+	 * @return true, as dirty has been set.
+	 */
+	@Override
+	protected boolean getDirtyRegion(Rect dirty) {
+		final int vx = viewX;
+		final int vy = viewY;
+		final float z = zoom;
+		if (viewMoved || vx != drawnViewX || vy != drawnViewY
+				|| z != drawnZoom) {
+			viewMoved = false;
+			dirty.set(0, 0, screenWidth, screenHeight);
+			return true;
+		}
+
+		// Find the part of the board which is on screen, and the cells
+		// in it.
+		final Cell[][] matrix = cellMatrix;
+		viewRect.set(vx, vy, vx + (int) Math.ceil(screenWidth / z), vy
+				+ (int) Math.ceil(screenHeight / z));
+		final int cx0 = Math.max(vx, 0) / cellWidth;
+		final int cy0 = Math.max(vy, 0) / cellHeight;
+		final int cx1 = Math.min((viewRect.right - 1) / cellWidth + 1,
+				matrix.length);
+		final int cy1 = Math.min((viewRect.bottom - 1) / cellHeight + 1,
+				matrix[0].length);
+
+		// Erase the blips we drew last time, and redraw the changes. The
+		// changes are found on the board, then moved into the view.
+		final boolean lod = useLod(z);
+		dirty.set(blipRect);
+		changeRect.setEmpty();
+		for (int x = cx0; x < cx1; ++x) {
+			for (int y = cy0; y < cy1; ++y) {
+				if (lod)
+					matrix[x][y].addLodDirtyRegion(changeRect);
+				else
+					matrix[x][y].addDirtyRegion(changeRect);
+			}
+		}
+		if (drawBlips && !lod) {
+			final int nblips = blipField.listedCount();
+			for (int k = 0; k < nblips; ++k) {
+				Cell cell = cellAt(blipField.listedCell(k));
+				if (cell.blipsIntersect(viewRect))
+					cell.addBlipRegion(changeRect);
+			}
+		}
+		toScreen(changeRect, vx, vy, z);
+		if (!changeRect.isEmpty())
+			dirty.union(changeRect);
+
+		return true;
 	}
 
 	// ******************************************************************** //
@@ -933,25 +1400,21 @@ public class BoardView extends SurfaceRunner {
 			pressDown();
 			return true;
 		case KeyEvent.KEYCODE_ENTER:
-			if (programmedMoves == null)
-				cellRotate(focusedCell, 1);
+			postEvent(EV_ROTATE, 1);
 			return true;
 		case KeyEvent.KEYCODE_Z:
 		case KeyEvent.KEYCODE_N:
 		case KeyEvent.KEYCODE_4:
-			if (programmedMoves == null)
-				cellRotate(focusedCell, -1);
+			postEvent(EV_ROTATE, -1);
 			return true;
 		case KeyEvent.KEYCODE_X:
 		case KeyEvent.KEYCODE_M:
 		case KeyEvent.KEYCODE_6:
-			if (programmedMoves == null)
-				cellRotate(focusedCell, 1);
+			postEvent(EV_ROTATE, 1);
 			return true;
 		case KeyEvent.KEYCODE_SPACE:
 		case KeyEvent.KEYCODE_0:
-			if (programmedMoves == null)
-				cellToggleLock(focusedCell);
+			postEvent(EV_LOCK, 0);
 			return true;
 		case KeyEvent.KEYCODE_P:
 		case KeyEvent.KEYCODE_9:
@@ -959,20 +1422,16 @@ public class BoardView extends SurfaceRunner {
 			return true;
 
 		case KeyEvent.KEYCODE_DPAD_UP:
-			if (programmedMoves == null)
-				moveFocus(Cell.Dir.U___, 0, -1);
+			postEvent(EV_MOVE_FOCUS, 0);
 			return true;
 		case KeyEvent.KEYCODE_DPAD_RIGHT:
-			if (programmedMoves == null)
-				moveFocus(Cell.Dir._R__, 1, 0);
+			postEvent(EV_MOVE_FOCUS, 1);
 			return true;
 		case KeyEvent.KEYCODE_DPAD_DOWN:
-			if (programmedMoves == null)
-				moveFocus(Cell.Dir.__D_, 0, 1);
+			postEvent(EV_MOVE_FOCUS, 2);
 			return true;
 		case KeyEvent.KEYCODE_DPAD_LEFT:
-			if (programmedMoves == null)
-				moveFocus(Cell.Dir.___L, -1, 0);
+			postEvent(EV_MOVE_FOCUS, 3);
 			return true;
 		}
 
@@ -1022,15 +1481,52 @@ public class BoardView extends SurfaceRunner {
 	 */
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
-		if (event.getAction() == MotionEvent.ACTION_DOWN) {
+		scaleDetector.onTouchEvent(event);
+
+		final int action = event.getAction() & MotionEvent.ACTION_MASK;
+		if (action == MotionEvent.ACTION_DOWN) {
 			// Focus on the pressed cell.
 			pressedCell = findCell(event.getX(), event.getY());
 			if (pressedCell != null) {
-				if (programmedMoves == null)
-					setFocus(pressedCell);
+				postEvent(EV_FOCUS, pressedCell.x() << 12 | pressedCell.y());
 				pressDown();
 			}
-		} else if (event.getAction() == MotionEvent.ACTION_UP) {
+
+			// Note where the press started, in case it turns into a drag.
+			dragging = false;
+			dragRestart = false;
+			startDrag(event);
+		} else if (action == MotionEvent.ACTION_POINTER_DOWN
+				|| action == MotionEvent.ACTION_POINTER_UP) {
+			// Another finger means a pinch, not a press. When the fingers
+			// change, start the drag afresh from where we are.
+			cancelPress();
+			dragRestart = true;
+		} else if (action == MotionEvent.ACTION_MOVE) {
+			// While pinching, the scale detector does the work.
+			if (scaleDetector.isInProgress() || dragRestart) {
+				dragRestart = false;
+				startDrag(event);
+				return true;
+			}
+
+			// If the board doesn't fit on the screen, a press which moves
+			// far enough is a drag, which scrolls the board instead of
+			// turning or locking the cell. The drag is passed on as the
+			// distance moved since it started; if that gets too big to
+			// post, start again from here.
+			int dx = Math.round(event.getX() - dragStartX);
+			int dy = Math.round(event.getY() - dragStartY);
+			if (!dragging && canScroll()
+					&& Math.abs(dx) + Math.abs(dy) > cellWidth / 3)
+				cancelPress();
+			if (dragging) {
+				postEvent(EV_DRAG, (dx & 0xfff) << 12 | dy & 0xfff);
+				if (Math.abs(dx) > DRAG_SPAN || Math.abs(dy) > DRAG_SPAN)
+					startDrag(event);
+			}
+		} else if (action == MotionEvent.ACTION_UP) {
+			dragging = false;
 			if (pressedCell != null) {
 				pressedCell = null;
 				pressUp();
@@ -1050,14 +1546,71 @@ public class BoardView extends SurfaceRunner {
 	 * @return The cell at x,y; null if none.
 	 */
 	private Cell findCell(float x, float y) {
-		// Focus on the pressed cell.
-		int cx = (int) ((x - paddingX) / cellWidth);
-		int cy = (int) ((y - paddingY) / cellHeight);
-		if (cx < 0 || cx >= gridWidth || cy < 0 || cy >= gridHeight)
+		int vx, vy;
+		float z;
+		synchronized (viewLock) {
+			vx = touchViewX;
+			vy = touchViewY;
+			z = touchZoom;
+		}
+
+		// Convert to board co-ordinates, and find the cell there.
+		float bx = vx + x / z;
+		float by = vy + y / z;
+		if (bx < 0 || by < 0)
+			return null;
+		int cx = (int) (bx / cellWidth);
+		int cy = (int) (by / cellHeight);
+		if (cx >= matrixWidth || cy >= matrixHeight)
 			return null;
 		return cellMatrix[cx][cy];
 	}
 
+	/**
+	 * Start a possible drag from the given touch. The animation thread
+	 * notes the view position when it gets to the EV_DRAG_START event, so
+	 * the drag carries on from wherever the view is by then.
+	 * 
+	 * @param event
+	 *            The motion event.
+	 */
+	private void startDrag(MotionEvent event) {
+		dragStartX = event.getX();
+		dragStartY = event.getY();
+		postEvent(EV_DRAG_START, 0);
+	}
+
+	/**
+	 * Cancel the current screen press, as it has turned into a drag or a
+	 * pinch; so it doesn't turn or lock the cell.
+	 */
+	private void cancelPress() {
+		dragging = true;
+		pressedCell = null;
+		longPressHandler.removeCallbacks(longPress);
+	}
+
+	/**
+	 * Listener for pinches, which zoom the view about the middle of the
+	 * pinch. The zoom is passed to the animation thread as an EV_ZOOM_AT
+	 * event giving the middle, followed by an EV_ZOOM giving the factor.
+	 */
+	private final ScaleGestureDetector.SimpleOnScaleGestureListener scaleListener = new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+		@Override
+		public boolean onScale(ScaleGestureDetector detector) {
+			int fx = Math.max(0, Math.min(Math.round(detector.getFocusX()),
+					0xfff));
+			int fy = Math.max(0, Math.min(Math.round(detector.getFocusY()),
+					0xfff));
+			int factor = Math.min(
+					Math.round(detector.getScaleFactor() * ZOOM_ONE),
+					0x7fffff);
+			postEvent(EV_ZOOM_AT, fx << 12 | fy);
+			postEvent(EV_ZOOM, factor);
+			return true;
+		}
+	};
+
 	/**
 	 * Handle a screen or centre-button press.
 	 */
@@ -1078,8 +1631,7 @@ public class BoardView extends SurfaceRunner {
 
 			// If we got here, rotate the cell -- except user input is ignored
 			// while executing programmed moves.
-			if (programmedMoves == null)
-				cellRotate(focusedCell, 1);
+			postEvent(EV_ROTATE, 1);
 		}
 	}
 
@@ -1090,8 +1642,7 @@ public class BoardView extends SurfaceRunner {
 		@Override
 		public void run() {
 			longPressed = true;
-			if (programmedMoves == null)
-				cellToggleLock(focusedCell);
+			postEvent(EV_LOCK, 0);
 		}
 	};
 
@@ -1113,25 +1664,262 @@ public class BoardView extends SurfaceRunner {
 		if (focusedCell == null)
 			return;
 
-		// Try using the cell's idea of it's neighbour.
-		Cell goCell = focusedCell.next(dir);
+		// Try using the board's idea of the cell's neighbour.
+		Cell goCell = null;
+		int index = focusedCell.boardIndex();
+		if (index >= 0) {
+			int n = board.next(index, dir.ordinal());
+			if (n >= 0)
+				goCell = cellAt(n);
+		}
 
-		// Otherwise wrap around the board.
+		// Otherwise wrap around the whole cell matrix.
 		if (goCell == null) {
-			int nx = (focusedCell.x() + dx + gridWidth) % gridWidth;
-			int ny = (focusedCell.y() + dy + gridHeight) % gridHeight;
+			int nx = (focusedCell.x() + dx + matrixWidth) % matrixWidth;
+			int ny = (focusedCell.y() + dy + matrixHeight) % matrixHeight;
 			goCell = cellMatrix[nx][ny];
 		}
 
 		setFocus(goCell);
 	}
 
+	// ******************************************************************** //
+	// Input Events.
+	// ******************************************************************** //
+
+	/**
+	 * Post an input event for the animation thread to act on. This must only
+	 * be called from the UI thread, as the event ring has a single poster.
+	 * 
+	 * @param type
+	 *            The event type, EV_XXX.
+	 * @param arg
+	 *            The event's argument; a signed 24-bit value.
+	 */
+	private void postEvent(int type, int arg) {
+		if (!inputEvents.post(type << 24 | arg & 0xffffff))
+			Log.w(TAG, "Input queue full; event dropped");
+		postUpdate();
+	}
+
+	/**
+	 * Act on the input events the UI thread has posted, oldest first. This
+	 * is called in the animation thread at the start of each frame, so the
+	 * game state is only changed in that thread.
+	 */
+	@Override
+	protected void doEvents() {
+		int n;
+		while ((n = inputEvents.drain(eventBuffer)) > 0)
+			for (int k = 0; k < n; ++k)
+				doEvent(eventBuffer[k]);
+	}
+
+	/**
+	 * Throw away any input events which haven't been acted on. This must
+	 * only be called while the animation thread is stopped, when the UI
+	 * thread can take its place as the event ring's taker.
+	 */
+	private void discardEvents() {
+		while (inputEvents.drain(eventBuffer) > 0)
+			;
+	}
+
+	/**
+	 * Act on an input event.
+	 * 
+	 * @param event
+	 *            The event, as posted by postEvent().
+	 */
+	private void doEvent(int event) {
+		final int type = event >>> 24;
+		final int arg = event << 8 >> 8;
+		switch (type) {
+		case EV_UNDO:
+			doUndo();
+			return;
+		case EV_REDO:
+			doRedo();
+			return;
+		case EV_HINT:
+			doHint();
+			return;
+		case EV_AUTOSOLVE:
+			doAutosolve();
+			return;
+		case EV_DRAG_START:
+			dragViewX = viewX;
+			dragViewY = viewY;
+			return;
+		case EV_DRAG:
+			setView(dragViewX - (int) ((arg >> 12) / zoom), dragViewY
+					- (int) ((arg << 20 >> 20) / zoom), zoom);
+			return;
+		case EV_ZOOM_AT:
+			zoomFocusX = arg >> 12 & 0xfff;
+			zoomFocusY = arg & 0xfff;
+			return;
+		case EV_ZOOM:
+			zoomView((float) arg / ZOOM_ONE, zoomFocusX, zoomFocusY);
+			return;
+		}
+
+		// The player's input is ignored while executing programmed moves.
+		if (programmedMoves != null || focusedCell == null)
+			return;
+		switch (type) {
+		case EV_FOCUS:
+			int x = arg >>> 12;
+			int y = arg & 0xfff;
+			if (x < matrixWidth && y < matrixHeight)
+				setFocus(cellMatrix[x][y]);
+			break;
+		case EV_MOVE_FOCUS:
+			moveFocus(FOCUS_DIRS[arg], FOCUS_DX[arg], FOCUS_DY[arg]);
+			break;
+		case EV_ROTATE:
+			cellRotate(focusedCell, arg);
+			break;
+		case EV_LOCK:
+			cellToggleLock(focusedCell);
+			break;
+		}
+	}
+
+	// ******************************************************************** //
+	// View Scrolling.
+	// ******************************************************************** //
+
+	/**
+	 * Determine whether the board is too big for the screen, so the view
+	 * can be scrolled. This is for the UI thread, so it uses the published
+	 * copy of the zoom.
+	 * 
+	 * @return true iff the view can be scrolled.
+	 */
+	private boolean canScroll() {
+		float z;
+		synchronized (viewLock) {
+			z = touchZoom;
+		}
+		return matrixWidth * cellWidth > screenWidth / z
+				|| matrixHeight * cellHeight > screenHeight / z;
+	}
+
+	/**
+	 * Get the least zoom we allow, which shows the whole board.
+	 * 
+	 * @return The minimum zoom; 1 if the board fits on the screen.
+	 */
+	private float minZoom() {
+		float zx = (float) screenWidth / (matrixWidth * cellWidth);
+		float zy = (float) screenHeight / (matrixHeight * cellHeight);
+		return Math.min(1f, Math.min(zx, zy));
+	}
+
+	/**
+	 * Move the view. The zoom is kept between minZoom() and 1. If the
+	 * board is smaller than the screen in either direction, it is centred
+	 * that way; else the view is kept on the board. The new view is
+	 * published for the UI thread to map touches with.
+	 * 
+	 * @param x
+	 *            X position on the board of the top left of the screen.
+	 * @param y
+	 *            Y position on the board of the top left of the screen.
+	 * @param z
+	 *            The zoom; the size of a board pixel on the screen.
+	 */
+	private void setView(int x, int y, float z) {
+		z = Math.max(minZoom(), Math.min(z, 1f));
+		final int bw = matrixWidth * cellWidth;
+		final int bh = matrixHeight * cellHeight;
+		final int sw = (int) (screenWidth / z);
+		final int sh = (int) (screenHeight / z);
+		if (bw <= sw)
+			x = -(sw - bw) / 2;
+		else
+			x = Math.max(0, Math.min(x, bw - sw));
+		if (bh <= sh)
+			y = -(sh - bh) / 2;
+		else
+			y = Math.max(0, Math.min(y, bh - sh));
+
+		viewX = x;
+		viewY = y;
+		zoom = z;
+		synchronized (viewLock) {
+			touchViewX = x;
+			touchViewY = y;
+			touchZoom = z;
+		}
+		postUpdate();
+	}
+
+	/**
+	 * Zoom the view by the given factor, keeping the given point on the
+	 * screen over the same point on the board.
+	 * 
+	 * @param factor
+	 *            The factor to multiply the zoom by.
+	 * @param fx
+	 *            X position of the focus point on the screen.
+	 * @param fy
+	 *            Y position of the focus point on the screen.
+	 */
+	private void zoomView(float factor, float fx, float fy) {
+		float z = zoom;
+		float nz = Math.max(minZoom(), Math.min(z * factor, 1f));
+		float bx = viewX + fx / z;
+		float by = viewY + fy / z;
+		setView(Math.round(bx - fx / nz), Math.round(by - fy / nz), nz);
+	}
+
+	/**
+	 * Scroll the view so that the given cell is on screen.
+	 * 
+	 * @param cell
+	 *            The cell to show; if null, just keep the view on the
+	 *            board.
+	 * @param centre
+	 *            If true, centre the view on the cell; else only move the
+	 *            view as far as needed.
+	 */
+	private void showCell(Cell cell, boolean centre) {
+		// Nothing to do until we know our size.
+		if (cellWidth == 0)
+			return;
+
+		int x = viewX;
+		int y = viewY;
+		final int sw = (int) (screenWidth / zoom);
+		final int sh = (int) (screenHeight / zoom);
+		if (cell != null) {
+			int left = cell.x() * cellWidth;
+			int top = cell.y() * cellHeight;
+			if (centre) {
+				x = left + (cellWidth - sw) / 2;
+				y = top + (cellHeight - sh) / 2;
+			} else {
+				if (left < x)
+					x = left;
+				else if (left + cellWidth > x + sw)
+					x = left + cellWidth - sw;
+				if (top < y)
+					y = top;
+				else if (top + cellHeight > y + sh)
+					y = top + cellHeight - sh;
+			}
+		}
+		setView(x, y, zoom);
+	}
+
 	// ******************************************************************** //
 	// Cell Actions.
 	// ******************************************************************** //
 
 	/**
-	 * Set the focused cell to the given cell.
+	 * Set the focused cell to the given cell, and scroll it into view.
 	 * 
 	 * Note that this moves the variable focusedCell; we do our own focus,
 	 * rather than using system focus, as there seems to be no way to make that
@@ -1144,8 +1932,10 @@ public class BoardView extends SurfaceRunner {
 		if (focusedCell != null)
 			focusedCell.setFocused(false);
 		focusedCell = cell;
-		if (focusedCell != null)
+		if (focusedCell != null) {
 			focusedCell.setFocused(true);
+			showCell(focusedCell, false);
+		}
 	}
 
 	/**
@@ -1169,12 +1959,132 @@ public class BoardView extends SurfaceRunner {
 		// Give the user a click. Set up an animation to do the rotation.
 		parentApp.postSound(Sound.TURN);
 		cell.rotate(dirn * 90);
+		game.recordMove(cell.boardIndex(), dirn);
 
 		// This cell is no longer connected. Update the connection state.
-		updateConnections();
+		updateConnections(cell);
 
 		// Tell the parent we clicked this cell.
-		parentApp.cellClicked(cell);
+		parentApp.postCellClicked(cell);
+	}
+
+	/**
+	 * Undo the last move made, turning the cell back. If the cell has been
+	 * locked since, it is unlocked. This is done in the animation thread.
+	 */
+	void undoMove() {
+		postEvent(EV_UNDO, 0);
+	}
+
+	/**
+	 * Redo the last move undone. If the cell has been locked since, it is
+	 * unlocked. This is done in the animation thread.
+	 */
+	void redoMove() {
+		postEvent(EV_REDO, 0);
+	}
+
+	/**
+	 * Give the player a hint, in the animation thread; see
+	 * {@link #doHint()}.
+	 */
+	void hint() {
+		postEvent(EV_HINT, 0);
+	}
+
+	/**
+	 * Undo the last move made.
+	 */
+	private void doUndo() {
+		if (programmedMoves != null)
+			return;
+		int move = game.moves().undo();
+		if (move < 0) {
+			parentApp.postSound(Sound.CLICK);
+			return;
+		}
+		journalRotate(MoveLog.moveCell(move), -MoveLog.moveTurns(move));
+	}
+
+	/**
+	 * Redo the last move undone.
+	 */
+	private void doRedo() {
+		if (programmedMoves != null)
+			return;
+		int move = game.moves().redo();
+		if (move < 0) {
+			parentApp.postSound(Sound.CLICK);
+			return;
+		}
+		journalRotate(MoveLog.moveCell(move), MoveLog.moveTurns(move));
+	}
+
+	/**
+	 * Give the player a hint: make the cheapest move which the puzzle
+	 * forces, given the board and the cells the player has locked. If the
+	 * hint is to fix a wrongly locked cell, it is unlocked.
+	 */
+	private void doHint() {
+		if (programmedMoves != null)
+			return;
+
+		// Find the hint for the board as it will be when all the cells
+		// have finished turning.
+		int ncells = board.size();
+		int[] pending = new int[ncells];
+		for (int i = 0; i < ncells; ++i)
+			pending[i] = cellAt(i).pendingTurns();
+		int move = game.hint(pending);
+		if (move < 0) {
+			parentApp.postSound(Sound.CLICK);
+			return;
+		}
+
+		int i = MoveLog.moveCell(move);
+		int turns = MoveLog.moveTurns(move);
+		Cell cell = cellAt(i);
+		setFocus(cell);
+		cell.setLocked(false);
+		cell.setBlind(false);
+		parentApp.postSound(Sound.TURN);
+		cell.rotate(turns * 90, SOLVE_ROTATE_TIME);
+		game.recordMove(i, turns);
+		updateConnections(cell);
+		parentApp.postCellClicked(cell);
+	}
+
+	/**
+	 * Turn a cell for an undo or redo. The move journal has already been
+	 * updated, so this doesn't record the move.
+	 *
+	 * @param i
+	 *            Index of the cell.
+	 * @param turns
+	 *            Number of quarter turns; clockwise positive.
+	 */
+	private void journalRotate(int i, int turns) {
+		Cell cell = cellAt(i);
+		setFocus(cell);
+		cell.setLocked(false);
+		cell.setBlind(false);
+		parentApp.postSound(Sound.TURN);
+		cell.rotate(turns * 90);
+		updateConnections(cell);
+		parentApp.postCellClicked(cell);
+	}
+
+	/**
+	 * Lock some of the cells which are in the orientation that the puzzle
+	 * forces them to be in, given the cells which are already locked.
+	 * 
+	 * @return true if there may be more cells to lock.
+	 */
+	private boolean assistLock() {
+		int n = game.forcedCells(assistCells);
+		for (int k = 0; k < n; ++k)
+			cellAt(assistCells[k]).setLocked(true);
+		return n == assistCells.length;
 	}
 
 	/**
@@ -1195,6 +2105,8 @@ public class BoardView extends SurfaceRunner {
 
 		cell.setLocked(!cell.isLocked());
 		parentApp.postSound(Sound.POP);
+		assistPending = true;
+		postUpdate();
 	}
 
 	/**
@@ -1217,9 +2129,10 @@ public class BoardView extends SurfaceRunner {
 	/**
 	 * Set the board to display the game as solved.
 	 */
-	void setSolved() {
-		// Display the fully-connected version of the server.
-		rootCell.setSolved(true);
+	private void setSolved() {
+		// Display the fully-connected version of the servers.
+		for (int k = 0; k < board.rootCount(); ++k)
+			cellAt(board.rootAt(k)).setSolved(true);
 	}
 
 	// ******************************************************************** //
@@ -1227,65 +2140,49 @@ public class BoardView extends SurfaceRunner {
 	// ******************************************************************** //
 
 	/**
-	 * Auto-solve the puzzle, by generating a list of programmed moves which
-	 * will set each cell to the position it was in when the network was
-	 * created.
+	 * Auto-solve the puzzle, by working out a solution from the current state
+	 * of the board, and generating a list of programmed moves which will set
+	 * each cell to its solved position.
 	 * 
 	 * We generate the moves list in breadth-first order. This is harder to do,
-	 * but looks nicer.
+	 * but looks nicer. This is done in the animation thread.
 	 */
 	void autosolve() {
+		postEvent(EV_AUTOSOLVE, 0);
+	}
+
+	/**
+	 * Start the autosolver, or stop it if it's running.
+	 */
+	private void doAutosolve() {
 		// If we're already solving, just toggle the state.
 		if (programmedMoves != null) {
 			autosolveStop();
 			return;
 		}
 
-		Bundle solution = solvedState;
-		if (solution == null)
-			return;
-
-		// Read the solved state, accounting for device rotations etc.
-		GameState state = new GameState(gridWidth, gridHeight, gameSkill);
-		if (!restoreBoard(solution, state))
+		// Solve the board as it will be when all the cells have finished
+		// turning.
+		int ncells = board.size();
+		int[] pending = new int[ncells];
+		for (int i = 0; i < ncells; ++i)
+			pending[i] = cellAt(i).pendingTurns();
+		int[] moves = new int[ncells];
+		int nmoves = game.solution(pending, moves);
+		if (nmoves < 0) {
+			Log.i(TAG, "Autosolve: no solution");
 			return;
+		}
 
 		// Create the programmed move list.
 		programmedMoves = new LinkedList<int[]>();
-
-		// Clear the list of cells which are connected but
-		// haven't had their onward connections checked yet.
-		connectingCells.clear();
-
-		// Reset the array of solved flags per cell.
-		for (int x = 0; x < gridWidth; x++)
-			for (int y = 0; y < gridHeight; y++)
-				isConnected[x][y] = false;
-
-		// Set the root cell up to be solved first.
-		connectingCells.add(state.root);
-		isConnected[state.root.x()][state.root.y()] = true;
-
-		// While there are still cells to investigate, solve them, check
-		// them for connections that we haven't flagged yet, and add those
-		// cells to the connectingCells.
-		while (!connectingCells.isEmpty()) {
-			Cell cell = connectingCells.removeFirst();
-			solveCell(cell, programmedMoves);
-
-			for (Cell.Dir d : Cell.Dir.cardinals) {
-				if (cell.hasConnection(d)) {
-					Cell next = cell.next(d);
-					if (next != null && !isConnected[next.x()][next.y()]) {
-						connectingCells.addLast(next);
-						isConnected[next.x()][next.y()] = true;
-					}
-				}
-			}
-		}
+		for (int k = 0; k < nmoves; ++k)
+			solveCell(MoveLog.moveCell(moves[k]),
+					MoveLog.moveTurns(moves[k]), programmedMoves);
 
 		lastProgMove = 0;
-		parentApp.selectAutosolveMode(true);
+		parentApp.postAutosolveMode(true);
+		postUpdate();
 	}
 
 	/**
@@ -1294,40 +2191,46 @@ public class BoardView extends SurfaceRunner {
 	void autosolveStop() {
 		programmedMoves = null;
 		lastProgMove = 0;
-		parentApp.selectAutosolveMode(false);
+		parentApp.postAutosolveMode(false);
 	}
 
 	/**
 	 * Solve the given cell. This doesn't actually do anything, except add a
 	 * move to the given moves list to put the cell into the solved state.
 	 * 
-	 * @param sc
-	 *            The solved version of the cell.
+	 * @param i
+	 *            Index of the cell in the board.
+	 * @param turns
+	 *            Number of quarter turns needed to solve the cell; -1, 1 or
+	 *            2.
 	 * @param moves
 	 *            List of moves that we're building.
 	 */
-	private void solveCell(Cell sc, LinkedList<int[]> moves) {
-		Cell mc = cellMatrix[sc.x()][sc.y()];
-		Cell.Dir sd = sc.dirs();
-		Cell.Dir md = mc.dirs();
-		if (sc.dirs() != md) {
-			int[] move;
-			if (mc.rotatedDirs(90) == sd) {
-				move = new int[] { mc.x(), mc.y(), 90 };
-				moves.add(move);
-			} else if (mc.rotatedDirs(-90) == sd) {
-				move = new int[] { mc.x(), mc.y(), -90 };
-				moves.add(move);
-			} else if (mc.rotatedDirs(180) == sd) {
-				int rot = rng.nextBoolean() ? 90 : -90;
-				move = new int[] { mc.x(), mc.y(), rot };
-				moves.add(move);
-				move = new int[] { mc.x(), mc.y(), rot };
-				moves.add(move);
-			}
+	private void solveCell(int i, int turns, LinkedList<int[]> moves) {
+		int x = boardStartX + board.x(i);
+		int y = boardStartY + board.y(i);
+		if (turns == 1) {
+			moves.add(new int[] { x, y, 90 });
+		} else if (turns == -1) {
+			moves.add(new int[] { x, y, -90 });
+		} else if (turns == 2) {
+			int rot = rng.nextBoolean() ? 90 : -90;
+			moves.add(new int[] { x, y, rot });
+			moves.add(new int[] { x, y, rot });
 		}
 	}
 
+	/**
+	 * Get the cell view of the given cell in the board model.
+	 * 
+	 * @param i
+	 *            Index of the cell in the board.
+	 * @return The Cell which displays it.
+	 */
+	private Cell cellAt(int i) {
+		return cellMatrix[boardStartX + board.x(i)][boardStartY + board.y(i)];
+	}
+
 	// ******************************************************************** //
 	// State Save/Restore.
 	// ******************************************************************** //
@@ -1344,15 +2247,21 @@ public class BoardView extends SurfaceRunner {
 		// Save the game state of the board.
 		saveBoard(outState);
 
-		// Also save the solved state, if any.
-		if (solvedState != null)
-			outState.putBundle("solvedState", solvedState);
+		// Save the puzzle code, so the game can be identified.
+		PuzzleCode code = game.code();
+		if (code != null)
+			outState.putString("puzzleCode", code.toString());
 	}
 
 	/**
 	 * Save game state so that the user does not lose anything if the game
 	 * process is killed while we are in the background.
 	 * 
+	 * <p>
+	 * The board is saved in the packed form produced by BoardCodec, as it
+	 * will be once any rotations in progress are finished. The blind flags
+	 * are saved as the codec's per-cell marks.
+	 * 
 	 * @param outState
 	 *            A Bundle in which to place any state information we wish to
 	 *            save.
@@ -1360,18 +2269,26 @@ public class BoardView extends SurfaceRunner {
 	private void saveBoard(Bundle outState) {
 		outState.putInt("gridWidth", gridWidth);
 		outState.putInt("gridHeight", gridHeight);
-		outState.putInt("rootX", rootCell.x());
-		outState.putInt("rootY", rootCell.y());
-		outState.putInt("focusX", focusedCell.x());
-		outState.putInt("focusY", focusedCell.y());
-
-		// Save the states of all the cells which are in use.
-		for (int x = 0; x < gridWidth; ++x) {
-			for (int y = 0; y < gridHeight; ++y) {
-				String key = "cell " + x + "," + y;
-				outState.putBundle(key, cellMatrix[x][y].saveState());
-			}
+		outState.putInt("focus", focusedCell.boardIndex());
+
+		final int n = board.size();
+		Board snap = new Board(boardWidth, boardHeight, board.isWrapped());
+		snap.copyFrom(board);
+		boolean[] blind = new boolean[n];
+		for (int i = 0; i < n; ++i) {
+			Cell cell = cellAt(i);
+			snap.rotate(i, cell.pendingTurns());
+			blind[i] = cell.isBlind();
 		}
+		outState.putByteArray("board", BoardCodec.encode(snap, blind));
+
+		// Save the move journal, and the board it starts from.
+		MoveLog moves = game.moves();
+		outState.putByteArray("startBoard",
+				BoardCodec.encode(game.startBoard(), null));
+		outState.putIntArray("moves", moves.toArray());
+		outState.putIntArray("moveTimes", moves.timesToArray());
+		outState.putInt("movePos", moves.size());
 	}
 
 	/**
@@ -1385,150 +2302,108 @@ public class BoardView extends SurfaceRunner {
 	 *         incompatible with the current configuration.
 	 */
 	boolean restoreState(Bundle map, Skill skill) {
+		// Stop the animation thread, if it's running, while we restore
+		// its game state; the app starts it again when it shows the board.
+		surfaceStop();
+		discardEvents();
+
 		// Restore the game state of the board.
 		gameSkill = skill;
-		resetBoard(skill);
-
-		// Restore the actual game state.
-		GameState state = new GameState(cellMatrix);
-		boolean ok = restoreBoard(map, state);
-		rootCell = state.root;
-		setFocus(state.focus);
-
-		// Also restore the solved state, if any.
-		if (ok && map.containsKey("solvedState")) {
-			solvedState = map.getBundle("solvedState");
-			ok = solvedState != null;
-		}
+		boolean ok = restoreBoard(map);
+		if (!ok)
+			resetBoard(skill);
+
+		// Rebuild the connection state from the restored board.
+		if (ok)
+			updateConnections();
+		assistPending = assistEnable;
 
 		return ok;
 	}
 
 	/**
-	 * Restore our game state from the given Bundle.
+	 * Restore the board from the given Bundle. If the screen has been rotated
+	 * since the board was saved, the board is rotated to match: left if we're
+	 * now in landscape, else right; and the focus goes back to the server.
+	 * 
+	 * <p>
+	 * The puzzle code and move journal are restored too, if the board hasn't
+	 * been rotated; a rotated board isn't the puzzle the code describes, and
+	 * the journal starts afresh.
 	 * 
 	 * @param map
 	 *            A Bundle containing the saved state.
-	 * @param state
-	 *            Record to place the restored state in.
-	 * @return true if the state was restored OK; false if the saved state was
+	 * @return true if the board was restored OK; false if the saved state was
 	 *         incompatible with the current configuration.
 	 */
-	private boolean restoreBoard(Bundle map, GameState state) {
-		// Check that the saved board size is compatible with what we
+	private boolean restoreBoard(Bundle map) {
+		// Check that the saved grid size is compatible with what we
 		// have now. If it is identical, then do a straight restore; if
 		// it's rotated, then restore and rotate.
 		int sgw = map.getInt("gridWidth");
 		int sgh = map.getInt("gridHeight");
+		int turns;
 		if (sgw == gridWidth && sgh == gridHeight)
-			return restoreNormal(map, state);
-		else if (sgw == gridHeight && sgh == gridWidth) {
-			if (gridWidth > gridHeight)
-				return restoreRotLeft(map, state);
-			else
-				return restoreRotRight(map, state);
-		} else
+			turns = 0;
+		else if (sgw == gridHeight && sgh == gridWidth)
+			turns = gridWidth > gridHeight ? -1 : 1;
+		else
 			return false;
-	}
 
-	/**
-	 * Restore our game state from the given Bundle.
-	 * 
-	 * @param map
-	 *            A Bundle containing the saved state.
-	 * @param state
-	 *            Record to place the restored state in.
-	 * @return true if the state was restored OK; false if the saved state was
-	 *         incompatible with the current configuration.
-	 */
-	private boolean restoreNormal(Bundle map, GameState state) {
-		// Set up the root cell and focused cell.
-		int rx = map.getInt("rootX");
-		int ry = map.getInt("rootY");
-		state.root = state.matrix[rx][ry];
-		int fx = map.getInt("focusX");
-		int fy = map.getInt("focusY");
-		state.focus = state.matrix[fx][fy];
-
-		// Restore the states of all the cells which are in use.
-		for (int x = 0; x < gridWidth; ++x) {
-			for (int y = 0; y < gridHeight; ++y) {
-				String key = "cell " + x + "," + y;
-				state.matrix[x][y].restoreState(map.getBundle(key));
-			}
+		// Unpack the board, remapping it for the rotation.
+		byte[] data = map.getByteArray("board");
+		if (data == null)
+			return false;
+		Board saved = new Board(1, 1, false);
+		boolean[] blind;
+		try {
+			blind = new boolean[BoardCodec.width(data)
+					* BoardCodec.height(data)];
+			BoardCodec.decode(data, saved, blind, turns);
+		} catch (IllegalArgumentException e) {
+			Log.e(TAG, "Bad saved board: " + e.getMessage());
+			return false;
 		}
+		if (saved.size() > MAX_CELLS || saved.root() < 0)
+			return false;
 
-		return true;
-	}
-
-	/**
-	 * Restore our game state from the given Bundle, rotating the board left as
-	 * we do so.
-	 * 
-	 * @param map
-	 *            A Bundle containing the saved state.
-	 * @param state
-	 *            Record to place the restored state in.
-	 * @return true if the state was restored OK; false if the saved state was
-	 *         incompatible with the current configuration.
-	 */
-	private boolean restoreRotLeft(Bundle map, GameState state) {
-		// Set up the root cell. Flip the co-ordinates.
-		int rx = map.getInt("rootX");
-		int ry = map.getInt("rootY");
-		state.root = state.matrix[ry][gridHeight - rx - 1];
-		int fx = map.getInt("focusX");
-		int fy = map.getInt("focusY");
-		state.focus = state.matrix[fy][gridHeight - fx - 1];
-
-		// Restore the states of all the cells which are in use.
-		for (int y = 0; y < gridHeight; ++y) {
-			for (int x = 0; x < gridWidth; ++x) {
-				if (x >= state.matrix.length || y >= state.matrix[x].length)
-					return false;
-				String key = "cell " + y + "," + x;
-				Bundle cmap = map.getBundle(key);
-				if (cmap == null)
-					return false;
-				state.matrix[x][gridHeight - y - 1].restoreState(cmap);
-				state.matrix[x][gridHeight - y - 1].rotateImmediate(-90);
+		// Get the puzzle code, if it still describes the board.
+		PuzzleCode code = null;
+		String text = map.getString("puzzleCode");
+		if (turns == 0 && text != null) {
+			try {
+				code = PuzzleCode.parse(text);
+				if (code.width() != saved.width()
+						|| code.height() != saved.height())
+					code = null;
+			} catch (IllegalArgumentException e) {
+				Log.e(TAG, "Bad saved puzzle code: " + e.getMessage());
 			}
 		}
 
-		return true;
-	}
-
-	/**
-	 * Restore our game state from the given Bundle, rotating the board right as
-	 * we do so.
-	 * 
-	 * @param map
-	 *            A Bundle containing the saved state.
-	 * @param state
-	 *            Record to place the restored state in.
-	 * @return true if the state was restored OK; false if the saved state was
-	 *         incompatible with the current configuration.
-	 */
-	private boolean restoreRotRight(Bundle map, GameState state) {
-		// Set up the root cell. Flip the co-ordinates.
-		int rx = map.getInt("rootX");
-		int ry = map.getInt("rootY");
-		state.root = state.matrix[gridWidth - ry - 1][rx];
-		int fx = map.getInt("focusX");
-		int fy = map.getInt("focusY");
-		state.focus = state.matrix[gridWidth - fy - 1][fx];
-
-		// Restore the states of all the cells which are in use.
-		for (int y = 0; y < gridHeight; ++y) {
-			for (int x = 0; x < gridWidth; ++x) {
-				if (x >= state.matrix.length || y >= state.matrix[x].length)
-					return false;
-				String key = "cell " + y + "," + x;
-				Bundle cmap = map.getBundle(key);
-				if (cmap == null)
-					return false;
-				state.matrix[gridWidth - x - 1][y].restoreState(cmap);
-				state.matrix[gridWidth - x - 1][y].rotateImmediate(90);
+		// Set up the game and cells from it.
+		resetBoard(saved.width(), saved.height(), saved.isWrapped());
+		game.start(code, saved);
+		for (int i = 0; i < board.size(); ++i)
+			cellAt(i).setBlind(blind[i]);
+		rootCell = cellAt(board.root());
+		int focus = map.getInt("focus", -1);
+		if (turns != 0 || focus < 0 || focus >= board.size())
+			focus = board.root();
+		setFocus(cellAt(focus));
+		showCell(focusedCell, true);
+
+		// Restore the move journal, if we can.
+		byte[] startData = map.getByteArray("startBoard");
+		int[] moves = map.getIntArray("moves");
+		if (turns == 0 && startData != null && moves != null) {
+			try {
+				Board start = new Board(1, 1, false);
+				BoardCodec.decode(startData, start, null, 0);
+				game.restoreMoves(start, moves, map.getIntArray("moveTimes"),
+						map.getInt("movePos"));
+			} catch (IllegalArgumentException e) {
+				Log.e(TAG, "Bad saved move journal: " + e.getMessage());
 			}
 		}
 
@@ -1540,92 +2415,29 @@ public class BoardView extends SurfaceRunner {
 	// ******************************************************************** //
 
 	/**
-	 * Return the given value plus one, but wrapped within the given range.
-	 * 
-	 * @param v
-	 *            Value to increment.
-	 * @param min
-	 *            Minimum allowed value, inclusive.
-	 * @param max
-	 *            Maximum allowed value, not inclusive.
-	 * @return The incremented value, wrapped around to stay in range.
-	 */
-	private static final int incr(int v, int min, int max) {
-		return v < max - 1 ? ++v : min;
-	}
-
-	/**
-	 * Return the given value minus one, but wrapped within the given range.
+	 * Get the index in the given board model of the cell at the given grid
+	 * position.
 	 * 
-	 * @param v
-	 *            Value to decrement.
-	 * @param min
-	 *            Minimum allowed value, inclusive.
-	 * @param max
-	 *            Maximum allowed value, not inclusive.
-	 * @return The decremented value, wrapped around to stay in range.
-	 */
-	private static final int decr(int v, int min, int max) {
-		return v > min ? --v : max - 1;
-	}
-
-	// ******************************************************************** //
-	// Private Classes.
-	// ******************************************************************** //
-
-	/**
-	 * A game state. Saves a state of the game board, either to save where we
-	 * are, or to record an initial or solved position.
+	 * @param x
+	 *            X position of the cell in the cell grid.
+	 * @param y
+	 *            Y position of the cell in the cell grid.
+	 * @param bsx
+	 *            X position of the board's first cell in the grid.
+	 * @param bsy
+	 *            Y position of the board's first cell in the grid.
+	 * @param b
+	 *            The board model.
+	 * @return The index of the cell in the board; -1 if it is outside the
+	 *         playing area.
 	 */
-	private class GameState {
-		// Create a game state based on the given cell matrix.
-		GameState(Cell[][] m) {
-			matrix = m;
-		}
-
-		// Create a game state with a new cell matrix.
-		GameState(int w, int h, Skill skill) {
-			matrix = new Cell[w][h];
-			for (int y = 0; y < h; ++y) {
-				for (int x = 0; x < w; ++x) {
-					Cell cell = new Cell(parentApp, BoardView.this, x, y);
-					matrix[x][y] = cell;
-				}
-			}
-
-			// Save the width and height of the playing board for this skill
-			// level, and the board placement within the overall cell grid.
-			int bw = screenConfig.getBoardWidth(skill, w, h);
-			int bh = screenConfig.getBoardHeight(skill, w, h);
-			int bsx = (w - bw) / 2;
-			int bex = bsx + bw;
-			int bsy = (h - bh) / 2;
-			int bey = bsy + bh;
-
-			boolean wrap = skill.wrapped;
-			Cell u, d, l, r;
-			for (int x = 0; x < w; x++) {
-				for (int y = 0; y < h; y++) {
-					matrix[x][y].reset(wrap ? Cell.Dir.NONE : Cell.Dir.FREE);
-
-					// Re-calculate who this cell's neighbours are.
-					u = d = l = r = null;
-					if (wrap || y > bsy)
-						u = matrix[x][decr(y, bsy, bey)];
-					if (wrap || y < bey - 1)
-						d = matrix[x][incr(y, bsy, bey)];
-					if (wrap || x > bsx)
-						l = matrix[decr(x, bsx, bex)][y];
-					if (wrap || x < bex - 1)
-						r = matrix[incr(x, bsx, bex)][y];
-					matrix[x][y].setNeighbours(u, d, l, r);
-				}
-			}
-		}
-
-		Cell root = null;
-		Cell focus = null;
-		Cell[][] matrix = null;
+	private static final int boardIndex(int x, int y, int bsx, int bsy,
+			Board b) {
+		int bx = x - bsx;
+		int by = y - bsy;
+		if (bx < 0 || bx >= b.width() || by < 0 || by >= b.height())
+			return -1;
+		return b.index(bx, by);
 	}
 
 	// ******************************************************************** //
@@ -1641,12 +2453,59 @@ public class BoardView extends SurfaceRunner {
 	// Time a blip takes to cross half a cell, in ms.
 	private static final long BLIPS_TIME = 300;
 
+	// Number of blip steps between the server sending out new blips.
+	private static final int BLIPS_SPAWN = 6;
+
 	// Rate at which we run moves in solve mode, in ms.
 	private static final long SOLVE_STEP_TIME = 800;
 
 	// Time taken to rotate a cell in solve mode, in ms.
 	private static final long SOLVE_ROTATE_TIME = 350;
 
+	// Maximum number of cells the assist mode locks in one update.
+	private static final int ASSIST_LOCKS = 4;
+
+	// Input event types. Each event is packed into an int, with the type
+	// in the top 8 bits and a signed argument in the rest. EV_FOCUS
+	// focuses the cell at matrix position (arg >> 12, arg & 0xfff);
+	// EV_MOVE_FOCUS moves the focus in direction FOCUS_DIRS[arg];
+	// EV_ROTATE turns the focused cell, arg being -1 for left, 1 for
+	// right; EV_LOCK toggles its lock. EV_DRAG_START starts a drag from
+	// the current view, and EV_DRAG scrolls by the screen distance
+	// (arg >> 12, arg << 20 >> 20) from there. EV_ZOOM_AT sets the screen
+	// position (arg >> 12, arg & 0xfff) to zoom about, and EV_ZOOM
+	// multiplies the zoom by arg / ZOOM_ONE. These are acted on even
+	// while executing programmed moves. The rest take no argument.
+	private static final int EV_FOCUS = 1;
+	private static final int EV_MOVE_FOCUS = 2;
+	private static final int EV_ROTATE = 3;
+	private static final int EV_LOCK = 4;
+	private static final int EV_UNDO = 5;
+	private static final int EV_REDO = 6;
+	private static final int EV_HINT = 7;
+	private static final int EV_AUTOSOLVE = 8;
+	private static final int EV_DRAG_START = 9;
+	private static final int EV_DRAG = 10;
+	private static final int EV_ZOOM_AT = 11;
+	private static final int EV_ZOOM = 12;
+
+	// EV_ZOOM's argument for a factor of 1.
+	private static final int ZOOM_ONE = 1 << 16;
+
+	// Screen distance, in pixels, after which a drag is started afresh,
+	// to keep EV_DRAG's argument in range.
+	private static final int DRAG_SPAN = 1024;
+
+	// The directions EV_MOVE_FOCUS moves in, and their X and Y deltas.
+	private static final Cell.Dir[] FOCUS_DIRS = { Cell.Dir.U___,
+			Cell.Dir._R__, Cell.Dir.__D_, Cell.Dir.___L };
+	private static final int[] FOCUS_DX = { 0, 1, 0, -1 };
+	private static final int[] FOCUS_DY = { -1, 0, 1, 0 };
+
+	// Size of the input event ring. The UI thread never gets far ahead
+	// of the animation thread, so this is plenty.
+	private static final int INPUT_EVENTS = 256;
+
 	// Random number generator for the game. We use a Mersenne Twister,
 	// which is a high-quality and fast implementation of java.util.Random.
 	// private static final Random rng = new MTRandom();
@@ -1660,11 +2519,24 @@ public class BoardView extends SurfaceRunner {
 	private NetScramble parentApp;
 
 	// Screen configuration which matches the physical screen size.
-	private Screen screenConfig = null;
+	private ScreenLayout screenConfig = null;
 
 	// Iff true, draw blips representing data moving through the network.
 	private boolean drawBlips = true;
 
+	// Iff true, lock cells as soon as they're forced into place. If
+	// assistPending, there may be cells to lock. assistCells is working
+	// storage for the cells to lock.
+	private boolean assistEnable = false;
+	private boolean assistPending = false;
+	private final int[] assistCells = new int[ASSIST_LOCKS];
+
+	// The board size the player has chosen.
+	private BoardSize boardSize = BoardSize.SCREEN;
+
+	// True to generate networks with several servers.
+	private boolean multiServer = false;
+
 	// Width and height of the playing board, in cells. This is tailored
 	// to suit the screen size and orientation. It should be invariant on
 	// any given device except that it will rotate 90 degrees when the
@@ -1672,22 +2544,88 @@ public class BoardView extends SurfaceRunner {
 	private int gridWidth;
 	private int gridHeight;
 
-	// The Cell objects which make up the board. This matrix is gridWidth
-	// by gridHeight, which is large enough to contain the game board at
-	// any skill level.
+	// The Cell objects which make up the board. This matrix is matrixWidth
+	// by matrixHeight, which is the grid size, or the board size if the
+	// board is bigger than the screen.
+	private int matrixWidth;
+	private int matrixHeight;
 	private Cell[][] cellMatrix;
 
-	// "Solved" (i.e. initial, pre-scrambled) state of the board. This
-	// is the canonical solution.
-	private Bundle solvedState = null;
+	// The headless game, and its model of the playing area, which holds
+	// the logical game state. The cells in the playing area are views of
+	// the board.
+	private Game game;
+	private Board board;
+
+	// Cache of puzzles generated in the background. It picks puzzle
+	// codes with its own fast PRNG, seeded from the secure one.
+	private final PuzzleCache puzzleCache = new PuzzleCache(new FastRandom(
+			rng.nextLong()));
+
+	// If we're waiting for the background generator to make the puzzle
+	// for a new game, the skill level of the game; else null.
+	private Skill pendingSkill = null;
 
 	// Width and height of the cells in the board, in pixels.
 	private int cellWidth;
 	private int cellHeight;
 
-	// Horizontal and vertical padding used to center the board in the window.
-	private int paddingX = 0;
-	private int paddingY = 0;
+	// Size of the screen, in pixels.
+	private int screenWidth;
+	private int screenHeight;
+
+	// The pixel format of the surface.
+	private Bitmap.Config surfaceConfig = null;
+
+	// Position on the board of the top left of the screen, in pixels;
+	// and the zoom, which is the size of a board pixel on the screen.
+	// The position is negative if the board is smaller than the screen,
+	// and is centred. The view belongs to the animation thread, like the
+	// game state; drags and pinches reach it as input events.
+	private int viewX = 0;
+	private int viewY = 0;
+	private float zoom = 1f;
+
+	// Copy of the view which the UI thread uses to find the cell under a
+	// touch. setView() updates it under viewLock.
+	private final Object viewLock = new Object();
+	private int touchViewX = 0;
+	private int touchViewY = 0;
+	private float touchZoom = 1f;
+
+	// The view the screen was last drawn at. If viewMoved is set, the
+	// whole screen needs to be redrawn.
+	private int drawnViewX = 0;
+	private int drawnViewY = 0;
+	private float drawnZoom = 1f;
+	private volatile boolean viewMoved = true;
+
+	// Detector for pinches, which zoom the view.
+	private ScaleGestureDetector scaleDetector;
+
+	// Start of the touch which may be dragging the view, on the screen.
+	// dragging is set once it has moved far enough to be a drag. These
+	// belong to the UI thread.
+	private float dragStartX;
+	private float dragStartY;
+	private boolean dragging = false;
+
+	// The view position when the animation thread saw the drag start,
+	// and the middle of the pinch being zoomed on the screen.
+	private int dragViewX;
+	private int dragViewY;
+	private int zoomFocusX;
+	private int zoomFocusY;
+
+	// Set when the fingers on the screen have changed, so the drag should
+	// start again from the next position.
+	private boolean dragRestart = false;
+
+	// The cells which are animating, so doUpdate() needs to update them.
+	// Cells add themselves when they start animating, which only happens
+	// as part of a change to the game state.
+	private Cell[] activeCells = new Cell[64];
+	private int activeCount = 0;
 
 	// Size of the game board, and offset of the first and last active cells.
 	// These are set up to define the actual board area in use for a given
@@ -1699,25 +2637,41 @@ public class BoardView extends SurfaceRunner {
 	private int boardEndX;
 	private int boardEndY;
 
-	// Backing bitmap for the board, and a Canvas to draw in it.
-	private Bitmap backingBitmap = null;
-	private Canvas backingCanvas = null;
+	// Cache of the tiles the board is drawn in, and the width and height
+	// of each tile in cells.
+	private TileCache tileCache = null;
+	private int tileCells = 1;
+
+	// The low-detail bitmap of the whole cell matrix, which we draw when
+	// zoomed far out, and a Canvas to draw in it; the matrix size it was
+	// made for, and the size of each cell in it.
+	private Bitmap lodBitmap = null;
+	private Canvas lodCanvas = null;
+	private int lodColumns = 0;
+	private int lodRows = 0;
+	private int lodCell = 0;
+
+	// Painter for bitmaps drawn scaled to the screen.
+	private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	// Screen area covered by the data blips drawn in the last frame, and
+	// the region being redrawn in the current frame. Working storage
+	// for the part of the board on screen, and the changes in it.
+	private final Rect blipRect = new Rect();
+	private final Rect drawRect = new Rect();
+	private final Rect viewRect = new Rect();
+	private final Rect changeRect = new Rect();
+	private final Rect lodRect = new Rect();
 
 	// The skill level of the current game.
 	private Skill gameSkill;
 
-	// The rootCell cell of the layout; where the server is.
+	// The root cell of the layout; where the (first) server is.
 	private Cell rootCell;
 
 	// The cell which currently has the focus.
 	private Cell focusedCell;
 
-	// Connected flags for each cell in the board; used in updateConnections().
-	private boolean isConnected[][];
-
-	// List of outstanding connected cells; used in updateConnections().
-	private LinkedList<Cell> connectingCells;
-
 	// Cell currently being pressed in a touch event.
 	private Cell pressedCell = null;
 
@@ -1727,12 +2681,28 @@ public class BoardView extends SurfaceRunner {
 	private Handler longPressHandler = new Handler();
 	private boolean longPressed = false;
 
+	// Input events posted by the UI thread for the animation thread to act
+	// on, and working storage for draining them.
+	private final EventRing inputEvents = new EventRing(INPUT_EVENTS);
+	private final int[] eventBuffer = new int[32];
+
+	// Status of the board for the UI thread, copied under statusLock by
+	// the thread which owns the game state: the number of cells connected
+	// to each server, and the number of unconnected cells at the last win.
+	private final Object statusLock = new Object();
+	private final int[] statusSizes = new int[Board.MAX_ROOTS];
+	private int statusServers = 0;
+	private int statusUnused = 0;
+
 	// The time in ms at which we last completed a data blip move cycle.
 	private long blipsLastAdvance = 0;
 
 	// Count of data blip generations.
 	private int blipCount = 0;
 
+	// The simulation of the data blips flowing through the network.
+	private final BlipField blipField = new BlipField();
+
 	// Programed moves -- if this list is non-null and non-empty,
 	// it contains a set of moves to be performed without user input.
 	// Each move consists of a cell X and Y, and the number of degrees
@@ -29,11 +29,16 @@ import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.os.Bundle;
+import android.graphics.Rect;
+
+import com.silentservices.netscramble.engine.Board;
 
 /**
- * This class implements a cell in the game board. It handles the logic and
- * state of the cell, and implements the visible view of the cell.
+ * This class implements a cell in the game board. It implements the visible
+ * view of the cell, and its animation state. The logical state of the cell --
+ * its connections, and whether it is connected, locked or the root -- is held
+ * in a {@link Board}, of which the cell is a view; cells outside the playing
+ * area have no place in the board, and just hold their own (empty) state.
  */
 class Cell {
 
@@ -110,6 +115,7 @@ class Cell {
 	 *            This cell's y-position in the board grid.
 	 */
 	Cell(NetScramble parent, BoardView board, int x, int y) {
+		parentView = board;
 		xindex = x;
 		yindex = y;
 
@@ -118,7 +124,6 @@ class Cell {
 		cellTop = 0;
 		cellWidth = 0;
 		cellHeight = 0;
-		cellPaint = new Paint();
 
 		// Reset the cell's state.
 		reset(Dir.NONE);
@@ -159,6 +164,15 @@ class Cell {
 			d.greyImg = greyOut(pixmap, config);
 		}
 
+		// Pre-render the cables at the angles we use to animate them
+		// turning. Free the old set first, as they're big.
+		if (cableAtlas != null)
+			cableAtlas.recycle();
+		cableAtlas = new SpriteAtlas(width, height);
+		for (Dir d : Dir.dirs)
+			if (d.imageId != 0)
+				cableAtlas.addShape(d.ordinal(), d.normalImg, d.greyImg);
+
 		// Load the other pixmaps we use.
 		for (Image i : Image.values()) {
 			Bitmap base = BitmapFactory.decodeResource(res, i.resid);
@@ -212,10 +226,13 @@ class Cell {
 	 */
 	void reset(Dir d) {
 		connectedDirs = d;
-		isConnected = false;
+		if (boardIndex >= 0) {
+			board.setDirs(boardIndex, d == Dir.NONE ? 0 : d.ordinal());
+			board.setLocked(boardIndex, false);
+			board.setBusy(boardIndex, false);
+			board.removeRoot(boardIndex);
+		}
 		isFullyConnected = false;
-		isRoot = false;
-		isLocked = false;
 		isBlind = false;
 		rotateTarget = 0;
 		rotateStart = 0;
@@ -223,9 +240,6 @@ class Cell {
 		highlightOn = false;
 		highlightStart = 0;
 		highlightPos = 0;
-		blipsIncoming = 0;
-		blipsOutgoing = 0;
-		blipsTransfer = 0;
 		haveFocus = false;
 
 		invalidate();
@@ -240,9 +254,9 @@ class Cell {
 	 * is where we first discover our window size, so set our geometry to match.
 	 * 
 	 * @param left
-	 *            Left X co-ordinate of this cell in the view.
+	 *            Left X co-ordinate of this cell on the whole board.
 	 * @param top
-	 *            Top Y co-ordinate of this cell in the view.
+	 *            Top Y co-ordinate of this cell on the whole board.
 	 * @param width
 	 *            Current width of this view.
 	 * @param height
@@ -278,55 +292,29 @@ class Cell {
 		return yindex;
 	}
 
-	// ******************************************************************** //
-	// Neighbouring Cell Tracking.
-	// ******************************************************************** //
-
 	/**
-	 * Set the cell's neighbours in the game matrix. A neighbour may be null if
-	 * there is no neighbour in that direction. If wrapping is enabled, the
-	 * neighbour setup should reflect this.
-	 * 
-	 * This information can change between games, due to board size and wrapping
-	 * changes.
+	 * Attach this cell to the given board model. This changes from game to
+	 * game, as the board size varies with the skill level.
 	 * 
-	 * @param u
-	 *            Neighbouring cell up from this one.
-	 * @param d
-	 *            Neighbouring cell down from this one.
-	 * @param l
-	 *            Neighbouring cell left from this one.
-	 * @param r
-	 *            Neighbouring cell right from this one.
+	 * @param b
+	 *            The board which holds this cell's logical state.
+	 * @param index
+	 *            This cell's index in the board; -1 if the cell is outside
+	 *            the playing area.
 	 */
-	void setNeighbours(Cell u, Cell d, Cell l, Cell r) {
-		nextU = u;
-		nextD = d;
-		nextL = l;
-		nextR = r;
+	void setModel(Board b, int index) {
+		board = b;
+		boardIndex = index;
 	}
 
 	/**
-	 * Get the neighbouring cell in the given direction from this cell.
+	 * Get the index of this cell in its board model.
 	 * 
-	 * @param d
-	 *            The direction to look in.
-	 * @return The next cell in the given direction; may be null, or may
-	 *         actually be at the other edge of the board if wrapping is on.
+	 * @return This cell's index in the board; -1 if the cell is outside the
+	 *         playing area.
 	 */
-	Cell next(Dir d) {
-		switch (d) {
-		case U___:
-			return nextU;
-		case _R__:
-			return nextR;
-		case __D_:
-			return nextD;
-		case ___L:
-			return nextL;
-		default:
-			throw new RuntimeException("Cell.next() called with bad dir");
-		}
+	int boardIndex() {
+		return boardIndex;
 	}
 
 	// ******************************************************************** //
@@ -340,7 +328,9 @@ class Cell {
 	 * @return The directions that this cell is connected to, outwards.
 	 */
 	Dir dirs() {
-		return connectedDirs;
+		if (boardIndex < 0)
+			return connectedDirs;
+		return Dir.dirs[board.dirs(boardIndex)];
 	}
 
 	/**
@@ -352,7 +342,7 @@ class Cell {
 	 * @return The directions that this cell is connected to, outwards.
 	 */
 	Dir rotatedDirs(int a) {
-		int bits = connectedDirs.ordinal();
+		int bits = dirs().ordinal();
 
 		if (a == 90)
 			bits = ((bits & 0x01) << 3) | ((bits & 0x0e) >> 1);
@@ -375,8 +365,7 @@ class Cell {
 	 *         false.
 	 */
 	boolean hasConnection(Dir d) {
-		return !isRotated()
-				&& (connectedDirs.ordinal() & d.ordinal()) == d.ordinal();
+		return boardIndex >= 0 && board.hasConnection(boardIndex, d.ordinal());
 	}
 
 	/**
@@ -386,16 +375,7 @@ class Cell {
 	 * @return The number of outward connections from this cell.
 	 */
 	int numDirs() {
-		if (connectedDirs == Dir.NONE)
-			return 0;
-
-		int bits = connectedDirs.ordinal();
-		int n = 0;
-		for (int i = 0; i < 4; ++i) {
-			n += bits & 0x01;
-			bits >>= 1;
-		}
-		return n;
+		return boardIndex < 0 ? 0 : board.numDirs(boardIndex);
 	}
 
 	/**
@@ -407,7 +387,7 @@ class Cell {
 	 *            New connected direction to add for this cell.
 	 */
 	void addDir(Dir d) {
-		int bits = connectedDirs.ordinal();
+		int bits = dirs().ordinal();
 		if ((bits & d.ordinal()) == d.ordinal())
 			return;
 
@@ -422,9 +402,12 @@ class Cell {
 	 *            New connected directions for this cell.
 	 */
 	void setDirs(Dir d) {
-		if (d == connectedDirs)
+		if (d == dirs())
 			return;
-		connectedDirs = d;
+		if (boardIndex < 0)
+			connectedDirs = d;
+		else
+			board.setDirs(boardIndex, d.ordinal());
 		invalidate();
 	}
 
@@ -433,19 +416,31 @@ class Cell {
 	// ******************************************************************** //
 
 	/**
-	 * Set the "root" flag on this cell. The root cell displays the server
-	 * image.
+	 * Set the "root" flag on this cell. A root cell displays the server
+	 * image. Other root cells are left as they are.
 	 * 
 	 * @param b
 	 *            New "root" flag for this cell.
 	 */
 	void setRoot(boolean b) {
-		if (isRoot == b)
+		if (boardIndex < 0 || isRoot() == b)
 			return;
-		isRoot = b;
+		if (b)
+			board.addRoot(boardIndex);
+		else
+			board.removeRoot(boardIndex);
 		invalidate();
 	}
 
+	/**
+	 * Determine whether this cell is a root cell; i.e. a server.
+	 * 
+	 * @return This cell's "root" flag.
+	 */
+	boolean isRoot() {
+		return boardIndex >= 0 && board.isRoot(boardIndex);
+	}
+
 	/**
 	 * Set this cell's "blind" flag. A blind cell doesn't display its
 	 * connections; it does display the server or terminal if appropriate. This
@@ -462,16 +457,12 @@ class Cell {
 	}
 
 	/**
-	 * Rotate this cell right now -- no animation. This is used during restore,
-	 * when we need to adjust the state of the board for device rotations, not
-	 * during play.
+	 * Determine whether this cell's "blind" flag is set.
 	 * 
-	 * @param a
-	 *            The angle in degrees to rotate to; clockwise positive.
+	 * @return This cell's "blind" flag.
 	 */
-	void rotateImmediate(int a) {
-		setDirs(rotatedDirs(a));
-		invalidate();
+	boolean isBlind() {
+		return isBlind;
 	}
 
 	/**
@@ -480,7 +471,7 @@ class Cell {
 	 * @return This cell's "locked" flag.
 	 */
 	boolean isLocked() {
-		return isLocked;
+		return boardIndex >= 0 && board.isLocked(boardIndex);
 	}
 
 	/**
@@ -491,34 +482,21 @@ class Cell {
 	 *            New "locked" flag for this cell.
 	 */
 	void setLocked(boolean newlocked) {
-		if (isLocked == newlocked)
+		if (boardIndex < 0 || isLocked() == newlocked)
 			return;
-		isLocked = newlocked;
+		board.setLocked(boardIndex, newlocked);
 		invalidate();
 	}
 
 	/**
-	 * Determine whether this cell's "connected" flag is set.
+	 * Determine whether this cell's "connected" flag is set. This is
+	 * maintained by the board's connection updates; the board's owner must
+	 * invalidate the cells whose state changes.
 	 * 
 	 * @return This cell's "connected" flag.
 	 */
 	boolean isConnected() {
-		return isConnected;
-	}
-
-	/**
-	 * Set this cell's "connected" flag; this determines how the cell is
-	 * displayed (cables are greyed-out if not connected).
-	 * 
-	 * @param b
-	 *            New "connected" flag for this cell.
-	 */
-	void setConnected(boolean b) {
-		if (isConnected == b)
-			return;
-		isConnected = b;
-
-		invalidate();
+		return boardIndex >= 0 && board.isConnected(boardIndex);
 	}
 
 	/**
@@ -549,18 +527,6 @@ class Cell {
 		invalidate();
 	}
 
-	/**
-	 * Add a data blip on the incoming connection in the given direction, if we
-	 * have one.
-	 * 
-	 * @param d
-	 *            Direction the blip is in, from our point of view.
-	 */
-	void setBlip(Dir d) {
-		if (hasConnection(d))
-			blipsIncoming |= d.ordinal();
-	}
-
 	// ******************************************************************** //
 	// Animation Handling.
 	// ******************************************************************** //
@@ -601,13 +567,12 @@ class Cell {
 			rotateTime = time;
 		}
 
-		// Add the given rotation in.
+		// Add the given rotation in. While we're turning, we have no
+		// connections.
 		rotateTarget += a;
-
-		// All data blips are lost.
-		blipsIncoming = 0;
-		blipsOutgoing = 0;
-		blipsTransfer = 0;
+		if (boardIndex >= 0)
+			board.setBusy(boardIndex, rotateTarget != 0);
+		parentView.cellActive(this);
 	}
 
 	/**
@@ -619,6 +584,17 @@ class Cell {
 		return rotateTarget != 0;
 	}
 
+	/**
+	 * Get the number of clockwise quarter turns this cell still has to make
+	 * to finish its current rotation.
+	 * 
+	 * @return The number of quarter turns outstanding; negative for
+	 *         anticlockwise.
+	 */
+	int pendingTurns() {
+		return (int) rotateTarget / 90;
+	}
+
 	/**
 	 * Set the highlight state of the cell.
 	 */
@@ -627,6 +603,38 @@ class Cell {
 		highlightOn = true;
 		highlightStart = System.currentTimeMillis();
 		highlightPos = 0;
+		parentView.cellActive(this);
+	}
+
+	/**
+	 * Query whether this cell is animating, and so needs doUpdate() to be
+	 * called each frame.
+	 * 
+	 * @return true iff the cell is rotating or highlighted.
+	 */
+	boolean isAnimating() {
+		return rotateTarget != 0 || highlightOn;
+	}
+
+	/**
+	 * Query whether this cell is in the board view's list of animating
+	 * cells.
+	 * 
+	 * @return true iff the cell is listed.
+	 */
+	boolean isActive() {
+		return isActive;
+	}
+
+	/**
+	 * Note whether this cell is in the board view's list of animating
+	 * cells.
+	 * 
+	 * @param active
+	 *            true iff the cell is listed.
+	 */
+	void setActive(boolean active) {
+		isActive = active;
 	}
 
 	/**
@@ -683,6 +691,8 @@ class Cell {
 					}
 				}
 				setDirs(dir);
+				if (boardIndex >= 0)
+					board.setBusy(boardIndex, rotateTarget != 0);
 				changed = true;
 			}
 
@@ -709,79 +719,71 @@ class Cell {
 		return changed;
 	}
 
+	// ******************************************************************** //
+	// Cell Drawing.
+	// ******************************************************************** //
+
 	/**
-	 * Move on all the data blips one step, i.e. half a cell width. This steps
-	 * them from whichever connection leg they're on to the next one.
-	 * 
-	 * @param count
-	 *            Blip generation count.
+	 * Set this cell's state to be invalid, forcing a redraw, and make sure
+	 * the board view draws another frame.
 	 */
-	void advanceBlips(int count) {
-		// See which outgoing blips need to be transferred onto the next
-		// cell. Accumulate their directions in blipsTransfer.
-		blipsTransfer = 0;
-		for (int c = 0; c < Dir.cardinals.length; ++c) {
-			Dir d = Dir.cardinals[c];
-			int ord = d.ordinal();
-			if ((blipsOutgoing & ord) != 0 && hasConnection(d))
-				blipsTransfer |= ord;
-		}
-		blipsOutgoing = 0;
-
-		// All incoming blips get deleted, and become outgoing blips on
-		// whatever directions did not have incoming blips.
-		if (blipsIncoming != 0) {
-			for (int c = 0; c < Dir.cardinals.length; ++c) {
-				Dir d = Dir.cardinals[c];
-				int ord = d.ordinal();
-				if ((blipsIncoming & ord) == 0 && hasConnection(d))
-					blipsOutgoing |= ord;
-			}
-		}
-		blipsIncoming = 0;
-
-		// If we're the server, create new outgoing blips once in a while.
-		if (isRoot && count % 6 == 0) {
-			for (int c = 0; c < Dir.cardinals.length; ++c) {
-				Dir d = Dir.cardinals[c];
-				int ord = d.ordinal();
-				if (hasConnection(d))
-					blipsOutgoing |= ord;
-			}
-		}
-
-		// Note that we don't invalidate(). Blips are drawn directly to
-		// the screen in a separate pass.
+	void invalidate() {
+		stateValid = false;
+		lodValid = false;
+		parentView.postUpdate();
 	}
 
 	/**
-	 * Pass on all blips which were outgoing onto their next cell.
+	 * Add the board area which this cell needs redrawn in the next frame to
+	 * the given region, if the cell is invalid.
+	 * 
+	 * @param dirty
+	 *            Region to add our area to.
 	 */
-	void transferBlips() {
-		for (int c = 0; c < Dir.cardinals.length; ++c) {
-			Dir d = Dir.cardinals[c];
-			int ord = d.ordinal();
-			if ((blipsTransfer & ord) != 0) {
-				Cell n = next(d);
-				if (n != null)
-					n.setBlip(d.reverse);
-			}
-		}
-		blipsTransfer = 0;
+	void addDirtyRegion(Rect dirty) {
+		if (!stateValid)
+			dirty.union(cellLeft, cellTop, cellLeft + cellWidth, cellTop
+					+ cellHeight);
+	}
 
-		// Note that we don't invalidate(). Blips are drawn directly to
-		// the screen in a separate pass.
+	/**
+	 * Add the board area which this cell's data blips can reach to the given
+	 * region, if its blips are visible. Blips can reach half way into the
+	 * neighbouring cells.
+	 * 
+	 * @param r
+	 *            Region to add our blips' area to.
+	 */
+	void addBlipRegion(Rect r) {
+		if (!isBlind)
+			r.union(cellLeft - cellWidth / 2, cellTop - cellHeight / 2,
+					cellLeft + cellWidth * 3 / 2, cellTop + cellHeight * 3 / 2);
 	}
 
-	// ******************************************************************** //
-	// Cell Drawing.
-	// ******************************************************************** //
+	/**
+	 * Determine whether the area this cell's data blips can reach intersects
+	 * the given region.
+	 * 
+	 * @param r
+	 *            Region to check.
+	 * @return true iff our blips' area intersects r.
+	 */
+	boolean blipsIntersect(Rect r) {
+		return r.intersects(cellLeft - cellWidth / 2, cellTop - cellHeight / 2,
+				cellLeft + cellWidth * 3 / 2, cellTop + cellHeight * 3 / 2);
+	}
 
 	/**
-	 * Set this cell's state to be invalid, forcing a redraw.
+	 * Add the board area which this cell needs redrawn in the next frame to
+	 * the given region, if the cell's low-detail image is invalid.
+	 * 
+	 * @param dirty
+	 *            Region to add our area to.
 	 */
-	void invalidate() {
-		stateValid = false;
+	void addLodDirtyRegion(Rect dirty) {
+		if (!lodValid)
+			dirty.union(cellLeft, cellTop, cellLeft + cellWidth, cellTop
+					+ cellHeight);
 	}
 
 	/**
@@ -810,17 +812,12 @@ class Cell {
 		cellPaint.setStyle(Paint.Style.STROKE);
 		cellPaint.setColor(0xff000000);
 
+		// Get the cell's logical state from the board.
+		final Dir dirs = dirs();
+		final boolean isConnected = isConnected();
+
 		// Draw the background tile.
-		{
-			Image bgImage = Image.BG;
-			if (connectedDirs == Dir.NONE)
-				bgImage = Image.NOTHING;
-			else if (connectedDirs == Dir.FREE)
-				bgImage = Image.EMPTY;
-			else if (isLocked)
-				bgImage = Image.LOCKED;
-			canvas.drawBitmap(bgImage.bitmap, sx, sy, null);
-		}
+		canvas.drawBitmap(backgroundImage(dirs).bitmap, sx, sy, null);
 
 		// Draw the highlight band, if active.
 		if (highlightOn) {
@@ -837,38 +834,33 @@ class Cell {
 		}
 
 		// If we're not empty, draw the cables / equipment.
-		if (connectedDirs != Dir.FREE && connectedDirs != Dir.NONE) {
+		if (dirs != Dir.FREE && dirs != Dir.NONE) {
 			if (!isBlind) {
-				// We need to rotate the drawing matrix if the cable is
-				// rotated.
-				canvas.save();
+				// If the cable is rotated, draw the pre-rendered image for
+				// its angle. If we don't have one, rotate the drawing
+				// matrix.
+				Bitmap pixmap = null;
 				if (rotateTarget != 0)
-					canvas.rotate(rotateAngle, midx, midy);
-
-				// Draw the cable pixmap.
-				Bitmap pixmap = isConnected ? connectedDirs.normalImg
-						: connectedDirs.greyImg;
-				canvas.drawBitmap(pixmap, sx, sy, null);
-				canvas.restore();
+					pixmap = cableAtlas.frame(dirs.ordinal(), isConnected,
+							rotateAngle);
+				if (pixmap != null)
+					canvas.drawBitmap(pixmap, sx, sy, null);
+				else {
+					canvas.save();
+					if (rotateTarget != 0)
+						canvas.rotate(rotateAngle, midx, midy);
+
+					// Draw the cable pixmap.
+					pixmap = isConnected ? dirs.normalImg : dirs.greyImg;
+					canvas.drawBitmap(pixmap, sx, sy, null);
+					canvas.restore();
+				}
 			}
 
 			// Draw the equipment (terminal, server) if any.
-			{
-				Image equipImage = null;
-				if (isRoot) {
-					if (isFullyConnected)
-						equipImage = Image.SERVER1;
-					else
-						equipImage = Image.SERVER;
-				} else if (numDirs() == 1) {
-					if (isConnected)
-						equipImage = Image.COMP2;
-					else
-						equipImage = Image.COMP1;
-				}
-				if (equipImage != null)
-					canvas.drawBitmap(equipImage.bitmap, sx, sy, null);
-			}
+			Image equipImage = equipmentImage(isConnected);
+			if (equipImage != null)
+				canvas.drawBitmap(equipImage.bitmap, sx, sy, null);
 		}
 
 		// If this is the focused cell, indicate this by drawing a red
@@ -886,6 +878,74 @@ class Cell {
 		stateValid = true;
 	}
 
+	/**
+	 * Draw the low-detail image of this cell, for a view of the board so
+	 * zoomed out that the cells are only a few pixels across. The cell is
+	 * drawn unrotated, with no highlight or data blips, at its position in
+	 * a bitmap of the whole cell matrix.
+	 * 
+	 * @param canvas
+	 *            Canvas of the low-detail bitmap.
+	 * @param size
+	 *            Size of each cell in the low-detail bitmap.
+	 */
+	void doDrawLod(Canvas canvas, int size) {
+		// Nothing to do if we're up to date.
+		if (lodValid)
+			return;
+
+		lodRect.set(xindex * size, yindex * size, (xindex + 1) * size,
+				(yindex + 1) * size);
+		final Dir dirs = dirs();
+		final boolean isConnected = isConnected();
+
+		canvas.drawBitmap(backgroundImage(dirs).bitmap, null, lodRect,
+				lodPaint);
+		if (dirs != Dir.FREE && dirs != Dir.NONE) {
+			if (!isBlind) {
+				Bitmap pixmap = isConnected ? dirs.normalImg : dirs.greyImg;
+				canvas.drawBitmap(pixmap, null, lodRect, lodPaint);
+			}
+			Image equipImage = equipmentImage(isConnected);
+			if (equipImage != null)
+				canvas.drawBitmap(equipImage.bitmap, null, lodRect, lodPaint);
+		}
+
+		lodValid = true;
+	}
+
+	/**
+	 * Get the background image for this cell.
+	 * 
+	 * @param dirs
+	 *            The cell's connected directions.
+	 * @return The background image.
+	 */
+	private Image backgroundImage(Dir dirs) {
+		if (dirs == Dir.NONE)
+			return Image.NOTHING;
+		else if (dirs == Dir.FREE)
+			return Image.EMPTY;
+		else if (isLocked())
+			return Image.LOCKED;
+		return Image.BG;
+	}
+
+	/**
+	 * Get the equipment image (terminal, server) for this cell, if any.
+	 * 
+	 * @param isConnected
+	 *            Whether the cell is connected to the server.
+	 * @return The equipment image; null if none.
+	 */
+	private Image equipmentImage(boolean isConnected) {
+		if (isRoot())
+			return isFullyConnected ? Image.SERVER1 : Image.SERVER;
+		else if (numDirs() == 1)
+			return isConnected ? Image.COMP2 : Image.COMP1;
+		return null;
+	}
+
 	/**
 	 * This method is called to ask the cell to draw its active data blips. This
 	 * happens in a separate pass, so that blips which are in transition from
@@ -898,15 +958,20 @@ class Cell {
 	 * @param frac
 	 *            Fractional position of the data blips, if any, along whatever
 	 *            connection leg they're on.
+	 * @param incoming
+	 *            Direction bits of the blips coming in to this cell.
+	 * @param outgoing
+	 *            Direction bits of the blips going out of this cell.
 	 */
-	protected void doDrawBlips(Canvas canvas, long now, float frac) {
+	protected void doDrawBlips(Canvas canvas, long now, float frac,
+			int incoming, int outgoing) {
 		// Normal cable sections and the server get blips, including the
 		// section of cable going into a terminal cell. Otherwise, terminals
 		// get special treatment.
-		if (isRoot || numDirs() > 1 || (numDirs() == 1 && frac < 0.3f))
-			drawBlips(canvas, now, frac);
+		if (isRoot() || numDirs() > 1 || (numDirs() == 1 && frac < 0.3f))
+			drawBlips(canvas, now, frac, incoming, outgoing);
 		else
-			drawTermData(canvas, now, frac);
+			drawTermData(canvas, now, frac, incoming);
 	}
 
 	/**
@@ -921,8 +986,13 @@ class Cell {
 	 * @param frac
 	 *            Fractional position of the data blips, if any, along whatever
 	 *            connection leg they're on.
+	 * @param incoming
+	 *            Direction bits of the blips coming in to this cell.
+	 * @param outgoing
+	 *            Direction bits of the blips going out of this cell.
 	 */
-	private void drawBlips(Canvas canvas, long now, float frac) {
+	private void drawBlips(Canvas canvas, long now, float frac, int incoming,
+			int outgoing) {
 		// We don't check stateValid. Blips are always drawn.
 
 		// But if this cell's wiring is invisible, then its blips need
@@ -940,8 +1010,8 @@ class Cell {
 		// Now draw in all blips. We use "glow-in" / "glow-out" images
 		// for the server; otherwise blips, whose colour depends on whether
 		// this cell is connected.
-		final Image[] blips = isRoot ? BLIP_T_IMAGES
-				: isConnected ? BLIP_IMAGES : BLIP_G_IMAGES;
+		final Image[] blips = isRoot() ? BLIP_T_IMAGES
+				: isConnected() ? BLIP_IMAGES : BLIP_G_IMAGES;
 		final int nblips = blips.length;
 		int indexIn = Math.round((float) (nblips - 1) * frac) % nblips;
 		if (indexIn < 0)
@@ -954,14 +1024,14 @@ class Cell {
 			int ord = d.ordinal();
 			final int xoff = Dir.cardinalOffs[c][0];
 			final int yoff = Dir.cardinalOffs[c][1];
-			if ((blipsIncoming & ord) != 0) {
+			if ((incoming & ord) != 0) {
 				final float inp = (1.0f - frac) * cellWidth / 2f;
 				final float x = sx + xoff * inp;
 				final float y = sy + yoff * inp;
 				Image blipImage = blips[indexIn];
 				canvas.drawBitmap(blipImage.bitmap, x, y, cellPaint);
 			}
-			if ((blipsOutgoing & ord) != 0) {
+			if ((outgoing & ord) != 0) {
 				final float outp = frac * cellWidth / 2f;
 				final float x = sx + xoff * outp;
 				final float y = sy + yoff * outp;
@@ -983,13 +1053,16 @@ class Cell {
 	 * @param frac
 	 *            Fractional position of the data blips, if any, along whatever
 	 *            connection leg they're on.
+	 * @param incoming
+	 *            Direction bits of the blips coming in to this cell.
 	 */
-	private void drawTermData(Canvas canvas, long now, float frac) {
+	private void drawTermData(Canvas canvas, long now, float frac,
+			int incoming) {
 		// We don't check stateValid. Blips are always drawn.
 
 		// If this cell is invisible or not connected, or there's no
 		// blip, then nothing gets drawn.
-		if (isBlind || !isConnected || blipsIncoming == 0)
+		if (isBlind || !isConnected() || incoming == 0)
 			return;
 
 		final int sx = cellLeft;
@@ -1005,57 +1078,6 @@ class Cell {
 		}
 	}
 
-	// ******************************************************************** //
-	// State Save/Restore.
-	// ******************************************************************** //
-
-	/**
-	 * Save the game state of this cell, as part of saving the overall game
-	 * state.
-	 * 
-	 * @return A Bundle containing the saved state.
-	 */
-	Bundle saveState() {
-		Bundle map = new Bundle();
-
-		// Save the aspects of the state which aren't part of the board
-		// configuration (that gets re-created on reload).
-		map.putString("connectedDirs", connectedDirs.toString());
-		map.putFloat("currentAngle", rotateAngle);
-		map.putInt("highlightPos", highlightPos);
-		map.putBoolean("isConnected", isConnected);
-		map.putBoolean("isFullyConnected", isFullyConnected);
-		map.putBoolean("isBlind", isBlind);
-		map.putBoolean("isRoot", isRoot);
-		map.putBoolean("isLocked", isLocked);
-
-		// Note: we don't save the focus state; focus save and restore
-		// is done in BoardView.
-
-		return map;
-	}
-
-	/**
-	 * Restore the game state of this cell from the given Bundle, as part of
-	 * restoring the overall game state.
-	 * 
-	 * @param map
-	 *            A Bundle containing the saved state.
-	 */
-	void restoreState(Bundle map) {
-		connectedDirs = Dir.valueOf(map.getString("connectedDirs"));
-		rotateAngle = map.getFloat("currentAngle");
-		highlightPos = map.getInt("highlightPos");
-		isConnected = map.getBoolean("isConnected");
-		isFullyConnected = map.getBoolean("isFullyConnected");
-		isBlind = map.getBoolean("isBlind");
-		isRoot = map.getBoolean("isRoot");
-		isLocked = map.getBoolean("isLocked");
-
-		// Phew! Time for a redraw... but we'll invalidate() at the
-		// board level.
-	}
-
 	// ******************************************************************** //
 	// Private Types.
 	// ******************************************************************** //
@@ -1123,27 +1145,36 @@ class Cell {
 	// private static final Random rng = new MTRandom();
 	private static final SecureRandom rng = new SecureRandom();
 
+	// Pre-rendered images of the cables at the angles they pass through
+	// when turning.
+	private static SpriteAtlas cableAtlas = null;
+
+	// Painter and working storage for drawing the low-detail images.
+	// The images are scaled down, so we filter them.
+	private static final Paint lodPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private static final Rect lodRect = new Rect();
+
 	// ******************************************************************** //
 	// Private Data.
 	// ******************************************************************** //
 
+	// The board view this cell is part of.
+	private final BoardView parentView;
+
 	// The cell's position in the board.
 	private final int xindex, yindex;
 
-	// Our neighbouring cells up, down, left and right. This changes
-	// from game to game as each skill level has its own board size
-	// and may or may not wrap. null if there is no neighbour in that
-	// direction.
-	private Cell nextU;
-	private Cell nextD;
-	private Cell nextL;
-	private Cell nextR;
-
 	// True iff this cell has the focus.
 	private boolean haveFocus;
 
-	// The directions in which this cell is isConnected. This is set up
-	// at the start of each game.
+	// The board which holds this cell's logical state, and our index
+	// in it. boardIndex is -1 if we're outside the playing area.
+	private Board board = null;
+	private int boardIndex = -1;
+
+	// The directions in which this cell is connected, if it's outside
+	// the playing area; NONE or FREE. Cells in the board keep their
+	// directions in the board.
 	private Dir connectedDirs;
 
 	// If we're currently rotating, the rotation target angle -- clockwise
@@ -1167,24 +1198,6 @@ class Cell {
 	private long highlightStart = 0;
 	private int highlightPos;
 
-	// Blips drawn over the network to indicate the flow of data. A
-	// blip moving in towards the centre of the cell is incoming; one
-	// moving out is outgoing. An incoming blip becomes outgoing when
-	// it hits the centre. Each connection direction can have one
-	// blip on it, so we use bitmasks to track where blips are: each of
-	// these values is just a bitmaps of which directions have a blip,
-	// incoming or outgoing respectively.
-	private int blipsIncoming = 0;
-	private int blipsOutgoing = 0;
-
-	// During a blip calculation pass, this value accumulates the data
-	// blips that need to be passed on to other cells.
-	private int blipsTransfer = 0;
-
-	// True iff the cell is currently isConnected (directly or not)
-	// to the server. This causes it to be displayed dark (not grey).
-	private boolean isConnected;
-
 	// True iff the cell is currently part of a fully connected network --
 	// in other words, a solved puzzle. This may cause it to be displayed
 	// differently; e.g. the server shows green LEDs.
@@ -1194,13 +1207,6 @@ class Cell {
 	// This is a difficulty factor.
 	private boolean isBlind;
 
-	// True iff this is the root cell of the network; ie. the server.
-	private boolean isRoot;
-
-	// True iff the cell has been isLocked by the user; this causes the
-	// background to be highlighted.
-	private boolean isLocked;
-
 	// Cell's left X co-ordinate.
 	private int cellLeft;
 
@@ -1213,10 +1219,16 @@ class Cell {
 	// Cell's current height.
 	private int cellHeight;
 
-	// Painter used in onDraw().
-	private Paint cellPaint;
+	// Painter used in onDraw(). Cells are only drawn from the animation
+	// thread, so they can all share one; on a big board that adds up.
+	private static final Paint cellPaint = new Paint();
 
-	// True if the cell's rendered state is up to date.
+	// True if the cell's rendered state is up to date; and the same for
+	// its low-detail image.
 	private boolean stateValid = false;
+	private boolean lodValid = false;
+
+	// True iff we're in the board view's list of animating cells.
+	private boolean isActive = false;
 
 }
@@ -23,6 +23,8 @@
 
 package com.silentservices.netscramble;
 
+import java.io.IOException;
+
 import org.hermit.android.core.AppUtils;
 import org.hermit.android.core.MainActivity;
 import org.hermit.android.core.OneTimeDialog;
@@ -54,7 +56,11 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.ViewAnimator;
 
+import com.silentservices.netscramble.BoardView.BoardSize;
 import com.silentservices.netscramble.BoardView.Skill;
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.PuzzleCode;
+import com.silentservices.netscramble.engine.ScoreLog;
 
 /**
  * Main NetScramble activity.
@@ -314,8 +320,7 @@ public class NetScramble extends ActionBarActivity {
 		createEulaBox(R.string.eula_title, R.string.eula_text,
 				R.string.button_close);
 		appResources = getResources();
-
-		gameTimer = new GameTimer();
+		scoreLog = ScoreList.openLog(this);
 
 		// We don't want a title bar.
 		// getWindow().setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN,
@@ -328,11 +333,15 @@ public class NetScramble extends ActionBarActivity {
 		// Create string formatting buffers.
 		clicksText = new StringBuilder(10);
 		timeText = new StringBuilder(10);
+		modeText = new StringBuilder(40);
 
 		// Create the GUI for the game.
 		setContentView(R.layout.main);
 		setupGui();
 
+		// The game timer runs the board's game clock.
+		gameTimer = new GameTimer();
+
 		// Restore our preferences.
 		SharedPreferences prefs = getPreferences(0);
 
@@ -355,6 +364,23 @@ public class NetScramble extends ActionBarActivity {
 		animEnable = prefs.getBoolean("animEnable", true);
 		boardView.setAnimEnable(animEnable);
 
+		// See if the assist mode is on.
+		assistEnable = prefs.getBoolean("assistEnable", false);
+		boardView.setAssistEnable(assistEnable);
+
+		// Get the board size.
+		boardSize = BoardSize.SCREEN;
+		{
+			String size = prefs.getString("boardSize", null);
+			if (size != null)
+				boardSize = BoardSize.valueOf(size);
+		}
+		boardView.setBoardSize(boardSize);
+
+		// See if multi-server games are on.
+		multiServer = prefs.getBoolean("multiServer", false);
+		boardView.setMultiServer(multiServer);
+
 		// Load the sounds.
 		soundPool = createSoundPool();
 
@@ -741,8 +767,11 @@ public class NetScramble extends ActionBarActivity {
 		// GUI is created, state is restored (if any) -- now is a good time
 		// to re-sync the options menus.
 		selectCurrentSkill();
+		selectBoardSize();
 		selectSoundMode();
 		selectAnimEnable();
+		selectAssistEnable();
+		selectMultiServer();
 
 		return true;
 	}
@@ -756,6 +785,15 @@ public class NetScramble extends ActionBarActivity {
 		}
 	}
 
+	private void selectBoardSize() {
+		// Set the selected board size menu item to the current size.
+		if (mainMenu != null) {
+			MenuItem sizeItem = mainMenu.findItem(boardSize.id);
+			if (sizeItem != null)
+				sizeItem.setChecked(true);
+		}
+	}
+
 	private void selectSoundMode() {
 		// Set the sound enable menu item to the current state.
 		if (mainMenu != null) {
@@ -776,7 +814,43 @@ public class NetScramble extends ActionBarActivity {
 		}
 	}
 
-	void selectAutosolveMode(boolean solving) {
+	private void selectAssistEnable() {
+		// Set the assist mode menu item to the current state.
+		if (mainMenu != null) {
+			MenuItem assistItem = mainMenu.findItem(R.id.menu_assist);
+			if (assistItem != null)
+				assistItem.setChecked(assistEnable);
+		}
+	}
+
+	private void selectMultiServer() {
+		// Set the multi-server menu item to the current state.
+		if (mainMenu != null) {
+			MenuItem serverItem = mainMenu.findItem(R.id.menu_servers);
+			if (serverItem != null)
+				serverItem.setChecked(multiServer);
+		}
+	}
+
+	/**
+	 * Post a change of autosolve mode, to be shown in the menu on the main
+	 * app thread.
+	 * 
+	 * @param solving
+	 *            True if the autosolver is now running.
+	 */
+	void postAutosolveMode(boolean solving) {
+		autosolveHandler.sendEmptyMessage(solving ? 1 : 0);
+	}
+
+	private Handler autosolveHandler = new Handler() {
+		@Override
+		public void handleMessage(Message m) {
+			selectAutosolveMode(m.what != 0);
+		}
+	};
+
+	private void selectAutosolveMode(boolean solving) {
 		// Set the autosolve menu item to the current state.
 		if (mainMenu != null) {
 			MenuItem solveItem = mainMenu.findItem(R.id.menu_autosolve);
@@ -842,6 +916,18 @@ public class NetScramble extends ActionBarActivity {
 		case R.id.skill_insane:
 			startGame(Skill.INSANE);
 			break;
+		case R.id.size_screen:
+			setBoardSize(BoardSize.SCREEN);
+			break;
+		case R.id.size_large:
+			setBoardSize(BoardSize.LARGE);
+			break;
+		case R.id.size_huge:
+			setBoardSize(BoardSize.HUGE);
+			break;
+		case R.id.size_giant:
+			setBoardSize(BoardSize.GIANT);
+			break;
 		case R.id.sounds_off:
 			setSoundMode(SoundMode.NONE);
 			break;
@@ -861,6 +947,24 @@ public class NetScramble extends ActionBarActivity {
 			solverUsed = true;
 			boardView.autosolve();
 			break;
+		case R.id.menu_assist:
+			setAssistEnable(!assistEnable);
+			break;
+		case R.id.menu_servers:
+			setMultiServer(!multiServer);
+			break;
+		case R.id.menu_hint:
+			if (gameState == State.RUNNING)
+				boardView.hint();
+			break;
+		case R.id.menu_undo:
+			if (gameState == State.RUNNING)
+				boardView.undoMove();
+			break;
+		case R.id.menu_redo:
+			if (gameState == State.RUNNING)
+				boardView.redoMove();
+			break;
 		default:
 			return super.onOptionsItemSelected(item);
 		}
@@ -868,6 +972,21 @@ public class NetScramble extends ActionBarActivity {
 		return true;
 	}
 
+	private void setBoardSize(BoardSize size) {
+		boardSize = size;
+		boardView.setBoardSize(boardSize);
+
+		// Save the new setting to prefs.
+		SharedPreferences prefs = getPreferences(0);
+		SharedPreferences.Editor editor = prefs.edit();
+		editor.putString("boardSize", boardSize.toString());
+		editor.commit();
+
+		// Start a game at the new size, as a new skill level does.
+		selectBoardSize();
+		startGame(null);
+	}
+
 	private void setSoundMode(SoundMode mode) {
 		soundMode = mode;
 
@@ -893,14 +1012,63 @@ public class NetScramble extends ActionBarActivity {
 		selectAnimEnable();
 	}
 
+	private void setAssistEnable(boolean enable) {
+		assistEnable = enable;
+		boardView.setAssistEnable(assistEnable);
+
+		// Save the new setting to prefs.
+		SharedPreferences prefs = getPreferences(0);
+		SharedPreferences.Editor editor = prefs.edit();
+		editor.putBoolean("assistEnable", assistEnable);
+		editor.commit();
+
+		selectAssistEnable();
+	}
+
+	private void setMultiServer(boolean enable) {
+		multiServer = enable;
+		boardView.setMultiServer(multiServer);
+
+		// Save the new setting to prefs.
+		SharedPreferences prefs = getPreferences(0);
+		SharedPreferences.Editor editor = prefs.edit();
+		editor.putBoolean("multiServer", multiServer);
+		editor.commit();
+
+		// The new mode needs a new network.
+		selectMultiServer();
+		startGame(null);
+	}
+
 	// ******************************************************************** //
 	// Game progress.
 	// ******************************************************************** //
 
 	/**
-	 * This method is called each time the user clicks a cell.
+	 * Post a click on a cell, to be counted on the main app thread. The
+	 * board view calls this each time the user clicks a cell.
+	 * 
+	 * @param cell
+	 *            The cell which was clicked.
+	 */
+	void postCellClicked(Cell cell) {
+		clickHandler.sendMessage(clickHandler.obtainMessage(0, cell));
+	}
+
+	private Handler clickHandler = new Handler() {
+		@Override
+		public void handleMessage(Message m) {
+			cellClicked((Cell) m.obj);
+		}
+	};
+
+	/**
+	 * Count a click on a cell.
+	 * 
+	 * @param cell
+	 *            The cell which was clicked.
 	 */
-	void cellClicked(Cell cell) {
+	private void cellClicked(Cell cell) {
 		// Count the click, but only if this isn't a repeat click on the
 		// same cell. This is because the tap interface only rotates
 		// clockwise, and it's not fair to count an anti-clockwise
@@ -920,8 +1088,11 @@ public class NetScramble extends ActionBarActivity {
 	 * Wake up: the user has clicked the splash screen, so continue.
 	 */
 	private void wakeUp() {
-		// If we are paused, just go to running. Otherwise (in the
-		// welcome or game over screen), start a new game.
+		// If we are paused, just go to running. If we're waiting for a
+		// new game's puzzle, keep waiting. Otherwise (in the welcome or
+		// game over screen), start a new game.
+		if (boardPending)
+			return;
 		if (gameState == State.PAUSED)
 			setState(State.RUNNING, true);
 		else
@@ -1044,7 +1215,6 @@ public class NetScramble extends ActionBarActivity {
 		case SOLVED:
 			// This is a transient state, just used for signalling a win.
 			gameTimer.stop();
-			boardView.setSolved();
 
 			// We allow the user to keep playing after it's over, but
 			// don't keep reporting wins. Also don't brag or record a score
@@ -1067,16 +1237,22 @@ public class NetScramble extends ActionBarActivity {
 				showSplashText(R.string.pause_text);
 			break;
 		case RUNNING:
-			// Set us going, if this is a new game.
+			// Set us going, if this is a new game. If its puzzle is
+			// being generated, wait for it; see boardReady().
 			if (prev != State.RESTORED && prev != State.PAUSED) {
-				boardView.setupBoard(gameSkill);
 				isSolved = false;
 				clickCount = 0;
 				prevClickedCell = null;
 				solverUsed = false;
 				gameTimer.reset();
+				boardPending = !boardView.setupBoard(gameSkill);
 				updateStatus();
-				makeSound(Sound.START.soundId);
+				if (!boardPending)
+					makeSound(Sound.START.soundId);
+			}
+			if (boardPending) {
+				showSplashText(R.string.generating_text);
+				break;
 			}
 			hideSplashText();
 			if (!isSolved)
@@ -1085,6 +1261,24 @@ public class NetScramble extends ActionBarActivity {
 		}
 	}
 
+	/**
+	 * Called by the board view in the UI thread when it has set up the
+	 * puzzle for a new game, which we were waiting for. If we're still
+	 * running, start the game and the clock; if we've been paused, the
+	 * game starts when we're resumed.
+	 */
+	void boardReady() {
+		if (!boardPending)
+			return;
+		boardPending = false;
+		updateStatus();
+		if (gameState == State.RUNNING) {
+			makeSound(Sound.START.soundId);
+			hideSplashText();
+			gameTimer.start();
+		}
+	}
+
 	// Create a listener for the user starting a new game.
 	private final DialogInterface.OnClickListener newGameListener = new DialogInterface.OnClickListener() {
 		public void onClick(DialogInterface arg0, int arg1) {
@@ -1118,8 +1312,7 @@ public class NetScramble extends ActionBarActivity {
 
 		// See if we have a new high score.
 		int ntiles = boardView.getBoardWidth() * boardView.getBoardHeight();
-		String score = registerScore(gameSkill, ntiles, clickCount,
-				(int) (time / 1000));
+		String score = registerScore(gameSkill, ntiles, clickCount, time);
 		if (score != null) {
 			msg += "\n\n" + score;
 			titleId = R.string.win_pbest_title;
@@ -1183,6 +1376,19 @@ public class NetScramble extends ActionBarActivity {
 		timeText.setCharAt(3, (char) ('0' + sec / 10));
 		timeText.setCharAt(4, (char) ('0' + sec % 10));
 		statusTime.setText(timeText);
+
+		// In a multi-server game, show how many cells each server has
+		// connected after the skill level.
+		int servers = boardView.serverSizes(serverSizes);
+		if (servers > 1) {
+			modeText.setLength(0);
+			modeText.append(getText(gameSkill.label));
+			for (int k = 0; k < servers; ++k) {
+				modeText.append(k == 0 ? ' ' : '/');
+				modeText.append(serverSizes[k]);
+			}
+			statusMode.setText(modeText);
+		}
 	}
 
 	/**
@@ -1244,22 +1450,28 @@ public class NetScramble extends ActionBarActivity {
 	 *            actual difficulty level on the specific device.
 	 * @param clicks
 	 *            The user's click count.
-	 * @param seconds
-	 *            The user's time in SECONDS.
+	 * @param millis
+	 *            The user's time in ms.
 	 * @return Message to display to the user. Null if nothing to report.
 	 */
 	private String registerScore(BoardView.Skill skill, int ntiles, int clicks,
-			int seconds) {
+			long millis) {
 		// Get the names of the prefs for the counts for this skill level.
+		// The best time is kept in seconds, for the score list, and in
+		// ms, to break ties between times in the same second.
 		String sizeName = "size" + skill.toString();
 		String clickName = "clicks" + skill.toString();
 		String timeName = "time" + skill.toString();
+		String timeMsName = "timeMs" + skill.toString();
+		int seconds = (int) (millis / 1000);
 
-		// Get the best to date for this skill level.
+		// Get the best to date for this skill level. A best time saved
+		// before we kept ms counts as the start of its second.
 		SharedPreferences scorePrefs = getSharedPreferences("scores",
 				MODE_PRIVATE);
 		int bestClicks = scorePrefs.getInt(clickName, -1);
 		int bestTime = scorePrefs.getInt(timeName, -1);
+		long bestMillis = scorePrefs.getLong(timeMsName, bestTime * 1000L);
 
 		// See if we have a new best click count or time.
 		long now = System.currentTimeMillis();
@@ -1271,9 +1483,10 @@ public class NetScramble extends ActionBarActivity {
 			editor.putLong(clickName + "Date", now);
 			msg = appResources.getString(R.string.best_clicks_text);
 		}
-		if (seconds > 0 && (bestTime < 0 || seconds < bestTime)) {
+		if (seconds > 0 && (bestTime < 0 || millis < bestMillis)) {
 			editor.putInt(sizeName, ntiles);
 			editor.putInt(timeName, seconds);
+			editor.putLong(timeMsName, millis);
 			editor.putLong(timeName + "Date", now);
 			if (msg == null)
 				msg = appResources.getString(R.string.best_time_text);
@@ -1284,6 +1497,15 @@ public class NetScramble extends ActionBarActivity {
 		if (msg != null)
 			editor.commit();
 
+		// Log every game, for the score distributions.
+		PuzzleCode code = boardView.getPuzzleCode();
+		try {
+			scoreLog.add(skill.ordinal(), ntiles, clicks, seconds, now,
+					code == null ? 0 : code.seed());
+		} catch (IOException e) {
+			Log.e(TAG, "Can't log score: " + e.getMessage());
+		}
+
 		return msg;
 	}
 
@@ -1350,7 +1572,10 @@ public class NetScramble extends ActionBarActivity {
 	private void saveState(Bundle outState) {
 		// Save the skill level and game state.
 		outState.putString("gameSkill", gameSkill.toString());
-		outState.putString("gameState", gameState.toString());
+		// If we're waiting for a new game's puzzle, save as aborted, so
+		// the new game is started again when we're restored.
+		State state = boardPending ? State.ABORTED : gameState;
+		outState.putString("gameState", state.toString());
 		outState.putBoolean("isSolved", isSolved);
 
 		// Save the game state of the board.
@@ -1398,8 +1623,8 @@ public class NetScramble extends ActionBarActivity {
 	private final class GameTimer extends Timer {
 
 		GameTimer() {
-			// Tick every 0.25 s.
-			super(250);
+			// Tick each time the displayed seconds change.
+			super(1000, boardView.getGameClock());
 		}
 
 		@Override
@@ -1429,6 +1654,9 @@ public class NetScramble extends ActionBarActivity {
 	// The app's resources.
 	private Resources appResources;
 
+	// Log of the games finished, for the score list.
+	private ScoreLog scoreLog;
+
 	// The game board.
 	private BoardView boardView = null;
 
@@ -1443,6 +1671,11 @@ public class NetScramble extends ActionBarActivity {
 	private StringBuilder clicksText;
 	private StringBuilder timeText;
 
+	// Text buffer used to format the mode field in a multi-server game,
+	// and the number of cells connected to each server.
+	private StringBuilder modeText;
+	private final int[] serverSizes = new int[Board.MAX_ROOTS];
+
 	// Sound pool used for sound effects.
 	private SoundPool soundPool;
 
@@ -1474,9 +1707,16 @@ public class NetScramble extends ActionBarActivity {
 	// can keep playing, but we don't count score any more.
 	private boolean isSolved;
 
+	// Flag whether we're waiting for the puzzle for a new game to be
+	// generated in the background.
+	private boolean boardPending = false;
+
 	// The currently selected skill level.
 	private BoardView.Skill gameSkill;
 
+	// The currently selected board size.
+	private BoardSize boardSize;
+
 	// Timer used to time the game.
 	private GameTimer gameTimer;
 
@@ -1486,6 +1726,12 @@ public class NetScramble extends ActionBarActivity {
 	// True to enable the network animation.
 	private boolean animEnable;
 
+	// True to lock cells automatically once they're forced into place.
+	private boolean assistEnable;
+
+	// True to play networks with several servers.
+	private boolean multiServer;
+
 	// Number of times the user has clicked.
 	private int clickCount = 0;
 
@@ -21,10 +21,15 @@
 
 package com.silentservices.netscramble;
 
+import java.io.File;
+import java.io.IOException;
+
 import android.app.Activity;
+import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.text.format.DateUtils;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -34,9 +39,12 @@ import android.widget.TableLayout;
 import android.widget.TableRow;
 import android.widget.TextView;
 
+import com.silentservices.netscramble.engine.ScoreLog;
+
 /**
  * An activity which displays the "high score list" (personal bests) for
- * NetScramble.
+ * NetScramble, along with the median of all the games logged at each skill
+ * level.
  */
 public class ScoreList extends Activity {
 
@@ -128,6 +136,21 @@ public class ScoreList extends Activity {
 		return true;
 	}
 
+	// ******************************************************************** //
+	// Score Log.
+	// ******************************************************************** //
+
+	/**
+	 * Get the log of finished games.
+	 * 
+	 * @param context
+	 *            The app context.
+	 * @return The score log, in the app's private files.
+	 */
+	static ScoreLog openLog(Context context) {
+		return new ScoreLog(new File(context.getFilesDir(), LOG_FILE));
+	}
+
 	// ******************************************************************** //
 	// Scores Display.
 	// ******************************************************************** //
@@ -137,6 +160,16 @@ public class ScoreList extends Activity {
 				MODE_PRIVATE);
 		BoardView.Skill[] skillVals = BoardView.Skill.values();
 
+		// Gather the logged games for every skill level in one pass.
+		ScoreLog.Stats[] stats = new ScoreLog.Stats[skillVals.length];
+		for (int i = 0; i < stats.length; ++i)
+			stats[i] = new ScoreLog.Stats();
+		try {
+			openLog(this).scan(stats);
+		} catch (IOException e) {
+			Log.e(TAG, "Can't read score log: " + e.getMessage());
+		}
+
 		// Populate the best clicks table.
 		TableLayout clicksTable = (TableLayout) findViewById(R.id.clicksTable);
 
@@ -176,6 +209,14 @@ public class ScoreList extends Activity {
 			clickLab.setText(clicks < 0 ? "--" : "" + clicks);
 			row.addView(clickLab);
 
+			// Add a field to display the median clicks of all games.
+			int median = stats[skill.ordinal()].clicks().median();
+			TextView medianLab = new TextView(this);
+			medianLab.setTextSize(16);
+			medianLab.setTextColor(0xff000000);
+			medianLab.setText(median < 0 ? "--" : "" + median);
+			row.addView(medianLab);
+
 			// Add a field to display the date/time of this record.
 			TextView dateLab = new TextView(this);
 			dateLab.setTextSize(16);
@@ -220,10 +261,17 @@ public class ScoreList extends Activity {
 			TextView timeLab = new TextView(this);
 			timeLab.setTextSize(16);
 			timeLab.setTextColor(0xff000000);
-			timeLab.setText(time < 0 ? "--" : String.format("%2d:%02d",
-					time / 60, time % 60));
+			timeLab.setText(timeString(time));
 			row.addView(timeLab);
 
+			// Add a field to display the median time of all games.
+			int median = stats[skill.ordinal()].seconds().median();
+			TextView medianLab = new TextView(this);
+			medianLab.setTextSize(16);
+			medianLab.setTextColor(0xff000000);
+			medianLab.setText(timeString(median));
+			row.addView(medianLab);
+
 			// Add a field to display the date/time of this record.
 			TextView dateLab = new TextView(this);
 			dateLab.setTextSize(16);
@@ -233,6 +281,12 @@ public class ScoreList extends Activity {
 		}
 	}
 
+	private static String timeString(int time) {
+		if (time < 0)
+			return "--";
+		return String.format("%2d:%02d", time / 60, time % 60);
+	}
+
 	private String dateString(long date) {
 		if (date == 0)
 			return "--";
@@ -252,8 +306,19 @@ public class ScoreList extends Activity {
 		SharedPreferences.Editor editor = scorePrefs.edit();
 		editor.clear();
 		editor.commit();
+		openLog(this).clear();
 
 		showScores();
 	}
 
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Debugging tag.
+	private static final String TAG = "netscramble";
+
+	// Name of the file holding the log of finished games.
+	private static final String LOG_FILE = "scores.log";
+
 }
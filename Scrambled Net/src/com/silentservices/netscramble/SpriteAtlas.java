@@ -0,0 +1,222 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import com.silentservices.netscramble.engine.Board;
+
+/**
+ * A set of pre-rendered cable images for animating cell rotations. Each
+ * cable shape is rendered, connected and disconnected, at a fixed number of
+ * angles through a quarter turn, at the current cell size; so drawing a
+ * turning cell is a plain bitmap blit, with no matrix transform or bitmap
+ * filtering per frame.
+ * 
+ * <p>
+ * Only angles from 0 to 90 degrees clockwise are stored. A shape turned
+ * anticlockwise by some angle looks like the next shape anticlockwise
+ * turned clockwise by the rest of the quarter turn, so that's what we draw.
+ * 
+ * <p>
+ * The number of angles is limited so that the atlas fits in a fixed memory
+ * budget. If the cells are so big that we can't have a reasonable number
+ * of angles, the atlas is disabled, and cells go back to drawing rotated.
+ */
+class SpriteAtlas {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create an empty atlas for cells of the given size.
+	 * 
+	 * @param width
+	 *            The cell width.
+	 * @param height
+	 *            The cell height.
+	 */
+	SpriteAtlas(int width, int height) {
+		cellWidth = width;
+		cellHeight = height;
+
+		// Work out how many angles we can afford.
+		long frameBytes = (long) width * height * 4;
+		long perStep = frameBytes * NUM_SHAPES * 2;
+		int steps = (int) Math.min(MAX_STEPS, MEMORY_BUDGET / perStep);
+		numSteps = steps >= MIN_STEPS ? steps : 0;
+
+		frames = new Bitmap[2][NUM_SHAPES + 1][];
+	}
+
+	// ******************************************************************** //
+	// Setup.
+	// ******************************************************************** //
+
+	/**
+	 * Render all the frames for a cable shape.
+	 * 
+	 * @param dirs
+	 *            The direction bits of the shape.
+	 * @param normal
+	 *            The connected image of the shape, at the cell size.
+	 * @param grey
+	 *            The disconnected image of the shape, at the cell size.
+	 */
+	void addShape(int dirs, Bitmap normal, Bitmap grey) {
+		if (numSteps == 0)
+			return;
+		frames[CONNECTED][dirs] = render(normal);
+		frames[DISCONNECTED][dirs] = render(grey);
+	}
+
+	/**
+	 * Render an image at each of our angles. Frame 0 is the image itself.
+	 * 
+	 * @param image
+	 *            The image to render.
+	 * @return The rendered frames.
+	 */
+	private Bitmap[] render(Bitmap image) {
+		Bitmap[] set = new Bitmap[numSteps];
+		set[0] = image;
+
+		Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		Matrix matrix = new Matrix();
+		for (int s = 1; s < numSteps; ++s) {
+			Bitmap frame = Bitmap.createBitmap(cellWidth, cellHeight,
+					Bitmap.Config.ARGB_8888);
+			Canvas canvas = new Canvas(frame);
+			matrix.setRotate(s * 90f / numSteps, cellWidth / 2f,
+					cellHeight / 2f);
+			canvas.drawBitmap(image, matrix, paint);
+			set[s] = frame;
+		}
+
+		return set;
+	}
+
+	/**
+	 * Free the memory used by this atlas. It can't be used after this.
+	 */
+	void recycle() {
+		for (Bitmap[][] state : frames) {
+			for (Bitmap[] set : state) {
+				if (set == null)
+					continue;
+
+				// Frame 0 is the caller's image, so leave it alone.
+				for (int s = 1; s < set.length; ++s)
+					set[s].recycle();
+			}
+		}
+	}
+
+	// ******************************************************************** //
+	// Drawing.
+	// ******************************************************************** //
+
+	/**
+	 * Query whether this atlas is in use.
+	 * 
+	 * @return true if the atlas has frames; false if it's disabled because
+	 *         the cells are too big.
+	 */
+	boolean isEnabled() {
+		return numSteps != 0;
+	}
+
+	/**
+	 * Get the image to draw for a turning cable.
+	 * 
+	 * @param dirs
+	 *            The direction bits of the cable, before the turn.
+	 * @param connected
+	 *            Whether to get the connected image.
+	 * @param angle
+	 *            The angle the cable is currently turned by, in degrees;
+	 *            clockwise positive. Must be between -90 and 90.
+	 * @return The image to draw, or null if we don't have it.
+	 */
+	Bitmap frame(int dirs, boolean connected, float angle) {
+		if (numSteps == 0)
+			return null;
+
+		// Turning anticlockwise, we use the next shape anticlockwise,
+		// turned clockwise; and if we round up to a quarter turn,
+		// the next shape clockwise, not turned.
+		if (angle < 0) {
+			dirs = Board.rotated(dirs, -1);
+			angle += 90f;
+		}
+		int step = Math.round(angle * numSteps / 90f);
+		if (step >= numSteps) {
+			dirs = Board.rotated(dirs, 1);
+			step = 0;
+		}
+
+		Bitmap[] set = frames[connected ? CONNECTED : DISCONNECTED][dirs];
+		return set == null ? null : set[step];
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Number of cable shapes: one for each combination of direction bits,
+	// apart from none.
+	private static final int NUM_SHAPES = 15;
+
+	// Most and least angles we store per quarter turn. Fewer than the
+	// minimum looks too jerky, so then we don't use the atlas.
+	private static final int MAX_STEPS = 9;
+	private static final int MIN_STEPS = 3;
+
+	// Memory we're prepared to use for the atlas, in bytes.
+	private static final long MEMORY_BUDGET = 4 * 1024 * 1024;
+
+	// Indices in frames for the connected and disconnected images.
+	private static final int CONNECTED = 0;
+	private static final int DISCONNECTED = 1;
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The cell size the frames are rendered at.
+	private final int cellWidth;
+	private final int cellHeight;
+
+	// Number of angles per quarter turn; 0 if disabled.
+	private final int numSteps;
+
+	// The frames, indexed by connected state, direction bits and angle
+	// step.
+	private final Bitmap[][][] frames;
+
+}
@@ -0,0 +1,227 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * A cache of rendered tiles of the board. The board is divided into square
+ * tiles of a fixed number of cells; each tile which is on screen has a
+ * bitmap, which the cells in it draw themselves into, and which is copied
+ * to the screen at the tile's position in the view. So a board which is
+ * much bigger than the screen only costs as much memory as the tiles
+ * which are visible.
+ * 
+ * <p>
+ * The cache holds a fixed number of tiles, which should be enough to cover
+ * the screen with a border to spare. When a tile is needed which isn't in
+ * the cache, the least recently used tile's bitmap is taken over for it,
+ * and the caller must then redraw all the cells in it.
+ */
+class TileCache {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create an empty tile cache.
+	 * 
+	 * @param width
+	 *            The width of each tile, in pixels.
+	 * @param height
+	 *            The height of each tile, in pixels.
+	 * @param max
+	 *            The maximum number of tiles to hold.
+	 * @param config
+	 *            The pixel format for the tile bitmaps.
+	 */
+	TileCache(int width, int height, int max, Bitmap.Config config) {
+		tileWidth = width;
+		tileHeight = height;
+		bitmapConfig = config;
+
+		tileX = new int[max];
+		tileY = new int[max];
+		lastUsed = new long[max];
+		bitmaps = new Bitmap[max];
+		canvases = new Canvas[max];
+		clear();
+	}
+
+	// ******************************************************************** //
+	// Tile Access.
+	// ******************************************************************** //
+
+	/**
+	 * Get the width of each tile.
+	 * 
+	 * @return The tile width in pixels.
+	 */
+	int tileWidth() {
+		return tileWidth;
+	}
+
+	/**
+	 * Get the height of each tile.
+	 * 
+	 * @return The tile height in pixels.
+	 */
+	int tileHeight() {
+		return tileHeight;
+	}
+
+	/**
+	 * Get the number of tiles the cache can hold.
+	 * 
+	 * @return The cache size in tiles.
+	 */
+	int size() {
+		return tileX.length;
+	}
+
+	/**
+	 * Find the given tile in the cache, and mark it as used.
+	 * 
+	 * @param tx
+	 *            X position of the tile, in tiles.
+	 * @param ty
+	 *            Y position of the tile, in tiles.
+	 * @return The slot holding the tile; -1 if it isn't cached.
+	 */
+	int find(int tx, int ty) {
+		for (int s = 0; s < tileX.length; ++s) {
+			if (tileX[s] == tx && tileY[s] == ty && bitmaps[s] != null) {
+				lastUsed[s] = ++useCount;
+				return s;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Put the given tile in the cache, re-using the bitmap of the least
+	 * recently used tile if the cache is full. The tile's bitmap contents
+	 * are undefined, so the caller must draw the whole tile.
+	 * 
+	 * @param tx
+	 *            X position of the tile, in tiles.
+	 * @param ty
+	 *            Y position of the tile, in tiles.
+	 * @return The slot now holding the tile.
+	 */
+	int create(int tx, int ty) {
+		int slot = 0;
+		for (int s = 1; s < tileX.length; ++s)
+			if (lastUsed[s] < lastUsed[slot])
+				slot = s;
+
+		if (bitmaps[slot] == null) {
+			bitmaps[slot] = Bitmap.createBitmap(tileWidth, tileHeight,
+					bitmapConfig);
+			canvases[slot] = new Canvas(bitmaps[slot]);
+		}
+		tileX[slot] = tx;
+		tileY[slot] = ty;
+		lastUsed[slot] = ++useCount;
+		return slot;
+	}
+
+	/**
+	 * Get the bitmap of the tile in the given slot.
+	 * 
+	 * @param slot
+	 *            The slot, as returned by find() or create().
+	 * @return The tile's bitmap.
+	 */
+	Bitmap bitmap(int slot) {
+		return bitmaps[slot];
+	}
+
+	/**
+	 * Get a canvas which draws into the tile in the given slot. The canvas
+	 * is in tile co-ordinates; the caller should translate it to the
+	 * tile's position on the board.
+	 * 
+	 * @param slot
+	 *            The slot, as returned by find() or create().
+	 * @return The tile's canvas.
+	 */
+	Canvas canvas(int slot) {
+		return canvases[slot];
+	}
+
+	/**
+	 * Forget all the cached tiles, for example when the board has been
+	 * re-laid out. The bitmaps are kept for re-use.
+	 */
+	void clear() {
+		for (int s = 0; s < tileX.length; ++s) {
+			tileX[s] = -1;
+			tileY[s] = -1;
+			lastUsed[s] = 0;
+		}
+	}
+
+	/**
+	 * Free the memory used by this cache. It can't be used after this.
+	 */
+	void recycle() {
+		for (int s = 0; s < bitmaps.length; ++s) {
+			if (bitmaps[s] != null)
+				bitmaps[s].recycle();
+			bitmaps[s] = null;
+			canvases[s] = null;
+		}
+		clear();
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The size of each tile, in pixels.
+	private final int tileWidth;
+	private final int tileHeight;
+
+	// The pixel format of the tile bitmaps.
+	private final Bitmap.Config bitmapConfig;
+
+	// The position of the tile in each slot, in tiles; -1 if the slot
+	// is empty.
+	private final int[] tileX;
+	private final int[] tileY;
+
+	// Use stamp of the tile in each slot, from useCount; 0 if the slot is
+	// empty, so empty slots are used first.
+	private final long[] lastUsed;
+	private long useCount = 0;
+
+	// The bitmap of each slot, and a canvas for drawing into it. These are
+	// created as the slots are first used.
+	private final Bitmap[] bitmaps;
+	private final Canvas[] canvases;
+
+}
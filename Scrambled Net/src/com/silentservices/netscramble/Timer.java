@@ -26,11 +26,17 @@ package com.silentservices.netscramble;
 
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.SystemClock;
+
+import com.silentservices.netscramble.engine.GameClock;
 
 
 /**
- * This class implements a simple periodic timer.
+ * This class implements a periodic timer, which keeps time with a
+ * {@link GameClock}.  The time is always read from the clock, so it
+ * doesn't drift however late the ticks are; and the ticks are scheduled
+ * for when the clock's time next reaches a multiple of the tick interval,
+ * so a display of the time changes on the tick.  Nothing is scheduled
+ * while the timer is stopped.
  */
 abstract class Timer
 	extends Handler
@@ -44,11 +50,13 @@ abstract class Timer
 	 * Construct a periodic timer with a given tick interval.
 	 * 
 	 * @param	ival			Tick interval in ms.
+	 * @param	clock			The clock to keep time with.  The timer
+	 * 							starts and stops it.
 	 */
-	public Timer(long ival) {
+	public Timer(long ival, GameClock clock) {
 		tickInterval = ival;
+		gameClock = clock;
 		isRunning = false;
-		accumTime = 0;
 	}
 	
 
@@ -57,8 +65,9 @@ abstract class Timer
 	// ******************************************************************** //
 
 	/**
-	 * Start the timer.  step() will be called at regular intervals
-	 * until it returns true; then done() will be called.
+	 * Start the timer.  step() will be called at once, and then each
+	 * time the clock reaches a multiple of the tick interval, until it
+	 * returns true; then done() will be called.
 	 * 
 	 * Subclasses may override this to do their own setup; but they
 	 * must then call super.start().
@@ -68,15 +77,10 @@ abstract class Timer
 			return;
 		
 		isRunning = true;
-		
-		long now = SystemClock.uptimeMillis();
-		
-		// Start accumulating time again.
-		lastLogTime = now;
+		gameClock.start();
 		
 		// Schedule the first event at once.
-		nextTime = now;
-		postAtTime(runner, nextTime);
+		post(runner);
 	}
 
 
@@ -90,20 +94,19 @@ abstract class Timer
 	public void stop() {
 		if (isRunning) {
 			isRunning = false;
-			long now = SystemClock.uptimeMillis();
-			accumTime += now - lastLogTime;
-			lastLogTime = now;
+			gameClock.stop();
+			removeCallbacks(runner);
 		}
 	}
 
 
 	/**
-	 * Stop the timer, and reset the accumulated time and tick count.
+	 * Stop the timer, and reset the clock and tick count.
 	 */
 	public final void reset() {
 		stop();
 		tickCount = 0;
-		accumTime = 0;
+		gameClock.reset();
 	}
 
 
@@ -123,7 +126,7 @@ abstract class Timer
 	 * @return					How long this timer has been running, in ms.
 	 */
 	public final long getTime() {
-		return accumTime;
+		return gameClock.getTime();
 	}
 	
 	
@@ -161,22 +164,16 @@ abstract class Timer
 		
 		public final void run() {
 			if (isRunning) {
-				long now = SystemClock.uptimeMillis();
-
-				// Add up the time since the last step.
-				accumTime += now - lastLogTime;
-				lastLogTime = now;
-				
-				if (!step(tickCount++, accumTime)) {
-					// Schedule the next.  If we've got behind, schedule
-					// it for a tick after now.  (Otherwise we'd end
-					// up with a zillion events queued.)
-					nextTime += tickInterval;
-					if (nextTime <= now)
-						nextTime += tickInterval;
-					postAtTime(runner, nextTime);
+				if (!step(tickCount++, gameClock.getTime())) {
+					// Schedule the next for when the clock gets to the
+					// next tick.  If we've got behind, that's a tick
+					// after now, so we never queue up a backlog.
+					long delay = gameClock.untilNext(tickInterval);
+					if (delay >= 0)
+						postDelayed(runner, delay);
 				} else {
 					isRunning = false;
+					gameClock.stop();
 					done();
 				}
 			}
@@ -198,17 +195,10 @@ abstract class Timer
 	 * 							information we wish to save.
      */
     void saveState(Bundle outState) {
-    	// Accumulate all time up to now, so we know where we're saving.
-    	if (isRunning) {
-    		long now = SystemClock.uptimeMillis();
-    		accumTime += now - lastLogTime;
-    		lastLogTime = now;
-    	}
-
     	outState.putLong("tickInterval", tickInterval);
     	outState.putBoolean("isRunning", isRunning);
     	outState.putInt("tickCount", tickCount);
-    	outState.putLong("accumTime", accumTime);
+    	outState.putLong("accumTime", gameClock.getTime());
     }
 
     
@@ -237,19 +227,14 @@ abstract class Timer
      * 						current configuration.
      */
     boolean restoreState(Bundle map, boolean run) {
+    	stop();
     	tickInterval = map.getLong("tickInterval");
-    	isRunning = map.getBoolean("isRunning");
     	tickCount = map.getInt("tickCount");
-    	accumTime = map.getLong("accumTime");
-		lastLogTime = SystemClock.uptimeMillis();
+    	gameClock.setTime(map.getLong("accumTime"));
 
-    	// If we were running, restart if requested, else stop.
-    	if (isRunning) {
-    		if (run)
-        		start();
-    		else
-    			isRunning = false;
-    	}
+    	// If we were running, restart if requested.
+    	if (map.getBoolean("isRunning") && run)
+    		start();
 
         return true;
     }
@@ -262,22 +247,13 @@ abstract class Timer
 	// The tick interval in ms.
 	private long tickInterval = 0;
 
+	// The clock we keep time with.  It runs while we're running.
+	private final GameClock gameClock;
+
 	// true iff the timer is running.
 	private boolean isRunning = false;
 
 	// Number of times step() has been called.
 	private int tickCount;
 
-	// Time at which to execute the next step.  We schedule each
-	// step at this plus x ms; this gives us an even execution rate.
-	private long nextTime;
-
-	// The accumulated time in ms for which this timer has been running.
-	// Increments between start() and stop(); start(true) resets it.
-	private long accumTime;
-
-	// The time at which we last added to accumTime.
-	private long lastLogTime;
-
 }
-
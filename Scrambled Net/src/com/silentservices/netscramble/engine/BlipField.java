@@ -0,0 +1,250 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * The simulation of the data blips which flow through the network from the
+ * server, to show which parts of it are connected. Blips move half a cell
+ * per step: a blip comes in from the edge of a cell to its centre, then goes
+ * out along all the cell's other connections, passing on to the next cell.
+ * 
+ * <p>
+ * The blips are held in two packed arrays, one byte per cell, with a bit for
+ * each direction that has a blip coming in or going out; each step is one
+ * pass over the board using masks on the direction bits. Blips only travel
+ * over connections, and not through cells which are busy turning.
+ * 
+ * <p>
+ * After a step, {@link #collect(Board)} lists the cells which have blips to
+ * draw, so the drawing code needn't look at the rest of the board.
+ */
+public final class BlipField {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a blip field with no blips.
+	 */
+	public BlipField() {
+		reset(0);
+	}
+
+	// ******************************************************************** //
+	// Setup.
+	// ******************************************************************** //
+
+	/**
+	 * Clear all the blips, and set the field up for a board with the given
+	 * number of cells. The working storage is only re-allocated if the board
+	 * has grown.
+	 * 
+	 * @param size
+	 *            The number of cells in the board.
+	 */
+	public void reset(int size) {
+		if (incoming == null || incoming.length < size) {
+			incoming = new byte[size];
+			outgoing = new byte[size];
+			arriving = new byte[size];
+			listed = new int[size];
+		}
+		numCells = size;
+		clear();
+	}
+
+	/**
+	 * Remove all the blips.
+	 */
+	public void clear() {
+		for (int i = 0; i < numCells; ++i) {
+			incoming[i] = 0;
+			outgoing[i] = 0;
+			arriving[i] = 0;
+		}
+		numListed = 0;
+	}
+
+	// ******************************************************************** //
+	// Simulation.
+	// ******************************************************************** //
+
+	/**
+	 * Move all the blips on one step, i.e. half a cell width. Blips which
+	 * were going out of a cell pass on into the next cell, if it has a
+	 * connection back; blips which were coming in to a cell go out again
+	 * along its other connections.
+	 * 
+	 * @param b
+	 *            The board the blips are flowing over. It must be the size
+	 *            given to {@link #reset(int)}.
+	 * @param spawn
+	 *            If true, the servers send out new blips on all their
+	 *            connections.
+	 */
+	public void step(Board b, boolean spawn) {
+		final int[] nextCells = b.neighbours().table();
+		final Topology topo = b.topology();
+		final int nd = topo.numDirs;
+		for (int i = 0; i < numCells; ++i) {
+			final int conn = connections(b, i);
+
+			// Pass on the outgoing blips which still have somewhere to go.
+			final int transfer = outgoing[i] & conn;
+			if (transfer != 0) {
+				for (int k = 0; k < nd; ++k) {
+					final int dir = 1 << k;
+					if ((transfer & dir) == 0)
+						continue;
+					final int n = nextCells[i * nd + k];
+					if (n < 0)
+						continue;
+					final int rev = topo.reverse(dir);
+					if ((connections(b, n) & rev) != 0)
+						arriving[n] |= rev;
+				}
+			}
+
+			// Incoming blips turn round and go out on every connection
+			// which didn't have one coming in.
+			int in = incoming[i];
+			int out = in != 0 ? ~in & conn : 0;
+			if (spawn && b.isRoot(i))
+				out |= conn;
+			outgoing[i] = (byte) out;
+		}
+
+		// The blips which arrived are now incoming.
+		byte[] t = incoming;
+		incoming = arriving;
+		arriving = t;
+		for (int i = 0; i < numCells; ++i)
+			arriving[i] = 0;
+	}
+
+	/**
+	 * Get the directions a cell is connected to, for the purpose of carrying
+	 * blips.
+	 * 
+	 * @param b
+	 *            The board.
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's direction bits; zero if it is busy.
+	 */
+	private static int connections(Board b, int i) {
+		final int s = b.state(i);
+		return (s & Board.BUSY) != 0 ? 0 : s & Board.DIRS;
+	}
+
+	// ******************************************************************** //
+	// Drawing Support.
+	// ******************************************************************** //
+
+	/**
+	 * Make a list of the cells which have blips to draw, in index order.
+	 * Any blips in cells which are busy turning are lost.
+	 * 
+	 * @param b
+	 *            The board the blips are flowing over.
+	 * @return The number of cells listed.
+	 */
+	public int collect(Board b) {
+		numListed = 0;
+		for (int i = 0; i < numCells; ++i) {
+			if ((incoming[i] | outgoing[i]) == 0)
+				continue;
+			if (b.isBusy(i)) {
+				incoming[i] = 0;
+				outgoing[i] = 0;
+				continue;
+			}
+			listed[numListed++] = i;
+		}
+		return numListed;
+	}
+
+	/**
+	 * Get the number of cells listed by the last {@link #collect(Board)}.
+	 * 
+	 * @return The number of cells which have blips to draw.
+	 */
+	public int listedCount() {
+		return numListed;
+	}
+
+	/**
+	 * Get one of the cells listed by the last {@link #collect(Board)}.
+	 * 
+	 * @param k
+	 *            Index in the list, from 0 to listedCount() - 1.
+	 * @return Index of the cell in the board.
+	 */
+	public int listedCell(int k) {
+		return listed[k];
+	}
+
+	/**
+	 * Get the directions from which blips are coming in to a cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return Direction bits of the incoming blips.
+	 */
+	public int incoming(int i) {
+		return incoming[i];
+	}
+
+	/**
+	 * Get the directions in which blips are going out of a cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return Direction bits of the outgoing blips.
+	 */
+	public int outgoing(int i) {
+		return outgoing[i];
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The number of cells in the board.
+	private int numCells;
+
+	// For each cell, the directions which have a blip coming in to the
+	// centre of the cell, and going out from it.
+	private byte[] incoming;
+	private byte[] outgoing;
+
+	// Working storage for step(): the blips arriving in each cell.
+	private byte[] arriving;
+
+	// The cells listed by collect(), and how many there are.
+	private int[] listed;
+	private int numListed;
+
+}
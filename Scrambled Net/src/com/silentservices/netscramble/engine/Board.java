@@ -0,0 +1,1175 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * This class holds the logical state of a game board, packed into a
+ * primitive array: one short per cell, holding the cell's connection
+ * directions and its state flags. This is the single source of truth for
+ * the game logic; the on-screen cells are just a view of it.
+ * 
+ * Cells are identified by their index in the board, which runs across each
+ * row in turn; see {@link #index(int, int)}. The board may wrap around at
+ * the edges, in which case every cell has a neighbour in every direction.
+ * 
+ * <p>
+ * The cells are square unless another {@link Topology} is given. The
+ * static direction utilities here are for square boards; the board's
+ * topology has the general versions.
+ * 
+ * <p>
+ * A board normally has a single root cell, the server. In multi-server
+ * games it can have up to {@link #MAX_ROOTS}; a cell is connected if it
+ * links to any of them, and the connected cells are counted per server.
+ * 
+ * This class has no Android dependencies, so it can be used and tested
+ * off-device.
+ */
+public final class Board {
+
+	// ******************************************************************** //
+	// Public Constants.
+	// ******************************************************************** //
+
+	/**
+	 * Direction bit: the cell connects to the left. The direction bits are
+	 * laid out the same way as the ordinals of Cell.Dir.
+	 */
+	public static final int L = 0x01;
+
+	/**
+	 * Direction bit: the cell connects downwards.
+	 */
+	public static final int D = 0x02;
+
+	/**
+	 * Direction bit: the cell connects to the right.
+	 */
+	public static final int R = 0x04;
+
+	/**
+	 * Direction bit: the cell connects upwards.
+	 */
+	public static final int U = 0x08;
+
+	/**
+	 * Mask for the direction bits in a cell's state. This has room for the
+	 * six directions of a hex board; a square board only uses L, D, R and
+	 * U.
+	 */
+	public static final int DIRS = 0x3f;
+
+	/**
+	 * State flag: the cell is connected to the server.
+	 */
+	public static final int CONNECTED = 0x40;
+
+	/**
+	 * State flag: the cell is the root of the network, i.e. the server.
+	 */
+	public static final int ROOT = 0x80;
+
+	/**
+	 * State flag: the cell has been locked by the user.
+	 */
+	public static final int LOCKED = 0x100;
+
+	/**
+	 * State flag: the cell is busy (turning), and so has no connections.
+	 */
+	public static final int BUSY = 0x200;
+
+	/**
+	 * The individual directions of a square board, in the same order as
+	 * Cell.Dir.cardinals.
+	 */
+	public static final int[] CARDINALS = { L, D, R, U };
+
+	/**
+	 * The maximum number of root cells (servers) a board can have.
+	 */
+	public static final int MAX_ROOTS = 9;
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a square board of the given size. All cells are initially
+	 * free.
+	 * 
+	 * @param width
+	 *            Width of the board in cells.
+	 * @param height
+	 *            Height of the board in cells.
+	 * @param wrap
+	 *            If true, the network wraps around the edges of the board.
+	 */
+	public Board(int width, int height, boolean wrap) {
+		reset(Topology.SQUARE, width, height, wrap);
+	}
+
+	/**
+	 * Create a board of the given topology and size. All cells are
+	 * initially free.
+	 * 
+	 * @param topo
+	 *            The shape of the board's cells.
+	 * @param width
+	 *            Width of the board in cells.
+	 * @param height
+	 *            Height of the board in cells.
+	 * @param wrap
+	 *            If true, the network wraps around the edges of the board.
+	 */
+	public Board(Topology topo, int width, int height, boolean wrap) {
+		reset(topo, width, height, wrap);
+	}
+
+	// ******************************************************************** //
+	// Board Setup.
+	// ******************************************************************** //
+
+	/**
+	 * Reset this board to the given size, keeping its topology. All cells
+	 * are set free. The working storage is only re-allocated if the board
+	 * has grown.
+	 * 
+	 * @param width
+	 *            Width of the board in cells.
+	 * @param height
+	 *            Height of the board in cells.
+	 * @param wrap
+	 *            If true, the network wraps around the edges of the board.
+	 */
+	public void reset(int width, int height, boolean wrap) {
+		reset(topology, width, height, wrap);
+	}
+
+	/**
+	 * Reset this board to the given topology and size. All cells are set
+	 * free. The working storage is only re-allocated if the board has
+	 * grown.
+	 * 
+	 * @param topo
+	 *            The shape of the board's cells.
+	 * @param width
+	 *            Width of the board in cells.
+	 * @param height
+	 *            Height of the board in cells.
+	 * @param wrap
+	 *            If true, the network wraps around the edges of the board.
+	 * @throws IllegalArgumentException
+	 *             The size is bad, or a hex board is to wrap with an odd
+	 *             number of rows.
+	 */
+	public void reset(Topology topo, int width, int height, boolean wrap) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("Bad board size " + width
+					+ "x" + height);
+		if (wrap && !topo.canWrap(height))
+			throw new IllegalArgumentException("Can't wrap " + topo
+					+ " board with height " + height);
+
+		topology = topo;
+		numDirs = topo.numDirs;
+		dirMask = topo.mask;
+		boardWidth = width;
+		boardHeight = height;
+		isWrapped = wrap;
+		neighbours = NeighbourTable.get(topo, width, height, wrap);
+		nextCells = neighbours.table();
+
+		int n = width * height;
+		if (cellState == null || cellState.length < n) {
+			cellState = new short[n];
+			connectedFrom = new int[n];
+			connectedRoot = new int[n];
+			connectQueue = new int[n];
+			touchedCells = new int[n * 2];
+			changedCells = new int[n];
+			seenStamp = new int[n];
+		}
+		clear();
+	}
+
+	/**
+	 * Set all the cells in the board free, and clear the roots.
+	 */
+	public void clear() {
+		int n = boardWidth * boardHeight;
+		for (int i = 0; i < n; ++i) {
+			cellState[i] = 0;
+			connectedFrom[i] = -1;
+			connectedRoot[i] = -1;
+		}
+		numRoots = 0;
+		for (int k = 0; k < MAX_ROOTS; ++k)
+			rootSize[k] = 0;
+		numChanged = 0;
+		totalTerminals = 0;
+		connectedTerminals = 0;
+	}
+
+	/**
+	 * Copy the state of the given board into this one.
+	 * 
+	 * @param other
+	 *            The board to copy. Connection state is copied as well.
+	 */
+	public void copyFrom(Board other) {
+		reset(other.topology, other.boardWidth, other.boardHeight,
+				other.isWrapped);
+		int n = boardWidth * boardHeight;
+		System.arraycopy(other.cellState, 0, cellState, 0, n);
+		System.arraycopy(other.connectedFrom, 0, connectedFrom, 0, n);
+		System.arraycopy(other.connectedRoot, 0, connectedRoot, 0, n);
+		numRoots = other.numRoots;
+		System.arraycopy(other.rootCells, 0, rootCells, 0, MAX_ROOTS);
+		System.arraycopy(other.rootSize, 0, rootSize, 0, MAX_ROOTS);
+		totalTerminals = other.totalTerminals;
+		connectedTerminals = other.connectedTerminals;
+	}
+
+	// ******************************************************************** //
+	// Geometry.
+	// ******************************************************************** //
+
+	/**
+	 * Get the topology of this board.
+	 * 
+	 * @return The shape of the board's cells.
+	 */
+	public Topology topology() {
+		return topology;
+	}
+
+	/**
+	 * Get the width of this board.
+	 * 
+	 * @return The board width in cells.
+	 */
+	public int width() {
+		return boardWidth;
+	}
+
+	/**
+	 * Get the height of this board.
+	 * 
+	 * @return The board height in cells.
+	 */
+	public int height() {
+		return boardHeight;
+	}
+
+	/**
+	 * Get the number of cells in this board.
+	 * 
+	 * @return The number of cells in the board.
+	 */
+	public int size() {
+		return boardWidth * boardHeight;
+	}
+
+	/**
+	 * Query whether this board wraps around at the edges.
+	 * 
+	 * @return true iff the network wraps around the edges.
+	 */
+	public boolean isWrapped() {
+		return isWrapped;
+	}
+
+	/**
+	 * Get the index of the cell at the given position.
+	 * 
+	 * @param x
+	 *            X position of the cell in the board.
+	 * @param y
+	 *            Y position of the cell in the board.
+	 * @return The index of the cell.
+	 */
+	public int index(int x, int y) {
+		return y * boardWidth + x;
+	}
+
+	/**
+	 * Get the X position of the given cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's X position in the board.
+	 */
+	public int x(int i) {
+		return i % boardWidth;
+	}
+
+	/**
+	 * Get the Y position of the given cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's Y position in the board.
+	 */
+	public int y(int i) {
+		return i / boardWidth;
+	}
+
+	/**
+	 * Get the neighbouring cell in the given direction from a cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dir
+	 *            The direction to look in; a single direction bit of the
+	 *            board's topology.
+	 * @return The index of the next cell in the given direction; -1 if
+	 *         there is none. If wrapping is on, this may be at the other edge
+	 *         of the board.
+	 */
+	public int next(int i, int dir) {
+		return nextCells[i * numDirs + topology.index(dir)];
+	}
+
+	/**
+	 * Get the table of the neighbours of every cell in this board. Inner
+	 * loops can use its packed table rather than calling
+	 * {@link #next(int, int)}.
+	 * 
+	 * @return The shared neighbour table for this board's size and
+	 *         wrapping.
+	 */
+	public NeighbourTable neighbours() {
+		return neighbours;
+	}
+
+	// ******************************************************************** //
+	// Direction Utilities.
+	// ******************************************************************** //
+
+	/**
+	 * Get the reverse of the given square direction bits.
+	 * 
+	 * @param dirs
+	 *            Direction bits.
+	 * @return The same directions, pointing the other way.
+	 */
+	public static int reverse(int dirs) {
+		return ((dirs << 2) | (dirs >> 2)) & SQUARE_DIRS;
+	}
+
+	/**
+	 * Get the given square direction bits rotated by a number of quarter
+	 * turns.
+	 * 
+	 * @param dirs
+	 *            Direction bits.
+	 * @param turns
+	 *            Number of quarter turns to rotate; clockwise positive.
+	 * @return The rotated direction bits.
+	 */
+	public static int rotated(int dirs, int turns) {
+		turns &= 3;
+		if (turns == 0)
+			return dirs;
+
+		// Clockwise is U -> R -> D -> L -> U, which is a right shift
+		// of the direction bits.
+		return ((dirs >> turns) | (dirs << (4 - turns))) & SQUARE_DIRS;
+	}
+
+	/**
+	 * Count the number of directions in the given direction bits. This
+	 * works for any topology.
+	 * 
+	 * @param dirs
+	 *            Direction bits.
+	 * @return The number of directions set.
+	 */
+	public static int count(int dirs) {
+		return BITS_SET[dirs & DIRS];
+	}
+
+	// ******************************************************************** //
+	// Cell State.
+	// ******************************************************************** //
+
+	/**
+	 * Get the full state of the given cell: its direction bits and flags.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell state.
+	 */
+	public int state(int i) {
+		return cellState[i];
+	}
+
+	/**
+	 * Return the directions that a cell is connected to, outwards (ie.
+	 * ignoring whether there is a matching inward connection in the next
+	 * cell).
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's direction bits.
+	 */
+	public int dirs(int i) {
+		return cellState[i] & DIRS;
+	}
+
+	/**
+	 * Set the directions that a cell is connected to.
+	 * 
+	 * <p>
+	 * Note that this does not update the connection state of the board.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dirs
+	 *            New direction bits for the cell.
+	 */
+	public void setDirs(int i, int dirs) {
+		cellState[i] = (short) ((cellState[i] & ~DIRS) | (dirs & dirMask));
+	}
+
+	/**
+	 * Add the given direction(s) to the directions a cell is connected to.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dirs
+	 *            Direction bits to add.
+	 */
+	public void addDir(int i, int dirs) {
+		cellState[i] |= (short) (dirs & dirMask);
+	}
+
+	/**
+	 * Rotate a cell immediately by the given number of steps.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param turns
+	 *            Number of steps to rotate -- quarter turns on a square
+	 *            board; clockwise positive.
+	 */
+	public void rotate(int i, int turns) {
+		setDirs(i, topology.rotated(cellState[i] & DIRS, turns));
+	}
+
+	/**
+	 * Determine how many connections a cell has outwards.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The number of outward connections from the cell.
+	 */
+	public int numDirs(int i) {
+		return BITS_SET[cellState[i] & DIRS];
+	}
+
+	/**
+	 * Query whether a cell is a terminal; i.e. it has exactly one
+	 * connection, and is not the server.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return true iff the cell is a terminal.
+	 */
+	public boolean isTerminal(int i) {
+		return BITS_SET[cellState[i] & DIRS] == 1 && (cellState[i] & ROOT) == 0;
+	}
+
+	/**
+	 * Query whether a cell has a connection in the given direction(s). A busy
+	 * cell has no connections.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dirs
+	 *            Direction(s) to check.
+	 * @return true iff the cell is connected in all the given directions.
+	 */
+	public boolean hasConnection(int i, int dirs) {
+		int s = cellState[i];
+		return (s & BUSY) == 0 && (s & dirs) == dirs;
+	}
+
+	/**
+	 * Query whether a cell is linked to its neighbour in the given direction;
+	 * i.e. both cells have a connection towards each other.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dir
+	 *            The direction to look in; a single direction bit.
+	 * @return true iff the cell is linked to its neighbour.
+	 */
+	public boolean isLinked(int i, int dir) {
+		int n = next(i, dir);
+		return n >= 0 && hasConnection(i, dir)
+				&& hasConnection(n, topology.reverse(dir));
+	}
+
+	/**
+	 * Get the index of the root cell. If there are several, this is the
+	 * first one.
+	 * 
+	 * @return The index of the root cell; -1 if not set.
+	 */
+	public int root() {
+		return numRoots > 0 ? rootCells[0] : -1;
+	}
+
+	/**
+	 * Set the root cell of the network; i.e. the server. Any previous roots
+	 * are cleared.
+	 * 
+	 * <p>
+	 * Note that this does not update the connection state of the board.
+	 * 
+	 * @param i
+	 *            Index of the new root cell; -1 to clear the roots.
+	 */
+	public void setRoot(int i) {
+		for (int k = 0; k < numRoots; ++k)
+			cellState[rootCells[k]] &= ~ROOT;
+		numRoots = 0;
+		if (i >= 0)
+			addRoot(i);
+	}
+
+	/**
+	 * Add a root cell to the network; i.e. another server. Root cells are
+	 * numbered in the order they were added.
+	 * 
+	 * <p>
+	 * Note that this does not update the connection state of the board.
+	 * 
+	 * @param i
+	 *            Index of the new root cell. Nothing happens if it's
+	 *            already a root.
+	 * @throws IllegalStateException
+	 *             The board already has {@link #MAX_ROOTS} roots.
+	 */
+	public void addRoot(int i) {
+		if ((cellState[i] & ROOT) != 0)
+			return;
+		if (numRoots == MAX_ROOTS)
+			throw new IllegalStateException("Too many roots");
+		rootCells[numRoots++] = i;
+		cellState[i] |= ROOT;
+	}
+
+	/**
+	 * Remove a cell from the root cells of the network. The remaining roots
+	 * keep their order.
+	 * 
+	 * <p>
+	 * Note that this does not update the connection state of the board.
+	 * 
+	 * @param i
+	 *            Index of the cell. Nothing happens if it's not a root.
+	 */
+	public void removeRoot(int i) {
+		int k = rootNumber(i);
+		if (k < 0)
+			return;
+		cellState[i] &= ~ROOT;
+		--numRoots;
+		System.arraycopy(rootCells, k + 1, rootCells, k, numRoots - k);
+	}
+
+	/**
+	 * Get the number of root cells.
+	 * 
+	 * @return The number of root cells; normally 1.
+	 */
+	public int rootCount() {
+		return numRoots;
+	}
+
+	/**
+	 * Get one of the root cells.
+	 * 
+	 * @param k
+	 *            Which root to get; from 0 to rootCount() - 1.
+	 * @return The index of the root cell.
+	 */
+	public int rootAt(int k) {
+		return rootCells[k];
+	}
+
+	/**
+	 * Query whether a cell is a root of the network.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return true iff this is a root cell.
+	 */
+	public boolean isRoot(int i) {
+		return (cellState[i] & ROOT) != 0;
+	}
+
+	/**
+	 * Query whether a cell has been locked.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's "locked" flag.
+	 */
+	public boolean isLocked(int i) {
+		return (cellState[i] & LOCKED) != 0;
+	}
+
+	/**
+	 * Set the "locked" flag on a cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param locked
+	 *            New "locked" flag for the cell.
+	 */
+	public void setLocked(int i, boolean locked) {
+		setFlag(i, LOCKED, locked);
+	}
+
+	/**
+	 * Query whether a cell is busy; i.e. turning.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's "busy" flag.
+	 */
+	public boolean isBusy(int i) {
+		return (cellState[i] & BUSY) != 0;
+	}
+
+	/**
+	 * Set the "busy" flag on a cell. While busy, a cell has no connections.
+	 * 
+	 * <p>
+	 * Note that this does not update the connection state of the board.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param busy
+	 *            New "busy" flag for the cell.
+	 */
+	public void setBusy(int i, boolean busy) {
+		setFlag(i, BUSY, busy);
+	}
+
+	/**
+	 * Query whether a cell is connected to the server.
+	 * 
+	 * <p>
+	 * Note that this is only valid after the connection state of the board has
+	 * been updated.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's "connected" flag.
+	 */
+	public boolean isConnected(int i) {
+		return (cellState[i] & CONNECTED) != 0;
+	}
+
+	/**
+	 * Find which server a cell gets its connection from. A cell which links
+	 * to several servers is only counted against one of them.
+	 * 
+	 * <p>
+	 * Note that this is only valid after the connection state of the board has
+	 * been updated.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The number of the root cell, as for {@link #rootAt(int)}, it
+	 *         is connected to; -1 if it's not connected.
+	 */
+	public int connectedRoot(int i) {
+		return connectedRoot[i];
+	}
+
+	/**
+	 * Get the number of cells connected to one of the servers. This is kept
+	 * up to date by each connection update, so it's cheap to call after
+	 * every move.
+	 * 
+	 * @param k
+	 *            Which root to look at; from 0 to rootCount() - 1.
+	 * @return The number of cells, including the root itself, which get
+	 *         their connection from that root.
+	 */
+	public int rootSize(int k) {
+		return rootSize[k];
+	}
+
+	/**
+	 * Set or clear a state flag on a cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param flag
+	 *            The flag to change.
+	 * @param set
+	 *            true to set the flag, false to clear it.
+	 */
+	private void setFlag(int i, int flag, boolean set) {
+		if (set)
+			cellState[i] |= flag;
+		else
+			cellState[i] &= ~flag;
+	}
+
+	// ******************************************************************** //
+	// Connection State.
+	// ******************************************************************** //
+
+	/**
+	 * Work out which cells are connected to the server. This does a complete
+	 * re-computation of the connectedness of every cell, and is used when the
+	 * whole board has changed -- i.e. after setting up or restoring a game.
+	 * When a single cell has changed, use {@link #updateConnections(int)},
+	 * which is much cheaper.
+	 * 
+	 * @return The number of cells which have been connected that previously
+	 *         weren't.
+	 */
+	public int updateConnections() {
+		int n = boardWidth * boardHeight;
+
+		// Clear the spanning tree. Every cell is potentially changed, so
+		// save the old connected flags in touchedCells. Count the terminals
+		// while we're at it; the number doesn't change during a game.
+		numTouched = 0;
+		totalTerminals = 0;
+		connectedTerminals = 0;
+		for (int i = 0; i < n; ++i) {
+			int s = cellState[i];
+			touchedCells[numTouched++] = (s & CONNECTED) != 0 ? i | WAS_CONNECTED : i;
+			cellState[i] = (short) (s & ~CONNECTED);
+			connectedFrom[i] = -1;
+			connectedRoot[i] = -1;
+			if (isTerminal(i)) {
+				++totalTerminals;
+				if ((s & CONNECTED) != 0)
+					++connectedTerminals;
+			}
+		}
+
+		// Flag each root cell as connected, and flood out from all of them
+		// at once. A busy root isn't connected to anything.
+		queueHead = queueTail = 0;
+		for (int k = 0; k < numRoots; ++k) {
+			rootSize[k] = 0;
+			int r = rootCells[k];
+			if ((cellState[r] & BUSY) == 0) {
+				connect(r, -1, k);
+				connectQueue[queueTail++] = r;
+			}
+		}
+		floodConnections(false);
+
+		// Finally, work out what changed.
+		return collectChanges();
+	}
+
+	/**
+	 * Update the connected state of the board after a change to the given
+	 * cell -- i.e. the cell has become busy, or has turned to a new position.
+	 * Only the part of the network which depends on that cell is re-computed.
+	 * 
+	 * <p>
+	 * We keep a spanning tree of the connected part of the network, in which
+	 * each connected cell records the cell it was reached from. If the changed
+	 * cell was connected, then everything downstream of it in the tree is cut
+	 * off; those cells are re-connected if they can reach the rest of the
+	 * network by some other route. Then we flood out from any newly connected
+	 * cells. Cells which don't depend on the changed cell can't have changed
+	 * state, so they aren't looked at.
+	 * 
+	 * <p>
+	 * The cells whose state actually changed can be retrieved with
+	 * {@link #changedCount()} and {@link #changedCell(int)}.
+	 * 
+	 * @param cell
+	 *            Index of the cell which has changed.
+	 * @return The number of cells which have been connected that previously
+	 *         weren't.
+	 */
+	public int updateConnections(int cell) {
+		numTouched = 0;
+		queueHead = queueTail = 0;
+
+		// If the changed cell was connected, cut it and everything that
+		// was connected through it out of the network.
+		final int nd = numDirs;
+		if ((cellState[cell] & CONNECTED) != 0) {
+			cutConnection(cell);
+			connectQueue[queueTail++] = cell;
+			while (queueHead < queueTail) {
+				int c = connectQueue[queueHead++];
+				touchedCells[numTouched++] = c | WAS_CONNECTED;
+				for (int k = 0; k < nd; ++k) {
+					int n = nextCells[c * nd + k];
+					if (n >= 0 && connectedFrom[n] == c) {
+						cutConnection(n);
+						connectQueue[queueTail++] = n;
+					}
+				}
+			}
+		} else
+			touchedCells[numTouched++] = cell;
+
+		// Now see which of the cut-off cells (or the changed cell, if it
+		// wasn't connected) can be re-attached to the network. These are
+		// the seeds for a flood fill to re-connect everything else.
+		queueHead = queueTail = 0;
+		int cut = numTouched;
+		for (int t = 0; t < cut; ++t) {
+			int c = touchedCells[t] & ~WAS_CONNECTED;
+			if ((cellState[c] & CONNECTED) != 0)
+				continue;
+			if ((cellState[c] & ROOT) != 0) {
+				if ((cellState[c] & BUSY) == 0) {
+					connect(c, -1, rootNumber(c));
+					connectQueue[queueTail++] = c;
+				}
+				continue;
+			}
+			for (int k = 0; k < nd; ++k) {
+				int n = nextCells[c * nd + k];
+				if (n >= 0 && (cellState[n] & CONNECTED) != 0
+						&& hasConnection(c, 1 << k)
+						&& hasConnection(n, 1 << reverseDir(k))) {
+					connect(c, n, connectedRoot[n]);
+					connectQueue[queueTail++] = c;
+					break;
+				}
+			}
+		}
+		floodConnections(true);
+
+		// Work out which cells actually changed.
+		return collectChanges();
+	}
+
+	/**
+	 * Get the number of cells whose connected state was changed by the last
+	 * connection update.
+	 * 
+	 * @return The number of changed cells.
+	 */
+	public int changedCount() {
+		return numChanged;
+	}
+
+	/**
+	 * Get one of the cells whose connected state was changed by the last
+	 * connection update.
+	 * 
+	 * @param k
+	 *            Which changed cell to get; from 0 to changedCount() - 1.
+	 * @return The index of the changed cell.
+	 */
+	public int changedCell(int k) {
+		return changedCells[k];
+	}
+
+	/**
+	 * Determine whether the board is currently in a solved state -- i.e. all
+	 * terminals are connected to the server.
+	 * 
+	 * <p>
+	 * Note that in some layouts, it is possible to connect all the terminals
+	 * without using all the cable sections. Since the game intro asks the
+	 * user to connect all the terminals, which makes sense, we look for
+	 * unconnected terminals specifically.
+	 * 
+	 * @return true iff the board is currently in a solved state.
+	 */
+	public boolean isSolved() {
+		// We keep a running count of connected terminals as the connections
+		// are updated, so this is simple.
+		return connectedTerminals == totalTerminals;
+	}
+
+	/**
+	 * Count the number of unconnected cells in the board. On a solved board,
+	 * this is the number of unused cable sections.
+	 * 
+	 * @return The number of unconnected non-empty cells in the board.
+	 */
+	public int unconnectedCells() {
+		int n = boardWidth * boardHeight;
+		int unused = 0;
+		for (int i = 0; i < n; ++i) {
+			int s = cellState[i];
+			if ((s & DIRS) != 0 && (s & CONNECTED) == 0)
+				++unused;
+		}
+		return unused;
+	}
+
+	/**
+	 * Count the number of non-empty cells in the board.
+	 * 
+	 * @return The number of cells which have any connections.
+	 */
+	public int usedCells() {
+		int n = boardWidth * boardHeight;
+		int used = 0;
+		for (int i = 0; i < n; ++i)
+			if ((cellState[i] & DIRS) != 0)
+				++used;
+		return used;
+	}
+
+	// ******************************************************************** //
+	// Connection Implementation.
+	// ******************************************************************** //
+
+	/**
+	 * Connect a cell to the network.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param from
+	 *            Index of the cell it gets its connection from; -1 for a
+	 *            root.
+	 * @param k
+	 *            Number of the root it's connected to.
+	 */
+	private void connect(int i, int from, int k) {
+		cellState[i] |= CONNECTED;
+		connectedFrom[i] = from;
+		connectedRoot[i] = k;
+		++rootSize[k];
+	}
+
+	/**
+	 * Cut a cell off from the network.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 */
+	private void cutConnection(int i) {
+		cellState[i] &= ~CONNECTED;
+		connectedFrom[i] = -1;
+		--rootSize[connectedRoot[i]];
+		connectedRoot[i] = -1;
+	}
+
+	/**
+	 * Get the index of the direction opposite the given one.
+	 * 
+	 * @param k
+	 *            Index of a direction.
+	 * @return Index of the reverse direction.
+	 */
+	private int reverseDir(int k) {
+		final int half = numDirs >> 1;
+		return k < half ? k + half : k - half;
+	}
+
+	/**
+	 * Find the number of a root cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's number in the list of roots; -1 if it's not a
+	 *         root.
+	 */
+	private int rootNumber(int i) {
+		for (int k = 0; k < numRoots; ++k)
+			if (rootCells[k] == i)
+				return k;
+		return -1;
+	}
+
+	/**
+	 * Flood out from the cells in the connection queue, marking every cell
+	 * they link to as connected, and recording the spanning tree of
+	 * connections as we go.
+	 * 
+	 * @param touch
+	 *            If true, add each newly connected cell to touchedCells.
+	 */
+	private void floodConnections(boolean touch) {
+		final int nd = numDirs;
+		while (queueHead < queueTail) {
+			int c = connectQueue[queueHead++];
+			for (int k = 0; k < nd; ++k) {
+				int n = nextCells[c * nd + k];
+				if (n < 0 || (cellState[n] & CONNECTED) != 0)
+					continue;
+				if (!hasConnection(c, 1 << k)
+						|| !hasConnection(n, 1 << reverseDir(k)))
+					continue;
+
+				connect(n, c, connectedRoot[c]);
+				connectQueue[queueTail++] = n;
+				if (touch)
+					touchedCells[numTouched++] = n;
+			}
+		}
+	}
+
+	/**
+	 * Compare the connected state of every cell in touchedCells to its state
+	 * before the update, and note which cells actually changed in
+	 * changedCells.
+	 * 
+	 * <p>
+	 * A cell can appear twice in touchedCells -- once when it was cut off, and
+	 * once when it was re-connected. Only the first entry records its
+	 * previous state, so we skip a cell once we've seen it.
+	 * 
+	 * @return The number of cells which have been connected that previously
+	 *         weren't.
+	 */
+	private int collectChanges() {
+		int newConnections = 0;
+		numChanged = 0;
+
+		// Bump the update stamp; if it wraps, clear all the stamps.
+		if (++updateStamp == 0) {
+			for (int i = 0; i < seenStamp.length; ++i)
+				seenStamp[i] = 0;
+			updateStamp = 1;
+		}
+
+		for (int t = 0; t < numTouched; ++t) {
+			int entry = touchedCells[t];
+			int c = entry & ~WAS_CONNECTED;
+			boolean was = (entry & WAS_CONNECTED) != 0;
+			boolean conn = (cellState[c] & CONNECTED) != 0;
+
+			// Skip the cell if we've already seen it in this update.
+			if (seenStamp[c] == updateStamp)
+				continue;
+			seenStamp[c] = updateStamp;
+
+			if (conn == was)
+				continue;
+			if (conn)
+				++newConnections;
+			if (isTerminal(c))
+				connectedTerminals += conn ? 1 : -1;
+			changedCells[numChanged++] = c;
+		}
+
+		return newConnections;
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Flag added to an entry in touchedCells to record that the cell was
+	// connected before the update. Cell indices are always smaller.
+	private static final int WAS_CONNECTED = 0x40000000;
+
+	// Mask for the direction bits of a square board.
+	private static final int SQUARE_DIRS = L | D | R | U;
+
+	// The number of bits set in each possible set of direction bits.
+	private static final int[] BITS_SET = new int[DIRS + 1];
+	static {
+		for (int d = 1; d <= DIRS; ++d)
+			BITS_SET[d] = BITS_SET[d >> 1] + (d & 1);
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The shape of the board's cells, its number of directions, and the
+	// mask of its direction bits.
+	private Topology topology = Topology.SQUARE;
+	private int numDirs;
+	private int dirMask;
+
+	// Width and height of the board, in cells.
+	private int boardWidth;
+	private int boardHeight;
+
+	// True iff the network wraps around the edges of the board.
+	private boolean isWrapped;
+
+	// The neighbours of every cell, and its packed table.
+	private NeighbourTable neighbours;
+	private int[] nextCells;
+
+	// The state of each cell: its direction bits, plus state flags.
+	private short[] cellState;
+
+	// Indices of the root cells, in the order they were added, and the
+	// number of them.
+	private final int[] rootCells = new int[MAX_ROOTS];
+	private int numRoots = 0;
+
+	// Spanning forest of the connected part of the network: for each
+	// connected cell, the index of the neighbouring cell it gets its
+	// connection from. -1 for the roots and for unconnected cells.
+	private int[] connectedFrom;
+
+	// For each connected cell, the number of the root its tree grows
+	// from; -1 for unconnected cells. rootSize is the number of cells in
+	// each root's tree.
+	private int[] connectedRoot;
+	private final int[] rootSize = new int[MAX_ROOTS];
+
+	// Queue of outstanding connected cells; used in updateConnections().
+	// queueHead is the next cell to take off, queueTail the next free slot.
+	private int[] connectQueue;
+	private int queueHead = 0;
+	private int queueTail = 0;
+
+	// Cells whose connected state may be changed by the current connection
+	// update, each flagged with WAS_CONNECTED if it was connected before.
+	// A cell can be touched twice in an update -- once when cut off, once
+	// when re-connected. numTouched is the number in use.
+	private int[] touchedCells;
+	private int numTouched = 0;
+
+	// Cells whose connected state was changed by the last connection
+	// update; numChanged is the number in use.
+	private int[] changedCells;
+	private int numChanged = 0;
+
+	// Stamp marking the cells we've already looked at in the current
+	// update; a cell has been seen iff its seenStamp equals updateStamp.
+	private int[] seenStamp;
+	private int updateStamp = 0;
+
+	// The number of terminals on the board, and how many of them are
+	// currently connected to the server.
+	private int totalTerminals = 0;
+	private int connectedTerminals = 0;
+
+}
@@ -0,0 +1,344 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * Packs the state of a board into a compact byte array for saving, and
+ * unpacks it again, optionally rotating the board by a quarter turn as it
+ * goes; this is used when the screen has been rotated since the game was
+ * saved.
+ * 
+ * <p>
+ * The format is a fixed header, followed by one nibble per cell holding
+ * the cell's direction bits (a byte per cell on a hex board, which has six
+ * directions), then three bit planes with one bit per cell:
+ * the locked flags, a set of caller-defined marks (the app uses these for
+ * blind cells), and the root cells. The connection state isn't saved, as
+ * it's re-computed from the cells. The header is:
+ * 
+ * <pre>
+ *   byte 0      format version
+ *   bytes 1-2   width
+ *   bytes 3-4   height
+ *   byte 5      flags: 1 if the board wraps, 2 if it's a hex board
+ *   bytes 6-9   index of the first root cell, or -1 if none
+ * </pre>
+ * 
+ * All multi-byte values are big-endian. Version 1 of the format had no
+ * root plane, and only one root; it can still be decoded.
+ */
+public final class BoardCodec {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * No instances; all the methods are static.
+	 */
+	private BoardCodec() {
+	}
+
+	// ******************************************************************** //
+	// Encoding.
+	// ******************************************************************** //
+
+	/**
+	 * Get the size of the encoded form of a square board.
+	 * 
+	 * @param cells
+	 *            The number of cells in the board.
+	 * @return The size in bytes of the encoded board.
+	 */
+	public static int encodedSize(int cells) {
+		return encodedSize(Topology.SQUARE, cells);
+	}
+
+	/**
+	 * Get the size of the encoded form of a board.
+	 * 
+	 * @param topo
+	 *            The topology of the board.
+	 * @param cells
+	 *            The number of cells in the board.
+	 * @return The size in bytes of the encoded board.
+	 */
+	public static int encodedSize(Topology topo, int cells) {
+		return encodedSize(cells, VERSION, topo == Topology.HEX);
+	}
+
+	/**
+	 * Get the size of a board encoded in the given version of the format.
+	 * 
+	 * @param cells
+	 *            The number of cells in the board.
+	 * @param version
+	 *            The format version.
+	 * @param hex
+	 *            True if it's a hex board.
+	 * @return The size in bytes of the encoded board.
+	 */
+	private static int encodedSize(int cells, int version, boolean hex) {
+		int planes = version == 1 ? 2 : 3;
+		return HEADER_SIZE + dirsSize(cells, hex) + (cells + 7) / 8 * planes;
+	}
+
+	/**
+	 * Get the size of the direction bits of an encoded board.
+	 * 
+	 * @param cells
+	 *            The number of cells in the board.
+	 * @param hex
+	 *            True if it's a hex board.
+	 * @return The size in bytes of the cells' direction bits.
+	 */
+	private static int dirsSize(int cells, boolean hex) {
+		return hex ? cells : (cells + 1) / 2;
+	}
+
+	/**
+	 * Encode the given board.
+	 * 
+	 * @param b
+	 *            The board to encode.
+	 * @param marks
+	 *            Per-cell marks to save along with the board, indexed by
+	 *            board index; null if none.
+	 * @return The encoded board.
+	 */
+	public static byte[] encode(Board b, boolean[] marks) {
+		final int w = b.width();
+		final int h = b.height();
+		final int n = w * h;
+		final boolean hex = b.topology() == Topology.HEX;
+		byte[] data = new byte[encodedSize(n, VERSION, hex)];
+
+		data[0] = VERSION;
+		Bytes.putShort(data, 1, w);
+		Bytes.putShort(data, 3, h);
+		data[5] = (byte) ((b.isWrapped() ? FLAG_WRAP : 0)
+				| (hex ? FLAG_HEX : 0));
+		Bytes.putInt(data, 6, b.root());
+
+		final int locks = HEADER_SIZE + dirsSize(n, hex);
+		final int marked = locks + (n + 7) / 8;
+		final int roots = marked + (n + 7) / 8;
+		for (int i = 0; i < n; ++i) {
+			int dirs = b.dirs(i);
+			if (hex)
+				data[HEADER_SIZE + i] = (byte) dirs;
+			else
+				data[HEADER_SIZE + (i >> 1)] |= (i & 1) == 0 ? dirs
+						: dirs << 4;
+			if (b.isLocked(i))
+				data[locks + (i >> 3)] |= 1 << (i & 7);
+			if (marks != null && marks[i])
+				data[marked + (i >> 3)] |= 1 << (i & 7);
+			if (b.isRoot(i))
+				data[roots + (i >> 3)] |= 1 << (i & 7);
+		}
+
+		return data;
+	}
+
+	// ******************************************************************** //
+	// Decoding.
+	// ******************************************************************** //
+
+	/**
+	 * Get the width of an encoded board.
+	 * 
+	 * @param data
+	 *            The encoded board.
+	 * @return The width of the board as saved.
+	 * @throws IllegalArgumentException
+	 *             The data is not a valid encoded board.
+	 */
+	public static int width(byte[] data) {
+		check(data);
+		return Bytes.getShort(data, 1);
+	}
+
+	/**
+	 * Get the height of an encoded board.
+	 * 
+	 * @param data
+	 *            The encoded board.
+	 * @return The height of the board as saved.
+	 * @throws IllegalArgumentException
+	 *             The data is not a valid encoded board.
+	 */
+	public static int height(byte[] data) {
+		check(data);
+		return Bytes.getShort(data, 3);
+	}
+
+	/**
+	 * Decode a board, rotating it by the given number of quarter turns. The
+	 * cell positions are remapped, and each cell is turned to match, so the
+	 * result is the same network seen on its side. The connection state of
+	 * the board is not updated. A hex board can't be rotated by a quarter
+	 * turn, so turns must be a multiple of 4 for a hex board.
+	 * 
+	 * @param data
+	 *            The encoded board.
+	 * @param b
+	 *            The board to decode into. This is reset to the size of the
+	 *            saved board, with width and height swapped for an odd
+	 *            number of turns.
+	 * @param marks
+	 *            Array in which to return the per-cell marks, indexed by
+	 *            index in the decoded board; null if not wanted. It must be
+	 *            at least as big as the board.
+	 * @param turns
+	 *            Number of quarter turns to rotate the board by; clockwise
+	 *            positive.
+	 * @throws IllegalArgumentException
+	 *             The data is not a valid encoded board, or is a hex board
+	 *             to be rotated.
+	 */
+	public static void decode(byte[] data, Board b, boolean[] marks, int turns)
+	{
+		check(data);
+		final int w = Bytes.getShort(data, 1);
+		final int h = Bytes.getShort(data, 3);
+		final int n = w * h;
+		final boolean hex = (data[5] & FLAG_HEX) != 0;
+		if (w < 1 || h < 1 || data.length != encodedSize(n, data[0], hex))
+			throw new IllegalArgumentException("Bad saved board size " + w
+					+ "x" + h + " in " + data.length + " bytes");
+		final int root = Bytes.getInt(data, 6);
+		if (root < -1 || root >= n)
+			throw new IllegalArgumentException("Bad saved root " + root);
+
+		turns &= 3;
+		if (hex && turns != 0)
+			throw new IllegalArgumentException("Can't rotate a hex board");
+		final Topology topo = hex ? Topology.HEX : Topology.SQUARE;
+		final boolean wrap = (data[5] & FLAG_WRAP) != 0;
+		if ((turns & 1) == 0)
+			b.reset(topo, w, h, wrap);
+		else
+			b.reset(topo, h, w, wrap);
+
+		final int locks = HEADER_SIZE + dirsSize(n, hex);
+		final int marked = locks + (n + 7) / 8;
+		for (int i = 0; i < n; ++i) {
+			int dirs;
+			if (hex) {
+				dirs = data[HEADER_SIZE + i] & topo.mask;
+			} else {
+				int packed = data[HEADER_SIZE + (i >> 1)];
+				dirs = ((i & 1) == 0 ? packed : packed >> 4) & topo.mask;
+			}
+			int j = rotatedIndex(i, w, h, turns);
+			b.setDirs(j, topo.rotated(dirs, turns));
+			b.setLocked(j, (data[locks + (i >> 3)] & (1 << (i & 7))) != 0);
+			if (marks != null)
+				marks[j] = (data[marked + (i >> 3)] & (1 << (i & 7))) != 0;
+		}
+		b.setRoot(root < 0 ? -1 : rotatedIndex(root, w, h, turns));
+
+		// Add any other roots after the first, in the order they were
+		// saved.
+		if (data[0] == 1 || root < 0)
+			return;
+		final int roots = marked + (n + 7) / 8;
+		for (int i = 0; i < n; ++i) {
+			if ((data[roots + (i >> 3)] & (1 << (i & 7))) == 0 || i == root)
+				continue;
+			if (b.rootCount() == Board.MAX_ROOTS)
+				throw new IllegalArgumentException("Too many saved roots");
+			b.addRoot(rotatedIndex(i, w, h, turns));
+		}
+	}
+
+	/**
+	 * Map the index of a cell in a board to its index in the same board
+	 * rotated by the given number of quarter turns.
+	 * 
+	 * @param i
+	 *            Index of the cell in the original board.
+	 * @param w
+	 *            Width of the original board.
+	 * @param h
+	 *            Height of the original board.
+	 * @param turns
+	 *            Number of quarter turns, 0-3; clockwise positive.
+	 * @return Index of the cell in the rotated board.
+	 */
+	private static int rotatedIndex(int i, int w, int h, int turns) {
+		final int x = i % w;
+		final int y = i / w;
+		switch (turns) {
+		case 1:
+			// Rotated right; the new board is h wide.
+			return x * h + (h - 1 - y);
+		case 2:
+			return (h - 1 - y) * w + (w - 1 - x);
+		case 3:
+			// Rotated left; the new board is h wide.
+			return (w - 1 - x) * h + y;
+		default:
+			return i;
+		}
+	}
+
+	// ******************************************************************** //
+	// Utilities.
+	// ******************************************************************** //
+
+	/**
+	 * Check that the given data has a valid header.
+	 * 
+	 * @param data
+	 *            The encoded board.
+	 * @throws IllegalArgumentException
+	 *             The data is not a valid encoded board.
+	 */
+	private static void check(byte[] data) {
+		if (data == null || data.length < HEADER_SIZE)
+			throw new IllegalArgumentException("Saved board is truncated");
+		if (data[0] != 1 && data[0] != VERSION)
+			throw new IllegalArgumentException("Bad saved board version "
+					+ data[0]);
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Version number of the save format.
+	private static final byte VERSION = 2;
+
+	// Size of the header in bytes.
+	private static final int HEADER_SIZE = 10;
+
+	// Header flag: the board wraps.
+	private static final int FLAG_WRAP = 0x01;
+
+	// Header flag: the board is a hex board.
+	private static final int FLAG_HEX = 0x02;
+
+}
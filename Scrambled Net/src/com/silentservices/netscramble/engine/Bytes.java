@@ -0,0 +1,71 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * Big-endian packing of integers into byte arrays, shared by the engine's
+ * binary save formats.
+ */
+final class Bytes {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	private Bytes() {
+	}
+
+	// ******************************************************************** //
+	// Packing.
+	// ******************************************************************** //
+
+	static void putShort(byte[] data, int off, int v) {
+		data[off] = (byte) (v >> 8);
+		data[off + 1] = (byte) v;
+	}
+
+	static int getShort(byte[] data, int off) {
+		return (data[off] & 0xff) << 8 | (data[off + 1] & 0xff);
+	}
+
+	static void putInt(byte[] data, int off, int v) {
+		putShort(data, off, v >> 16);
+		putShort(data, off + 2, v);
+	}
+
+	static int getInt(byte[] data, int off) {
+		return getShort(data, off) << 16 | getShort(data, off + 2);
+	}
+
+	static void putLong(byte[] data, int off, long v) {
+		putInt(data, off, (int) (v >> 32));
+		putInt(data, off + 4, (int) v);
+	}
+
+	static long getLong(byte[] data, int off) {
+		return (long) getInt(data, off) << 32
+				| (getInt(data, off + 4) & 0xffffffffL);
+	}
+
+}
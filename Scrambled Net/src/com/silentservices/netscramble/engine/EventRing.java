@@ -0,0 +1,146 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * A fixed-size queue of events, each packed into an int, passed from one
+ * thread to another without locking. Exactly one thread may post events,
+ * and exactly one other thread may take them; for example the UI thread
+ * posting input for the animation thread to act on.
+ * 
+ * <p>
+ * The events live in a power-of-two array, indexed by two free-running
+ * counters. The poster writes an event and then publishes it by writing
+ * the volatile tail counter; the taker reads the event after seeing the
+ * tail move, and frees its slot by writing the volatile head counter.
+ * Neither posting nor taking an event allocates.
+ */
+public final class EventRing {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create an empty event ring.
+	 * 
+	 * @param capacity
+	 *            The maximum number of events which can be waiting; rounded
+	 *            up to a power of two.
+	 */
+	public EventRing(int capacity) {
+		if (capacity < 1 || capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("Bad event ring capacity "
+					+ capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		events = new int[size];
+		mask = size - 1;
+	}
+
+	// ******************************************************************** //
+	// Posting.
+	// ******************************************************************** //
+
+	/**
+	 * Post an event. This must only be called from the posting thread.
+	 * 
+	 * @param event
+	 *            The event to post.
+	 * @return true if the event was queued; false if the ring is full, in
+	 *         which case the event is dropped.
+	 */
+	public boolean post(int event) {
+		final int t = tail;
+		if (t - head == events.length)
+			return false;
+		events[t & mask] = event;
+		tail = t + 1;
+		return true;
+	}
+
+	// ******************************************************************** //
+	// Taking.
+	// ******************************************************************** //
+
+	/**
+	 * Take all the events which are waiting, up to the size of the given
+	 * array. This must only be called from the taking thread.
+	 * 
+	 * @param out
+	 *            Array in which to return the events, oldest first.
+	 * @return The number of events taken.
+	 */
+	public int drain(int[] out) {
+		final int h = head;
+		int n = tail - h;
+		if (n > out.length)
+			n = out.length;
+		for (int k = 0; k < n; ++k)
+			out[k] = events[(h + k) & mask];
+		head = h + n;
+		return n;
+	}
+
+	/**
+	 * Determine whether the ring is empty. This is only a snapshot, as the
+	 * other thread may change it at any time.
+	 * 
+	 * @return true iff there are no events waiting.
+	 */
+	public boolean isEmpty() {
+		return head == tail;
+	}
+
+	/**
+	 * Get the number of events the ring can hold.
+	 * 
+	 * @return The capacity of the ring.
+	 */
+	public int capacity() {
+		return events.length;
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// The largest capacity allowed.
+	private static final int MAX_CAPACITY = 1 << 20;
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The event slots, and the mask to map a counter to a slot.
+	private final int[] events;
+	private final int mask;
+
+	// Number of events ever taken, and ever posted. These only grow, and
+	// wrap around harmlessly; tail - head is the number waiting.
+	private volatile int head = 0;
+	private volatile int tail = 0;
+
+}
@@ -0,0 +1,114 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+import java.util.Random;
+
+/**
+ * A fast, seedable pseudo-random number generator, using Marsaglia's
+ * xorshift algorithm with a multiplicative output stage (xorshift64*). This
+ * is nowhere near cryptographic quality, but it's more than good enough for
+ * laying out puzzles, and much cheaper than SecureRandom.
+ * 
+ * <p>
+ * This is a drop-in replacement for java.util.Random, and like Random, a
+ * given seed always produces the same sequence. Unlike Random, it is not
+ * thread-safe.
+ */
+public final class FastRandom extends Random {
+
+	// ******************************************************************** //
+	// Constructors.
+	// ******************************************************************** //
+
+	/**
+	 * Create a generator seeded from the system clock.
+	 */
+	public FastRandom() {
+		this(System.nanoTime() ^ 0x5deece66dL);
+	}
+
+	/**
+	 * Create a generator with the given seed.
+	 * 
+	 * @param seed
+	 *            The initial seed.
+	 */
+	public FastRandom(long seed) {
+		super(seed);
+		setSeed(seed);
+	}
+
+	// ******************************************************************** //
+	// Random Implementation.
+	// ******************************************************************** //
+
+	/**
+	 * Set the seed of this generator.
+	 * 
+	 * @param seed
+	 *            The new seed.
+	 */
+	@Override
+	public void setSeed(long seed) {
+		super.setSeed(seed);
+
+		// Mix the seed so that similar seeds give unrelated sequences,
+		// and make sure the state is never zero.
+		long z = seed + 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		z ^= z >>> 31;
+		state = z == 0 ? 0x9e3779b97f4a7c15L : z;
+	}
+
+	/**
+	 * Generate the next pseudo-random number. This is called by all the
+	 * other methods of Random.
+	 * 
+	 * @param bits
+	 *            Number of random bits to return.
+	 * @return The next pseudo-random value, in the low-order bits.
+	 */
+	@Override
+	protected int next(int bits) {
+		long x = state;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		state = x;
+		return (int) ((x * 0x2545f4914f6cdd1dL) >>> (64 - bits));
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// Serial version UID.
+	private static final long serialVersionUID = 2281460467520637614L;
+
+	// The generator's state. Never zero.
+	private long state;
+
+}
@@ -0,0 +1,531 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * A game of NetScramble, without any display: the board, the puzzle it came
+ * from, and the moves made. The app's board view is a view of this, and
+ * adds the animation; but everything here can be run, tested and
+ * benchmarked on a plain JVM.
+ * 
+ * <p>
+ * Moves made through {@link #rotate(int, int)} happen at once. The app,
+ * which animates its moves, turns the cells itself and just records the
+ * moves with {@link #recordMove(int, int)}.
+ * 
+ * <p>
+ * The moves are kept in a journal, along with the board the game started
+ * from; so moves can be undone and redone, and the whole game can be
+ * replayed without animation to check it.
+ * 
+ * <p>
+ * The game has a {@link GameClock}, which the app starts and stops as play
+ * starts and pauses; each move is stamped with its time.
+ */
+public final class Game {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a game. It has an empty 1x1 board until a game is started.
+	 */
+	public Game() {
+		board = new Board(1, 1, false);
+		startBoard = new Board(1, 1, false);
+		moveLog = new MoveLog();
+		clock = new GameClock();
+		solver = new Solver();
+		hints = new HintEngine();
+	}
+
+	// ******************************************************************** //
+	// Game Setup.
+	// ******************************************************************** //
+
+	/**
+	 * Start a game with the puzzle of the given code. The puzzle is
+	 * generated and scrambled. The game clock is stopped at zero.
+	 * 
+	 * @param code
+	 *            The code of the puzzle to play.
+	 */
+	public void start(PuzzleCode code) {
+		code.generate(board);
+		code.scramble(board);
+		startBoard.copyFrom(board);
+		puzzleCode = code;
+		moveLog.clear();
+		clock.reset();
+		hints.reset();
+		board.updateConnections();
+	}
+
+	/**
+	 * Start a game on the given board. The board is copied as it stands; if
+	 * it's in its solved position, it's up to the caller to scramble it.
+	 * This is also used to resume a saved game. The game clock is stopped at
+	 * zero.
+	 * 
+	 * @param code
+	 *            The code of the puzzle; null if not known.
+	 * @param puzzle
+	 *            The board to play on.
+	 */
+	public void start(PuzzleCode code, Board puzzle) {
+		board.copyFrom(puzzle);
+		startBoard.copyFrom(puzzle);
+		puzzleCode = code;
+		moveLog.clear();
+		clock.reset();
+		hints.reset();
+		board.updateConnections();
+	}
+
+	/**
+	 * Set the turns which the caller is making to scramble the board, after
+	 * starting the game on the unscrambled puzzle. This is for the app,
+	 * which animates the scrambling; the moves aren't recorded, but the
+	 * board the game starts from is the scrambled one.
+	 * 
+	 * @param turns
+	 *            The number of clockwise quarter turns for each cell.
+	 */
+	public void setScramble(int[] turns) {
+		for (int i = 0; i < startBoard.size(); ++i)
+			startBoard.rotate(i, turns[i]);
+	}
+
+	/**
+	 * Restore the move journal of a saved game. The game must already have
+	 * been started on the saved board, with {@link #start(PuzzleCode, Board)}.
+	 * 
+	 * @param start
+	 *            The board the saved game started from.
+	 * @param moves
+	 *            The saved moves, as from {@link MoveLog#toArray()}.
+	 * @param pos
+	 *            The saved position in the journal.
+	 * @throws IllegalArgumentException
+	 *             The saved journal doesn't fit the board.
+	 */
+	public void restoreMoves(Board start, int[] moves, int pos) {
+		restoreMoves(start, moves, null, pos);
+	}
+
+	/**
+	 * Restore the move journal of a saved game, with the times of the moves.
+	 * The game must already have been started on the saved board, with
+	 * {@link #start(PuzzleCode, Board)}.
+	 * 
+	 * @param start
+	 *            The board the saved game started from.
+	 * @param moves
+	 *            The saved moves, as from {@link MoveLog#toArray()}.
+	 * @param times
+	 *            The saved move times, as from
+	 *            {@link MoveLog#timesToArray()}; null if not saved.
+	 * @param pos
+	 *            The saved position in the journal.
+	 * @throws IllegalArgumentException
+	 *             The saved journal doesn't fit the board.
+	 */
+	public void restoreMoves(Board start, int[] moves, int[] times, int pos) {
+		if (start.width() != board.width() || start.height() != board.height())
+			throw new IllegalArgumentException("Start board is "
+					+ start.width() + "x" + start.height() + ", not "
+					+ board.width() + "x" + board.height());
+		for (int m : moves)
+			if (MoveLog.moveCell(m) >= board.size())
+				throw new IllegalArgumentException("Bad move cell "
+						+ MoveLog.moveCell(m));
+		moveLog.restore(moves, times, pos);
+		startBoard.copyFrom(start);
+	}
+
+	// ******************************************************************** //
+	// Accessors.
+	// ******************************************************************** //
+
+	/**
+	 * Get the game board.
+	 * 
+	 * @return The board. This is the live board; it is re-used from game
+	 *         to game.
+	 */
+	public Board board() {
+		return board;
+	}
+
+	/**
+	 * Get the board as it was when the game started.
+	 * 
+	 * @return The starting board. Don't modify it.
+	 */
+	public Board startBoard() {
+		return startBoard;
+	}
+
+	/**
+	 * Get the code of the puzzle being played.
+	 * 
+	 * @return The puzzle code; null if not known.
+	 */
+	public PuzzleCode code() {
+		return puzzleCode;
+	}
+
+	/**
+	 * Get the log of the moves made in this game.
+	 * 
+	 * @return The move log.
+	 */
+	public MoveLog moves() {
+		return moveLog;
+	}
+
+	/**
+	 * Get the clock which times this game.
+	 * 
+	 * @return The game clock.
+	 */
+	public GameClock clock() {
+		return clock;
+	}
+
+	// ******************************************************************** //
+	// Moves.
+	// ******************************************************************** //
+
+	/**
+	 * Query whether a cell can be turned: i.e. it's part of the network, and
+	 * not locked.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return true iff the cell can be turned.
+	 */
+	public boolean canTurn(int i) {
+		return board.dirs(i) != 0 && !board.isLocked(i);
+	}
+
+	/**
+	 * Turn a cell at once, record the move, and update the connection state.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param turns
+	 *            Number of quarter turns, -3 to 3; clockwise positive.
+	 * @return The number of cells which have been connected that previously
+	 *         weren't; -1 if the cell can't be turned.
+	 */
+	public int rotate(int i, int turns) {
+		if (!canTurn(i))
+			return -1;
+		board.rotate(i, turns);
+		moveLog.add(i, turns, (int) clock.getTime());
+		return board.updateConnections(i);
+	}
+
+	/**
+	 * Record a move which the caller is making itself.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param turns
+	 *            Number of quarter turns, -3 to 3; clockwise positive.
+	 */
+	public void recordMove(int i, int turns) {
+		moveLog.add(i, turns, (int) clock.getTime());
+	}
+
+	/**
+	 * Undo the last move, turning the cell back at once. If the cell has
+	 * been locked since, it is unlocked.
+	 * 
+	 * @return Index of the cell turned back; -1 if there was no move to
+	 *         undo.
+	 */
+	public int undo() {
+		int move = moveLog.undo();
+		if (move < 0)
+			return -1;
+		int i = MoveLog.moveCell(move);
+		board.setLocked(i, false);
+		board.rotate(i, -MoveLog.moveTurns(move));
+		board.updateConnections(i);
+		return i;
+	}
+
+	/**
+	 * Redo the last move undone, turning the cell at once. If the cell has
+	 * been locked since, it is unlocked.
+	 * 
+	 * @return Index of the cell turned; -1 if there was no move to redo.
+	 */
+	public int redo() {
+		int move = moveLog.redo();
+		if (move < 0)
+			return -1;
+		int i = MoveLog.moveCell(move);
+		board.setLocked(i, false);
+		board.rotate(i, MoveLog.moveTurns(move));
+		board.updateConnections(i);
+		return i;
+	}
+
+	/**
+	 * Toggle the locked state of a cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return true if the cell is now locked; false if it's now unlocked, or
+	 *         is empty and can't be locked.
+	 */
+	public boolean toggleLock(int i) {
+		if (board.dirs(i) == 0)
+			return false;
+		board.setLocked(i, !board.isLocked(i));
+		return board.isLocked(i);
+	}
+
+	// ******************************************************************** //
+	// Game State.
+	// ******************************************************************** //
+
+	/**
+	 * Determine whether the board is solved -- i.e. all terminals are
+	 * connected to the server. This assumes that the connection state is
+	 * up to date.
+	 * 
+	 * @return true iff the board is solved.
+	 */
+	public boolean isSolved() {
+		return board.isSolved();
+	}
+
+	/**
+	 * Count the number of unconnected cells in the board. This may be
+	 * non-zero on a solved board, if some cables aren't needed to connect
+	 * all the terminals.
+	 * 
+	 * @return The number of unconnected cells.
+	 */
+	public int unconnectedCells() {
+		return board.unconnectedCells();
+	}
+
+	// ******************************************************************** //
+	// Replay.
+	// ******************************************************************** //
+
+	/**
+	 * Fast-forward the game from the start to a given point in the journal,
+	 * without animation. The cells keep their current locked state.
+	 * 
+	 * @param count
+	 *            The number of moves to replay, 0 to
+	 *            {@link MoveLog#length()}. Later moves in the journal can
+	 *            then be redone.
+	 */
+	public void replay(int count) {
+		moveLog.seek(count);
+		final int ncells = board.size();
+		for (int i = 0; i < ncells; ++i)
+			board.setDirs(i, startBoard.dirs(i));
+		for (int k = 0; k < count; ++k)
+			board.rotate(moveLog.cell(k), moveLog.turns(k));
+		board.updateConnections();
+	}
+
+	/**
+	 * Check the journal against the board: replay the moves in effect from
+	 * the start, and check that they give the board as it is now. The
+	 * live board is not affected.
+	 * 
+	 * @return true iff the journal gives the current board.
+	 */
+	public boolean verify() {
+		final int ncells = board.size();
+		final Topology topo = board.topology();
+		int[] dirs = new int[ncells];
+		for (int i = 0; i < ncells; ++i)
+			dirs[i] = startBoard.dirs(i);
+		final int count = moveLog.size();
+		for (int k = 0; k < count; ++k) {
+			int i = moveLog.cell(k);
+			dirs[i] = topo.rotated(dirs[i], moveLog.turns(k));
+		}
+		for (int i = 0; i < ncells; ++i)
+			if (dirs[i] != board.dirs(i))
+				return false;
+		return true;
+	}
+
+	// ******************************************************************** //
+	// Solving.
+	// ******************************************************************** //
+
+	/**
+	 * Find a hint: the cheapest move which the puzzle forces, given the
+	 * state of the board and the cells which are locked. The deductions are
+	 * cached, so repeated hints are quick.
+	 * 
+	 * @param pending
+	 *            For each cell, the number of quarter turns it has still to
+	 *            make before the board is in the state to hint from; null if
+	 *            none.
+	 * @return The move to make, packed as in {@link MoveLog#pack(int, int)},
+	 *         with -1, 1 or 2 turns. If the cell is locked, it needs to be
+	 *         unlocked to make the move. -1 if there's no move to make.
+	 */
+	public int hint(int[] pending) {
+		if (pending == null)
+			return hints.hint(board);
+		if (hintBoard == null)
+			hintBoard = new Board(1, 1, false);
+		hintBoard.copyFrom(board);
+		for (int i = 0; i < hintBoard.size(); ++i)
+			hintBoard.rotate(i, pending[i]);
+		return hints.hint(hintBoard);
+	}
+
+	/**
+	 * Find the cells which the puzzle forces into the orientation they're
+	 * in now, given the cells which are locked, but which aren't locked
+	 * yet. This is used by the assist mode, which locks them.
+	 * 
+	 * @param cells
+	 *            Array in which to return the indices of the cells; at most
+	 *            this many are returned.
+	 * @return The number of cells found.
+	 */
+	public int forcedCells(int[] cells) {
+		return hints.forcedCells(board, cells);
+	}
+
+	/**
+	 * Work out the moves which solve the puzzle from its current state. The
+	 * moves are listed in breadth-first order out from the servers, which
+	 * looks nicer when they are played back.
+	 * 
+	 * @param pending
+	 *            For each cell, the number of quarter turns it has still to
+	 *            make before the board is in the state to solve from; null if
+	 *            none. This lets the app solve while cells are turning.
+	 * @param moves
+	 *            Array in which to return the moves, packed as in
+	 *            {@link MoveLog#pack(int, int)}; one per cell which needs
+	 *            turning, taking the shortest way round; a half turn is
+	 *            positive. Must be at least as
+	 *            big as the board.
+	 * @return The number of moves; -1 if the puzzle has no solution.
+	 */
+	public int solution(int[] pending, int[] moves) {
+		if (board.root() < 0)
+			return -1;
+
+		// Take a copy of the board as it will be when all the cells have
+		// finished turning, and solve that.
+		Board target = new Board(board.topology(), board.width(),
+				board.height(), board.isWrapped());
+		target.copyFrom(board);
+		if (pending != null)
+			for (int i = 0; i < target.size(); ++i)
+				target.rotate(i, pending[i]);
+		if (solver.solve(target, 1) == 0)
+			return -1;
+
+		// The queue of cells which are solved but haven't had their onward
+		// connections checked yet, and flags for the cells we've reached.
+		// Note that we mustn't use the connection state of the live board.
+		final int ncells = target.size();
+		int[] solveCells = new int[ncells];
+		boolean[] solved = new boolean[ncells];
+		int head = 0, tail = 0;
+		int nmoves = 0;
+		final int[] nextCells = target.neighbours().table();
+		final Topology topo = target.topology();
+		final int nd = topo.numDirs;
+
+		// Set the root cells up to be solved first.
+		for (int k = 0; k < target.rootCount(); ++k) {
+			int root = target.rootAt(k);
+			solveCells[tail++] = root;
+			solved[root] = true;
+		}
+
+		// While there are still cells to investigate, solve them, check
+		// them for connections that we haven't flagged yet, and add those
+		// cells to the solveCells.
+		while (head < tail) {
+			int i = solveCells[head++];
+			int turns = solver.turns(i);
+			if (turns != 0)
+				moves[nmoves++] = MoveLog.pack(i, topo.shortestTurns(turns));
+
+			int dirs = solver.solvedDirs(i);
+			for (int k = 0; k < nd; ++k) {
+				if ((dirs & (1 << k)) != 0) {
+					int next = nextCells[i * nd + k];
+					if (next >= 0 && !solved[next]) {
+						solveCells[tail++] = next;
+						solved[next] = true;
+					}
+				}
+			}
+		}
+
+		return nmoves;
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The game board.
+	private final Board board;
+
+	// The board as it was when the game started, for replays.
+	private final Board startBoard;
+
+	// The code of the puzzle being played; null if not known.
+	private PuzzleCode puzzleCode = null;
+
+	// The moves made so far.
+	private final MoveLog moveLog;
+
+	// The clock which times the game, and stamps the moves.
+	private final GameClock clock;
+
+	// Solver used to work out solutions.
+	private final Solver solver;
+
+	// Hint engine, and a board to find hints on while cells are turning;
+	// null until needed.
+	private final HintEngine hints;
+	private Board hintBoard = null;
+
+}
@@ -0,0 +1,224 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * The game clock: a stopwatch which measures how long a game has been in
+ * play, in ms, pausing while the game is paused. It runs off the monotonic
+ * system clock; the elapsed time is worked out from the time the clock was
+ * started, rather than added up tick by tick, so it doesn't drift however
+ * often or seldom it is read, and doesn't need to be ticked at all while
+ * nobody is looking at it.
+ * 
+ * <p>
+ * The clock is started and stopped by the UI thread, but moves are stamped
+ * with it on the animation thread, so all access is synchronized. Each
+ * method also comes in a form which takes the current time, so the clock
+ * can be driven by tests.
+ */
+public final class GameClock {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a game clock. It is stopped, at zero.
+	 */
+	public GameClock() {
+		running = false;
+		accumNs = 0;
+		startNs = 0;
+	}
+
+	// ******************************************************************** //
+	// Clock Control.
+	// ******************************************************************** //
+
+	/**
+	 * Start the clock running, from the time it was stopped at. Does nothing
+	 * if it is already running.
+	 */
+	public void start() {
+		start(System.nanoTime());
+	}
+
+	/**
+	 * Start the clock running, from the time it was stopped at. Does nothing
+	 * if it is already running.
+	 * 
+	 * @param nowNs
+	 *            The current time, as from {@link System#nanoTime()}.
+	 */
+	public synchronized void start(long nowNs) {
+		if (running)
+			return;
+		startNs = nowNs;
+		running = true;
+	}
+
+	/**
+	 * Stop the clock. Does nothing if it is already stopped.
+	 */
+	public void stop() {
+		stop(System.nanoTime());
+	}
+
+	/**
+	 * Stop the clock. Does nothing if it is already stopped.
+	 * 
+	 * @param nowNs
+	 *            The current time, as from {@link System#nanoTime()}.
+	 */
+	public synchronized void stop(long nowNs) {
+		if (!running)
+			return;
+		accumNs += nowNs - startNs;
+		running = false;
+	}
+
+	/**
+	 * Stop the clock, and set it back to zero.
+	 */
+	public synchronized void reset() {
+		running = false;
+		accumNs = 0;
+	}
+
+	/**
+	 * Set the time on the clock; for example to restore a saved game. The
+	 * clock keeps running, or stays stopped, and counts on from this time.
+	 * 
+	 * @param ms
+	 *            The game time to set, in ms.
+	 */
+	public void setTime(long ms) {
+		setTime(ms, System.nanoTime());
+	}
+
+	/**
+	 * Set the time on the clock; for example to restore a saved game. The
+	 * clock keeps running, or stays stopped, and counts on from this time.
+	 * 
+	 * @param ms
+	 *            The game time to set, in ms.
+	 * @param nowNs
+	 *            The current time, as from {@link System#nanoTime()}.
+	 */
+	public synchronized void setTime(long ms, long nowNs) {
+		accumNs = ms * NS_PER_MS;
+		startNs = nowNs;
+	}
+
+	// ******************************************************************** //
+	// Reading.
+	// ******************************************************************** //
+
+	/**
+	 * Query whether the clock is running.
+	 * 
+	 * @return true iff the clock is running.
+	 */
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Get the game time.
+	 * 
+	 * @return The time for which the clock has run since it was reset, in
+	 *         ms.
+	 */
+	public long getTime() {
+		return getTime(System.nanoTime());
+	}
+
+	/**
+	 * Get the game time.
+	 * 
+	 * @param nowNs
+	 *            The current time, as from {@link System#nanoTime()}.
+	 * @return The time for which the clock has run since it was reset, in
+	 *         ms.
+	 */
+	public synchronized long getTime(long nowNs) {
+		long ns = accumNs;
+		if (running)
+			ns += nowNs - startNs;
+		return ns / NS_PER_MS;
+	}
+
+	/**
+	 * Get the real time until the game time next reaches a multiple of a
+	 * given interval; for example, until the displayed seconds next change.
+	 * 
+	 * @param interval
+	 *            The interval in ms.
+	 * @return The time in ms until the next multiple of interval, 1 to
+	 *         interval; or -1 if the clock is stopped.
+	 */
+	public long untilNext(long interval) {
+		return untilNext(interval, System.nanoTime());
+	}
+
+	/**
+	 * Get the real time until the game time next reaches a multiple of a
+	 * given interval; for example, until the displayed seconds next change.
+	 * 
+	 * @param interval
+	 *            The interval in ms.
+	 * @param nowNs
+	 *            The current time, as from {@link System#nanoTime()}.
+	 * @return The time in ms until the next multiple of interval, 1 to
+	 *         interval; or -1 if the clock is stopped, so the time will
+	 *         never get there.
+	 */
+	public synchronized long untilNext(long interval, long nowNs) {
+		if (!running)
+			return -1;
+		return interval - getTime(nowNs) % interval;
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Nanoseconds per millisecond.
+	private static final long NS_PER_MS = 1000000;
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// true iff the clock is running.
+	private boolean running;
+
+	// The time in ns the clock ran for up to the last stop, or the last
+	// start if it is running.
+	private long accumNs;
+
+	// If running, the nanoTime at which the clock was last started.
+	private long startNs;
+
+}
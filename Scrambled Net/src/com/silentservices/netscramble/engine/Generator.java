@@ -0,0 +1,448 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+import java.util.Random;
+
+/**
+ * A generator for network puzzles. This lays out a random network on a
+ * board, in the solved position; the caller scrambles it.
+ * 
+ * <p>
+ * With several servers, the network is a spanning forest: a tree grows
+ * out from each server at once, and every cell joins exactly one of them.
+ * 
+ * <p>
+ * Optionally, the generator can insist that the puzzle has a unique
+ * solution, and that its difficulty falls within a given range. Both are
+ * checked by running the {@link Solver} on each candidate network; the
+ * difficulty score is based on how deep the solver's chains of deduction
+ * are, and how much it has to guess.
+ * 
+ * <p>
+ * A Generator is not thread-safe; use one per thread.
+ */
+public final class Generator {
+
+	// ******************************************************************** //
+	// Public Constants.
+	// ******************************************************************** //
+
+	/**
+	 * The difficulty score added for each guess the solver has to make. A
+	 * guess is much harder for a human than a deduction.
+	 */
+	public static final int GUESS_SCORE = 10;
+
+	/**
+	 * The fraction of the board a network should normally fill.
+	 */
+	public static final double MIN_FILL = 0.85;
+
+	/**
+	 * The number of cells per server in a multi-server game.
+	 */
+	public static final int CELLS_PER_SERVER = 40;
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a generator.
+	 * 
+	 * @param rng
+	 *            Random number generator to use.
+	 */
+	public Generator(Random rng) {
+		this.rng = rng;
+	}
+
+	// ******************************************************************** //
+	// Configuration.
+	// ******************************************************************** //
+
+	/**
+	 * Set whether generated puzzles must have a unique solution. Wrapped
+	 * boards often have several, so this may take a number of tries.
+	 * 
+	 * @param unique
+	 *            If true, only accept puzzles with a unique solution.
+	 */
+	public void setUnique(boolean unique) {
+		requireUnique = unique;
+	}
+
+	/**
+	 * Set the range of difficulty scores to accept.
+	 * 
+	 * @param min
+	 *            Minimum difficulty score, inclusive.
+	 * @param max
+	 *            Maximum difficulty score, inclusive.
+	 */
+	public void setDifficulty(int min, int max) {
+		minScore = min;
+		maxScore = max;
+	}
+
+	/**
+	 * Set the number of servers to place in each network.
+	 * 
+	 * @param servers
+	 *            Number of servers; from 1 to {@link Board#MAX_ROOTS}.
+	 */
+	public void setServers(int servers) {
+		if (servers < 1 || servers > Board.MAX_ROOTS)
+			throw new IllegalArgumentException("Bad server count " + servers);
+		numServers = servers;
+	}
+
+	/**
+	 * Set the maximum number of candidate networks to try before giving up
+	 * and taking the best one found.
+	 * 
+	 * @param tries
+	 *            Maximum number of tries.
+	 */
+	public void setMaxTries(int tries) {
+		maxTries = tries;
+	}
+
+	// ******************************************************************** //
+	// Generation.
+	// ******************************************************************** //
+
+	/**
+	 * Generate a puzzle on the given board. The board's size and wrapping
+	 * must already be set up. The network is left in its solved position.
+	 * 
+	 * <p>
+	 * If no candidate satisfies the uniqueness and difficulty requirements
+	 * within the maximum number of tries, the closest one is used.
+	 * 
+	 * <p>
+	 * If the calling thread is interrupted, generation stops after the
+	 * current try, and the board is left with no usable puzzle; the caller
+	 * should check the thread's interrupt status and discard it.
+	 * 
+	 * @param b
+	 *            The board to generate on.
+	 * @param branches
+	 *            Maximum branches off each cell; at least 2. 3 gives more
+	 *            complex networks, including 4-way crosses.
+	 * @param minCells
+	 *            Minimum number of cells the network must use. Networks are
+	 *            retried (up to 10 times) until they use this many.
+	 * @return The number of candidate networks tried.
+	 */
+	public int generate(Board b, int branches, int minCells) {
+		boolean check = requireUnique || minScore > 0
+				|| maxScore < Integer.MAX_VALUE;
+		if (best == null)
+			best = new Board(b.width(), b.height(), b.isWrapped());
+		int bestPenalty = Integer.MAX_VALUE;
+
+		int tries;
+		for (tries = 1; tries <= maxTries; ++tries) {
+			if (Thread.currentThread().isInterrupted())
+				return tries - 1;
+
+			// Create a network using enough cells.
+			int cells = 0;
+			for (int t = 0; cells < minCells && t < 10; ++t)
+				cells = createNet(b, branches);
+			if (!check) {
+				lastScore = -1;
+				lastUnique = false;
+				return tries;
+			}
+
+			// Evaluate it. The penalty is how far it is from what we want;
+			// zero is perfect.
+			int nsol = solver.solve(b, requireUnique ? 2 : 1);
+			int score = score(solver);
+			int penalty = 0;
+			if (requireUnique && nsol != 1)
+				penalty += 1000;
+			if (score < minScore)
+				penalty += minScore - score;
+			else if (score > maxScore)
+				penalty += score - maxScore;
+
+			if (penalty < bestPenalty) {
+				bestPenalty = penalty;
+				best.copyFrom(b);
+				lastScore = score;
+				lastUnique = nsol == 1;
+			}
+			if (penalty == 0)
+				return tries;
+		}
+
+		// Nothing was perfect; use the best we found.
+		b.copyFrom(best);
+		return tries - 1;
+	}
+
+	/**
+	 * Get the minimum number of cells a network should use on a board of
+	 * the given size.
+	 * 
+	 * @param width
+	 *            Board width.
+	 * @param height
+	 *            Board height.
+	 * @return The minimum number of cells; MIN_FILL of the board.
+	 */
+	public static int minCells(int width, int height) {
+		return (int) (width * height * MIN_FILL);
+	}
+
+	/**
+	 * Get the number of servers to use in a multi-server game on a board
+	 * of the given size.
+	 * 
+	 * @param width
+	 *            Board width.
+	 * @param height
+	 *            Board height.
+	 * @return The number of servers; one per CELLS_PER_SERVER cells, but at
+	 *         least 2 and at most {@link Board#MAX_ROOTS}.
+	 */
+	public static int multiServers(int width, int height) {
+		int n = width * height / CELLS_PER_SERVER;
+		return Math.max(2, Math.min(Board.MAX_ROOTS, n));
+	}
+
+	/**
+	 * Get the difficulty score of the last puzzle generated.
+	 * 
+	 * @return The difficulty score; -1 if it wasn't evaluated, because no
+	 *         uniqueness or difficulty checks were requested.
+	 */
+	public int difficulty() {
+		return lastScore;
+	}
+
+	/**
+	 * Query whether the last puzzle generated was found to have a unique
+	 * solution.
+	 * 
+	 * @return true iff the last puzzle is known to have a unique solution.
+	 *         This is only checked when uniqueness was requested.
+	 */
+	public boolean isUnique() {
+		return lastUnique;
+	}
+
+	/**
+	 * Calculate the difficulty score of the puzzle the given solver just
+	 * solved. This is the depth of deduction needed, plus a penalty for
+	 * each guess.
+	 * 
+	 * @param s
+	 *            The solver.
+	 * @return The difficulty score.
+	 */
+	public static int score(Solver s) {
+		return s.deductionDepth() + s.guesses() * GUESS_SCORE;
+	}
+
+	// ******************************************************************** //
+	// Network Creation.
+	// ******************************************************************** //
+
+	/**
+	 * Create a network layout. This function may be called multiple times, to
+	 * get a network with enough cells. It doesn't allocate any memory, once
+	 * the generator has seen a board of this size.
+	 * 
+	 * @param b
+	 *            The board to lay the network out on.
+	 * @param branches
+	 *            Maximum branches off each cell.
+	 * @return The number of cells used in the layout; 0 if a server was
+	 *         left with no connections.
+	 */
+	public int createNet(Board b, int branches) {
+		// Reset the cells' directions, and reset the root cells.
+		b.clear();
+
+		// Make sure the frontier can hold every cell, plus one deferred.
+		int n = b.size();
+		if (frontier == null || frontier.length < n + 1)
+			frontier = new int[n + 1];
+		frontierSize = frontier.length;
+		frontierHead = frontierCount = 0;
+
+		// Set the root cell (the server) to a random cell.
+		int root = rng.nextInt(n);
+		b.setRoot(root);
+
+		// Set up the frontier of cells awaiting connection. Start by
+		// adding the root cell, then any other servers, so that their
+		// trees grow together.
+		push(root);
+		for (int s = 1; s < numServers && s < n; ++s) {
+			int r;
+			do {
+				r = rng.nextInt(n);
+			} while (b.isRoot(r));
+			b.addRoot(r);
+			push(r);
+		}
+		if (rng.nextBoolean())
+			addRandomDir(b);
+
+		// Loop while there are still cells to be connected, connecting
+		// them in random directions.
+		while (frontierCount > 0) {
+			// Randomly do the first cell, or defer it and do the next one.
+			// This prevents unduly long, straight branches.
+			if (rng.nextBoolean()) {
+				// Add a random direction from this cell.
+				addRandomDir(b);
+
+				// 50% of the time, add a second direction, if we can
+				// find one.
+				if (rng.nextBoolean())
+					addRandomDir(b);
+
+				// A third pass makes networks more complex, but also
+				// introduces 4-way crosses.
+				if (branches >= 3 && rng.nextInt(3) == 0)
+					addRandomDir(b);
+			} else
+				push(frontier[frontierHead]);
+
+			// Pop the first element off the frontier.
+			frontierHead = (frontierHead + 1) % frontierSize;
+			--frontierCount;
+		}
+
+		// A server which got boxed in by the others is no use.
+		for (int k = 0; k < b.rootCount(); ++k)
+			if (b.dirs(b.rootAt(k)) == 0 && n > 1)
+				return 0;
+
+		// Count the number of connected cells in this board.
+		return b.usedCells();
+	}
+
+	/**
+	 * Add a connection in a random direction from the first cell in the
+	 * frontier. We enumerate the free adjacent cells around the starting cell,
+	 * then pick one to connect to at random. If there is no free adjacent
+	 * cell, we do nothing. A server is never free, even before its own tree
+	 * has started, so the trees never join.
+	 * 
+	 * If we connect to a cell, it is added to the frontier.
+	 * 
+	 * @param b
+	 *            The board we're laying out.
+	 */
+	private void addRandomDir(Board b) {
+		// Start with the first cell in the frontier.
+		int cell = frontier[frontierHead];
+
+		// List the adjacent cells which are free, as a set of direction
+		// bits.
+		int free = 0;
+		int nfree = 0;
+		final int[] nextCells = b.neighbours().table();
+		final int nd = b.topology().numDirs;
+		for (int k = 0; k < nd; ++k) {
+			int n = nextCells[cell * nd + k];
+			if (n >= 0 && b.dirs(n) == 0 && !b.isRoot(n)) {
+				free |= 1 << k;
+				++nfree;
+			}
+		}
+		if (nfree == 0)
+			return;
+
+		// Pick one of the free adjacents at random: skip over the
+		// chosen number of set bits.
+		int pick = rng.nextInt(nfree);
+		while (pick-- > 0)
+			free &= free - 1;
+		int k = Integer.numberOfTrailingZeros(free);
+		int dest = nextCells[cell * nd + k];
+
+		// Make a link to that cell, and a corresponding link back.
+		int half = nd / 2;
+		b.addDir(cell, 1 << k);
+		b.addDir(dest, 1 << (k < half ? k + half : k - half));
+
+		// Add the new cell to the frontier.
+		push(dest);
+	}
+
+	/**
+	 * Add a cell to the end of the frontier.
+	 * 
+	 * @param cell
+	 *            Index of the cell.
+	 */
+	private void push(int cell) {
+		frontier[(frontierHead + frontierCount) % frontierSize] = cell;
+		++frontierCount;
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// Random number generator.
+	private final Random rng;
+
+	// Solver used to check candidate puzzles.
+	private final Solver solver = new Solver();
+
+	// The best candidate found so far in generate().
+	private Board best = null;
+
+	// Ring buffer of cells awaiting connection in createNet().
+	// frontierHead is the index of the first cell, frontierCount the
+	// number of cells in it, and frontierSize the usable capacity.
+	private int[] frontier = null;
+	private int frontierSize = 0;
+	private int frontierHead = 0;
+	private int frontierCount = 0;
+
+	// The number of servers in each network.
+	private int numServers = 1;
+
+	// Requirements for generated puzzles.
+	private boolean requireUnique = false;
+	private int minScore = 0;
+	private int maxScore = Integer.MAX_VALUE;
+	private int maxTries = 20;
+
+	// The difficulty score of the last puzzle, and whether it was unique.
+	private int lastScore = -1;
+	private boolean lastUnique = false;
+
+}
@@ -0,0 +1,291 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * Finds hints for the player: the cheapest move which the puzzle forces,
+ * given the state of the board and the cells the player has locked.
+ * 
+ * <p>
+ * The deductions are made by a {@link Solver}, and kept between hints. The
+ * deductions from the shapes of the pieces are made once per game; each
+ * hint then only adds the player's new locks, which is incremental. Only
+ * if a lock has been removed or moved do we go back to the deductions from
+ * the shapes, and add the locks again.
+ * 
+ * <p>
+ * If the player has locked a cell wrongly, the hint is to fix it. If
+ * propagation gets stuck before finding a move, we fall back to a full
+ * solve.
+ * 
+ * <p>
+ * The same deductions drive the assist mode, which locks cells as soon as
+ * the player has turned them to where they're forced to be: see
+ * {@link #forcedCells(Board, int[])}.
+ */
+public final class HintEngine {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a hint engine.
+	 */
+	public HintEngine() {
+		deducer = new Solver();
+		solver = new Solver();
+	}
+
+	// ******************************************************************** //
+	// Hints.
+	// ******************************************************************** //
+
+	/**
+	 * Forget the cached deductions. This must be called when a new game
+	 * starts.
+	 */
+	public void reset() {
+		valid = false;
+	}
+
+	/**
+	 * Find a hint for the given board.
+	 * 
+	 * @param board
+	 *            The board, as it stands. This must be the same puzzle as
+	 *            the last hint, unless {@link #reset()} has been called.
+	 * @return The move to make, packed as in {@link MoveLog#pack(int, int)},
+	 *         taking the shortest way round. If the cell is locked, the move is to
+	 *         unlock it and turn it. -1 if there's no move to make, because
+	 *         the board is solved or has no solution.
+	 */
+	public int hint(Board board) {
+		if (!update(board))
+			return -1;
+		final int ncells = board.size();
+		final Topology topo = board.topology();
+
+		// If the locks are wrong, the hint is to fix one. Look at the
+		// deductions from the shapes alone to find it.
+		if (!consistent) {
+			deducer.rollback();
+			for (int i = 0; i < ncells; ++i)
+				fixed[i] = -1;
+			for (int i = 0; i < ncells; ++i) {
+				int dirs = lockedDirs(board, i);
+				if (dirs >= 0 && !deducer.allows(i, dirs))
+					for (int t : topo.turnOrder())
+						if (deducer.allows(i, topo.rotated(dirs, t)))
+							return MoveLog.pack(i, t);
+			}
+		}
+
+		// Find the cheapest forced move. Among equally cheap moves, take
+		// the one deduced first.
+		int best = -1;
+		int bestCost = Integer.MAX_VALUE;
+		final int ntrace = deducer.traceLength();
+		for (int k = 0; k < ntrace && bestCost > 1; ++k) {
+			int i = deducer.traceCell(k);
+			int t = turnsTo(topo, board.dirs(i), deducer.forcedDirs(i));
+			if (t != 0 && cost(t) < bestCost
+					&& (!consistent || !board.isLocked(i))) {
+				best = MoveLog.pack(i, t);
+				bestCost = cost(t);
+			}
+		}
+		if (best >= 0 || board.isSolved())
+			return best;
+
+		// Propagation got stuck; find a move from a full solution.
+		if (solver.solve(board, 1) == 0)
+			return -1;
+		for (int i = 0; i < ncells; ++i) {
+			int t = turnsTo(topo, board.dirs(i), solver.solvedDirs(i));
+			if (t != 0 && cost(t) < bestCost) {
+				best = MoveLog.pack(i, t);
+				bestCost = cost(t);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Find the cells which the deductions force into the orientation
+	 * they're in now, but which aren't locked yet. The deductions take
+	 * account of the cells which are locked; cells which are turning are
+	 * skipped.
+	 * 
+	 * @param board
+	 *            The board, as it stands. This must be the same puzzle as
+	 *            the last call, unless {@link #reset()} has been called.
+	 * @param cells
+	 *            Array in which to return the indices of the cells. At most
+	 *            this many are returned, earliest deduced first, so the
+	 *            length of this array bounds the work done by the caller.
+	 * @return The number of cells found. Zero if there are none, or the
+	 *         locked cells contradict each other.
+	 */
+	public int forcedCells(Board board, int[] cells) {
+		if (!update(board) || !consistent)
+			return 0;
+		int count = 0;
+		final int ntrace = deducer.traceLength();
+		for (int k = 0; k < ntrace && count < cells.length; ++k) {
+			int i = deducer.traceCell(k);
+			int dirs = board.dirs(i);
+			if (dirs != 0 && !board.isLocked(i) && !board.isBusy(i)
+					&& dirs == deducer.forcedDirs(i))
+				cells[count++] = i;
+		}
+		return count;
+	}
+
+	// ******************************************************************** //
+	// Deductions.
+	// ******************************************************************** //
+
+	/**
+	 * Bring the deductions up to date with the board's locked cells.
+	 * 
+	 * @param board
+	 *            The board, as it stands.
+	 * @return false if the board has no solution. If the locked cells
+	 *         contradict each other, this returns true, but sets
+	 *         consistent to false.
+	 */
+	private boolean update(Board board) {
+		final int ncells = board.size();
+		if (!valid || ncells != numCells) {
+			if (!deducer.deduce(board))
+				return false;
+			deducer.mark();
+			numCells = ncells;
+			if (fixed == null || fixed.length < ncells)
+				fixed = new int[ncells];
+			for (int i = 0; i < ncells; ++i)
+				fixed[i] = -1;
+			consistent = true;
+			valid = true;
+		}
+
+		// If any lock we've deduced from has been removed or moved, or the
+		// locks contradict each other, go back to the deductions from the
+		// shapes alone.
+		boolean relaxed = !consistent;
+		for (int i = 0; i < ncells && !relaxed; ++i)
+			if (fixed[i] >= 0 && fixed[i] != lockedDirs(board, i))
+				relaxed = true;
+		if (relaxed) {
+			deducer.rollback();
+			for (int i = 0; i < ncells; ++i)
+				fixed[i] = -1;
+			consistent = true;
+		}
+
+		// Add in the new locks.
+		for (int i = 0; i < ncells && consistent; ++i) {
+			int dirs = lockedDirs(board, i);
+			if (dirs >= 0 && fixed[i] < 0) {
+				fixed[i] = dirs;
+				consistent = deducer.restrict(i, dirs);
+			}
+		}
+
+		return true;
+	}
+
+	// ******************************************************************** //
+	// Utilities.
+	// ******************************************************************** //
+
+	/**
+	 * Get the direction bits a cell is locked at.
+	 * 
+	 * @param board
+	 *            The board.
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's direction bits if it is locked; -1 if it's not
+	 *         locked, or is empty.
+	 */
+	private static int lockedDirs(Board board, int i) {
+		int dirs = board.dirs(i);
+		return dirs != 0 && board.isLocked(i) ? dirs : -1;
+	}
+
+	/**
+	 * Work out the quickest way to turn a piece to the given orientation.
+	 * 
+	 * @param topo
+	 *            The topology of the board.
+	 * @param from
+	 *            The piece's direction bits now.
+	 * @param to
+	 *            The direction bits wanted.
+	 * @return The number of turn steps: 0, 1, -1 or 2 on a square board.
+	 */
+	private static int turnsTo(Topology topo, int from, int to) {
+		for (int t : topo.turnOrder())
+			if (topo.rotated(from, t) == to)
+				return t;
+		return 0;
+	}
+
+	/**
+	 * Get the cost of a move, in taps.
+	 * 
+	 * @param turns
+	 *            The number of turn steps: 1, -1 or 2 on a square board.
+	 * @return The cost of the move.
+	 */
+	private static int cost(int turns) {
+		return turns < 0 ? -turns : turns;
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// Solver holding the cached deductions; it's marked at the deductions
+	// from the shapes alone.
+	private final Solver deducer;
+
+	// Solver for full solves, when propagation gets stuck.
+	private final Solver solver;
+
+	// True if the deductions are for the current game; the number of cells
+	// in it.
+	private boolean valid = false;
+	private int numCells = 0;
+
+	// For each cell, the direction bits it's been restricted to because
+	// it's locked; -1 if it hasn't been.
+	private int[] fixed;
+
+	// False if the locks we've added contradict each other.
+	private boolean consistent = true;
+
+}
@@ -0,0 +1,363 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * A log of the moves made in a game. Each move is a cell index and a
+ * number of turn steps, packed into a single int; the log is a growable
+ * primitive array, so recording a move doesn't allocate. A step is a
+ * quarter turn on a square board, and a sixth of a turn on a hex board.
+ * 
+ * <p>
+ * The log is a journal with a current position, so moves can be undone
+ * and redone in constant time. Undone moves stay in the log until a new
+ * move is added, which discards them.
+ * 
+ * <p>
+ * Each move is also stamped with the game time at which it was made, in a
+ * parallel array, for analysing how a puzzle was solved.
+ */
+public final class MoveLog {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create an empty move log.
+	 */
+	public MoveLog() {
+		moves = new int[INIT_SIZE];
+		times = new int[INIT_SIZE];
+		numMoves = 0;
+		position = 0;
+	}
+
+	// ******************************************************************** //
+	// Recording.
+	// ******************************************************************** //
+
+	/**
+	 * Remove all the moves.
+	 */
+	public void clear() {
+		numMoves = 0;
+		position = 0;
+	}
+
+	/**
+	 * Add a move at the current position in the log. Any moves which were
+	 * undone are discarded.
+	 * 
+	 * @param cell
+	 *            Index of the cell turned.
+	 * @param turns
+	 *            Number of turn steps, -3 to 3; clockwise positive.
+	 */
+	public void add(int cell, int turns) {
+		add(cell, turns, 0);
+	}
+
+	/**
+	 * Add a move at the current position in the log, stamped with the time
+	 * it was made. Any moves which were undone are discarded.
+	 * 
+	 * @param cell
+	 *            Index of the cell turned.
+	 * @param turns
+	 *            Number of turn steps, -3 to 3; clockwise positive.
+	 * @param time
+	 *            The game time at which the move was made, in ms.
+	 */
+	public void add(int cell, int turns, int time) {
+		int move = pack(cell, turns);
+		if (position == moves.length) {
+			int[] bigger = new int[moves.length * 2];
+			System.arraycopy(moves, 0, bigger, 0, position);
+			moves = bigger;
+			bigger = new int[times.length * 2];
+			System.arraycopy(times, 0, bigger, 0, position);
+			times = bigger;
+		}
+		times[position] = time;
+		moves[position++] = move;
+		numMoves = position;
+	}
+
+	/**
+	 * Step back over the last move made.
+	 * 
+	 * @return The packed move which was undone; the caller must turn the
+	 *         cell back. -1 if there are no moves to undo.
+	 */
+	public int undo() {
+		if (position == 0)
+			return -1;
+		return moves[--position];
+	}
+
+	/**
+	 * Step forward over the last move undone.
+	 * 
+	 * @return The packed move which was redone; the caller must turn the
+	 *         cell again. -1 if there are no moves to redo.
+	 */
+	public int redo() {
+		if (position == numMoves)
+			return -1;
+		return moves[position++];
+	}
+
+	/**
+	 * Set the current position in the log, as if moves had been undone or
+	 * redone to get there.
+	 * 
+	 * @param pos
+	 *            The number of moves to be in effect, 0 to
+	 *            {@link #length()}.
+	 */
+	public void seek(int pos) {
+		if (pos < 0 || pos > numMoves)
+			throw new IllegalArgumentException("Bad log position " + pos);
+		position = pos;
+	}
+
+	// ******************************************************************** //
+	// Access.
+	// ******************************************************************** //
+
+	/**
+	 * Get the number of moves in effect: i.e. made and not undone.
+	 * 
+	 * @return The number of moves.
+	 */
+	public int size() {
+		return position;
+	}
+
+	/**
+	 * Get the number of moves in the log, including those which have been
+	 * undone and can be redone.
+	 * 
+	 * @return The number of moves in the log.
+	 */
+	public int length() {
+		return numMoves;
+	}
+
+	/**
+	 * Query whether there is a move to undo.
+	 * 
+	 * @return true iff a move can be undone.
+	 */
+	public boolean canUndo() {
+		return position > 0;
+	}
+
+	/**
+	 * Query whether there is a move to redo.
+	 * 
+	 * @return true iff a move can be redone.
+	 */
+	public boolean canRedo() {
+		return position < numMoves;
+	}
+
+	/**
+	 * Get the cell turned by a move.
+	 * 
+	 * @param k
+	 *            Index of the move in the log.
+	 * @return Index of the cell turned.
+	 */
+	public int cell(int k) {
+		return moveCell(moves[k]);
+	}
+
+	/**
+	 * Get the number of turn steps made by a move.
+	 * 
+	 * @param k
+	 *            Index of the move in the log.
+	 * @return Number of turn steps, -3 to 3; clockwise positive.
+	 */
+	public int turns(int k) {
+		return moveTurns(moves[k]);
+	}
+
+	/**
+	 * Get the time at which a move was made.
+	 * 
+	 * @param k
+	 *            Index of the move in the log.
+	 * @return The game time at which the move was made, in ms; 0 if not
+	 *         known.
+	 */
+	public int time(int k) {
+		return times[k];
+	}
+
+	// ******************************************************************** //
+	// Save and Restore.
+	// ******************************************************************** //
+
+	/**
+	 * Get all the moves in the log, packed, including any which can be
+	 * redone. Save this along with {@link #size()} to save the log.
+	 * 
+	 * @return A new array of the packed moves.
+	 */
+	public int[] toArray() {
+		int[] data = new int[numMoves];
+		System.arraycopy(moves, 0, data, 0, numMoves);
+		return data;
+	}
+
+	/**
+	 * Get the times of all the moves in the log, including any which can be
+	 * redone. Save this along with {@link #toArray()} to save the move times.
+	 * 
+	 * @return A new array of the move times, in ms.
+	 */
+	public int[] timesToArray() {
+		int[] data = new int[numMoves];
+		System.arraycopy(times, 0, data, 0, numMoves);
+		return data;
+	}
+
+	/**
+	 * Restore the log from saved data. The move times are all set to 0.
+	 * 
+	 * @param data
+	 *            The packed moves, as returned by {@link #toArray()}.
+	 * @param pos
+	 *            The saved position in the log.
+	 * @throws IllegalArgumentException
+	 *             The position is out of range.
+	 */
+	public void restore(int[] data, int pos) {
+		restore(data, null, pos);
+	}
+
+	/**
+	 * Restore the log from saved data, including the move times.
+	 * 
+	 * @param data
+	 *            The packed moves, as returned by {@link #toArray()}.
+	 * @param stamps
+	 *            The move times, as returned by {@link #timesToArray()};
+	 *            null if not known, in which case they are all set to 0.
+	 * @param pos
+	 *            The saved position in the log.
+	 * @throws IllegalArgumentException
+	 *             The position is out of range, or the times don't match
+	 *             the moves.
+	 */
+	public void restore(int[] data, int[] stamps, int pos) {
+		if (pos < 0 || pos > data.length)
+			throw new IllegalArgumentException("Bad log position " + pos);
+		if (stamps != null && stamps.length != data.length)
+			throw new IllegalArgumentException("Got " + stamps.length
+					+ " move times for " + data.length + " moves");
+		if (data.length > moves.length) {
+			int size = moves.length;
+			while (size < data.length)
+				size *= 2;
+			moves = new int[size];
+			times = new int[size];
+		}
+		System.arraycopy(data, 0, moves, 0, data.length);
+		if (stamps != null)
+			System.arraycopy(stamps, 0, times, 0, data.length);
+		else
+			for (int k = 0; k < data.length; ++k)
+				times[k] = 0;
+		numMoves = data.length;
+		position = pos;
+	}
+
+	// ******************************************************************** //
+	// Move Encoding.
+	// ******************************************************************** //
+
+	/**
+	 * Pack a move into an int.
+	 * 
+	 * @param cell
+	 *            Index of the cell turned.
+	 * @param turns
+	 *            Number of turn steps, -3 to 3; clockwise positive.
+	 * @return The packed move.
+	 */
+	public static int pack(int cell, int turns) {
+		if (turns < -3 || turns > 3)
+			throw new IllegalArgumentException("Bad move turns " + turns);
+		return cell << 3 | (turns & 7);
+	}
+
+	/**
+	 * Get the cell turned by a packed move.
+	 * 
+	 * @param move
+	 *            The packed move.
+	 * @return Index of the cell turned.
+	 */
+	public static int moveCell(int move) {
+		return move >>> 3;
+	}
+
+	/**
+	 * Get the number of turn steps made by a packed move.
+	 * 
+	 * @param move
+	 *            The packed move.
+	 * @return Number of turn steps, -3 to 3; clockwise positive.
+	 */
+	public static int moveTurns(int move) {
+		return move << 29 >> 29;
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Initial size of the log.
+	private static final int INIT_SIZE = 64;
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The moves, packed, and the number of them.
+	private int[] moves;
+	private int numMoves;
+
+	// The game time in ms of each move, parallel to moves.
+	private int[] times;
+
+	// The current position in the log: the number of moves in effect.
+	// Moves from here to numMoves have been undone.
+	private int position;
+
+}
@@ -0,0 +1,221 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * A table of the neighbours of every cell in a board of a given topology,
+ * size and wrapping, packed into a flat array: the neighbour of cell i in
+ * direction c is at index i * numDirs + c, and is -1 if there is none. On
+ * a square board, numDirs is 4 and direction c is Board.CARDINALS[c]. This
+ * turns the neighbour lookups in the inner loops of the engine into array
+ * lookups, with no edge, wrap or row parity tests.
+ * 
+ * <p>
+ * Tables are immutable, so they are built once per board configuration and
+ * shared; see {@link #get(Topology, int, int, boolean)}.
+ */
+public final class NeighbourTable {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Build the table for a board of the given size.
+	 * 
+	 * @param topo
+	 *            The shape of the board's cells.
+	 * @param width
+	 *            Width of the board in cells.
+	 * @param height
+	 *            Height of the board in cells.
+	 * @param wrap
+	 *            If true, the network wraps around the edges of the board.
+	 */
+	private NeighbourTable(Topology topo, int width, int height, boolean wrap)
+	{
+		topology = topo;
+		boardWidth = width;
+		boardHeight = height;
+		isWrapped = wrap;
+
+		final int nd = topo.numDirs;
+		final int n = width * height;
+		table = new int[n * nd];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				final int t = (y * width + x) * nd;
+				for (int c = 0; c < nd; ++c) {
+					int nx = x + topo.offsetX(y, c);
+					int ny = y + topo.offsetY(y, c);
+					if (wrap) {
+						nx = (nx + width) % width;
+						ny = (ny + height) % height;
+					} else if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+						table[t + c] = -1;
+						continue;
+					}
+					table[t + c] = ny * width + nx;
+				}
+			}
+		}
+	}
+
+	// ******************************************************************** //
+	// Table Access.
+	// ******************************************************************** //
+
+	/**
+	 * Get the neighbour table for a square board of the given size.
+	 * 
+	 * @param width
+	 *            Width of the board in cells.
+	 * @param height
+	 *            Height of the board in cells.
+	 * @param wrap
+	 *            If true, the network wraps around the edges of the board.
+	 * @return The neighbour table.
+	 */
+	public static NeighbourTable get(int width, int height, boolean wrap) {
+		return get(Topology.SQUARE, width, height, wrap);
+	}
+
+	/**
+	 * Get the neighbour table for a board of the given topology and size.
+	 * Recently used tables are cached, so games of the same size share a
+	 * table.
+	 * 
+	 * @param topo
+	 *            The shape of the board's cells.
+	 * @param width
+	 *            Width of the board in cells.
+	 * @param height
+	 *            Height of the board in cells.
+	 * @param wrap
+	 *            If true, the network wraps around the edges of the board.
+	 *            A wrapped hex board must have an even height.
+	 * @return The neighbour table.
+	 */
+	public static NeighbourTable get(Topology topo, int width, int height,
+			boolean wrap) {
+		synchronized (cache) {
+			// Look for it in the cache; if found, move it to the front.
+			for (int k = 0; k < cache.length; ++k) {
+				NeighbourTable t = cache[k];
+				if (t != null && t.topology == topo && t.boardWidth == width
+						&& t.boardHeight == height && t.isWrapped == wrap) {
+					System.arraycopy(cache, 0, cache, 1, k);
+					cache[0] = t;
+					return t;
+				}
+			}
+
+			// Build it, and put it at the front, dropping the oldest.
+			NeighbourTable t = new NeighbourTable(topo, width, height, wrap);
+			System.arraycopy(cache, 0, cache, 1, cache.length - 1);
+			cache[0] = t;
+			return t;
+		}
+	}
+
+	/**
+	 * Get the neighbouring cell in the given direction from a cell.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param c
+	 *            Index of the direction.
+	 * @return The index of the next cell in the given direction; -1 if
+	 *         there is none.
+	 */
+	public int next(int i, int c) {
+		return table[i * topology.numDirs + c];
+	}
+
+	/**
+	 * Get the topology this table is for.
+	 * 
+	 * @return The shape of the board's cells.
+	 */
+	public Topology topology() {
+		return topology;
+	}
+
+	/**
+	 * Get the packed table, for use in inner loops. The neighbour of cell i
+	 * in direction c is at index i * numDirs + c. The table is shared, so
+	 * it must not be modified.
+	 * 
+	 * @return The table.
+	 */
+	public int[] table() {
+		return table;
+	}
+
+	/**
+	 * Get the index in Board.CARDINALS of the given square direction.
+	 * 
+	 * @param dir
+	 *            The direction; one of Board.L, D, R or U.
+	 * @return The index of the direction.
+	 * @throws IllegalArgumentException
+	 *             The direction isn't a single direction bit.
+	 */
+	public static int cardinal(int dir) {
+		final int c = dir > 0 && dir < CARDINAL_INDEX.length ? CARDINAL_INDEX[dir]
+				: -1;
+		if (c < 0)
+			throw new IllegalArgumentException("Bad direction " + dir);
+		return c;
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// The index in Board.CARDINALS of each set of direction bits; -1
+	// if it isn't a single direction.
+	private static final int[] CARDINAL_INDEX = { -1, 0, 1, -1, 2, -1, -1,
+			-1, 3, -1, -1, -1, -1, -1, -1, -1 };
+
+	// Number of tables we keep cached.
+	private static final int CACHE_SIZE = 4;
+
+	// The cached tables, most recently used first.
+	private static final NeighbourTable[] cache = new NeighbourTable[CACHE_SIZE];
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The board configuration this table is for.
+	private final Topology topology;
+	private final int boardWidth;
+	private final int boardHeight;
+	private final boolean isWrapped;
+
+	// The neighbour of each cell in each direction, -1 if none.
+	private final int[] table;
+
+}
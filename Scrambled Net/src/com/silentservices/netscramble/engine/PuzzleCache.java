@@ -0,0 +1,313 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+import java.util.Random;
+
+/**
+ * A cache of pre-generated puzzles. A background thread generates the next
+ * puzzle for the most recently requested configuration, so that when a new
+ * game is started, its board is ready at once.
+ * 
+ * <p>
+ * The cache holds one puzzle; a configuration is the skill level, board
+ * size, wrapping, number of branches and number of servers. Each puzzle is generated from a
+ * random {@link PuzzleCode}. When the caller takes a puzzle, the thread
+ * starts generating the next one for the same configuration.
+ * 
+ * <p>
+ * If the cache misses, the caller can wait for the puzzle it wants to be
+ * generated in the background, and be told by a {@link Listener} when it's
+ * ready; so a big board never has to be generated in the UI thread. A
+ * request for a new configuration abandons any puzzle being generated for
+ * the old one.
+ */
+public final class PuzzleCache implements Runnable {
+
+	// ******************************************************************** //
+	// Public Types.
+	// ******************************************************************** //
+
+	/**
+	 * This interface defines a listener for puzzles becoming ready.
+	 */
+	public static interface Listener {
+
+		/**
+		 * A puzzle of the requested configuration is ready to be taken.
+		 * This is called in the background thread, without the cache
+		 * locked; the listener will usually pass it on to its own thread.
+		 */
+		void puzzleReady();
+
+	}
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a puzzle cache. The background thread isn't started until
+	 * {@link #start()} is called.
+	 * 
+	 * @param rng
+	 *            Random number generator for the background thread to use
+	 *            to pick puzzle seeds. This must not be used by any other
+	 *            thread.
+	 */
+	public PuzzleCache(Random rng) {
+		this.rng = rng;
+	}
+
+	/**
+	 * Set the listener to be told when a puzzle is ready.
+	 * 
+	 * @param l
+	 *            The listener; null for none.
+	 */
+	public synchronized void setListener(Listener l) {
+		listener = l;
+	}
+
+	// ******************************************************************** //
+	// Run Control.
+	// ******************************************************************** //
+
+	/**
+	 * Start the background generator thread, if it's not running.
+	 */
+	public synchronized void start() {
+		if (genThread != null)
+			return;
+		genThread = new Thread(this, "PuzzleCache");
+		genThread.setDaemon(true);
+		genThread.setPriority(Thread.MIN_PRIORITY);
+		genThread.start();
+	}
+
+	/**
+	 * Stop the background generator thread. Any cached puzzle is kept.
+	 * 
+	 * <p>
+	 * This doesn't wait for the thread to exit: it is interrupted, which
+	 * abandons any puzzle it is generating, and it dies on its own shortly
+	 * after. If the cache is started again meanwhile, the new thread takes
+	 * over, and the old one discards whatever it was working on.
+	 */
+	public synchronized void stop() {
+		if (genThread == null)
+			return;
+		genThread.interrupt();
+		genThread = null;
+		notifyAll();
+	}
+
+	// ******************************************************************** //
+	// Puzzle Access.
+	// ******************************************************************** //
+
+	/**
+	 * Ask for a puzzle of the given configuration to be generated in the
+	 * background, replacing any request for a different configuration. If
+	 * a puzzle of another configuration is being generated, it is
+	 * abandoned.
+	 * 
+	 * @param skill
+	 *            Skill level index.
+	 * @param width
+	 *            Board width.
+	 * @param height
+	 *            Board height.
+	 * @param wrap
+	 *            Whether the board wraps.
+	 * @param branches
+	 *            Maximum branches off each cell.
+	 * @param servers
+	 *            Number of servers.
+	 */
+	public synchronized void request(int skill, int width, int height,
+			boolean wrap, int branches, int servers) {
+		if (matches(skill, width, height, wrap, branches, servers))
+			return;
+		wantSkill = skill;
+		wantWidth = width;
+		wantHeight = height;
+		wantWrap = wrap;
+		wantBranches = branches;
+		wantServers = servers;
+		ready = null;
+		readyCode = null;
+		if (generating && genThread != null)
+			genThread.interrupt();
+		notifyAll();
+	}
+
+	/**
+	 * Take the cached puzzle, if it matches the given configuration. In any
+	 * case, the next puzzle of this configuration is then requested.
+	 * 
+	 * @param skill
+	 *            Skill level index.
+	 * @param width
+	 *            Board width.
+	 * @param height
+	 *            Board height.
+	 * @param wrap
+	 *            Whether the board wraps.
+	 * @param branches
+	 *            Maximum branches off each cell.
+	 * @param servers
+	 *            Number of servers.
+	 * @param into
+	 *            Board to copy the puzzle into, in its solved position.
+	 * @return The code of the puzzle; null if none is ready, in which case
+	 *         the board is not touched.
+	 */
+	public synchronized PuzzleCode take(int skill, int width, int height,
+			boolean wrap, int branches, int servers, Board into) {
+		PuzzleCode code = null;
+		if (ready != null
+				&& matches(skill, width, height, wrap, branches, servers)) {
+			into.copyFrom(ready);
+			code = readyCode;
+		}
+		ready = null;
+		readyCode = null;
+		request(skill, width, height, wrap, branches, servers);
+		notifyAll();
+		return code;
+	}
+
+	// ******************************************************************** //
+	// Generator Thread.
+	// ******************************************************************** //
+
+	/**
+	 * Run the background generator. Whenever there's a request and no
+	 * puzzle is ready for it, generate one.
+	 * 
+	 * <p>
+	 * We are interrupted to abandon the puzzle we're generating, either
+	 * because the cache has been stopped, or a different configuration
+	 * has been requested; we can tell which by whether we're still the
+	 * cache's thread.
+	 */
+	@Override
+	public void run() {
+		final Thread me = Thread.currentThread();
+		while (true) {
+			int sk, w, h, br, sv;
+			boolean wrap;
+			PuzzleCode code;
+			synchronized (this) {
+				while (genThread == me && (wantWidth == 0 || ready != null)) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// Go round and see if we've been stopped.
+					}
+				}
+				if (genThread != me)
+					return;
+				sk = wantSkill;
+				w = wantWidth;
+				h = wantHeight;
+				wrap = wantWrap;
+				br = wantBranches;
+				sv = wantServers;
+
+				// Pick the seed in the lock, as a replacement thread may
+				// be using the same random number generator.
+				code = PuzzleCode.random(sk, br, wrap, sv, w, h, rng);
+				generating = true;
+			}
+
+			// Generate outside the lock, so the game isn't held up.
+			Board b = new Board(w, h, wrap);
+			code.generate(b);
+
+			// Keep it if it's still wanted, and it wasn't abandoned. If
+			// it was, clear the interrupt so we can carry on.
+			Listener l = null;
+			synchronized (this) {
+				generating = false;
+				if (genThread != me)
+					return;
+				if (Thread.interrupted())
+					continue;
+				if (ready == null && matches(sk, w, h, wrap, br, sv)) {
+					ready = b;
+					readyCode = code;
+					l = listener;
+				}
+			}
+			if (l != null)
+				l.puzzleReady();
+		}
+	}
+
+	/**
+	 * Determine whether the given configuration is the one requested.
+	 */
+	private boolean matches(int skill, int width, int height, boolean wrap,
+			int branches, int servers) {
+		return skill == wantSkill && width == wantWidth
+				&& height == wantHeight && wrap == wantWrap
+				&& branches == wantBranches && servers == wantServers;
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The random number generator used by the background thread to
+	// pick puzzle seeds.
+	private final Random rng;
+
+	// The background thread; null if not running. It is cleared, and
+	// the thread interrupted, to ask the thread to stop.
+	private Thread genThread = null;
+
+	// true while the background thread is generating a puzzle, so a new
+	// request should interrupt it.
+	private boolean generating = false;
+
+	// Listener to tell when a puzzle is ready; null if none.
+	private Listener listener = null;
+
+	// The requested configuration. wantWidth is 0 if nothing has been
+	// requested.
+	private int wantSkill = 0;
+	private int wantWidth = 0;
+	private int wantHeight = 0;
+	private boolean wantWrap = false;
+	private int wantBranches = 0;
+	private int wantServers = 1;
+
+	// The puzzle generated for the requested configuration, and its code;
+	// null if not ready yet.
+	private Board ready = null;
+	private PuzzleCode readyCode = null;
+
+}
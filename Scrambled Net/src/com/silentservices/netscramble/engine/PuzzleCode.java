@@ -0,0 +1,445 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+import java.util.Random;
+
+import net.goui.util.MTRandom;
+
+/**
+ * A compact code which identifies a puzzle exactly. A code records the skill
+ * level, the number of branches, wrapping, the number of servers, the board
+ * size, and two seeds:
+ * one to generate the network, and one to scramble it. Since generation is
+ * deterministic given the seed, the code is all that's needed to re-create
+ * the board; so puzzles can be shared, replayed, used as fixed test boards,
+ * or handed out as daily challenges.
+ * 
+ * <p>
+ * The text form of a code looks like "43W0H0A-2BW7TVQ1-1NS3K2": the skill
+ * level, the branches, W or N for wrapped or not, the width and height as
+ * two base-36 digits each, then the network and scramble seeds in base 36.
+ * A multi-server puzzle has the number of servers as an extra digit after
+ * the size, as in "43W0H0A3-2BW7TVQ1-1NS3K2".
+ * 
+ * <p>
+ * Puzzles are generated using a Mersenne Twister (MTRandom), which gives
+ * the same sequence on every platform, with unique solutions required and
+ * no difficulty limits. Changing any of that changes which board a code
+ * means.
+ */
+public final class PuzzleCode {
+
+	// ******************************************************************** //
+	// Constructors.
+	// ******************************************************************** //
+
+	/**
+	 * Create a puzzle code.
+	 * 
+	 * @param skill
+	 *            The skill level, as an index 0-9. The engine doesn't
+	 *            interpret this; it's up to the app.
+	 * @param branches
+	 *            Maximum branches off each cell; 2 or 3.
+	 * @param wrap
+	 *            Whether the board wraps.
+	 * @param width
+	 *            Board width, 1-1295.
+	 * @param height
+	 *            Board height, 1-1295.
+	 * @param seed
+	 *            Seed for generating the network; must be non-negative.
+	 * @param scramble
+	 *            Seed for scrambling the network; must be non-negative.
+	 * @throws IllegalArgumentException
+	 *             Any of the values is out of range.
+	 */
+	public PuzzleCode(int skill, int branches, boolean wrap, int width,
+			int height, long seed, long scramble) {
+		this(skill, branches, wrap, 1, width, height, seed, scramble);
+	}
+
+	/**
+	 * Create a puzzle code for a network with the given number of servers.
+	 * 
+	 * @param skill
+	 *            The skill level, as an index 0-9. The engine doesn't
+	 *            interpret this; it's up to the app.
+	 * @param branches
+	 *            Maximum branches off each cell; 2 or 3.
+	 * @param wrap
+	 *            Whether the board wraps.
+	 * @param servers
+	 *            Number of servers, 1-9.
+	 * @param width
+	 *            Board width, 1-1295.
+	 * @param height
+	 *            Board height, 1-1295.
+	 * @param seed
+	 *            Seed for generating the network; must be non-negative.
+	 * @param scramble
+	 *            Seed for scrambling the network; must be non-negative.
+	 * @throws IllegalArgumentException
+	 *             Any of the values is out of range.
+	 */
+	public PuzzleCode(int skill, int branches, boolean wrap, int servers,
+			int width, int height, long seed, long scramble) {
+		if (skill < 0 || skill > 9)
+			throw new IllegalArgumentException("Bad skill " + skill);
+		if (branches < 2 || branches > 3)
+			throw new IllegalArgumentException("Bad branches " + branches);
+		if (servers < 1 || servers > Board.MAX_ROOTS)
+			throw new IllegalArgumentException("Bad servers " + servers);
+		if (width < 1 || width > MAX_SIZE || height < 1 || height > MAX_SIZE)
+			throw new IllegalArgumentException("Bad size " + width + "x"
+					+ height);
+		if (seed < 0 || scramble < 0)
+			throw new IllegalArgumentException("Seeds must be non-negative");
+
+		this.skill = skill;
+		this.branches = branches;
+		this.wrap = wrap;
+		this.servers = servers;
+		this.width = width;
+		this.height = height;
+		this.seed = seed;
+		this.scramble = scramble;
+	}
+
+	/**
+	 * Create a puzzle code with random seeds.
+	 * 
+	 * @param skill
+	 *            The skill level, as an index 0-9.
+	 * @param branches
+	 *            Maximum branches off each cell; 2 or 3.
+	 * @param wrap
+	 *            Whether the board wraps.
+	 * @param width
+	 *            Board width.
+	 * @param height
+	 *            Board height.
+	 * @param rng
+	 *            Random number generator to pick the seeds.
+	 * @return The new puzzle code.
+	 */
+	public static PuzzleCode random(int skill, int branches, boolean wrap,
+			int width, int height, Random rng) {
+		return random(skill, branches, wrap, 1, width, height, rng);
+	}
+
+	/**
+	 * Create a puzzle code with random seeds, for a network with the given
+	 * number of servers.
+	 * 
+	 * @param skill
+	 *            The skill level, as an index 0-9.
+	 * @param branches
+	 *            Maximum branches off each cell; 2 or 3.
+	 * @param wrap
+	 *            Whether the board wraps.
+	 * @param servers
+	 *            Number of servers.
+	 * @param width
+	 *            Board width.
+	 * @param height
+	 *            Board height.
+	 * @param rng
+	 *            Random number generator to pick the seeds.
+	 * @return The new puzzle code.
+	 */
+	public static PuzzleCode random(int skill, int branches, boolean wrap,
+			int servers, int width, int height, Random rng) {
+		return new PuzzleCode(skill, branches, wrap, servers, width, height,
+				rng.nextLong() & Long.MAX_VALUE, rng.nextLong()
+						& Long.MAX_VALUE);
+	}
+
+	/**
+	 * Create the puzzle code for the daily challenge on the given day. Every
+	 * player gets the same board for a given day and configuration.
+	 * 
+	 * @param skill
+	 *            The skill level, as an index 0-9.
+	 * @param branches
+	 *            Maximum branches off each cell; 2 or 3.
+	 * @param wrap
+	 *            Whether the board wraps.
+	 * @param width
+	 *            Board width.
+	 * @param height
+	 *            Board height.
+	 * @param year
+	 *            The year, e.g. 2012.
+	 * @param month
+	 *            The month, 1-12.
+	 * @param day
+	 *            The day of the month, 1-31.
+	 * @return The puzzle code for that day.
+	 */
+	public static PuzzleCode daily(int skill, int branches, boolean wrap,
+			int width, int height, int year, int month, int day) {
+		long date = year * 10000L + month * 100L + day;
+		long seed = date * 16 + skill;
+		return new PuzzleCode(skill, branches, wrap, width, height, seed,
+				seed ^ DAILY_SCRAMBLE);
+	}
+
+	// ******************************************************************** //
+	// Text Form.
+	// ******************************************************************** //
+
+	/**
+	 * Parse the text form of a puzzle code. Case is ignored.
+	 * 
+	 * @param code
+	 *            The code to parse.
+	 * @return The puzzle code.
+	 * @throws IllegalArgumentException
+	 *             The code is not valid.
+	 */
+	public static PuzzleCode parse(String code) {
+		String[] parts = code.trim().toUpperCase().split("-");
+		if (parts.length != 3 || parts[0].length() < 7
+				|| parts[0].length() > 8)
+			throw new IllegalArgumentException("Bad puzzle code \"" + code
+					+ "\"");
+		String head = parts[0];
+		char w = head.charAt(2);
+		if (w != 'W' && w != 'N')
+			throw new IllegalArgumentException("Bad puzzle code \"" + code
+					+ "\"");
+
+		try {
+			int servers = head.length() == 8 ? Integer.parseInt(head
+					.substring(7, 8)) : 1;
+			return new PuzzleCode(Integer.parseInt(head.substring(0, 1)),
+					Integer.parseInt(head.substring(1, 2)), w == 'W', servers,
+					Integer.parseInt(head.substring(3, 5), 36),
+					Integer.parseInt(head.substring(5, 7), 36),
+					Long.parseLong(parts[1], 36),
+					Long.parseLong(parts[2], 36));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad puzzle code \"" + code
+					+ "\"");
+		}
+	}
+
+	/**
+	 * Get the text form of this puzzle code.
+	 * 
+	 * @return The code as a string, which can be parsed by
+	 *         {@link #parse(String)}.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder(32);
+		buf.append(skill);
+		buf.append(branches);
+		buf.append(wrap ? 'W' : 'N');
+		appendSize(buf, width);
+		appendSize(buf, height);
+		if (servers > 1)
+			buf.append(servers);
+		buf.append('-');
+		buf.append(Long.toString(seed, 36));
+		buf.append('-');
+		buf.append(Long.toString(scramble, 36));
+		return buf.toString().toUpperCase();
+	}
+
+	/**
+	 * Append a board dimension as two base-36 digits.
+	 */
+	private static void appendSize(StringBuilder buf, int size) {
+		if (size < 36)
+			buf.append('0');
+		buf.append(Integer.toString(size, 36));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof PuzzleCode))
+			return false;
+		PuzzleCode c = (PuzzleCode) o;
+		return skill == c.skill && branches == c.branches && wrap == c.wrap
+				&& servers == c.servers && width == c.width && height == c.height && seed == c.seed
+				&& scramble == c.scramble;
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	// ******************************************************************** //
+	// Board Creation.
+	// ******************************************************************** //
+
+	/**
+	 * Generate this puzzle's network on the given board, in its solved
+	 * position. The board is resized to suit.
+	 * 
+	 * @param b
+	 *            The board to generate on.
+	 */
+	public void generate(Board b) {
+		b.reset(width, height, wrap);
+		Generator gen = new Generator(new MTRandom(seed));
+		gen.setUnique(true);
+		gen.setServers(servers);
+		gen.generate(b, branches, Generator.minCells(width, height));
+	}
+
+	/**
+	 * Get this puzzle's scramble: the number of quarter turns to apply to
+	 * each cell of the solved network.
+	 * 
+	 * @param turns
+	 *            Array to place the turns in, indexed by cell; each is -2 to
+	 *            1, clockwise positive. Must be at least width * height long.
+	 */
+	public void scrambleTurns(int[] turns) {
+		MTRandom rng = new MTRandom(scramble);
+		int n = width * height;
+		for (int i = 0; i < n; ++i)
+			turns[i] = rng.nextInt(4) - 2;
+	}
+
+	/**
+	 * Scramble the given board, which must hold this puzzle's solved
+	 * network, by turning each cell immediately.
+	 * 
+	 * @param b
+	 *            The board to scramble.
+	 */
+	public void scramble(Board b) {
+		int[] turns = new int[width * height];
+		scrambleTurns(turns);
+		for (int i = 0; i < turns.length; ++i)
+			b.rotate(i, turns[i]);
+	}
+
+	// ******************************************************************** //
+	// Accessors.
+	// ******************************************************************** //
+
+	/**
+	 * Get the skill level index.
+	 * 
+	 * @return The skill level index.
+	 */
+	public int skill() {
+		return skill;
+	}
+
+	/**
+	 * Get the maximum number of branches off each cell.
+	 * 
+	 * @return The maximum branches off each cell.
+	 */
+	public int branches() {
+		return branches;
+	}
+
+	/**
+	 * Query whether the board wraps.
+	 * 
+	 * @return true iff the board wraps.
+	 */
+	public boolean isWrapped() {
+		return wrap;
+	}
+
+	/**
+	 * Get the number of servers.
+	 * 
+	 * @return The number of servers in the network.
+	 */
+	public int servers() {
+		return servers;
+	}
+
+	/**
+	 * Get the board width.
+	 * 
+	 * @return The board width.
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * Get the board height.
+	 * 
+	 * @return The board height.
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Get the seed used to generate the network.
+	 * 
+	 * @return The network seed.
+	 */
+	public long seed() {
+		return seed;
+	}
+
+	/**
+	 * Get the seed used to scramble the network.
+	 * 
+	 * @return The scramble seed.
+	 */
+	public long scrambleSeed() {
+		return scramble;
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Largest board dimension a code can hold: two base-36 digits.
+	private static final int MAX_SIZE = 36 * 36 - 1;
+
+	// Value mixed into the daily seed to get the daily scramble seed.
+	private static final long DAILY_SCRAMBLE = 0x2545f4914f6cdd1dL;
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The puzzle parameters.
+	private final int skill;
+	private final int branches;
+	private final boolean wrap;
+	private final int servers;
+	private final int width;
+	private final int height;
+	private final long seed;
+	private final long scramble;
+
+}
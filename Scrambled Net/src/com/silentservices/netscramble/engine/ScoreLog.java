@@ -0,0 +1,451 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An append-only log of finished games, kept in a file. Each game is a
+ * fixed-size binary record:
+ * 
+ * <pre>
+ *   byte 0       skill level index
+ *   byte 1       reserved; 0
+ *   bytes 2-3    board size in cells
+ *   bytes 4-7    click count
+ *   bytes 8-11   time taken in seconds
+ *   bytes 12-19  when the game was finished, in ms since the epoch
+ *   bytes 20-27  the puzzle's network seed; 0 if not known
+ * </pre>
+ * 
+ * after an 8-byte header holding a magic number, the format version and
+ * the record size. All values are big-endian.
+ * 
+ * <p>
+ * The log is never loaded as a whole. Queries stream through the file,
+ * skipping records for other skill levels, and gather the click counts
+ * and times into {@link Distribution}s, whose size depends on the range
+ * of the values rather than the number of games; so the percentiles of
+ * thousands of games can be had in one pass with little memory.
+ * 
+ * <p>
+ * A record which was cut short, by the app being killed in the middle of
+ * writing it, is ignored, and is overwritten by the next append.
+ */
+public final class ScoreLog {
+
+	// ******************************************************************** //
+	// Public Classes.
+	// ******************************************************************** //
+
+	/**
+	 * The distribution of a set of non-negative integer values, with
+	 * exact percentiles. The counts are kept in a histogram which grows
+	 * to fit the largest value seen, up to {@link #MAX_VALUE}; larger
+	 * values are counted as MAX_VALUE.
+	 */
+	public static final class Distribution {
+
+		/**
+		 * The largest value which is recorded exactly.
+		 */
+		public static final int MAX_VALUE = 65535;
+
+		/**
+		 * Add a value to the distribution.
+		 * 
+		 * @param v
+		 *            The value; negative values are counted as zero.
+		 */
+		public void add(int v) {
+			if (v < 0)
+				v = 0;
+			else if (v > MAX_VALUE)
+				v = MAX_VALUE;
+			if (v >= counts.length) {
+				int size = counts.length;
+				while (size <= v)
+					size *= 2;
+				int[] bigger = new int[size];
+				System.arraycopy(counts, 0, bigger, 0, counts.length);
+				counts = bigger;
+			}
+			++counts[v];
+			++total;
+			if (v > max)
+				max = v;
+		}
+
+		/**
+		 * Get the number of values added.
+		 * 
+		 * @return The number of values.
+		 */
+		public int count() {
+			return total;
+		}
+
+		/**
+		 * Get the smallest value added.
+		 * 
+		 * @return The smallest value; -1 if there are none.
+		 */
+		public int min() {
+			return percentile(0);
+		}
+
+		/**
+		 * Get the median of the values added.
+		 * 
+		 * @return The median; -1 if there are none.
+		 */
+		public int median() {
+			return percentile(50);
+		}
+
+		/**
+		 * Get a percentile of the values added: the smallest value such
+		 * that at least the given percentage of the values are no greater.
+		 * 
+		 * @param pct
+		 *            The percentile wanted, 0 to 100.
+		 * @return The value at that percentile; -1 if there are none.
+		 */
+		public int percentile(double pct) {
+			if (total == 0)
+				return -1;
+			long rank = (long) Math.ceil(pct / 100.0 * total);
+			if (rank < 1)
+				rank = 1;
+			long seen = 0;
+			for (int v = 0; v <= max; ++v) {
+				seen += counts[v];
+				if (seen >= rank)
+					return v;
+			}
+			return max;
+		}
+
+		// Count of the values at each value, and the total count.
+		private int[] counts = new int[64];
+		private int total = 0;
+
+		// The largest value seen.
+		private int max = 0;
+	}
+
+	/**
+	 * The scores for one skill level, as read from the log.
+	 */
+	public static final class Stats {
+
+		/**
+		 * Get the number of games played.
+		 * 
+		 * @return The number of games in the log at this skill level.
+		 */
+		public int games() {
+			return clicks.count();
+		}
+
+		/**
+		 * Get the distribution of click counts.
+		 * 
+		 * @return The click counts of the games.
+		 */
+		public Distribution clicks() {
+			return clicks;
+		}
+
+		/**
+		 * Get the distribution of times taken.
+		 * 
+		 * @return The times of the games, in seconds.
+		 */
+		public Distribution seconds() {
+			return seconds;
+		}
+
+		/**
+		 * Get the board size of the most recent game.
+		 * 
+		 * @return The size in cells; -1 if there are no games.
+		 */
+		public int lastSize() {
+			return lastSize;
+		}
+
+		/**
+		 * Get the time of the game with the fewest clicks.
+		 * 
+		 * @return When that game was finished, in ms since the epoch; 0
+		 *         if there are no games. The earliest, if several tie.
+		 */
+		public long bestClicksDate() {
+			return bestClicksDate;
+		}
+
+		/**
+		 * Get the time of the fastest game.
+		 * 
+		 * @return When that game was finished, in ms since the epoch; 0
+		 *         if there are no games. The earliest, if several tie.
+		 */
+		public long bestSecondsDate() {
+			return bestSecondsDate;
+		}
+
+		private void add(int size, int c, int s, long date) {
+			if (clicks.count() == 0 || c < bestClicks) {
+				bestClicks = c;
+				bestClicksDate = date;
+			}
+			if (seconds.count() == 0 || s < bestSeconds) {
+				bestSeconds = s;
+				bestSecondsDate = date;
+			}
+			clicks.add(c);
+			seconds.add(s);
+			lastSize = size;
+		}
+
+		// The distributions of the click counts and times.
+		private final Distribution clicks = new Distribution();
+		private final Distribution seconds = new Distribution();
+
+		// The board size of the latest game.
+		private int lastSize = -1;
+
+		// The best click count and time, and when they were made.
+		private int bestClicks = 0;
+		private long bestClicksDate = 0;
+		private int bestSeconds = 0;
+		private long bestSecondsDate = 0;
+	}
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a score log which keeps its records in the given file. The
+	 * file is created when the first game is added.
+	 * 
+	 * @param file
+	 *            The log file.
+	 */
+	public ScoreLog(File file) {
+		logFile = file;
+	}
+
+	// ******************************************************************** //
+	// Logging.
+	// ******************************************************************** //
+
+	/**
+	 * Add a finished game to the end of the log.
+	 * 
+	 * @param skill
+	 *            The skill level index, 0-255.
+	 * @param size
+	 *            The board size in cells.
+	 * @param clicks
+	 *            The number of clicks taken.
+	 * @param seconds
+	 *            The time taken in seconds.
+	 * @param date
+	 *            When the game was finished, in ms since the epoch.
+	 * @param seed
+	 *            The puzzle's network seed; 0 if not known.
+	 * @throws IOException
+	 *             The log couldn't be written, or isn't a score log.
+	 */
+	public synchronized void add(int skill, int size, int clicks,
+			int seconds, long date, long seed) throws IOException {
+		if (skill < 0 || skill > 255)
+			throw new IllegalArgumentException("Bad skill " + skill);
+		byte[] rec = new byte[RECORD_SIZE];
+		rec[0] = (byte) skill;
+		Bytes.putShort(rec, 2, Math.min(size, 0xffff));
+		Bytes.putInt(rec, 4, clicks);
+		Bytes.putInt(rec, 8, seconds);
+		Bytes.putLong(rec, 12, date);
+		Bytes.putLong(rec, 20, seed);
+
+		RandomAccessFile f = new RandomAccessFile(logFile, "rw");
+		try {
+			long len = f.length();
+			if (len < HEADER_SIZE) {
+				f.setLength(0);
+				f.write(header());
+				len = HEADER_SIZE;
+			} else
+				checkHeader(f);
+
+			// Drop any partial record left at the end.
+			long end = len - (len - HEADER_SIZE) % RECORD_SIZE;
+			f.seek(end);
+			f.write(rec);
+			f.setLength(end + RECORD_SIZE);
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Delete all the games in the log.
+	 */
+	public synchronized void clear() {
+		logFile.delete();
+	}
+
+	// ******************************************************************** //
+	// Queries.
+	// ******************************************************************** //
+
+	/**
+	 * Get the scores for one skill level.
+	 * 
+	 * @param skill
+	 *            The skill level index.
+	 * @return The scores at that level.
+	 * @throws IOException
+	 *             The log couldn't be read, or isn't a score log.
+	 */
+	public Stats stats(int skill) throws IOException {
+		Stats[] all = new Stats[skill + 1];
+		all[skill] = new Stats();
+		scan(all);
+		return all[skill];
+	}
+
+	/**
+	 * Gather the scores for several skill levels in one pass through the
+	 * log.
+	 * 
+	 * @param stats
+	 *            Array indexed by skill level index. Games at each level
+	 *            whose entry is not null are added to it; other games are
+	 *            skipped.
+	 * @throws IOException
+	 *             The log couldn't be read, or isn't a score log.
+	 */
+	public synchronized void scan(Stats[] stats) throws IOException {
+		if (!logFile.exists())
+			return;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(logFile), 4096));
+		try {
+			byte[] head = new byte[HEADER_SIZE];
+			try {
+				in.readFully(head);
+			} catch (EOFException e) {
+				return;
+			}
+			checkHeader(head);
+
+			byte[] rec = new byte[RECORD_SIZE];
+			while (true) {
+				try {
+					in.readFully(rec);
+				} catch (EOFException e) {
+					break;
+				}
+				int skill = rec[0] & 0xff;
+				if (skill >= stats.length || stats[skill] == null)
+					continue;
+				stats[skill].add(Bytes.getShort(rec, 2),
+						Bytes.getInt(rec, 4), Bytes.getInt(rec, 8),
+						Bytes.getLong(rec, 12));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Get the number of games in the log.
+	 * 
+	 * @return The number of complete records in the log.
+	 */
+	public synchronized int size() {
+		long len = logFile.length();
+		return len < HEADER_SIZE ? 0
+				: (int) ((len - HEADER_SIZE) / RECORD_SIZE);
+	}
+
+	// ******************************************************************** //
+	// Utilities.
+	// ******************************************************************** //
+
+	private static byte[] header() {
+		byte[] head = new byte[HEADER_SIZE];
+		Bytes.putInt(head, 0, MAGIC);
+		Bytes.putShort(head, 4, VERSION);
+		Bytes.putShort(head, 6, RECORD_SIZE);
+		return head;
+	}
+
+	private static void checkHeader(RandomAccessFile f) throws IOException {
+		byte[] head = new byte[HEADER_SIZE];
+		f.seek(0);
+		f.readFully(head);
+		checkHeader(head);
+	}
+
+	private static void checkHeader(byte[] head) throws IOException {
+		if (Bytes.getInt(head, 0) != MAGIC
+				|| Bytes.getShort(head, 4) != VERSION
+				|| Bytes.getShort(head, 6) != RECORD_SIZE)
+			throw new IOException("Not a version " + VERSION + " score log");
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Magic number at the start of the file: "NSLG".
+	private static final int MAGIC = 0x4e534c47;
+
+	// Version number of the log format.
+	private static final int VERSION = 1;
+
+	// Size of the header, and of each record, in bytes.
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_SIZE = 28;
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The file holding the log.
+	private final File logFile;
+
+}
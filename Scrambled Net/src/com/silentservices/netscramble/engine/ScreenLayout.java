@@ -0,0 +1,130 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * This enum defines the board sizes for the supported screen layouts.
+ * Traditional knetwalk has these board sizes: Novice: 5x5 = 25 tiles = 31%
+ * Normal: 7x7 = 49 tiles = 60% Expert: 9x9 = 81 tiles = 100% Master: 9x9 =
+ * 81 tiles = 100% wrapped
+ * 
+ * We have to deal with various screen sizes, and we want the cells to be big
+ * enough to touch. So, to set the board sizes, we choose a layout based on
+ * the physical screen size. Then, sizes[skill][0] is the major grid size for
+ * that skill, and sizes[skill][1] is the minor grid size for that skill.
+ */
+public enum ScreenLayout {
+	SMALL(8, 6, 8, 6, 6, 6, 6, 4), // Like HVGA.
+	WSMALL(9, 6, 9, 6, 5, 6, 5, 4), // Like HVGA.
+	MEDIUM(11, 7, 11, 7, 9, 7, 5, 5), // VGA plus.
+	WMEDIUM(12, 7, 10, 7, 8, 7, 6, 5), // Wide VGA plus.
+	HUGE(17, 10, 15, 8, 11, 8, 7, 6); // WSVGA etc.
+
+	ScreenLayout(int ml, int ms, int el, int es, int nl, int ns, int vl,
+			int vs) {
+		major = ml;
+		minor = ms;
+		sizes[SkillLevel.INSANE.ordinal()][0] = ml;
+		sizes[SkillLevel.INSANE.ordinal()][1] = ms;
+		sizes[SkillLevel.MASTER.ordinal()][0] = ml;
+		sizes[SkillLevel.MASTER.ordinal()][1] = ms;
+		sizes[SkillLevel.EXPERT.ordinal()][0] = el;
+		sizes[SkillLevel.EXPERT.ordinal()][1] = es;
+		sizes[SkillLevel.NORMAL.ordinal()][0] = nl;
+		sizes[SkillLevel.NORMAL.ordinal()][1] = ns;
+		sizes[SkillLevel.NOVICE.ordinal()][0] = vl;
+		sizes[SkillLevel.NOVICE.ordinal()][1] = vs;
+	}
+
+	/**
+	 * Choose the layout for a screen of the given size.
+	 * 
+	 * @param min
+	 *            The smaller screen dimension, in pixels.
+	 * @param aspect
+	 *            The aspect ratio of the screen, larger dimension over
+	 *            smaller.
+	 * @return The layout to use.
+	 */
+	public static ScreenLayout forScreen(int min, float aspect) {
+		if (min <= 400)
+			return aspect > 1.4f ? WSMALL : SMALL;
+		else if (min <= 500)
+			return aspect > 1.5f ? WMEDIUM : MEDIUM;
+		else
+			return HUGE;
+	}
+
+	/**
+	 * Get the width of the cell grid.
+	 * 
+	 * @param landscape
+	 *            True if the screen is wider than it is high.
+	 * @return The grid width in cells.
+	 */
+	public int gridWidth(boolean landscape) {
+		return landscape ? major : minor;
+	}
+
+	/**
+	 * Get the height of the cell grid.
+	 * 
+	 * @param landscape
+	 *            True if the screen is wider than it is high.
+	 * @return The grid height in cells.
+	 */
+	public int gridHeight(boolean landscape) {
+		return landscape ? minor : major;
+	}
+
+	/**
+	 * Get the width of the playing board for a skill level.
+	 * 
+	 * @param sk
+	 *            The skill level.
+	 * @param landscape
+	 *            True if the screen is wider than it is high.
+	 * @return The board width in cells.
+	 */
+	public int boardWidth(SkillLevel sk, boolean landscape) {
+		return sizes[sk.ordinal()][landscape ? 0 : 1];
+	}
+
+	/**
+	 * Get the height of the playing board for a skill level.
+	 * 
+	 * @param sk
+	 *            The skill level.
+	 * @param landscape
+	 *            True if the screen is wider than it is high.
+	 * @return The board height in cells.
+	 */
+	public int boardHeight(SkillLevel sk, boolean landscape) {
+		return sizes[sk.ordinal()][landscape ? 1 : 0];
+	}
+
+	private final int major;
+	private final int minor;
+	private final int[][] sizes = new int[SkillLevel.values().length][2];
+}
@@ -0,0 +1,57 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * The game skill levels, with the configuration parameters for each. The
+ * app attaches its labels and menu IDs to these; the engine only needs the
+ * parameters. We also introduce the wrinkle of blind tiles, to make an
+ * insane level.
+ */
+public enum SkillLevel {
+	// brch wrap blind
+	NOVICE(2, false, 9), NORMAL(2, false, 9), EXPERT(2, false, 9), MASTER(3,
+			true, 9), INSANE(3, true, 3);
+
+	private SkillLevel(int br, boolean w, int bd) {
+		branches = br;
+		wrapped = w;
+		blind = bd;
+	}
+
+	/**
+	 * Max branches off each square; at least 2.
+	 */
+	public final int branches;
+
+	/**
+	 * If true, the network wraps around the edges.
+	 */
+	public final boolean wrapped;
+
+	/**
+	 * Squares with this many or more connections are blind.
+	 */
+	public final int blind;
+}
@@ -0,0 +1,864 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * A solver for network puzzles. Given a board whose cells have been turned
+ * at random, this works out how each cell must be turned so that every cell
+ * is connected into a single tree.
+ * 
+ * <p>
+ * Each cell has a domain of possible orientations -- up to one per
+ * direction of the board's topology, fewer for symmetrical pieces. We prune the domains by constraint propagation:
+ * 
+ * <ul>
+ * <li>Arc consistency on the edges: two neighbouring cells must agree on
+ * whether the edge between them is a connection, and no cell may connect off
+ * the edge of an unwrapped board.</li>
+ * <li>No loops: an orientation which would join two cells which are already
+ * joined by forced connections is ruled out, since the network is a
+ * tree.</li>
+ * <li>No isolated sub-networks: two terminals may not connect to each other
+ * (unless that's the whole network), and a group of cells which is closed
+ * off from the rest of the board is a contradiction.</li>
+ * </ul>
+ * 
+ * <p>
+ * On a board with several servers, the solution is a forest instead: a
+ * closed group of cells is fine as long as it has a server in it, and
+ * leaves a server for the cells outside it.
+ * 
+ * <p>
+ * Most puzzles are solved by propagation alone. When propagation gets stuck,
+ * we guess an orientation for the most constrained cell, and backtrack if
+ * that leads to a contradiction.
+ * 
+ * <p>
+ * The solver can also be used incrementally, to make deductions without
+ * guessing: see {@link #deduce(Board)} and {@link #restrict(int, int)}.
+ * The cells are traced in the order that they are found to be forced, so
+ * the simplest deductions come first.
+ * 
+ * <p>
+ * A Solver may be re-used for many boards; its working storage is only
+ * re-allocated when the board size grows.
+ */
+public final class Solver {
+
+	// ******************************************************************** //
+	// Constructor.
+	// ******************************************************************** //
+
+	/**
+	 * Create a solver.
+	 */
+	public Solver() {
+	}
+
+	// ******************************************************************** //
+	// Solving.
+	// ******************************************************************** //
+
+	/**
+	 * Solve the given board. The board is not modified; the solution can be
+	 * retrieved with {@link #turns(int)} and {@link #solvedDirs(int)}.
+	 * 
+	 * <p>
+	 * Cells which are locked or busy are treated like any other cell: the
+	 * solution is based purely on the shapes of the pieces.
+	 * 
+	 * <p>
+	 * If the calling thread is interrupted, the search is abandoned at the
+	 * next guess; the result is then meaningless, and the interrupt is left
+	 * set for the caller to see.
+	 * 
+	 * @param board
+	 *            The board to solve.
+	 * @param maxSolutions
+	 *            The maximum number of solutions to look for. Pass 1 to just
+	 *            find a solution; 2 to find out whether the solution is
+	 *            unique.
+	 * @return The number of solutions found, up to maxSolutions. Zero means
+	 *         that the board has no solution.
+	 */
+	public int solve(Board board, int maxSolutions) {
+		solutionLimit = maxSolutions;
+		numSolutions = 0;
+		numGuesses = 0;
+		maxDepth = 0;
+		deductionDepth = 0;
+		traceLength = 0;
+		if (!setup(board))
+			return 0;
+
+		// Queue up every cell for the first propagation pass.
+		for (int i = 0; i < numCells; ++i)
+			enqueue(i);
+		search(0);
+
+		return numSolutions;
+	}
+
+	/**
+	 * Get the number of clockwise steps needed to put a cell into its
+	 * solved orientation, in the first solution found. A step is a quarter
+	 * turn on a square board, and a sixth of a turn on a hex board.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The number of clockwise steps, 0 to one less than the
+	 *         number of directions. This is the
+	 *         smallest number of turns which gets the cell there.
+	 */
+	public int turns(int i) {
+		return solution[i];
+	}
+
+	/**
+	 * Get the direction bits of a cell in its solved orientation, in the
+	 * first solution found.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's solved direction bits.
+	 */
+	public int solvedDirs(int i) {
+		return orients[i * numDirs + solution[i]];
+	}
+
+	/**
+	 * Get the number of guesses the last solve had to make when propagation
+	 * got stuck. Zero means that the puzzle was solved by deduction alone.
+	 * 
+	 * @return The number of guesses made.
+	 */
+	public int guesses() {
+		return numGuesses;
+	}
+
+	/**
+	 * Get the number of rounds of deduction the last solve needed before it
+	 * either finished or had to start guessing. In each round, every cell
+	 * affected by the previous round is looked at again; so this measures how
+	 * long the chains of reasoning in the puzzle are.
+	 * 
+	 * @return The deduction depth of the puzzle.
+	 */
+	public int deductionDepth() {
+		return deductionDepth;
+	}
+
+	/**
+	 * Get the deepest level of nested guesses the last solve needed.
+	 * 
+	 * @return The maximum guess depth.
+	 */
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	// ******************************************************************** //
+	// Incremental Deduction.
+	// ******************************************************************** //
+
+	/**
+	 * Make all the deductions we can about the given board by propagation
+	 * alone, without guessing. Afterwards, the deductions can be queried
+	 * with {@link #forcedDirs(int)} and {@link #allows(int, int)}, and
+	 * extended with {@link #restrict(int, int)}.
+	 * 
+	 * <p>
+	 * As with {@link #solve(Board, int)}, locked cells are treated like any
+	 * other cell.
+	 * 
+	 * @param board
+	 *            The board to look at.
+	 * @return false if the board has no solution.
+	 */
+	public boolean deduce(Board board) {
+		numGuesses = 0;
+		maxDepth = 0;
+		traceLength = 0;
+		if (!setup(board))
+			return false;
+		for (int i = 0; i < numCells; ++i)
+			enqueue(i);
+		boolean ok = propagate();
+		deductionDepth = propagateRounds;
+		return ok && checkIsolation();
+	}
+
+	/**
+	 * Add a constraint to the deductions: the given cell must be in the
+	 * given orientation. Propagation carries on from there; only the cells
+	 * affected are looked at again.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dirs
+	 *            The direction bits the cell must have.
+	 * @return false if this contradicts the deductions so far. The
+	 *         deductions are then in an undefined state until
+	 *         {@link #rollback()}.
+	 */
+	public boolean restrict(int i, int dirs) {
+		int r = orientation(i, dirs);
+		if (r < 0 || (domain[i] & (1 << r)) == 0)
+			return false;
+		if (domain[i] == 1 << r)
+			return true;
+		if (!narrow(i, 1 << r))
+			return false;
+		return propagate() && checkIsolation();
+	}
+
+	/**
+	 * Save the current deductions, so they can be returned to with
+	 * {@link #rollback()}.
+	 */
+	public void mark() {
+		if (markDomain == null || markDomain.length < numCells)
+			markDomain = new int[numCells];
+		System.arraycopy(domain, 0, markDomain, 0, numCells);
+		markTrace = traceLength;
+	}
+
+	/**
+	 * Go back to the deductions saved by the last {@link #mark()}.
+	 */
+	public void rollback() {
+		System.arraycopy(markDomain, 0, domain, 0, numCells);
+		traceLength = markTrace;
+		clearQueue();
+		rebuild();
+	}
+
+	/**
+	 * Get the orientation a cell has been found to need.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The cell's forced direction bits; -1 if it isn't forced yet.
+	 */
+	public int forcedDirs(int i) {
+		int dom = domain[i];
+		if (dom == 0 || (dom & (dom - 1)) != 0)
+			return -1;
+		return orients[i * numDirs + Integer.numberOfTrailingZeros(dom)];
+	}
+
+	/**
+	 * Query whether the deductions so far allow a cell to be in the given
+	 * orientation.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dirs
+	 *            The direction bits to check.
+	 * @return true iff the cell may have these direction bits.
+	 */
+	public boolean allows(int i, int dirs) {
+		int r = orientation(i, dirs);
+		return r >= 0 && (domain[i] & (1 << r)) != 0;
+	}
+
+	/**
+	 * Get the number of cells which have been found to be forced, which is
+	 * the length of the trace of deductions.
+	 * 
+	 * @return The number of forced cells.
+	 */
+	public int traceLength() {
+		return traceLength;
+	}
+
+	/**
+	 * Get a cell from the trace of deductions.
+	 * 
+	 * @param k
+	 *            Index in the trace, 0 to {@link #traceLength()} - 1.
+	 *            Cells earlier in the trace were found to be forced with
+	 *            less reasoning.
+	 * @return Index of the cell.
+	 */
+	public int traceCell(int k) {
+		return trace[k];
+	}
+
+	// ******************************************************************** //
+	// Setup.
+	// ******************************************************************** //
+
+	/**
+	 * Set up the working state for the given board.
+	 * 
+	 * @param b
+	 *            The board to solve.
+	 * @return false if the board obviously has no solution.
+	 */
+	private boolean setup(Board b) {
+		numCells = b.size();
+		if (pieces == null || pieces.length < numCells) {
+			pieces = new int[numCells];
+			domain = new int[numCells];
+			must = new int[numCells];
+			may = new int[numCells];
+			parent = new int[numCells];
+			queue = new int[numCells];
+			queued = new boolean[numCells];
+			solution = new int[numCells];
+			compSize = new int[numCells];
+			compServers = new int[numCells];
+			compOpen = new boolean[numCells];
+			server = new boolean[numCells];
+			saved = new int[numCells + 1][];
+			trace = new int[numCells];
+		}
+		numDirs = b.topology().numDirs;
+		halfDirs = numDirs / 2;
+		dirMask = b.topology().mask;
+		if (orients == null || orients.length < numCells * numDirs)
+			orients = new int[numCells * numDirs];
+
+		// Set up the pieces, and get the neighbour of every cell in each
+		// direction. The domain of each cell is the set of distinct
+		// orientations of its piece. The orientations are worked out once
+		// here, so the search never has to rotate direction bits.
+		final Topology topo = b.topology();
+		final int nd = numDirs;
+		neighbours = b.neighbours().table();
+		usedCells = 0;
+		numServers = 0;
+		for (int i = 0; i < numCells; ++i) {
+			int p = b.dirs(i);
+			pieces[i] = p;
+			server[i] = p != 0 && b.isRoot(i);
+			if (p != 0)
+				++usedCells;
+			if (server[i])
+				++numServers;
+			int dom = 0;
+			for (int r = 0; r < nd; ++r) {
+				int o = topo.rotated(p, r);
+				orients[i * nd + r] = o;
+				boolean dup = false;
+				for (int q = 0; q < r; ++q)
+					if (orients[i * nd + q] == o)
+						dup = true;
+				if (!dup)
+					dom |= 1 << r;
+			}
+			domain[i] = dom;
+			if ((dom & (dom - 1)) == 0)
+				trace[traceLength++] = i;
+			queued[i] = false;
+		}
+		queueHead = queueTail = queueCount = 0;
+		return rebuild();
+	}
+
+	/**
+	 * Re-compute the forced and possible connections of every cell from the
+	 * domains, and the groups of cells joined by forced connections.
+	 * 
+	 * @return false if the forced connections contain a loop.
+	 */
+	private boolean rebuild() {
+		for (int i = 0; i < numCells; ++i) {
+			updateBounds(i);
+			parent[i] = i;
+		}
+		// Every connection is in one of the first half of the directions
+		// (left or down on a square board) from exactly one cell, so
+		// looking at those finds each connection once.
+		final int nd = numDirs;
+		final int half = halfDirs;
+		for (int i = 0; i < numCells; ++i) {
+			for (int c = 0; c < half; ++c) {
+				int n = neighbours[i * nd + c];
+				if (n < 0)
+					continue;
+				if ((must[i] & (1 << c)) == 0
+						&& (must[n] & (1 << (c + half))) == 0)
+					continue;
+				if (!join(i, n))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compute the forced and possible connections of a cell from its domain.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 */
+	private void updateBounds(int i) {
+		final int nd = numDirs;
+		int dom = domain[i];
+		int and = dirMask;
+		int or = 0;
+		for (int r = 0; r < nd; ++r) {
+			if ((dom & (1 << r)) != 0) {
+				int o = orients[i * nd + r];
+				and &= o;
+				or |= o;
+			}
+		}
+		must[i] = dom == 0 ? 0 : and;
+		may[i] = or;
+	}
+
+	// ******************************************************************** //
+	// Search.
+	// ******************************************************************** //
+
+	/**
+	 * Propagate constraints from the current state, then if the board isn't
+	 * solved, guess an orientation for the most constrained cell and recurse.
+	 * 
+	 * @param depth
+	 *            The current guess depth.
+	 */
+	private void search(int depth) {
+		if (depth > maxDepth)
+			maxDepth = depth;
+		boolean ok = propagate();
+		if (depth == 0)
+			deductionDepth = propagateRounds;
+		if (!ok || !checkIsolation())
+			return;
+
+		// Find the undecided cell with the fewest options left.
+		int best = -1;
+		int bestCount = numDirs + 1;
+		for (int i = 0; i < numCells; ++i) {
+			int c = Integer.bitCount(domain[i]);
+			if (c > 1 && c < bestCount) {
+				best = i;
+				bestCount = c;
+				if (c == 2)
+					break;
+			}
+		}
+
+		// If every cell is decided, we've got a solution.
+		if (best < 0) {
+			if (numSolutions == 0)
+				for (int i = 0; i < numCells; ++i)
+					solution[i] = Integer.numberOfTrailingZeros(domain[i]);
+			++numSolutions;
+			return;
+		}
+
+		// Save the domains, and try each option in turn.
+		if (saved[depth] == null || saved[depth].length < numCells)
+			saved[depth] = new int[numCells];
+		int[] save = saved[depth];
+		System.arraycopy(domain, 0, save, 0, numCells);
+		int saveTrace = traceLength;
+		int options = save[best];
+		for (int r = 0; r < numDirs; ++r) {
+			if ((options & (1 << r)) == 0)
+				continue;
+			if (Thread.currentThread().isInterrupted())
+				return;
+			++numGuesses;
+			System.arraycopy(save, 0, domain, 0, numCells);
+			domain[best] = 1 << r;
+			traceLength = saveTrace;
+			trace[traceLength++] = best;
+			clearQueue();
+			if (rebuild()) {
+				enqueueAround(best);
+				search(depth + 1);
+			}
+			if (numSolutions >= solutionLimit)
+				return;
+		}
+	}
+
+	/**
+	 * Prune the domains of the cells in the queue, and all cells affected by
+	 * them, until nothing more changes.
+	 * 
+	 * @return false if we found a contradiction.
+	 */
+	private boolean propagate() {
+		// Count the rounds of deduction: a round ends when we've done all
+		// the cells that were queued when it started.
+		propagateRounds = 0;
+		int roundLeft = 0;
+		while (queueCount > 0) {
+			if (roundLeft == 0) {
+				++propagateRounds;
+				roundLeft = queueCount;
+			}
+			--roundLeft;
+
+			int i = queue[queueHead];
+			queueHead = (queueHead + 1) % numCells;
+			--queueCount;
+			queued[i] = false;
+
+			// Filter out the orientations which aren't consistent with
+			// the neighbours.
+			final int nd = numDirs;
+			int dom = domain[i];
+			int ndom = 0;
+			for (int r = 0; r < nd; ++r)
+				if ((dom & (1 << r)) != 0
+						&& consistent(i, orients[i * nd + r]))
+					ndom |= 1 << r;
+			if (ndom == 0)
+				return false;
+			if (ndom != dom && !narrow(i, ndom))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Shrink the domain of a cell. Join up any newly forced connections,
+	 * and queue the cell and its neighbours to be looked at again.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param ndom
+	 *            The new domain; a non-empty subset of the old one.
+	 * @return false if a new connection makes a loop.
+	 */
+	private boolean narrow(int i, int ndom) {
+		int oldMust = must[i];
+		domain[i] = ndom;
+		if ((ndom & (ndom - 1)) == 0)
+			trace[traceLength++] = i;
+		updateBounds(i);
+		int gained = must[i] & ~oldMust;
+		final int nd = numDirs;
+		for (int c = 0; c < nd; ++c) {
+			int d = 1 << c;
+			int n = neighbours[i * nd + c];
+			if ((gained & d) != 0 && (must[n] & (1 << reverseDir(c))) == 0)
+				if (!join(i, n))
+					return false;
+		}
+		enqueueAround(i);
+		return true;
+	}
+
+	/**
+	 * Determine whether the given orientation of a cell is consistent with
+	 * the current state of its neighbours.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param o
+	 *            Direction bits of the orientation to check.
+	 * @return true iff the orientation is possible.
+	 */
+	private boolean consistent(int i, int o) {
+		final int nd = numDirs;
+		for (int c = 0; c < nd; ++c) {
+			int d = 1 << c;
+			int n = neighbours[i * nd + c];
+			if (n < 0) {
+				// Can't connect off the edge of the board.
+				if ((o & d) != 0)
+					return false;
+				continue;
+			}
+
+			int rd = 1 << reverseDir(c);
+			if ((o & d) == 0) {
+				// No connection; the neighbour mustn't have one either.
+				if ((must[n] & rd) != 0)
+					return false;
+				continue;
+			}
+
+			// We connect this way, so the neighbour must be able to.
+			if ((may[n] & rd) == 0)
+				return false;
+
+			// If this is a new connection, it mustn't close a loop.
+			if ((must[i] & d) == 0 && (must[n] & rd) == 0
+					&& find(i) == find(n))
+				return false;
+
+			// Two terminals can't connect to each other, unless that's
+			// allowed as a network on its own.
+			if (Board.count(pieces[i]) == 1 && Board.count(pieces[n]) == 1
+					&& !canClose(2, (server[i] ? 1 : 0) + (server[n] ? 1 : 0)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check that no group of cells joined by forced connections has been
+	 * closed off from the rest of the network.
+	 * 
+	 * @return false if there's an isolated group of cells.
+	 */
+	private boolean checkIsolation() {
+		for (int i = 0; i < numCells; ++i) {
+			compSize[i] = 0;
+			compServers[i] = 0;
+			compOpen[i] = false;
+		}
+		for (int i = 0; i < numCells; ++i) {
+			if (pieces[i] == 0)
+				continue;
+			int root = find(i);
+			++compSize[root];
+			if (server[i])
+				++compServers[root];
+			if ((may[i] & ~must[i]) != 0)
+				compOpen[root] = true;
+		}
+		for (int i = 0; i < numCells; ++i)
+			if (compSize[i] != 0 && !compOpen[i]
+					&& !canClose(compSize[i], compServers[i]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Determine whether a group of cells can be closed off from the rest of
+	 * the board. With no servers marked, the network must be a single tree;
+	 * otherwise each closed group needs a server, and must leave one for
+	 * the rest of the cells.
+	 * 
+	 * @param size
+	 *            The number of cells in the group.
+	 * @param servers
+	 *            The number of servers in the group.
+	 * @return true iff the group is allowed to be closed off.
+	 */
+	private boolean canClose(int size, int servers) {
+		if (numServers == 0)
+			return size == usedCells;
+		return servers > 0 && (servers < numServers || size == usedCells);
+	}
+
+	// ******************************************************************** //
+	// Utilities.
+	// ******************************************************************** //
+
+	/**
+	 * Add a cell to the propagation queue, if it's not already there.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 */
+	private void enqueue(int i) {
+		if (queued[i])
+			return;
+		queued[i] = true;
+		queue[queueTail] = i;
+		queueTail = (queueTail + 1) % numCells;
+		++queueCount;
+	}
+
+	/**
+	 * Add a cell and its neighbours to the propagation queue.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 */
+	private void enqueueAround(int i) {
+		enqueue(i);
+		final int nd = numDirs;
+		for (int c = 0; c < nd; ++c) {
+			int n = neighbours[i * nd + c];
+			if (n >= 0)
+				enqueue(n);
+		}
+	}
+
+	/**
+	 * Empty the propagation queue.
+	 */
+	private void clearQueue() {
+		for (int i = 0; i < numCells; ++i)
+			queued[i] = false;
+		queueHead = queueTail = 0;
+		queueCount = 0;
+	}
+
+	/**
+	 * Find the orientation of a cell which gives it the given direction
+	 * bits.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @param dirs
+	 *            The direction bits.
+	 * @return The orientation, as the number of clockwise steps from the
+	 *         cell's piece as given; the smallest, if there are several.
+	 *         -1 if the piece can't be turned to these direction bits.
+	 */
+	private int orientation(int i, int dirs) {
+		final int nd = numDirs;
+		for (int r = 0; r < nd; ++r)
+			if (orients[i * nd + r] == dirs)
+				return r;
+		return -1;
+	}
+
+	/**
+	 * Get the index of the direction opposite the given one.
+	 * 
+	 * @param c
+	 *            Index of a direction.
+	 * @return Index of the reverse direction.
+	 */
+	private int reverseDir(int c) {
+		return c < halfDirs ? c + halfDirs : c - halfDirs;
+	}
+
+	/**
+	 * Find the group of cells joined by forced connections which the given
+	 * cell belongs to.
+	 * 
+	 * @param i
+	 *            Index of the cell.
+	 * @return The index of the representative cell of the group.
+	 */
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Join the groups of two cells which have a forced connection.
+	 * 
+	 * @param a
+	 *            Index of one cell.
+	 * @param b
+	 *            Index of the other cell.
+	 * @return false if the cells were already joined, so the connection
+	 *         makes a loop.
+	 */
+	private boolean join(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra == rb)
+			return false;
+		parent[ra] = rb;
+		return true;
+	}
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The number of cells in the board we're solving.
+	private int numCells;
+
+	// The number of directions of the board's topology, half that, and
+	// the mask of its direction bits.
+	private int numDirs;
+	private int halfDirs;
+	private int dirMask;
+
+	// The number of non-empty cells on the board, and how many of them
+	// are servers.
+	private int usedCells;
+	private int numServers;
+
+	// The piece in each cell: its direction bits as given.
+	private int[] pieces;
+
+	// The direction bits of each cell in each orientation, numDirs per
+	// cell, indexed by the number of clockwise steps from the piece.
+	private int[] orients;
+
+	// Flags for which cells are servers.
+	private boolean[] server;
+
+	// For each cell, the set of possible orientations, as a bitmask of the
+	// numbers of clockwise steps from the given piece.
+	private int[] domain;
+
+	// For each cell, the connections it has in every remaining orientation,
+	// and the connections it has in any remaining orientation.
+	private int[] must;
+	private int[] may;
+
+	// Union-find forest of the groups of cells joined by forced connections.
+	private int[] parent;
+
+	// The neighbour of each cell in each direction, numDirs per cell, in
+	// the order of the direction bits; -1 if none.
+	private int[] neighbours;
+
+	// Circular queue of cells waiting to be propagated, and flags for which
+	// cells are in it. queueHead is the next cell to take off, queueTail the
+	// next free slot, and queueCount the number of cells queued.
+	private int[] queue;
+	private boolean[] queued;
+	private int queueHead = 0;
+	private int queueTail = 0;
+	private int queueCount = 0;
+
+	// Working storage for checkIsolation(): the size of each group, the
+	// number of servers in it, and whether it has any undecided
+	// connections.
+	private int[] compSize;
+	private int[] compServers;
+	private boolean[] compOpen;
+
+	// Saved domains at each guess depth, for backtracking.
+	private int[][] saved;
+
+	// The cells in the order they were found to be forced, and the number
+	// of them. In a search, this includes cells forced by guesses.
+	private int[] trace;
+	private int traceLength = 0;
+
+	// Domains and trace length saved by mark().
+	private int[] markDomain;
+	private int markTrace = 0;
+
+	// Search limits and results. solution is the number of turns for each
+	// cell in the first solution found.
+	private int solutionLimit;
+	private int numSolutions;
+	private int[] solution;
+
+	// The number of rounds of deduction done by the last propagate().
+	private int propagateRounds;
+
+	// Statistics on the last solve.
+	private int numGuesses;
+	private int maxDepth;
+	private int deductionDepth;
+
+}
@@ -0,0 +1,204 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.engine;
+
+/**
+ * The shape of the cells on a board, and so how they fit together: square
+ * cells with four neighbours, or hexagonal cells with six.
+ * 
+ * <p>
+ * Each direction is a single bit. Direction c is bit (1 << c), and the
+ * directions run anticlockwise from the left; so a cell's connections are
+ * a set of direction bits, and turning it clockwise is a right rotation of
+ * those bits. The square directions are the same bits as Board.L, D, R and
+ * U, in the order of Board.CARDINALS.
+ * 
+ * <p>
+ * A hex board has pointy-topped cells laid out in rows, with the odd rows
+ * shifted half a cell to the right. Its directions are W, SW, SE, E, NE and
+ * NW. A wrapped hex board must have an even number of rows, so that the
+ * rows still alternate across the wrap.
+ */
+public enum Topology {
+	/** Square cells; directions L, D, R, U. */
+	SQUARE(4, new int[][][] {
+			{ { -1, 0 }, { 0, 1 }, { 1, 0 }, { 0, -1 } },
+			{ { -1, 0 }, { 0, 1 }, { 1, 0 }, { 0, -1 } } }, new int[] { 0, 1,
+			-1, 2 }),
+	/** Hexagonal cells; directions W, SW, SE, E, NE, NW. */
+	HEX(6, new int[][][] {
+			{ { -1, 0 }, { -1, 1 }, { 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, -1 } },
+			{ { -1, 0 }, { 0, 1 }, { 1, 1 }, { 1, 0 }, { 1, -1 }, { 0, -1 } } },
+			new int[] { 0, 1, -1, 2, -2, 3 });
+
+	private Topology(int n, int[][][] offs, int[] order) {
+		numDirs = n;
+		mask = (1 << n) - 1;
+		offsets = offs;
+		turnOrder = order;
+	}
+
+	// ******************************************************************** //
+	// Directions.
+	// ******************************************************************** //
+
+	/**
+	 * Get the index of the given direction.
+	 * 
+	 * @param dir
+	 *            A single direction bit.
+	 * @return The index of the direction, from 0 to numDirs - 1.
+	 * @throws IllegalArgumentException
+	 *             The direction isn't a single direction bit.
+	 */
+	public int index(int dir) {
+		if (dir <= 0 || (dir & ~mask) != 0 || (dir & (dir - 1)) != 0)
+			throw new IllegalArgumentException("Bad direction " + dir);
+		return Integer.numberOfTrailingZeros(dir);
+	}
+
+	/**
+	 * Get the reverse of the given direction bits.
+	 * 
+	 * @param dirs
+	 *            Direction bits.
+	 * @return The same directions, pointing the other way.
+	 */
+	public int reverse(int dirs) {
+		return rotated(dirs, numDirs / 2);
+	}
+
+	/**
+	 * Get the given direction bits rotated by a number of steps.
+	 * 
+	 * @param dirs
+	 *            Direction bits.
+	 * @param turns
+	 *            Number of steps to rotate; clockwise positive. A step is a
+	 *            quarter turn on a square board, a sixth on a hex board.
+	 * @return The rotated direction bits.
+	 */
+	public int rotated(int dirs, int turns) {
+		turns %= numDirs;
+		if (turns < 0)
+			turns += numDirs;
+		if (turns == 0)
+			return dirs;
+		return ((dirs >> turns) | (dirs << (numDirs - turns))) & mask;
+	}
+
+	/**
+	 * Get the shortest way of making the given rotation.
+	 * 
+	 * @param turns
+	 *            Number of steps to rotate; clockwise positive.
+	 * @return The same rotation as the smallest number of steps; more than
+	 *         -numDirs / 2, and no more than numDirs / 2.
+	 */
+	public int shortestTurns(int turns) {
+		turns %= numDirs;
+		if (turns > numDirs / 2)
+			turns -= numDirs;
+		else if (turns <= -numDirs / 2)
+			turns += numDirs;
+		return turns;
+	}
+
+	/**
+	 * Get the rotations of a piece, in order of how many steps they take;
+	 * from no rotation, through a step either way, up to a half turn. The
+	 * array is shared, so it must not be modified.
+	 * 
+	 * @return The rotations, in steps clockwise.
+	 */
+	public int[] turnOrder() {
+		return turnOrder;
+	}
+
+	// ******************************************************************** //
+	// Geometry.
+	// ******************************************************************** //
+
+	/**
+	 * Get the X offset to the neighbour in a given direction.
+	 * 
+	 * @param y
+	 *            Row of the cell; on a hex board, odd rows are shifted.
+	 * @param c
+	 *            Index of the direction.
+	 * @return The X offset to the neighbouring cell.
+	 */
+	public int offsetX(int y, int c) {
+		return offsets[y & 1][c][0];
+	}
+
+	/**
+	 * Get the Y offset to the neighbour in a given direction.
+	 * 
+	 * @param y
+	 *            Row of the cell; on a hex board, odd rows are shifted.
+	 * @param c
+	 *            Index of the direction.
+	 * @return The Y offset to the neighbouring cell.
+	 */
+	public int offsetY(int y, int c) {
+		return offsets[y & 1][c][1];
+	}
+
+	/**
+	 * Check whether a board of the given height can wrap.
+	 * 
+	 * @param height
+	 *            Height of the board in cells.
+	 * @return true iff the board can wrap top to bottom.
+	 */
+	public boolean canWrap(int height) {
+		return this == SQUARE || (height & 1) == 0;
+	}
+
+	// ******************************************************************** //
+	// Public Data.
+	// ******************************************************************** //
+
+	/**
+	 * The number of directions; the number of neighbours of a cell.
+	 */
+	public final int numDirs;
+
+	/**
+	 * Mask of all the direction bits.
+	 */
+	public final int mask;
+
+	// ******************************************************************** //
+	// Private Data.
+	// ******************************************************************** //
+
+	// The offset to the neighbour in each direction, for even and odd rows.
+	private final int[][][] offsets;
+
+	// The rotations of a piece, fewest steps first.
+	private final int[] turnOrder;
+
+}
@@ -0,0 +1,166 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.BlipField;
+import com.silentservices.netscramble.engine.Board;
+
+/**
+ * Test the data blip simulation.
+ */
+public class BlipFieldTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Build a board holding a horizontal line of cable across the top row,
+	 * with the server at the left-hand end.
+	 */
+	private static Board makeLine(int w, boolean wrap) {
+		Board b = new Board(w, 2, wrap);
+		for (int x = 0; x < w; ++x) {
+			if (x > 0)
+				b.addDir(x, Board.L);
+			if (x < w - 1)
+				b.addDir(x, Board.R);
+		}
+		b.setRoot(0);
+		b.updateConnections();
+		return b;
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testFlow() {
+		Board b = makeLine(4, false);
+		BlipField f = new BlipField();
+		f.reset(b.size());
+
+		// The server sends a blip out to the right.
+		f.step(b, true);
+		assertEquals(Board.R, f.outgoing(0));
+		assertEquals(1, f.collect(b));
+		assertEquals(0, f.listedCell(0));
+
+		// It passes into the next cell, comes in to the centre, then
+		// goes out the other side.
+		f.step(b, false);
+		assertEquals(0, f.outgoing(0));
+		assertEquals(Board.L, f.incoming(1));
+		f.step(b, false);
+		assertEquals(0, f.incoming(1));
+		assertEquals(Board.R, f.outgoing(1));
+
+		// At the terminal, it comes in and dies.
+		f.step(b, false);
+		f.step(b, false);
+		f.step(b, false);
+		assertEquals(Board.L, f.incoming(3));
+		f.step(b, false);
+		assertEquals(0, f.collect(b));
+	}
+
+	public void testBlocked() {
+		// A blip can't pass into a cell which doesn't connect back, or
+		// which is turning.
+		Board b = makeLine(4, false);
+		BlipField f = new BlipField();
+		f.reset(b.size());
+		b.setBusy(1, true);
+		f.step(b, true);
+		f.step(b, false);
+		assertEquals(0, f.incoming(1));
+		assertEquals(0, f.collect(b));
+
+		b.setBusy(1, false);
+		b.setDirs(1, Board.U | Board.D);
+		f.step(b, true);
+		f.step(b, false);
+		assertEquals(0, f.incoming(1));
+	}
+
+	public void testBusyLosesBlips() {
+		Board b = makeLine(4, false);
+		BlipField f = new BlipField();
+		f.reset(b.size());
+		f.step(b, true);
+		f.step(b, false);
+		assertEquals(1, f.collect(b));
+		b.setBusy(1, true);
+		assertEquals(0, f.collect(b));
+		b.setBusy(1, false);
+		assertEquals(0, f.incoming(1));
+	}
+
+	public void testWrap() {
+		// With wrapping, the server's left edge connects to the last cell.
+		Board b = makeLine(4, true);
+		b.addDir(0, Board.L);
+		b.addDir(3, Board.R);
+		BlipField f = new BlipField();
+		f.reset(b.size());
+		f.step(b, true);
+		assertEquals(Board.L | Board.R, f.outgoing(0));
+		f.step(b, false);
+		assertEquals(Board.R, f.incoming(3));
+		assertEquals(Board.L, f.incoming(1));
+	}
+
+	public void testLargeBoard() {
+		// Blips spread over every connected cell of a big comb network.
+		Board b = new Board(40, 40, false);
+		for (int y = 0; y < 40; ++y) {
+			for (int x = 0; x < 40; ++x) {
+				int i = b.index(x, y);
+				if (x > 0)
+					b.addDir(i, Board.L);
+				if (x < 39)
+					b.addDir(i, Board.R);
+				if (x == 0 && y > 0)
+					b.addDir(i, Board.U);
+				if (x == 0 && y < 39)
+					b.addDir(i, Board.D);
+			}
+		}
+		b.setRoot(0);
+		BlipField f = new BlipField();
+		f.reset(b.size());
+		boolean[] seen = new boolean[b.size()];
+		for (int s = 0; s < 200; ++s) {
+			f.step(b, s % 6 == 0);
+			int n = f.collect(b);
+			for (int k = 0; k < n; ++k)
+				seen[f.listedCell(k)] = true;
+		}
+		for (int i = 0; i < b.size(); ++i)
+			assertTrue("cell " + i, seen[i]);
+	}
+
+}
@@ -0,0 +1,179 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.BoardCodec;
+import com.silentservices.netscramble.engine.Generator;
+
+/**
+ * Test the packed save format, including restoring a board rotated.
+ */
+public class BoardCodecTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Make a scrambled board with some locked and marked cells.
+	 */
+	private static Board makeBoard(int w, int h, boolean wrap, boolean[] marks,
+			long seed) {
+		Random rng = new Random(seed);
+		Board b = new Board(w, h, wrap);
+		new Generator(rng).generate(b, 3, Generator.minCells(w, h));
+		for (int i = 0; i < b.size(); ++i) {
+			b.rotate(i, rng.nextInt(4));
+			b.setLocked(i, rng.nextInt(5) == 0);
+			marks[i] = rng.nextInt(3) == 0;
+		}
+		return b;
+	}
+
+	/**
+	 * Check that two boards have the same size, cells and root.
+	 */
+	private static void assertSameBoard(String msg, Board a, Board b) {
+		assertEquals(msg + " width", a.width(), b.width());
+		assertEquals(msg + " height", a.height(), b.height());
+		assertEquals(msg + " wrap", a.isWrapped(), b.isWrapped());
+		assertEquals(msg + " root", a.root(), b.root());
+		for (int i = 0; i < a.size(); ++i) {
+			assertEquals(msg + " dirs " + i, a.dirs(i), b.dirs(i));
+			assertEquals(msg + " lock " + i, a.isLocked(i), b.isLocked(i));
+		}
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testRoundTrip() {
+		boolean[] marks = new boolean[9 * 7];
+		Board b = makeBoard(9, 7, true, marks, 1);
+		byte[] data = BoardCodec.encode(b, marks);
+		assertEquals(BoardCodec.encodedSize(9 * 7), data.length);
+		assertEquals(9, BoardCodec.width(data));
+		assertEquals(7, BoardCodec.height(data));
+
+		Board c = new Board(1, 1, false);
+		boolean[] got = new boolean[marks.length];
+		BoardCodec.decode(data, c, got, 0);
+		assertSameBoard("decoded", b, c);
+		for (int i = 0; i < marks.length; ++i)
+			assertEquals("mark " + i, marks[i], got[i]);
+	}
+
+	public void testRotate() {
+		// A single cell in the top-right corner, pointing left.
+		Board b = new Board(3, 2, false);
+		b.setDirs(b.index(2, 0), Board.L);
+		b.setLocked(b.index(2, 0), true);
+		b.setRoot(b.index(2, 0));
+		byte[] data = BoardCodec.encode(b, null);
+
+		// Turned right, it's in the bottom right, pointing up.
+		Board r = new Board(1, 1, false);
+		BoardCodec.decode(data, r, null, 1);
+		assertEquals(2, r.width());
+		assertEquals(3, r.height());
+		assertEquals(Board.U, r.dirs(r.index(1, 2)));
+		assertTrue(r.isLocked(r.index(1, 2)));
+		assertEquals(r.index(1, 2), r.root());
+
+		// Turned left, it's in the top left, pointing down.
+		BoardCodec.decode(data, r, null, -1);
+		assertEquals(Board.D, r.dirs(r.index(0, 0)));
+		assertEquals(r.index(0, 0), r.root());
+
+		// Turned over, it's in the bottom left, pointing right.
+		BoardCodec.decode(data, r, null, 2);
+		assertEquals(3, r.width());
+		assertEquals(Board.R, r.dirs(r.index(0, 1)));
+	}
+
+	public void testRotateRoundTrip() {
+		// Four quarter turns, or a turn each way, get us back where we were;
+		// and a rotated network connects just the same.
+		boolean[] marks = new boolean[8 * 5];
+		Board b = makeBoard(8, 5, false, marks, 2);
+		b.updateConnections();
+
+		Board c = new Board(1, 1, false);
+		boolean[] got = new boolean[marks.length];
+		c.copyFrom(b);
+		for (int t = 0; t < 4; ++t) {
+			BoardCodec.decode(BoardCodec.encode(c, marks), c, got, 1);
+			c.updateConnections();
+			assertEquals("turn " + t, b.unconnectedCells(),
+					c.unconnectedCells());
+			System.arraycopy(got, 0, marks, 0, marks.length);
+		}
+		assertSameBoard("4 turns", b, c);
+
+		BoardCodec.decode(BoardCodec.encode(b, null), c, null, -1);
+		BoardCodec.decode(BoardCodec.encode(c, null), c, null, 1);
+		assertSameBoard("left-right", b, c);
+	}
+
+	public void testMultiRoot() {
+		// The roots survive a round trip, with the first still first.
+		boolean[] marks = new boolean[8 * 6];
+		Board b = makeBoard(8, 6, false, marks, 3);
+		b.setRoot(b.index(5, 1));
+		b.addRoot(b.index(0, 0));
+		b.addRoot(b.index(7, 5));
+		Board c = new Board(1, 1, false);
+		BoardCodec.decode(BoardCodec.encode(b, marks), c, null, 1);
+		assertEquals(3, c.rootCount());
+		assertEquals(c.index(4, 5), c.root());
+		assertTrue(c.isRoot(c.index(5, 0)));
+		assertTrue(c.isRoot(c.index(0, 7)));
+	}
+
+	public void testBadData() {
+		Board b = new Board(4, 4, false);
+		b.setRoot(5);
+		byte[] good = BoardCodec.encode(b, null);
+
+		byte[][] bad = { null, new byte[3], good.clone(), good.clone(),
+				good.clone() };
+		bad[2][0] = 99;
+		bad[3][2] = 5;
+		bad[4][9] = 100;
+		for (int k = 0; k < bad.length; ++k) {
+			try {
+				BoardCodec.decode(bad[k], b, null, 0);
+				fail("accepted bad data " + k);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+
+/**
+ * Test the packed board model, and in particular its connection tracking.
+ */
+public class BoardTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Build a board holding a simple tree network: a horizontal bus
+	 * along each row, joined by a vertical spine down the left-hand column.
+	 * The root is at the top left.
+	 */
+	private static Board makeComb(int w, int h, boolean wrap) {
+		Board b = new Board(w, h, wrap);
+		for (int y = 0; y < h; ++y) {
+			for (int x = 0; x < w; ++x) {
+				int i = b.index(x, y);
+				if (x > 0)
+					b.addDir(i, Board.L);
+				if (x < w - 1)
+					b.addDir(i, Board.R);
+				if (x == 0 && y > 0)
+					b.addDir(i, Board.U);
+				if (x == 0 && y < h - 1)
+					b.addDir(i, Board.D);
+			}
+		}
+		b.setRoot(0);
+		return b;
+	}
+
+	/**
+	 * Check that the connection state of the given board matches that of a
+	 * complete re-computation on a copy of it.
+	 */
+	private static void checkAgainstFull(String msg, Board b) {
+		Board full = new Board(1, 1, false);
+		full.copyFrom(b);
+		full.updateConnections();
+		for (int i = 0; i < b.size(); ++i)
+			assertEquals(msg + " cell " + i, full.isConnected(i),
+					b.isConnected(i));
+		assertEquals(msg + " solved", full.isSolved(), b.isSolved());
+
+		// The per-server counts must match the cells' servers.
+		int[] sizes = new int[Board.MAX_ROOTS];
+		for (int i = 0; i < b.size(); ++i) {
+			int k = b.connectedRoot(i);
+			assertEquals(msg + " root of " + i, b.isConnected(i), k >= 0);
+			if (k >= 0)
+				++sizes[k];
+		}
+		for (int k = 0; k < b.rootCount(); ++k)
+			assertEquals(msg + " root size " + k, sizes[k], b.rootSize(k));
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testRotate() {
+		assertEquals(Board.R, Board.rotated(Board.U, 1));
+		assertEquals(Board.D, Board.rotated(Board.R, 1));
+		assertEquals(Board.L, Board.rotated(Board.U, -1));
+		assertEquals(Board.D, Board.rotated(Board.U, 2));
+		assertEquals(Board.D | Board.L, Board.rotated(Board.R | Board.D, 1));
+		assertEquals(Board.D | Board.L, Board.reverse(Board.U | Board.R));
+		assertEquals(3, Board.count(Board.U | Board.R | Board.L));
+	}
+
+	public void testNext() {
+		Board b = new Board(4, 3, false);
+		assertEquals(-1, b.next(0, Board.L));
+		assertEquals(-1, b.next(0, Board.U));
+		assertEquals(1, b.next(0, Board.R));
+		assertEquals(4, b.next(0, Board.D));
+		assertEquals(-1, b.next(11, Board.D));
+
+		b.reset(4, 3, true);
+		assertEquals(3, b.next(0, Board.L));
+		assertEquals(8, b.next(0, Board.U));
+		assertEquals(0, b.next(3, Board.R));
+		assertEquals(3, b.next(11, Board.D));
+	}
+
+	public void testFullUpdate() {
+		Board b = makeComb(5, 4, false);
+		assertEquals(20, b.updateConnections());
+		assertTrue(b.isSolved());
+		assertEquals(0, b.unconnectedCells());
+
+		// Turn the second cell of the spine; this cuts off all rows but
+		// the first.
+		b.rotate(b.index(0, 1), 1);
+		b.updateConnections();
+		assertFalse(b.isSolved());
+		assertEquals(15, b.unconnectedCells());
+	}
+
+	public void testIncrementalUpdate() {
+		Board b = makeComb(5, 4, false);
+		b.updateConnections();
+
+		// Start turning a spine cell. Everything below it gets cut off.
+		int spine = b.index(0, 2);
+		b.setBusy(spine, true);
+		assertEquals(0, b.updateConnections(spine));
+		assertEquals(10, b.changedCount());
+		assertFalse(b.isSolved());
+		checkAgainstFull("busy", b);
+
+		// Finish a full turn; everything comes back.
+		b.setBusy(spine, false);
+		assertEquals(10, b.updateConnections(spine));
+		assertTrue(b.isSolved());
+		checkAgainstFull("done", b);
+	}
+
+	public void testMultiRoot() {
+		// Two separate networks in a row: 0-1 and 2-3.
+		Board b = new Board(4, 1, false);
+		b.setDirs(0, Board.R);
+		b.setDirs(1, Board.L);
+		b.setDirs(2, Board.R);
+		b.setDirs(3, Board.L);
+		b.setRoot(0);
+		b.updateConnections();
+		assertFalse(b.isSolved());
+		assertEquals(1, b.rootCount());
+		assertEquals(2, b.rootSize(0));
+
+		// With a server on each, both are connected.
+		b.addRoot(3);
+		assertEquals(2, b.rootCount());
+		assertEquals(0, b.root());
+		assertEquals(3, b.rootAt(1));
+		b.updateConnections();
+		assertTrue(b.isSolved());
+		assertEquals(2, b.rootSize(0));
+		assertEquals(2, b.rootSize(1));
+		assertEquals(1, b.connectedRoot(2));
+
+		// Turning a cell moves it off its server's network.
+		b.setBusy(2, true);
+		b.updateConnections(2);
+		assertEquals(1, b.rootSize(1));
+		assertEquals(-1, b.connectedRoot(2));
+		checkAgainstFull("busy", b);
+
+		// Removing a root leaves the other one first.
+		b.removeRoot(0);
+		assertEquals(1, b.rootCount());
+		assertEquals(3, b.root());
+		assertFalse(b.isRoot(0));
+	}
+
+	public void testRandomMoves() {
+		Random rng = new Random(12345);
+		for (int pass = 0; pass < 2; ++pass) {
+			boolean wrap = pass == 1;
+			Board b = makeComb(7, 6, wrap);
+			b.updateConnections();
+
+			for (int m = 0; m < 2000; ++m) {
+				int i = rng.nextInt(b.size());
+				if (b.isBusy(i)) {
+					b.rotate(i, rng.nextBoolean() ? 1 : -1);
+					b.setBusy(i, false);
+				} else
+					b.setBusy(i, true);
+				b.updateConnections(i);
+				checkAgainstFull("move " + m, b);
+			}
+		}
+	}
+
+	public void testMultiRootMoves() {
+		Random rng = new Random(54321);
+		for (int pass = 0; pass < 2; ++pass) {
+			boolean wrap = pass == 1;
+			Board b = makeComb(7, 6, wrap);
+			b.addRoot(b.index(6, 5));
+			b.addRoot(b.index(3, 2));
+			b.updateConnections();
+
+			for (int m = 0; m < 2000; ++m) {
+				int i = rng.nextInt(b.size());
+				if (b.isBusy(i)) {
+					b.rotate(i, rng.nextBoolean() ? 1 : -1);
+					b.setBusy(i, false);
+				} else
+					b.setBusy(i, true);
+				b.updateConnections(i);
+				checkAgainstFull("multi move " + m, b);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.Game;
+import com.silentservices.netscramble.engine.MoveLog;
+import com.silentservices.netscramble.engine.PuzzleCode;
+import com.silentservices.netscramble.engine.ScreenLayout;
+import com.silentservices.netscramble.engine.SkillLevel;
+
+/**
+ * Benchmark the game engine for every skill level on every screen layout:
+ * the time to generate a game, the latency from a tap to the updated
+ * connection state, the time to replay and verify a game, and the time to
+ * work out a solution or a hint. Results are
+ * printed to standard output.
+ */
+public class EngineBenchmark extends TestCase {
+
+	// ******************************************************************** //
+	// Benchmark Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Run the benchmarks for one skill level on one screen layout.
+	 */
+	private static void runGame(SkillLevel sk, ScreenLayout layout, int count) {
+		final int w = layout.boardWidth(sk, true);
+		final int h = layout.boardHeight(sk, true);
+		Random rng = new Random(sk.ordinal() * 100 + layout.ordinal());
+		PuzzleCode[] codes = new PuzzleCode[count];
+		for (int i = 0; i < count; ++i)
+			codes[i] = PuzzleCode.random(sk.ordinal(), sk.branches,
+					sk.wrapped, w, h, rng);
+
+		// Warm up, then time generating the games.
+		Game game = new Game();
+		for (int i = 0; i < count; ++i)
+			game.start(codes[i]);
+		long start = System.nanoTime();
+		for (int i = 0; i < count; ++i)
+			game.start(codes[i]);
+		long genTime = System.nanoTime() - start;
+
+		// Time taps: turn random cells and update the connections.
+		final int taps = 2000;
+		Board board = game.board();
+		int[] cells = new int[taps];
+		for (int t = 0; t < taps; ++t) {
+			int i;
+			do {
+				i = rng.nextInt(board.size());
+			} while (!game.canTurn(i));
+			cells[t] = i;
+		}
+		for (int t = 0; t < taps; ++t)
+			game.rotate(cells[t], 1);
+		start = System.nanoTime();
+		for (int t = 0; t < taps; ++t)
+			game.rotate(cells[t], 1);
+		long tapTime = System.nanoTime() - start;
+
+		// Time replaying and verifying the whole game of taps.
+		final int replayed = game.moves().length();
+		start = System.nanoTime();
+		game.replay(replayed);
+		assertTrue(game.verify());
+		long replayTime = System.nanoTime() - start;
+
+		// Time working out the solutions from the scrambled boards; and
+		// the first hint, with the deductions to set up, and the next,
+		// from the cache.
+		int[] moves = new int[board.size()];
+		long solveTime = 0;
+		long hintTime = 0;
+		long nextHintTime = 0;
+		for (int i = 0; i < count; ++i) {
+			game.start(codes[i]);
+			start = System.nanoTime();
+			assertTrue(game.solution(null, moves) >= 0);
+			solveTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int move = game.hint(null);
+			hintTime += System.nanoTime() - start;
+			game.rotate(MoveLog.moveCell(move), MoveLog.moveTurns(move));
+			start = System.nanoTime();
+			game.hint(null);
+			nextHintTime += System.nanoTime() - start;
+		}
+
+		System.out.println(String.format(
+				"%s %s %dx%d: generate %.3f ms, tap %.0f ns, "
+						+ "replay %.3f ms/%d moves, solve %.3f ms, "
+						+ "hint %.3f ms, next hint %.3f ms", sk, layout, w, h,
+				genTime / 1e6 / count, (double) tapTime / taps,
+				replayTime / 1e6, replayed, solveTime / 1e6 / count,
+				hintTime / 1e6 / count, nextHintTime / 1e6 / count));
+	}
+
+	// ******************************************************************** //
+	// Benchmarks.
+	// ******************************************************************** //
+
+	public void testAllGames() {
+		for (SkillLevel sk : SkillLevel.values())
+			for (ScreenLayout layout : ScreenLayout.values())
+				runGame(sk, layout, 20);
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import junit.framework.TestCase;
+import com.silentservices.netscramble.engine.EventRing;
+
+/**
+ * Test the lock-free event ring.
+ */
+public class EventRingTests extends TestCase {
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	/**
+	 * Capacities are rounded up to a power of two.
+	 */
+	public void testCapacity() {
+		assertEquals(1, new EventRing(1).capacity());
+		assertEquals(64, new EventRing(64).capacity());
+		assertEquals(128, new EventRing(65).capacity());
+		try {
+			new EventRing(0);
+			fail("zero capacity accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Events come out in order, and a full ring drops new events.
+	 */
+	public void testOrderAndFull() {
+		EventRing ring = new EventRing(4);
+		int[] out = new int[8];
+		assertTrue(ring.isEmpty());
+		assertEquals(0, ring.drain(out));
+
+		for (int k = 0; k < 4; ++k)
+			assertTrue(ring.post(10 + k));
+		assertFalse("full", ring.post(99));
+		assertFalse(ring.isEmpty());
+
+		int[] two = new int[2];
+		assertEquals(2, ring.drain(two));
+		assertEquals(10, two[0]);
+		assertEquals(11, two[1]);
+
+		// Wrap around the end of the slots.
+		assertTrue(ring.post(14));
+		assertTrue(ring.post(15));
+		assertEquals(4, ring.drain(out));
+		for (int k = 0; k < 4; ++k)
+			assertEquals(12 + k, out[k]);
+		assertTrue(ring.isEmpty());
+	}
+
+	/**
+	 * One thread posting while another drains sees every event exactly
+	 * once, in order.
+	 */
+	public void testTwoThreads() throws InterruptedException {
+		final EventRing ring = new EventRing(16);
+		final int count = 200000;
+		Thread poster = new Thread() {
+			@Override
+			public void run() {
+				for (int k = 0; k < count; ++k)
+					while (!ring.post(k))
+						Thread.yield();
+			}
+		};
+		poster.start();
+
+		int[] out = new int[7];
+		int next = 0;
+		while (next < count) {
+			int n = ring.drain(out);
+			for (int k = 0; k < n; ++k)
+				assertEquals(next++, out[k]);
+			if (n == 0)
+				Thread.yield();
+		}
+		poster.join();
+		assertTrue(ring.isEmpty());
+	}
+
+}
@@ -0,0 +1,114 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+
+package com.silentservices.netscramble.test.engine;
+
+import junit.framework.TestCase;
+import com.silentservices.netscramble.engine.GameClock;
+
+/**
+ * Test the game clock.
+ */
+public class GameClockTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	// Nanoseconds per millisecond.
+	private static final long MS = 1000000;
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	/**
+	 * The clock only counts the time for which it's running.
+	 */
+	public void testPause() {
+		GameClock c = new GameClock();
+		assertFalse(c.isRunning());
+		assertEquals(0, c.getTime(5000 * MS));
+
+		c.start(1000 * MS);
+		assertTrue(c.isRunning());
+		assertEquals(1500, c.getTime(2500 * MS));
+		c.stop(3000 * MS);
+		assertFalse(c.isRunning());
+		assertEquals(2000, c.getTime(3000 * MS));
+		assertEquals(2000, c.getTime(90000 * MS));
+
+		// Starting or stopping twice does nothing.
+		c.stop(95000 * MS);
+		c.start(100000 * MS);
+		c.start(100500 * MS);
+		assertEquals(2750, c.getTime(100750 * MS));
+
+		c.reset();
+		assertFalse(c.isRunning());
+		assertEquals(0, c.getTime(200000 * MS));
+	}
+
+	/**
+	 * The time is worked out from the start time, so reading the clock at
+	 * odd moments doesn't lose the fractions of a ms.
+	 */
+	public void testNoDrift() {
+		GameClock c = new GameClock();
+		c.start(0);
+		long now = 0;
+		for (int i = 0; i < 10000; ++i) {
+			now += MS * 3 / 2 + 7;
+			c.getTime(now);
+		}
+		assertEquals(now / MS, c.getTime(now));
+		assertEquals(15000, c.getTime(now));
+	}
+
+	/**
+	 * Setting the time carries on from there, running or not.
+	 */
+	public void testSetTime() {
+		GameClock c = new GameClock();
+		c.setTime(61000, 0);
+		assertEquals(61000, c.getTime(5000 * MS));
+		c.start(10000 * MS);
+		c.setTime(30000, 12000 * MS);
+		assertEquals(31000, c.getTime(13000 * MS));
+	}
+
+	/**
+	 * Ticks are due when the time reaches the next whole interval.
+	 */
+	public void testUntilNext() {
+		GameClock c = new GameClock();
+		assertEquals(-1, c.untilNext(1000, 0));
+		c.setTime(2300, 0);
+		c.start(0);
+		assertEquals(700, c.untilNext(1000, 0));
+		assertEquals(1000, c.untilNext(1000, 700 * MS));
+		assertEquals(1, c.untilNext(1000, 1699 * MS));
+	}
+
+}
@@ -0,0 +1,269 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.Game;
+import com.silentservices.netscramble.engine.MoveLog;
+import com.silentservices.netscramble.engine.PuzzleCode;
+import com.silentservices.netscramble.engine.ScreenLayout;
+import com.silentservices.netscramble.engine.SkillLevel;
+
+/**
+ * Test the headless game engine.
+ */
+public class GameTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Make a random puzzle code for the given skill on a medium screen.
+	 */
+	private static PuzzleCode makeCode(SkillLevel sk, long seed) {
+		int w = ScreenLayout.MEDIUM.boardWidth(sk, false);
+		int h = ScreenLayout.MEDIUM.boardHeight(sk, false);
+		return PuzzleCode.random(sk.ordinal(), sk.branches, sk.wrapped, w,
+				h, new Random(seed));
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testMovePacking() {
+		for (int turns = -3; turns <= 3; ++turns) {
+			int m = MoveLog.pack(1234, turns);
+			assertEquals(1234, MoveLog.moveCell(m));
+			assertEquals(turns, MoveLog.moveTurns(m));
+		}
+		try {
+			MoveLog.pack(0, 4);
+			fail("packed 4 turns");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testStart() {
+		PuzzleCode code = makeCode(SkillLevel.EXPERT, 7);
+		Game g1 = new Game();
+		Game g2 = new Game();
+		g1.start(code);
+		g2.start(code);
+		Board b1 = g1.board();
+		Board b2 = g2.board();
+		assertEquals(b1.size(), b2.size());
+		for (int i = 0; i < b1.size(); ++i)
+			assertEquals(b1.state(i), b2.state(i));
+		assertEquals(code, g1.code());
+		assertEquals(0, g1.moves().size());
+	}
+
+	public void testRotate() {
+		Game g = new Game();
+		g.start(makeCode(SkillLevel.NORMAL, 3));
+		Board b = g.board();
+
+		int i = 0;
+		while (!g.canTurn(i))
+			++i;
+		int dirs = b.dirs(i);
+		assertTrue(g.rotate(i, -1) >= 0);
+		assertEquals(Board.rotated(dirs, -1), b.dirs(i));
+		assertEquals(1, g.moves().size());
+		assertEquals(i, g.moves().cell(0));
+		assertEquals(-1, g.moves().turns(0));
+
+		// Locked cells can't be turned.
+		assertTrue(g.toggleLock(i));
+		assertEquals(-1, g.rotate(i, 1));
+		assertEquals(1, g.moves().size());
+		assertFalse(g.toggleLock(i));
+	}
+
+	public void testUndoRedo() {
+		MoveLog log = new MoveLog();
+		for (int i = 0; i < 100; ++i)
+			log.add(i, 1);
+		assertEquals(100, log.size());
+		assertEquals(99, MoveLog.moveCell(log.undo()));
+		assertEquals(98, MoveLog.moveCell(log.undo()));
+		assertEquals(98, MoveLog.moveCell(log.redo()));
+		assertEquals(99, log.size());
+		assertEquals(100, log.length());
+
+		// A new move discards the moves which were undone.
+		log.add(500, -2);
+		assertEquals(100, log.length());
+		assertFalse(log.canRedo());
+		assertEquals(-1, log.redo());
+		assertEquals(500, log.cell(99));
+
+		log.seek(0);
+		assertEquals(-1, log.undo());
+	}
+
+	public void testMoveTimes() {
+		MoveLog log = new MoveLog();
+		for (int i = 0; i < 100; ++i)
+			log.add(i, 1, i * 250);
+		assertEquals(0, log.time(0));
+		assertEquals(99 * 250, log.time(99));
+
+		// A new move replaces the time of the move undone.
+		log.undo();
+		log.add(7, -1, 60000);
+		assertEquals(7, log.cell(99));
+		assertEquals(60000, log.time(99));
+
+		// The times are saved and restored with the moves.
+		MoveLog log2 = new MoveLog();
+		log2.restore(log.toArray(), log.timesToArray(), 40);
+		assertEquals(100, log2.length());
+		assertEquals(40, log2.size());
+		assertEquals(60000, log2.time(99));
+		assertEquals(50 * 250, log2.time(50));
+
+		// Old saves have no times.
+		log2.restore(log.toArray(), 0);
+		assertEquals(0, log2.time(99));
+		try {
+			log2.restore(log.toArray(), new int[3], 0);
+			fail("mismatched times accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testMoveClock() {
+		Game g = new Game();
+		g.start(makeCode(SkillLevel.NOVICE, 3));
+		assertFalse(g.clock().isRunning());
+		assertEquals(0, g.clock().getTime());
+
+		// Moves are stamped with the clock's time, so a stopped clock
+		// stamps them all alike.
+		g.clock().setTime(1500);
+		g.recordMove(0, 1);
+		g.recordMove(1, 1);
+		assertEquals(1500, g.moves().time(0));
+		assertEquals(1500, g.moves().time(1));
+
+		// Starting a new game resets the clock.
+		g.start(makeCode(SkillLevel.NOVICE, 4));
+		assertEquals(0, g.clock().getTime());
+	}
+
+	public void testJournal() {
+		Game g = new Game();
+		g.start(makeCode(SkillLevel.MASTER, 11));
+		Board b = g.board();
+		Random rng = new Random(5);
+		int[] dirs = new int[b.size()];
+		for (int i = 0; i < b.size(); ++i)
+			dirs[i] = b.dirs(i);
+
+		// Make some moves, and undo them all.
+		for (int m = 0; m < 50; ++m) {
+			int i;
+			do {
+				i = rng.nextInt(b.size());
+			} while (!g.canTurn(i));
+			g.rotate(i, rng.nextInt(7) - 3);
+		}
+		assertTrue(g.verify());
+		int[] after = new int[b.size()];
+		for (int i = 0; i < b.size(); ++i)
+			after[i] = b.dirs(i);
+		while (g.undo() >= 0)
+			;
+		for (int i = 0; i < b.size(); ++i)
+			assertEquals(dirs[i], b.dirs(i));
+		assertTrue(g.verify());
+
+		// Redo half, then fast-forward the rest.
+		for (int m = 0; m < 25; ++m)
+			assertTrue(g.redo() >= 0);
+		assertTrue(g.verify());
+		g.replay(g.moves().length());
+		for (int i = 0; i < b.size(); ++i)
+			assertEquals(after[i], b.dirs(i));
+
+		// Save and restore the journal into a new game.
+		Game g2 = new Game();
+		g2.start(g.code(), b);
+		g2.restoreMoves(g.startBoard(), g.moves().toArray(), 10);
+		assertEquals(50, g2.moves().length());
+		assertFalse(g2.verify());
+		g2.replay(10);
+		assertTrue(g2.verify());
+		g.replay(10);
+		for (int i = 0; i < b.size(); ++i)
+			assertEquals(b.dirs(i), g2.board().dirs(i));
+	}
+
+	public void testScramble() {
+		// Start on the solved puzzle, and scramble it the way the app
+		// does, by turning the cells.
+		PuzzleCode code = makeCode(SkillLevel.NORMAL, 21);
+		Board puzzle = new Board(code.width(), code.height(),
+				code.isWrapped());
+		code.generate(puzzle);
+		Game g = new Game();
+		g.start(code, puzzle);
+		int[] turns = new int[puzzle.size()];
+		code.scrambleTurns(turns);
+		g.setScramble(turns);
+		for (int i = 0; i < turns.length; ++i)
+			g.board().rotate(i, turns[i]);
+		assertTrue(g.verify());
+
+		// It's the same board as the puzzle code gives.
+		Game g2 = new Game();
+		g2.start(code);
+		for (int i = 0; i < puzzle.size(); ++i)
+			assertEquals(g2.board().dirs(i), g.startBoard().dirs(i));
+	}
+
+	public void testSolution() {
+		for (SkillLevel sk : SkillLevel.values()) {
+			Game g = new Game();
+			g.start(makeCode(sk, sk.ordinal()));
+			Board b = g.board();
+			int[] moves = new int[b.size()];
+			int n = g.solution(null, moves);
+			assertTrue(n >= 0);
+			for (int k = 0; k < n; ++k)
+				g.rotate(MoveLog.moveCell(moves[k]),
+						MoveLog.moveTurns(moves[k]));
+			assertTrue(sk.toString(), g.isSolved());
+			assertEquals(n, g.moves().size());
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.FastRandom;
+import com.silentservices.netscramble.engine.Generator;
+
+/**
+ * Benchmark the puzzle generator on the largest boards we use. Results are
+ * printed to standard output.
+ */
+public class GeneratorBenchmark extends TestCase {
+
+	// ******************************************************************** //
+	// Benchmark Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Time generating a number of boards of the given size.
+	 */
+	private static void runGenerate(int w, int h, boolean wrap, int branches,
+			boolean unique, int count) {
+		Generator gen = new Generator(new Random(w * 100 + h));
+		gen.setUnique(unique);
+		Board b = new Board(w, h, wrap);
+		int minCells = (int) (w * h * 0.85);
+
+		// Warm up, then time the generation.
+		for (int i = 0; i < count / 4; ++i)
+			gen.generate(b, branches, minCells);
+		int tries = 0;
+		int score = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			tries += gen.generate(b, branches, minCells);
+			score += gen.difficulty();
+		}
+		long time = System.nanoTime() - start;
+
+		System.out.println(String.format(
+				"generate %dx%d%s%s: %.0f boards/s, %.1f tries/board, "
+						+ "difficulty %.1f", w, h, wrap ? " wrapped" : "",
+				unique ? " unique" : "", count * 1e9 / time, (float) tries
+						/ count, (float) score / count));
+	}
+
+	/**
+	 * The network layout as it was done before the generator went
+	 * allocation-free: a Vector work list with remove(0), and a map of free
+	 * neighbours built for every connection. Kept as a baseline.
+	 */
+	private static int legacyCreateNet(Board b, int branches, Random rng) {
+		b.clear();
+		int root = rng.nextInt(b.size());
+		b.setRoot(root);
+
+		Vector<Integer> list = new Vector<Integer>();
+		list.add(root);
+		if (rng.nextBoolean())
+			legacyAddRandomDir(b, list, rng);
+		while (!list.isEmpty()) {
+			if (rng.nextBoolean()) {
+				legacyAddRandomDir(b, list, rng);
+				if (rng.nextBoolean())
+					legacyAddRandomDir(b, list, rng);
+				if (branches >= 3 && rng.nextInt(3) == 0)
+					legacyAddRandomDir(b, list, rng);
+			} else
+				list.add(list.firstElement());
+			list.remove(0);
+		}
+		return b.usedCells();
+	}
+
+	private static void legacyAddRandomDir(Board b, Vector<Integer> list,
+			Random rng) {
+		int cell = list.firstElement();
+		HashMap<Integer, Integer> freecells = new HashMap<Integer, Integer>();
+		for (int d : Board.CARDINALS) {
+			int n = b.next(cell, d);
+			if (n >= 0 && b.dirs(n) == 0)
+				freecells.put(d, n);
+		}
+		if (freecells.isEmpty())
+			return;
+		Object[] keys = freecells.keySet().toArray();
+		int key = (Integer) keys[rng.nextInt(keys.length)];
+		int dest = freecells.get(key);
+		b.addDir(cell, key);
+		b.addDir(dest, Board.reverse(key));
+		list.add(dest);
+	}
+
+	/**
+	 * Time laying out a number of networks of the given size, with the
+	 * legacy and current code.
+	 */
+	private static void runCreateNet(int w, int h, boolean wrap, int branches,
+			int count) {
+		Board b = new Board(w, h, wrap);
+
+		// Legacy, with SecureRandom as it used to be.
+		Random secure = new SecureRandom();
+		for (int i = 0; i < count / 4; ++i)
+			legacyCreateNet(b, branches, secure);
+		long start = System.nanoTime();
+		for (int i = 0; i < count; ++i)
+			legacyCreateNet(b, branches, secure);
+		long legacy = System.nanoTime() - start;
+
+		// Current.
+		Generator gen = new Generator(new FastRandom(w * 100 + h));
+		for (int i = 0; i < count / 4; ++i)
+			gen.createNet(b, branches);
+		start = System.nanoTime();
+		for (int i = 0; i < count; ++i)
+			gen.createNet(b, branches);
+		long current = System.nanoTime() - start;
+
+		System.out.println(String.format(
+				"createNet %dx%d%s: legacy %.0f boards/s, "
+						+ "current %.0f boards/s (%.1fx)", w, h,
+				wrap ? " wrapped" : "", count * 1e9 / legacy, count * 1e9
+						/ current, (double) legacy / current));
+	}
+
+	// ******************************************************************** //
+	// Benchmarks.
+	// ******************************************************************** //
+
+	public void testCreateNet() {
+		runCreateNet(15, 8, false, 2, 5000);
+		runCreateNet(17, 10, true, 3, 5000);
+		runCreateNet(40, 40, true, 3, 500);
+	}
+
+	public void testGenerateLargest() {
+		// Expert and Master on the HUGE screen layout.
+		runGenerate(15, 8, false, 2, false, 200);
+		runGenerate(15, 8, false, 2, true, 100);
+		runGenerate(17, 10, true, 3, true, 100);
+	}
+
+}
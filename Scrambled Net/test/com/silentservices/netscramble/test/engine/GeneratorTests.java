@@ -0,0 +1,255 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.FastRandom;
+import com.silentservices.netscramble.engine.Generator;
+import com.silentservices.netscramble.engine.PuzzleCache;
+import com.silentservices.netscramble.engine.PuzzleCode;
+import com.silentservices.netscramble.engine.Solver;
+
+/**
+ * Test the puzzle generator and the background puzzle cache.
+ */
+public class GeneratorTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Check that the given board holds a single network, connected in its
+	 * solved position.
+	 */
+	private static void checkNet(String msg, Board b, int minCells) {
+		assertTrue(msg + " root", b.root() >= 0);
+		b.updateConnections();
+		assertTrue(msg + " solved", b.isSolved());
+		assertEquals(msg + " unconnected", 0, b.unconnectedCells());
+		assertTrue(msg + " cells", b.usedCells() >= minCells);
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testCreateNet() {
+		Generator gen = new Generator(new Random(1));
+		Board b = new Board(9, 9, false);
+		for (int pass = 0; pass < 20; ++pass) {
+			gen.generate(b, 2, 60);
+			checkNet("net " + pass, b, 60);
+			assertEquals(-1, gen.difficulty());
+		}
+	}
+
+	public void testSeeded() {
+		// The same seed gives the same network.
+		Board a = new Board(9, 7, true);
+		Board b = new Board(9, 7, true);
+		new Generator(new FastRandom(99)).generate(a, 3, 50);
+		new Generator(new FastRandom(99)).generate(b, 3, 50);
+		assertEquals(a.root(), b.root());
+		for (int i = 0; i < a.size(); ++i)
+			assertEquals("cell " + i, a.dirs(i), b.dirs(i));
+		checkNet("seeded", a, 50);
+	}
+
+	public void testUnique() {
+		Solver solver = new Solver();
+		for (int pass = 0; pass < 2; ++pass) {
+			boolean wrap = pass == 1;
+			Generator gen = new Generator(new Random(2));
+			gen.setUnique(true);
+			gen.setMaxTries(100);
+			Board b = new Board(7, 7, wrap);
+			for (int n = 0; n < 10; ++n) {
+				gen.generate(b, 3, 40);
+				checkNet("unique " + n, b, 40);
+				assertTrue("unique " + n, gen.isUnique());
+				assertEquals("unique " + n, 1, solver.solve(b, 2));
+				assertEquals(Generator.score(solver), gen.difficulty());
+			}
+		}
+	}
+
+	public void testMultiServer() {
+		Solver solver = new Solver();
+		Generator gen = new Generator(new Random(5));
+		gen.setServers(4);
+		gen.setUnique(true);
+		for (int pass = 0; pass < 2; ++pass) {
+			boolean wrap = pass == 1;
+			Board b = new Board(12, 10, wrap);
+			for (int n = 0; n < 5; ++n) {
+				String msg = "servers " + pass + "/" + n;
+				gen.generate(b, 3, Generator.minCells(12, 10));
+				assertEquals(msg, 4, b.rootCount());
+				checkNet(msg, b, Generator.minCells(12, 10));
+
+				// Each server has its own tree; no link joins two.
+				int total = 0;
+				for (int k = 0; k < 4; ++k) {
+					assertTrue(msg + " size " + k, b.rootSize(k) > 1);
+					total += b.rootSize(k);
+				}
+				assertEquals(msg, b.usedCells(), total);
+				for (int i = 0; i < b.size(); ++i)
+					for (int d : Board.CARDINALS)
+						if (b.isLinked(i, d))
+							assertEquals(msg + " cell " + i,
+									b.connectedRoot(i),
+									b.connectedRoot(b.next(i, d)));
+
+				// The solver can solve it.
+				assertTrue(msg + " solve", solver.solve(b, 1) == 1);
+			}
+		}
+		assertEquals(2, Generator.multiServers(3, 3));
+		assertEquals(Board.MAX_ROOTS, Generator.multiServers(100, 100));
+	}
+
+	public void testDifficulty() {
+		Generator gen = new Generator(new Random(3));
+		gen.setDifficulty(0, 8);
+		gen.setMaxTries(200);
+		Board b = new Board(9, 9, false);
+		gen.generate(b, 2, 60);
+		assertTrue(gen.difficulty() >= 0 && gen.difficulty() <= 8);
+	}
+
+	public void testCache() throws InterruptedException {
+		PuzzleCache cache = new PuzzleCache(new Random(4));
+		cache.start();
+		try {
+			cache.request(1, 8, 6, false, 2, 1);
+			Board b = new Board(1, 1, false);
+			PuzzleCode code = null;
+			for (int t = 0; code == null && t < 500; ++t) {
+				Thread.sleep(10);
+				code = cache.take(1, 8, 6, false, 2, 1, b);
+			}
+			assertNotNull("cache produced a puzzle", code);
+			assertEquals(8, b.width());
+			assertEquals(6, b.height());
+			checkNet("cache", b, Generator.minCells(8, 6));
+
+			// The board is the one the code describes.
+			Board c = new Board(1, 1, false);
+			code.generate(c);
+			for (int i = 0; i < b.size(); ++i)
+				assertEquals("cache " + i, c.dirs(i), b.dirs(i));
+
+			// A different configuration isn't served from the cache.
+			assertNull(cache.take(4, 6, 6, true, 3, 1, b));
+		} finally {
+			cache.stop();
+		}
+	}
+
+	public void testCacheListener() throws InterruptedException {
+		// The listener is told when the puzzle wanted is ready, even after
+		// switching away from a big puzzle being generated.
+		final Object lock = new Object();
+		final int[] calls = new int[1];
+		PuzzleCache cache = new PuzzleCache(new Random(7));
+		cache.setListener(new PuzzleCache.Listener() {
+			@Override
+			public void puzzleReady() {
+				synchronized (lock) {
+					++calls[0];
+					lock.notifyAll();
+				}
+			}
+		});
+		cache.start();
+		try {
+			cache.request(4, 120, 70, true, 3, 1);
+			Thread.sleep(20);
+			Board b = new Board(1, 1, false);
+			int before;
+			synchronized (lock) {
+				before = calls[0];
+			}
+			assertNull(cache.take(1, 9, 7, false, 2, 1, b));
+			synchronized (lock) {
+				for (int t = 0; calls[0] == before && t < 50; ++t)
+					lock.wait(100);
+			}
+			assertTrue("listener called", calls[0] > before);
+			PuzzleCode code = cache.take(1, 9, 7, false, 2, 1, b);
+			assertNotNull("puzzle ready", code);
+			assertEquals(9, code.width());
+			checkNet("listener", b, Generator.minCells(9, 7));
+		} finally {
+			cache.stop();
+		}
+	}
+
+	public void testInterrupt() {
+		// An interrupted thread gives up generating at once.
+		Generator gen = new Generator(new Random(5));
+		gen.setUnique(true);
+		Board b = new Board(40, 40, true);
+		Thread.currentThread().interrupt();
+		try {
+			assertEquals(0, gen.generate(b, 3, Generator.minCells(40, 40)));
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+	}
+
+	public void testCacheStop() throws InterruptedException {
+		// Stopping the cache doesn't wait for a big puzzle to finish.
+		PuzzleCache cache = new PuzzleCache(new Random(6));
+		cache.start();
+		cache.request(4, 120, 70, true, 3, 1);
+		Thread.sleep(20);
+		long start = System.nanoTime();
+		cache.stop();
+		assertTrue(System.nanoTime() - start < 50000000L);
+
+		// It can be restarted, and still works.
+		cache.start();
+		try {
+			cache.request(1, 8, 6, false, 2, 1);
+			Board b = new Board(1, 1, false);
+			PuzzleCode code = null;
+			for (int t = 0; code == null && t < 500; ++t) {
+				Thread.sleep(10);
+				code = cache.take(1, 8, 6, false, 2, 1, b);
+			}
+			assertNotNull("restarted cache produced a puzzle", code);
+			checkNet("restarted", b, Generator.minCells(8, 6));
+		} finally {
+			cache.stop();
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.Game;
+import com.silentservices.netscramble.engine.HintEngine;
+import com.silentservices.netscramble.engine.MoveLog;
+import com.silentservices.netscramble.engine.PuzzleCode;
+import com.silentservices.netscramble.engine.ScreenLayout;
+import com.silentservices.netscramble.engine.SkillLevel;
+import com.silentservices.netscramble.engine.Solver;
+
+/**
+ * Test the hint engine.
+ */
+public class HintEngineTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Start a game of the given skill on a huge screen.
+	 */
+	private static Game makeGame(SkillLevel sk, long seed) {
+		int w = ScreenLayout.HUGE.boardWidth(sk, true);
+		int h = ScreenLayout.HUGE.boardHeight(sk, true);
+		Game g = new Game();
+		g.start(PuzzleCode.random(sk.ordinal(), sk.branches, sk.wrapped, w,
+				h, new Random(seed)));
+		return g;
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testHintsSolve() {
+		for (SkillLevel sk : SkillLevel.values()) {
+			Game g = makeGame(sk, sk.ordinal() + 10);
+			Board b = g.board();
+			int count = 0;
+			int move;
+			while ((move = g.hint(null)) >= 0) {
+				int t = MoveLog.moveTurns(move);
+				assertTrue(t == 1 || t == -1 || t == 2);
+				assertTrue(g.rotate(MoveLog.moveCell(move), t) >= 0);
+				assertTrue(++count <= b.size());
+			}
+			assertTrue(sk.toString(), g.isSolved());
+		}
+	}
+
+	public void testIncremental() {
+		Game g = makeGame(SkillLevel.INSANE, 4);
+		Board b = g.board();
+		Solver solver = new Solver();
+		assertEquals(1, solver.solve(b, 2));
+		HintEngine cached = new HintEngine();
+		Random rng = new Random(8);
+
+		// Lock cells in their solved positions, and some unlocks, and check
+		// that the cached hints match fresh ones.
+		for (int step = 0; step < 60; ++step) {
+			int i = rng.nextInt(b.size());
+			if (b.dirs(i) == 0)
+				continue;
+			if (b.isLocked(i) && rng.nextInt(4) == 0)
+				b.setLocked(i, false);
+			else {
+				b.setDirs(i, solver.solvedDirs(i));
+				b.setLocked(i, true);
+			}
+			b.updateConnections();
+			assertEquals(new HintEngine().hint(b), cached.hint(b));
+		}
+	}
+
+	public void testForcedCells() {
+		Game g = makeGame(SkillLevel.MASTER, 9);
+		Board b = g.board();
+		Solver solver = new Solver();
+		assertTrue(solver.deduce(b));
+
+		// Turn every forced cell into place; they should all be found,
+		// up to the size of the array.
+		int forced = 0;
+		for (int i = 0; i < b.size(); ++i) {
+			int dirs = solver.forcedDirs(i);
+			if (dirs > 0) {
+				b.setDirs(i, dirs);
+				++forced;
+			}
+		}
+		assertTrue(forced > 4);
+		int[] cells = new int[b.size()];
+		assertEquals(forced, g.forcedCells(cells));
+		assertEquals(4, g.forcedCells(new int[4]));
+
+		// Lock them as the assist mode would; there's nothing left.
+		for (int k = 0; k < forced; ++k)
+			b.setLocked(cells[k], true);
+		assertEquals(0, g.forcedCells(cells));
+
+		// Turning the rest into their solved positions and locking them one
+		// by one lets the deductions find more.
+		assertEquals(1, solver.solve(b, 2));
+		int locked = forced;
+		for (int i = 0; i < b.size(); ++i) {
+			if (b.dirs(i) == 0 || b.isLocked(i))
+				continue;
+			b.setDirs(i, solver.solvedDirs(i));
+			b.setLocked(i, true);
+			++locked;
+			int n = g.forcedCells(cells);
+			for (int k = 0; k < n; ++k)
+				b.setLocked(cells[k], true);
+			locked += n;
+		}
+		assertEquals(b.usedCells(), locked);
+	}
+
+	public void testWrongLock() {
+		Game g = makeGame(SkillLevel.EXPERT, 6);
+		Board b = g.board();
+
+		// Find a forced cell which looks different when turned, and lock
+		// it the wrong way.
+		Solver solver = new Solver();
+		assertTrue(solver.deduce(b));
+		int cell = -1;
+		for (int k = 0; k < solver.traceLength() && cell < 0; ++k) {
+			int i = solver.traceCell(k);
+			int dirs = solver.forcedDirs(i);
+			if (dirs != 0 && Board.rotated(dirs, 1) != dirs)
+				cell = i;
+		}
+		assertTrue(cell >= 0);
+		int right = solver.forcedDirs(cell);
+		b.setDirs(cell, Board.rotated(right, 1));
+		b.setLocked(cell, true);
+
+		int move = g.hint(null);
+		assertEquals(cell, MoveLog.moveCell(move));
+		assertEquals(-1, MoveLog.moveTurns(move));
+	}
+
+}
@@ -0,0 +1,124 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.NeighbourTable;
+
+/**
+ * Test the shared neighbour tables against plain coordinate arithmetic.
+ */
+public class NeighbourTableTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Work out the neighbour of a cell the long way round.
+	 */
+	private static int slowNext(int w, int h, boolean wrap, int i, int dir) {
+		int x = i % w, y = i / w;
+		switch (dir) {
+		case Board.L:
+			--x;
+			break;
+		case Board.R:
+			++x;
+			break;
+		case Board.U:
+			--y;
+			break;
+		case Board.D:
+			++y;
+			break;
+		}
+		if (wrap) {
+			x = (x + w) % w;
+			y = (y + h) % h;
+		} else if (x < 0 || x >= w || y < 0 || y >= h)
+			return -1;
+		return y * w + x;
+	}
+
+	private static void checkTable(int w, int h, boolean wrap) {
+		NeighbourTable t = NeighbourTable.get(w, h, wrap);
+		int[] table = t.table();
+		assertEquals(w * h * 4, table.length);
+		for (int i = 0; i < w * h; ++i) {
+			for (int c = 0; c < 4; ++c) {
+				int dir = Board.CARDINALS[c];
+				int want = slowNext(w, h, wrap, i, dir);
+				String msg = w + "x" + h + (wrap ? " wrapped" : "") + " cell "
+						+ i + " dir " + dir;
+				assertEquals(msg, want, t.next(i, c));
+				assertEquals(msg, want, table[i * 4 + c]);
+			}
+		}
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testUnwrapped() {
+		checkTable(1, 1, false);
+		checkTable(5, 3, false);
+		checkTable(9, 9, false);
+	}
+
+	public void testWrapped() {
+		checkTable(1, 1, true);
+		checkTable(2, 7, true);
+		checkTable(9, 9, true);
+	}
+
+	public void testCardinal() {
+		for (int c = 0; c < 4; ++c)
+			assertEquals(c, NeighbourTable.cardinal(Board.CARDINALS[c]));
+		try {
+			NeighbourTable.cardinal(Board.L | Board.R);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testSharing() {
+		NeighbourTable a = NeighbourTable.get(6, 4, true);
+		NeighbourTable b = NeighbourTable.get(6, 4, true);
+		assertTrue(a == b);
+		assertTrue(a != NeighbourTable.get(6, 4, false));
+		assertTrue(a != NeighbourTable.get(4, 6, true));
+
+		// Boards of the same shape share their table across resets.
+		Board b1 = new Board(6, 4, true);
+		Board b2 = new Board(3, 3, false);
+		b2.reset(6, 4, true);
+		assertTrue(b1.neighbours() == b2.neighbours());
+		assertEquals(b1.next(0, Board.L), b2.next(0, Board.L));
+	}
+
+}
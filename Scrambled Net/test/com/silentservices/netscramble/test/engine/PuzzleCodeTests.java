@@ -0,0 +1,131 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.PuzzleCode;
+
+/**
+ * Test puzzle codes, and that they re-create their boards exactly.
+ */
+public class PuzzleCodeTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Compute a simple fingerprint of a board's cells and root.
+	 */
+	private static long fingerprint(Board b) {
+		long f = b.root();
+		for (int i = 0; i < b.size(); ++i)
+			f = f * 31 + b.dirs(i);
+		return f;
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testText() {
+		PuzzleCode c = new PuzzleCode(4, 3, true, 17, 10, 123456789012345L,
+				987654321L);
+		String s = c.toString();
+		assertEquals("43W0H0A-17RF9KM92X-GC0UY9", s);
+		assertEquals(c, PuzzleCode.parse(s));
+		assertEquals(c, PuzzleCode.parse(s.toLowerCase()));
+
+		PuzzleCode big = new PuzzleCode(0, 2, false, 40, 300, Long.MAX_VALUE,
+				0);
+		assertEquals(big, PuzzleCode.parse(big.toString()));
+	}
+
+	public void testServers() {
+		// The server count follows the size; a single server has none.
+		PuzzleCode c = new PuzzleCode(4, 3, true, 3, 17, 10,
+				123456789012345L, 987654321L);
+		assertEquals("43W0H0A3-17RF9KM92X-GC0UY9", c.toString());
+		assertEquals(c, PuzzleCode.parse(c.toString()));
+		assertEquals(3, PuzzleCode.parse(c.toString()).servers());
+		assertEquals(1, PuzzleCode.parse("43W0H0A-1-2").servers());
+		assertFalse(c.equals(PuzzleCode.parse("43W0H0A-17RF9KM92X-GC0UY9")));
+
+		Board b = new Board(1, 1, false);
+		c.generate(b);
+		assertEquals(3, b.rootCount());
+	}
+
+	public void testBadCodes() {
+		String[] bad = { "", "43W0H0A", "43X0H0A-1-2", "43W0H0-1-2",
+				"43W0H0A-1-2-3", "43W0H0A-!-2", "44W0H0A-1-2", "43W000A-1-2",
+				"43W0H0A0-1-2", "43W0H0AX-1-2", "43W0H0A12-1-2" };
+		for (String s : bad) {
+			try {
+				PuzzleCode.parse(s);
+				fail("accepted bad code \"" + s + "\"");
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+
+	public void testRepeatable() {
+		// A code always makes the same board, and the same scramble.
+		PuzzleCode c = PuzzleCode.parse("32N090A-5RQ1-ZZ");
+		Board a = new Board(1, 1, false);
+		Board b = new Board(1, 1, false);
+		c.generate(a);
+		c.generate(b);
+		assertEquals(9, a.width());
+		assertEquals(10, a.height());
+		assertEquals(fingerprint(a), fingerprint(b));
+
+		c.scramble(a);
+		c.scramble(b);
+		assertEquals(fingerprint(a), fingerprint(b));
+	}
+
+	public void testFixedBoard() {
+		// Regression check: this code must always describe this board.
+		// If this fails, generation has changed and old codes are broken.
+		PuzzleCode c = PuzzleCode.parse("22N0807-1-1");
+		Board b = new Board(1, 1, false);
+		c.generate(b);
+		assertEquals(FIXED_BOARD, fingerprint(b));
+	}
+
+	public void testDaily() {
+		PuzzleCode a = PuzzleCode.daily(2, 2, false, 9, 9, 2012, 3, 14);
+		PuzzleCode b = PuzzleCode.daily(2, 2, false, 9, 9, 2012, 3, 14);
+		PuzzleCode c = PuzzleCode.daily(2, 2, false, 9, 9, 2012, 3, 15);
+		assertEquals(a, b);
+		assertFalse(a.equals(c));
+	}
+
+	// Fingerprint of the board for code 22N0807-1-1.
+	private static final long FIXED_BOARD = -2891248835420872781L;
+
+}
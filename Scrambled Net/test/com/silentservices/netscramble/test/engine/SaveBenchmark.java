@@ -0,0 +1,289 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.BoardCodec;
+import com.silentservices.netscramble.engine.Generator;
+
+/**
+ * Benchmark saving and restoring a game, comparing the packed board format
+ * against the old format of one Bundle per cell. Results are printed to
+ * standard output.
+ * 
+ * <p>
+ * Bundles and Parcels aren't available off-device, so they are modelled
+ * here: a Bundle is a HashMap, and the parcel is a byte stream written with
+ * the Parcel layout (4-byte aligned, UTF-16 strings). This gives the
+ * parcel size exactly, and the allocation pattern approximately.
+ */
+public class SaveBenchmark extends TestCase {
+
+	// ******************************************************************** //
+	// Parcel Model.
+	// ******************************************************************** //
+
+	/**
+	 * A minimal model of android.os.Parcel's wire format.
+	 */
+	private static final class Parcel {
+		void writeInt(int v) {
+			out.write(v);
+			out.write(v >> 8);
+			out.write(v >> 16);
+			out.write(v >> 24);
+		}
+
+		void writeString(String s) {
+			writeInt(s.length());
+			for (int i = 0; i < s.length(); ++i) {
+				out.write(s.charAt(i));
+				out.write(s.charAt(i) >> 8);
+			}
+			out.write(0);
+			out.write(0);
+			pad();
+		}
+
+		void writeByteArray(byte[] b) {
+			writeInt(b.length);
+			out.write(b, 0, b.length);
+			pad();
+		}
+
+		@SuppressWarnings("unchecked")
+		void writeBundle(HashMap<String, Object> map) {
+			writeInt(map.size());
+			for (String key : map.keySet()) {
+				writeString(key);
+				Object v = map.get(key);
+				if (v instanceof String) {
+					writeInt(VAL_STRING);
+					writeString((String) v);
+				} else if (v instanceof Integer) {
+					writeInt(VAL_INTEGER);
+					writeInt((Integer) v);
+				} else if (v instanceof Float) {
+					writeInt(VAL_FLOAT);
+					writeInt(Float.floatToIntBits((Float) v));
+				} else if (v instanceof Boolean) {
+					writeInt(VAL_BOOLEAN);
+					writeInt((Boolean) v ? 1 : 0);
+				} else if (v instanceof byte[]) {
+					writeInt(VAL_BYTEARRAY);
+					writeByteArray((byte[]) v);
+				} else {
+					writeInt(VAL_BUNDLE);
+					writeBundle((HashMap<String, Object>) v);
+				}
+			}
+		}
+
+		private void pad() {
+			while (out.size() % 4 != 0)
+				out.write(0);
+		}
+
+		int size() {
+			return out.size();
+		}
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	}
+
+	// ******************************************************************** //
+	// Save Formats.
+	// ******************************************************************** //
+
+	/**
+	 * Save a board the old way: a Bundle per cell, keyed by its position.
+	 */
+	private static HashMap<String, Object> legacySave(Board b) {
+		HashMap<String, Object> state = new HashMap<String, Object>();
+		state.put("gridWidth", b.width());
+		state.put("gridHeight", b.height());
+		state.put("rootX", b.x(b.root()));
+		state.put("rootY", b.y(b.root()));
+		state.put("focusX", 0);
+		state.put("focusY", 0);
+		for (int x = 0; x < b.width(); ++x) {
+			for (int y = 0; y < b.height(); ++y) {
+				int i = b.index(x, y);
+				HashMap<String, Object> map = new HashMap<String, Object>();
+				map.put("connectedDirs", DIR_NAMES[b.dirs(i)]);
+				map.put("currentAngle", 0f);
+				map.put("highlightPos", 0);
+				map.put("isConnected", b.isConnected(i));
+				map.put("isFullyConnected", false);
+				map.put("isBlind", false);
+				map.put("isRoot", b.isRoot(i));
+				map.put("isLocked", b.isLocked(i));
+				state.put("cell " + x + "," + y, map);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Restore a board saved the old way.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void legacyRestore(HashMap<String, Object> state, Board b) {
+		int w = (Integer) state.get("gridWidth");
+		int h = (Integer) state.get("gridHeight");
+		b.reset(w, h, false);
+		for (int x = 0; x < w; ++x) {
+			for (int y = 0; y < h; ++y) {
+				int i = b.index(x, y);
+				HashMap<String, Object> map = (HashMap<String, Object>) state
+						.get("cell " + x + "," + y);
+				String name = (String) map.get("connectedDirs");
+				for (int d = 0; d < DIR_NAMES.length; ++d)
+					if (DIR_NAMES[d].equals(name))
+						b.setDirs(i, d);
+				if ((Boolean) map.get("isRoot"))
+					b.setRoot(i);
+				b.setLocked(i, (Boolean) map.get("isLocked"));
+			}
+		}
+		b.updateConnections();
+	}
+
+	/**
+	 * Save a board in the packed format.
+	 */
+	private static HashMap<String, Object> packedSave(Board b, boolean[] blind) {
+		HashMap<String, Object> state = new HashMap<String, Object>();
+		state.put("gridWidth", b.width());
+		state.put("gridHeight", b.height());
+		state.put("focusX", 0);
+		state.put("focusY", 0);
+		state.put("board", BoardCodec.encode(b, blind));
+		return state;
+	}
+
+	/**
+	 * Restore a board saved in the packed format.
+	 */
+	private static void packedRestore(HashMap<String, Object> state, Board b,
+			boolean[] blind) {
+		BoardCodec.decode((byte[]) state.get("board"), b, blind, 0);
+		b.updateConnections();
+	}
+
+	// ******************************************************************** //
+	// Benchmark Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Time saving, parcelling and restoring a board of the given size in
+	 * both formats.
+	 */
+	private static void runSave(int w, int h, int count) {
+		Board b = new Board(w, h, false);
+		new Generator(new Random(w * 100 + h)).generate(b, 3,
+				Generator.minCells(w, h));
+		b.updateConnections();
+		Board into = new Board(w, h, false);
+		boolean[] blind = new boolean[w * h];
+
+		// Legacy.
+		int legacySize = 0;
+		for (int i = 0; i < count / 4; ++i)
+			legacyRestore(legacySave(b), into);
+		long start = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			HashMap<String, Object> state = legacySave(b);
+			Parcel p = new Parcel();
+			p.writeBundle(state);
+			legacySize = p.size();
+		}
+		long legacySaveTime = System.nanoTime() - start;
+		HashMap<String, Object> legacyState = legacySave(b);
+		start = System.nanoTime();
+		for (int i = 0; i < count; ++i)
+			legacyRestore(legacyState, into);
+		long legacyRestoreTime = System.nanoTime() - start;
+
+		// Packed.
+		int packedSize = 0;
+		for (int i = 0; i < count / 4; ++i)
+			packedRestore(packedSave(b, blind), into, blind);
+		start = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			HashMap<String, Object> state = packedSave(b, blind);
+			Parcel p = new Parcel();
+			p.writeBundle(state);
+			packedSize = p.size();
+		}
+		long packedSaveTime = System.nanoTime() - start;
+		HashMap<String, Object> packedState = packedSave(b, blind);
+		start = System.nanoTime();
+		for (int i = 0; i < count; ++i)
+			packedRestore(packedState, into, blind);
+		long packedRestoreTime = System.nanoTime() - start;
+
+		System.out.println(String.format("save %dx%d: legacy %d bytes, "
+				+ "save %.1f us, restore %.1f us; packed %d bytes, "
+				+ "save %.1f us, restore %.1f us", w, h, legacySize,
+				legacySaveTime / 1e3 / count, legacyRestoreTime / 1e3 / count,
+				packedSize, packedSaveTime / 1e3 / count, packedRestoreTime
+						/ 1e3 / count));
+	}
+
+	// ******************************************************************** //
+	// Benchmarks.
+	// ******************************************************************** //
+
+	public void testSave() {
+		runSave(9, 9, 2000);
+		runSave(17, 10, 2000);
+		runSave(40, 40, 200);
+	}
+
+	// ******************************************************************** //
+	// Class Data.
+	// ******************************************************************** //
+
+	// Parcel value type codes, as used by android.os.Parcel.
+	private static final int VAL_STRING = 0;
+	private static final int VAL_INTEGER = 1;
+	private static final int VAL_BUNDLE = 3;
+	private static final int VAL_FLOAT = 7;
+	private static final int VAL_BOOLEAN = 9;
+	private static final int VAL_BYTEARRAY = 13;
+
+	// The names of the Cell.Dir values, indexed by direction bits, as saved
+	// by the old format.
+	private static final String[] DIR_NAMES = { "FREE", "___L", "__D_",
+			"__DL", "_R__", "_R_L", "_RD_", "_RDL", "U___", "U__L", "U_D_",
+			"U_DL", "UR__", "UR_L", "URD_", "URDL" };
+
+}
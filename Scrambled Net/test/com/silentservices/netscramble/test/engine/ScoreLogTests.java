@@ -0,0 +1,150 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+
+package com.silentservices.netscramble.test.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.ScoreLog;
+
+/**
+ * Test the score log and its percentiles.
+ */
+public class ScoreLogTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	private File logFile;
+
+	@Override
+	protected void setUp() throws IOException {
+		logFile = File.createTempFile("scores", ".log");
+		logFile.delete();
+	}
+
+	@Override
+	protected void tearDown() {
+		logFile.delete();
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testDistribution() {
+		ScoreLog.Distribution d = new ScoreLog.Distribution();
+		assertEquals(0, d.count());
+		assertEquals(-1, d.median());
+
+		for (int v = 1; v <= 100; ++v)
+			d.add(v);
+		assertEquals(100, d.count());
+		assertEquals(1, d.min());
+		assertEquals(50, d.median());
+		assertEquals(90, d.percentile(90));
+		assertEquals(100, d.percentile(100));
+
+		// Out of range values are clamped.
+		d.add(-5);
+		d.add(1000000);
+		assertEquals(0, d.min());
+		assertEquals(ScoreLog.Distribution.MAX_VALUE, d.percentile(100));
+	}
+
+	public void testLog() throws IOException {
+		ScoreLog log = new ScoreLog(logFile);
+		assertEquals(0, log.size());
+		assertEquals(0, log.stats(2).games());
+
+		for (int k = 0; k < 1000; ++k)
+			log.add(k % 3, 120, 200 - k % 101, 60 + k % 7, 1000L + k,
+					0x123456789abcL + k);
+		assertEquals(1000, log.size());
+
+		ScoreLog.Stats s = log.stats(1);
+		assertEquals(333, s.games());
+		assertEquals(120, s.lastSize());
+		assertEquals(100, s.clicks().min());
+		assertEquals(60, s.seconds().min());
+
+		// The first game with the fewest clicks is k = 100.
+		assertEquals(1000L + 100, s.bestClicksDate());
+
+		// One pass can gather several skill levels.
+		ScoreLog.Stats[] all = new ScoreLog.Stats[3];
+		all[0] = new ScoreLog.Stats();
+		all[2] = new ScoreLog.Stats();
+		log.scan(all);
+		assertEquals(334, all[0].games());
+		assertEquals(333, all[2].games());
+
+		log.clear();
+		assertEquals(0, log.size());
+	}
+
+	public void testTruncated() throws IOException {
+		ScoreLog log = new ScoreLog(logFile);
+		log.add(0, 50, 30, 40, 1, 2);
+		log.add(0, 50, 31, 41, 3, 4);
+
+		// Chop the last record short, as if the app died writing it.
+		RandomAccessFile f = new RandomAccessFile(logFile, "rw");
+		f.setLength(f.length() - 5);
+		f.close();
+		assertEquals(1, log.size());
+		assertEquals(1, log.stats(0).games());
+
+		// The next game overwrites the partial record.
+		log.add(0, 50, 10, 20, 5, 6);
+		assertEquals(2, log.size());
+		ScoreLog.Stats s = log.stats(0);
+		assertEquals(2, s.games());
+		assertEquals(10, s.clicks().min());
+	}
+
+	public void testBadFile() throws IOException {
+		FileOutputStream out = new FileOutputStream(logFile);
+		out.write("not a score log".getBytes());
+		out.close();
+		ScoreLog log = new ScoreLog(logFile);
+		try {
+			log.stats(0);
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+		try {
+			log.add(0, 1, 1, 1, 1, 1);
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.Solver;
+
+/**
+ * Benchmark the puzzle solver on the largest boards we use, and some larger
+ * ones. Results are printed to standard output.
+ */
+public class SolverBenchmark extends TestCase {
+
+	// ******************************************************************** //
+	// Benchmark Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Time solving a number of random boards of the given size.
+	 */
+	private static void runSolve(int w, int h, boolean wrap, int count) {
+		Random rng = new Random(w * 1000 + h * 10 + (wrap ? 1 : 0));
+		Board[] boards = new Board[count];
+		for (int i = 0; i < count; ++i) {
+			boards[i] = new Board(w, h, wrap);
+			TestBoards.randomNet(boards[i], rng);
+			TestBoards.scramble(boards[i], rng);
+		}
+
+		// Warm up, then time the solves.
+		Solver solver = new Solver();
+		for (int i = 0; i < count; ++i)
+			solver.solve(boards[i], 1);
+		int guesses = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			assertTrue(solver.solve(boards[i], 1) > 0);
+			guesses += solver.guesses();
+		}
+		long time = System.nanoTime() - start;
+
+		System.out.println(String.format(
+				"solve %dx%d%s: %.3f ms/board, %.1f guesses/board", w, h,
+				wrap ? " wrapped" : "", time / 1e6 / count, (float) guesses
+						/ count));
+	}
+
+	// ******************************************************************** //
+	// Benchmarks.
+	// ******************************************************************** //
+
+	public void testSolveLargest() {
+		// Expert and Master on the HUGE screen layout.
+		runSolve(15, 8, false, 50);
+		runSolve(17, 10, true, 50);
+	}
+
+	public void testSolveOversize() {
+		runSolve(30, 30, false, 10);
+		runSolve(30, 30, true, 10);
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.Solver;
+
+/**
+ * Test the puzzle solver.
+ */
+public class SolverTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Solve the given board, apply the solution, and check that it's solved.
+	 */
+	private static void checkSolve(String msg, Board b) {
+		Solver solver = new Solver();
+		assertTrue(msg + " solvable", solver.solve(b, 1) > 0);
+
+		Board check = new Board(1, 1, false);
+		check.copyFrom(b);
+		for (int i = 0; i < check.size(); ++i) {
+			check.rotate(i, solver.turns(i));
+			assertEquals(msg + " dirs " + i, solver.solvedDirs(i),
+					check.dirs(i));
+		}
+		check.updateConnections();
+		assertTrue(msg + " solved", check.isSolved());
+		assertEquals(msg + " unconnected", 0, check.unconnectedCells());
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testSolveFlat() {
+		Random rng = new Random(42);
+		Board b = new Board(9, 9, false);
+		for (int pass = 0; pass < 20; ++pass) {
+			TestBoards.randomNet(b, rng);
+			TestBoards.scramble(b, rng);
+			checkSolve("flat " + pass, b);
+		}
+	}
+
+	public void testSolveWrapped() {
+		Random rng = new Random(43);
+		Board b = new Board(9, 9, true);
+		for (int pass = 0; pass < 20; ++pass) {
+			TestBoards.randomNet(b, rng);
+			TestBoards.scramble(b, rng);
+			checkSolve("wrapped " + pass, b);
+		}
+	}
+
+	public void testUnique() {
+		// A line of three across a 3x1 board has exactly one solution.
+		Board b = new Board(3, 1, false);
+		b.setDirs(0, Board.U);
+		b.setDirs(1, Board.U | Board.D);
+		b.setDirs(2, Board.L);
+		b.setRoot(1);
+		Solver solver = new Solver();
+		assertEquals(1, solver.solve(b, 2));
+		assertEquals(Board.R, solver.solvedDirs(0));
+		assertEquals(Board.L | Board.R, solver.solvedDirs(1));
+		assertEquals(Board.L, solver.solvedDirs(2));
+		assertEquals(0, solver.guesses());
+	}
+
+	public void testUnsolvable() {
+		// Two terminals and a corner can't be connected into one network
+		// on a 3x1 board.
+		Board b = new Board(3, 1, false);
+		b.setDirs(0, Board.R);
+		b.setDirs(1, Board.U | Board.R);
+		b.setDirs(2, Board.L);
+		b.setRoot(1);
+		assertEquals(0, new Solver().solve(b, 2));
+
+		// Two terminals on their own are fine; but not two pairs.
+		b = new Board(2, 2, false);
+		b.setDirs(0, Board.R);
+		b.setDirs(1, Board.L);
+		b.setDirs(2, Board.R);
+		b.setDirs(3, Board.L);
+		b.setRoot(0);
+		assertEquals(0, new Solver().solve(b, 2));
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import com.silentservices.netscramble.engine.Board;
+
+/**
+ * Utilities for building test boards.
+ */
+class TestBoards {
+
+	/**
+	 * Fill the given board with a random spanning tree covering every cell,
+	 * rooted at a random cell.
+	 * 
+	 * @param b
+	 *            The board to fill in.
+	 * @param rng
+	 *            Random number generator to use.
+	 */
+	static void randomNet(Board b, Random rng) {
+		int n = b.size();
+		b.clear();
+		int[] list = new int[n];
+		boolean[] used = new boolean[n];
+		int count = 0;
+
+		int root = rng.nextInt(n);
+		b.setRoot(root);
+		list[count++] = root;
+		used[root] = true;
+
+		// Grow the tree from a random cell in it each time, until all
+		// cells are used.
+		int done = 1;
+		while (done < n) {
+			int i = list[rng.nextInt(count)];
+			int d = Board.CARDINALS[rng.nextInt(4)];
+			int next = b.next(i, d);
+			if (next < 0 || used[next])
+				continue;
+			b.addDir(i, d);
+			b.addDir(next, Board.reverse(d));
+			used[next] = true;
+			list[count++] = next;
+			++done;
+		}
+	}
+
+	/**
+	 * Turn every cell on the given board by a random amount.
+	 * 
+	 * @param b
+	 *            The board to scramble.
+	 * @param rng
+	 *            Random number generator to use.
+	 */
+	static void scramble(Board b, Random rng) {
+		for (int i = 0; i < b.size(); ++i)
+			b.rotate(i, rng.nextInt(4));
+	}
+
+}
@@ -0,0 +1,204 @@
+/**
+ * NetScramble: unscramble a network and connect all the terminals.
+ * The player is given a network diagram with the parts of the network
+ * randomly rotated; he/she must rotate them to connect all the terminals
+ * to the server.
+ * 
+ * This is an Android implementation of the KDE game "knetwalk" by
+ * Andi Peredri, Thomas Nagy, and Reinhold Kainhofer.
+ *
+ * © 2007-2010 Ian Cameron Smith <johantheghost@yahoo.com>
+ *
+ * © 2014 Michael Mueller <michael.mueller@silentservices.de>
+ * 
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License version 2
+ *   as published by the Free Software Foundation (see COPYING).
+ * 
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ */
+
+
+package com.silentservices.netscramble.test.engine;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.silentservices.netscramble.engine.Board;
+import com.silentservices.netscramble.engine.BoardCodec;
+import com.silentservices.netscramble.engine.Game;
+import com.silentservices.netscramble.engine.Generator;
+import com.silentservices.netscramble.engine.MoveLog;
+import com.silentservices.netscramble.engine.NeighbourTable;
+import com.silentservices.netscramble.engine.Solver;
+import com.silentservices.netscramble.engine.Topology;
+
+/**
+ * Test the board topologies, and the engine on hex boards.
+ */
+public class TopologyTests extends TestCase {
+
+	// ******************************************************************** //
+	// Test Framework.
+	// ******************************************************************** //
+
+	/**
+	 * Make a scrambled hex puzzle with a unique solution.
+	 */
+	private static Board hexPuzzle(long seed, int w, int h, boolean wrap) {
+		Board b = new Board(Topology.HEX, w, h, wrap);
+		Generator gen = new Generator(new Random(seed));
+		gen.setUnique(true);
+		gen.generate(b, 2, Generator.minCells(w, h));
+		Random rng = new Random(seed);
+		for (int i = 0; i < b.size(); ++i)
+			b.rotate(i, rng.nextInt(6));
+		b.updateConnections();
+		return b;
+	}
+
+	// ******************************************************************** //
+	// Tests.
+	// ******************************************************************** //
+
+	public void testRotation() {
+		for (Topology t : Topology.values()) {
+			for (int d = 0; d <= t.mask; ++d) {
+				assertEquals(t + " " + d, d, t.rotated(d, t.numDirs));
+				assertEquals(t + " " + d, d, t.rotated(t.rotated(d, 1), -1));
+				assertEquals(t + " " + d, t.rotated(d, t.numDirs / 2),
+						t.reverse(d));
+				assertEquals(t + " " + d, Board.count(d),
+						Board.count(t.rotated(d, 1)));
+			}
+		}
+
+		// The square topology matches the board's own rotation.
+		for (int d = 0; d <= 0x0f; ++d)
+			for (int r = -4; r <= 4; ++r)
+				assertEquals(Board.rotated(d, r),
+						Topology.SQUARE.rotated(d, r));
+
+		// On a hex board, clockwise takes W to NW.
+		assertEquals(1 << 5, Topology.HEX.rotated(1, 1));
+		assertEquals(1 << 3, Topology.HEX.reverse(1));
+	}
+
+	public void testShortestTurns() {
+		assertEquals(-1, Topology.SQUARE.shortestTurns(3));
+		assertEquals(2, Topology.SQUARE.shortestTurns(2));
+		assertEquals(3, Topology.HEX.shortestTurns(3));
+		assertEquals(-2, Topology.HEX.shortestTurns(4));
+		assertEquals(-1, Topology.HEX.shortestTurns(5));
+		assertEquals(6, Topology.HEX.turnOrder().length);
+	}
+
+	public void testHexNeighbours() {
+		for (int pass = 0; pass < 2; ++pass) {
+			boolean wrap = pass == 1;
+			NeighbourTable t = NeighbourTable.get(Topology.HEX, 7, 6, wrap);
+			assertTrue(t == NeighbourTable.get(Topology.HEX, 7, 6, wrap));
+			assertTrue(t != NeighbourTable.get(7, 6, wrap));
+			assertEquals(7 * 6 * 6, t.table().length);
+
+			// Every link has a matching link back the other way.
+			for (int i = 0; i < 7 * 6; ++i) {
+				for (int c = 0; c < 6; ++c) {
+					int n = t.next(i, c);
+					if (n < 0) {
+						assertFalse(wrap);
+						continue;
+					}
+					assertEquals(i, t.next(n, (c + 3) % 6));
+				}
+			}
+		}
+
+		// Cell 8 is at (3, 1), on an odd row, so it's shifted right.
+		Board b = new Board(Topology.HEX, 5, 4, false);
+		assertEquals(7, b.next(8, 1 << 0));
+		assertEquals(13, b.next(8, 1 << 1));
+		assertEquals(14, b.next(8, 1 << 2));
+		assertEquals(9, b.next(8, 1 << 3));
+		assertEquals(4, b.next(8, 1 << 4));
+		assertEquals(3, b.next(8, 1 << 5));
+		assertEquals(-1, b.next(0, 1 << 5));
+
+		try {
+			new Board(Topology.HEX, 5, 5, true);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testHexGenerate() {
+		for (int pass = 0; pass < 10; ++pass) {
+			boolean wrap = (pass & 1) != 0;
+			Board b = new Board(Topology.HEX, 8, 6, wrap);
+			Generator gen = new Generator(new Random(pass));
+			gen.generate(b, 3, 30);
+			b.updateConnections();
+			assertTrue("net " + pass, b.isSolved());
+			assertEquals(0, b.unconnectedCells());
+			assertTrue(b.usedCells() >= 30);
+		}
+	}
+
+	public void testHexSolve() {
+		Solver solver = new Solver();
+		for (int pass = 0; pass < 5; ++pass) {
+			Board b = hexPuzzle(pass, 7, 6, (pass & 1) != 0);
+			assertEquals(1, solver.solve(b, 2));
+			Board s = new Board(1, 1, false);
+			s.copyFrom(b);
+			for (int i = 0; i < s.size(); ++i)
+				s.rotate(i, solver.turns(i));
+			s.updateConnections();
+			assertTrue(s.isSolved());
+		}
+	}
+
+	public void testHexGame() {
+		Board b = hexPuzzle(7, 7, 6, false);
+		Game game = new Game();
+		game.start(null, b);
+
+		int[] moves = new int[b.size()];
+		int n = game.solution(null, moves);
+		assertTrue(n > 0);
+		for (int k = 0; k < n; ++k) {
+			int t = MoveLog.moveTurns(moves[k]);
+			assertTrue(t >= -2 && t <= 3 && t != 0);
+			game.rotate(MoveLog.moveCell(moves[k]), t);
+		}
+		assertTrue(game.isSolved());
+		assertTrue(game.verify());
+	}
+
+	public void testHexCodec() {
+		Board b = hexPuzzle(3, 7, 6, true);
+		b.setLocked(5, true);
+		byte[] data = BoardCodec.encode(b, null);
+		assertEquals(BoardCodec.encodedSize(Topology.HEX, 7 * 6), data.length);
+
+		Board c = new Board(1, 1, false);
+		BoardCodec.decode(data, c, null, 0);
+		assertEquals(Topology.HEX, c.topology());
+		assertTrue(c.isWrapped());
+		assertEquals(b.root(), c.root());
+		assertTrue(c.isLocked(5));
+		for (int i = 0; i < b.size(); ++i)
+			assertEquals("cell " + i, b.dirs(i), c.dirs(i));
+
+		try {
+			BoardCodec.decode(data, c, null, 1);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+}